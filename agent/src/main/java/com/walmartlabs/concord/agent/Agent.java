@@ -24,15 +24,19 @@ import com.walmartlabs.concord.ApiException;
 import com.walmartlabs.concord.agent.Worker.CompletionCallback;
 import com.walmartlabs.concord.agent.cfg.AgentConfiguration;
 import com.walmartlabs.concord.agent.cfg.DockerConfiguration;
+import com.walmartlabs.concord.agent.cfg.ServerConfiguration;
 import com.walmartlabs.concord.agent.docker.OrphanSweeper;
 import com.walmartlabs.concord.agent.logging.ProcessLogFactory;
 import com.walmartlabs.concord.agent.mmode.MaintenanceModeListener;
 import com.walmartlabs.concord.agent.mmode.MaintenanceModeNotifier;
 import com.walmartlabs.concord.client.ClientUtils;
 import com.walmartlabs.concord.client.ProcessApi;
+import com.walmartlabs.concord.client.ProcessHeartbeatApi;
 import com.walmartlabs.concord.client.ProcessEntry.StatusEnum;
 import com.walmartlabs.concord.common.IOUtils;
 import com.walmartlabs.concord.server.queueclient.QueueClient;
+import com.walmartlabs.concord.server.queueclient.message.Message;
+import com.walmartlabs.concord.server.queueclient.message.ProcessBatchResponse;
 import com.walmartlabs.concord.server.queueclient.message.ProcessRequest;
 import com.walmartlabs.concord.server.queueclient.message.ProcessResponse;
 import org.slf4j.Logger;
@@ -43,8 +47,7 @@ import javax.inject.Named;
 import javax.inject.Singleton;
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -56,6 +59,7 @@ public class Agent {
 
     private final AgentConfiguration agentCfg;
     private final DockerConfiguration dockerCfg;
+    private final ServerConfiguration serverCfg;
 
     private final QueueClient queueClient;
     private final ProcessLogFactory processLogFactory;
@@ -72,6 +76,7 @@ public class Agent {
     @Inject
     public Agent(AgentConfiguration agentCfg,
                  DockerConfiguration dockerCfg,
+                 ServerConfiguration serverCfg,
                  QueueClient queueClient,
                  ProcessLogFactory processLogFactory,
                  ProcessApi processApi,
@@ -79,6 +84,7 @@ public class Agent {
 
         this.agentCfg = agentCfg;
         this.dockerCfg = dockerCfg;
+        this.serverCfg = serverCfg;
         this.queueClient = queueClient;
 
         this.processLogFactory = processLogFactory;
@@ -116,24 +122,40 @@ public class Agent {
         CommandHandler commandHandler = new CommandHandler(agentCfg.getAgentId(), queueClient, agentCfg.getPollInterval(), this::cancel);
         executor.submit(commandHandler);
 
+        if (serverCfg.isBatchProcessHeartbeats()) {
+            ProcessHeartbeatApi heartbeatApi = new ProcessHeartbeatApi(processApi.getApiClient());
+            executor.submit(new ProcessHeartbeatSender(heartbeatApi, activeWorkers::keySet,
+                    serverCfg.getProcessHeartbeatInterval(), serverCfg.getMaxNoHeartbeatInterval(), this::cancel));
+        }
+
+        // time-to-saturation: how long it takes to fill the free slots
+        long freeSince = 0;
+        int requestsSinceFree = 0;
+
         // main loop
         while (!Thread.currentThread().isInterrupted()) {
             // check if the maintenance mode is enabled. If so, hang there indefinitely
             validateMaintenanceMode();
 
-            // TODO parallel acquire?
-            // wait for a free "slot"
+            // wait for a free "slot" and grab all other free slots
+            // so all of them can be filled in a single request
             workersAvailable.acquire();
-            log.info("run -> acquired a slot, {}/{} remains", workersAvailable.availablePermits(), workersCount);
+            int permits = 1 + workersAvailable.drainPermits();
 
-            // fetch the next job
-            JobRequest jobRequest;
+            if (freeSince == 0) {
+                freeSince = System.currentTimeMillis();
+            }
+            requestsSinceFree++;
+            log.info("run -> acquired {} slot(s), {}/{} remains", permits, workersAvailable.availablePermits(), workersCount);
+
+            // fetch the next jobs
+            List<JobRequest> jobRequests;
             try {
-                jobRequest = take(queueClient);
+                jobRequests = take(queueClient, permits);
             } catch (Exception e) {
                 log.warn("run -> error while fetching a job: {}", e.getMessage());
 
-                workersAvailable.release();
+                workersAvailable.release(permits);
 
                 // wait before retrying
                 // the server is not reachable or unhealthy, no point retrying immediately
@@ -141,22 +163,32 @@ public class Agent {
                 continue;
             }
 
-            if (jobRequest == null) {
-                // can happen on switching to maintenance mode or reconnecting, etc
-                workersAvailable.release();
-                continue;
+            // can be empty on switching to maintenance mode or reconnecting, etc
+            // or the server returned fewer jobs than requested
+            if (jobRequests.size() < permits) {
+                workersAvailable.release(permits - jobRequests.size());
             }
 
-            UUID instanceId = jobRequest.getInstanceId();
+            for (JobRequest jobRequest : jobRequests) {
+                UUID instanceId = jobRequest.getInstanceId();
+
+                // worker will handle the process' lifecycle
+                Worker w = workerFactory.create(jobRequest, createStatusCallback(instanceId, workersAvailable));
+
+                // register the worker so we can cancel it later
+                activeWorkers.put(instanceId, w);
 
-            // worker will handle the process' lifecycle
-            Worker w = workerFactory.create(jobRequest, createStatusCallback(instanceId, workersAvailable));
+                // start a new thread to process the job
+                executor.submit(w);
+            }
 
-            // register the worker so we can cancel it later
-            activeWorkers.put(instanceId, w);
+            if (workersAvailable.availablePermits() == 0 && jobRequests.size() == permits) {
+                log.info("run -> all {} worker(s) busy, saturated in {}ms with {} request(s)",
+                        workersCount, System.currentTimeMillis() - freeSince, requestsSinceFree);
 
-            // start a new thread to process the job
-            executor.submit(w);
+                freeSince = 0;
+                requestsSinceFree = 0;
+            }
         }
     }
 
@@ -222,17 +254,57 @@ public class Agent {
         };
     }
 
-    private JobRequest take(QueueClient queueClient) throws Exception {
-        Future<ProcessResponse> req = queueClient.request(new ProcessRequest(agentCfg.getCapabilities()));
+    private List<JobRequest> take(QueueClient queueClient, int maxProcesses) throws Exception {
+        // ask for a single process the old way, in case the server doesn't support batches
+        ProcessRequest request = maxProcesses > 1
+                ? new ProcessRequest(agentCfg.getCapabilities(), maxProcesses)
+                : new ProcessRequest(agentCfg.getCapabilities());
+
+        Future<Message> req = queueClient.request(request);
 
-        ProcessResponse resp = req.get();
+        Message resp = req.get();
         if (resp == null) {
-            return null;
+            return Collections.emptyList();
+        }
+
+        List<ProcessResponse> processes;
+        if (resp instanceof ProcessBatchResponse) {
+            processes = ((ProcessBatchResponse) resp).getProcesses();
+        } else {
+            processes = Collections.singletonList((ProcessResponse) resp);
+        }
+
+        // the processes are already assigned to the agent, a failure to prepare one of them
+        // must not affect the rest of the batch
+        List<JobRequest> result = new ArrayList<>(processes.size());
+        for (ProcessResponse p : processes) {
+            JobRequest jobRequest = prepare(p);
+            if (jobRequest != null) {
+                result.add(jobRequest);
+            }
         }
+        return result;
+    }
 
-        Path workDir = IOUtils.createTempDir(agentCfg.getPayloadDir(), "workDir");
+    private JobRequest prepare(ProcessResponse resp) {
+        Path workDir = null;
+        try {
+            workDir = IOUtils.createTempDir(agentCfg.getPayloadDir(), "workDir");
+            return JobRequest.from(resp, workDir, processLogFactory);
+        } catch (Exception e) {
+            log.error("prepare ['{}'] -> error while preparing a job, marking the process as failed", resp.getProcessId(), e);
+
+            if (workDir != null) {
+                try {
+                    IOUtils.deleteRecursively(workDir);
+                } catch (IOException ee) {
+                    log.warn("prepare ['{}'] -> cleanup error: {}", resp.getProcessId(), ee.getMessage());
+                }
+            }
 
-        return JobRequest.from(resp, workDir, processLogFactory);
+            updateStatus(resp.getProcessId(), StatusEnum.FAILED);
+            return null;
+        }
     }
 
     private void updateStatus(UUID instanceId, StatusEnum s) {
@@ -0,0 +1,130 @@
+package com.walmartlabs.concord.agent;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.ApiException;
+import com.walmartlabs.concord.client.ProcessHeartbeatApi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Sends heartbeats for all processes running on the agent in a single request.
+ * Replaces the heartbeats sent by each individual runner process.
+ */
+public class ProcessHeartbeatSender implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessHeartbeatSender.class);
+
+    private final ProcessHeartbeatApi heartbeatApi;
+    private final Supplier<Collection<UUID>> activeProcesses;
+    private final long interval;
+    private final long maxNoHeartbeatInterval;
+    private final CommandHandler.CancelHandler cancelHandler;
+
+    private boolean batchSupported = true;
+
+    public ProcessHeartbeatSender(ProcessHeartbeatApi heartbeatApi,
+                                  Supplier<Collection<UUID>> activeProcesses,
+                                  long interval,
+                                  long maxNoHeartbeatInterval,
+                                  CommandHandler.CancelHandler cancelHandler) {
+
+        this.heartbeatApi = heartbeatApi;
+        this.activeProcesses = activeProcesses;
+        this.interval = interval;
+        this.maxNoHeartbeatInterval = maxNoHeartbeatInterval;
+        this.cancelHandler = cancelHandler;
+    }
+
+    @Override
+    public void run() {
+        log.info("run -> running every {}ms, max interval: {}ms", interval, maxNoHeartbeatInterval);
+
+        boolean prevPingFailed = false;
+        long lastSuccessPing = System.currentTimeMillis();
+        while (!Thread.currentThread().isInterrupted()) {
+            List<UUID> ids = new ArrayList<>(activeProcesses.get());
+
+            try {
+                if (!ids.isEmpty()) {
+                    ping(ids);
+                }
+
+                lastSuccessPing = System.currentTimeMillis();
+                if (prevPingFailed) {
+                    log.info("run -> heartbeat: ok");
+                }
+                prevPingFailed = false;
+            } catch (Exception e) {
+                prevPingFailed = true;
+                log.warn("run -> heartbeat error: {}, last successful at {}", e.getMessage(), new Date(lastSuccessPing));
+
+                // same as the runner's own heartbeat: give up on the processes
+                // if the server wasn't reachable for too long
+                long pingInterval = System.currentTimeMillis() - lastSuccessPing;
+                if (pingInterval > maxNoHeartbeatInterval) {
+                    log.error("run -> no heartbeat for more than {}ms, cancelling {} process(es)...", pingInterval, ids.size());
+                    ids.forEach(cancelHandler::cancel);
+                    lastSuccessPing = System.currentTimeMillis();
+                }
+            }
+
+            Utils.sleep(interval);
+        }
+    }
+
+    private void ping(List<UUID> ids) throws ApiException {
+        if (batchSupported) {
+            try {
+                heartbeatApi.pingBatch(ids);
+                return;
+            } catch (ApiException e) {
+                // older servers don't have the batch endpoint
+                if (e.getCode() != 404 && e.getCode() != 405) {
+                    throw e;
+                }
+
+                log.info("ping -> batch heartbeats are not supported by the server, falling back to individual requests");
+                batchSupported = false;
+            }
+        }
+
+        for (UUID id : ids) {
+            try {
+                heartbeatApi.ping(id);
+            } catch (ApiException e) {
+                // the process can be already removed, no need to fail the whole batch
+                if (e.getCode() < 400 || e.getCode() >= 500) {
+                    throw e;
+                }
+
+                log.warn("ping ['{}'] -> error: {}", id, e.getMessage());
+            }
+        }
+    }
+}
@@ -50,6 +50,8 @@ public class AgentConfiguration {
 
     private final Path logDir;
     private final long logMaxDelay;
+    private final long logBatchMaxSize;
+    private final long logBatchMaxDelay;
 
     private final int workersCount;
     private final long pollInterval;
@@ -69,6 +71,8 @@ public class AgentConfiguration {
 
         this.logDir = getDir(cfg, "logDir");
         this.logMaxDelay = cfg.getDuration("logMaxDelay", TimeUnit.MILLISECONDS);
+        this.logBatchMaxSize = cfg.getBytes("logBatchMaxSize");
+        this.logBatchMaxDelay = cfg.getDuration("logBatchMaxDelay", TimeUnit.MILLISECONDS);
 
         this.workersCount = cfg.getInt("workersCount");
         this.maintenanceModeListenerPort = cfg.getInt("maintenanceModeListenerPort");
@@ -104,6 +108,14 @@ public class AgentConfiguration {
         return logMaxDelay;
     }
 
+    public long getLogBatchMaxSize() {
+        return logBatchMaxSize;
+    }
+
+    public long getLogBatchMaxDelay() {
+        return logBatchMaxDelay;
+    }
+
     public int getWorkersCount() {
         return workersCount;
     }
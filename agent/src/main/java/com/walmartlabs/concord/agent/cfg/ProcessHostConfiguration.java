@@ -0,0 +1,62 @@
+package com.walmartlabs.concord.agent.cfg;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.typesafe.config.Config;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.concurrent.TimeUnit;
+
+@Named
+@Singleton
+public class ProcessHostConfiguration {
+
+    private final boolean enabled;
+    private final int maxConcurrency;
+    private final int maxProcesses;
+    private final long maxIdleTime;
+
+    @Inject
+    public ProcessHostConfiguration(Config cfg) {
+        this.enabled = cfg.getBoolean("processHost.enabled");
+        this.maxConcurrency = cfg.getInt("processHost.maxConcurrency");
+        this.maxProcesses = cfg.getInt("processHost.maxProcesses");
+        this.maxIdleTime = cfg.getDuration("processHost.maxIdleTime", TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getMaxProcesses() {
+        return maxProcesses;
+    }
+
+    public long getMaxIdleTime() {
+        return maxIdleTime;
+    }
+}
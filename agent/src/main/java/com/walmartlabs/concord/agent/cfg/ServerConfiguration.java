@@ -47,6 +47,8 @@ public class ServerConfiguration {
     private final long readTimeout;
     private final String userAgent;
     private final long maxNoHeartbeatInterval;
+    private final boolean batchProcessHeartbeats;
+    private final long processHeartbeatInterval;
 
     @Inject
     public ServerConfiguration(Config cfg, AgentConfiguration agentCfg) {
@@ -68,6 +70,8 @@ public class ServerConfiguration {
         this.userAgent = getStringOrDefault(cfg, "server.userAgent", () -> "Concord-Agent: id=" + agentCfg.getAgentId());
 
         this.maxNoHeartbeatInterval = cfg.getDuration("server.maxNoHeartbeatInterval", TimeUnit.MILLISECONDS);
+        this.batchProcessHeartbeats = cfg.getBoolean("server.batchProcessHeartbeats");
+        this.processHeartbeatInterval = cfg.getDuration("server.processHeartbeatInterval", TimeUnit.MILLISECONDS);
     }
 
     public String getApiBaseUrl() {
@@ -110,6 +114,14 @@ public class ServerConfiguration {
         return maxNoHeartbeatInterval;
     }
 
+    public boolean isBatchProcessHeartbeats() {
+        return batchProcessHeartbeats;
+    }
+
+    public long getProcessHeartbeatInterval() {
+        return processHeartbeatInterval;
+    }
+
     private static String[] getWebsocketUrls(Config cfg) {
         // we had a silly typo ("websockeR") in our configs, so for backward compatibility we must check the old variant first
         String oldKey = "server.websockerUrl";
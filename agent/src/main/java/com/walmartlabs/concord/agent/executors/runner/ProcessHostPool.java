@@ -0,0 +1,445 @@
+package com.walmartlabs.concord.agent.executors.runner;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.common.hash.HashCode;
+import com.walmartlabs.concord.agent.Utils;
+import com.walmartlabs.concord.agent.cfg.ProcessHostConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of long-lived "process host" JVMs, grouped by the command line hash.
+ * Each host runs up to {@code maxConcurrency} runtime v2 processes at the same
+ * time and is retired after {@code maxProcesses} processes. Idle hosts are
+ * stopped after {@code maxIdleTime}.
+ * <p>
+ * The host protocol is described in the runtime's {@code ProcessHost} class.
+ */
+@Named
+@Singleton
+public class ProcessHostPool {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessHostPool.class);
+
+    // see com.walmartlabs.concord.runtime.v2.runner.ProcessHost
+    static final byte OUTPUT = 1;
+    static final byte EXIT = 2;
+
+    private static final long CLEANUP_PERIOD = 30000;
+    private static final int PIPE_SIZE = 64 * 1024;
+
+    private final int maxConcurrency;
+    private final int maxProcesses;
+    private final long maxIdleTime;
+
+    private final Map<HashCode, List<Host>> hosts = new HashMap<>();
+
+    @Inject
+    public ProcessHostPool(ProcessHostConfiguration cfg) {
+        this(cfg.getMaxConcurrency(), cfg.getMaxProcesses(), cfg.getMaxIdleTime());
+        init();
+    }
+
+    ProcessHostPool(int maxConcurrency, int maxProcesses, long maxIdleTime) {
+        this.maxConcurrency = maxConcurrency;
+        this.maxProcesses = maxProcesses;
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    public void init() {
+        Thread t = new Thread(() -> {
+            log.info("run -> starting cleanup thread, max concurrency {}, max processes {}, max idle time {}ms", maxConcurrency, maxProcesses, maxIdleTime);
+
+            while (!Thread.currentThread().isInterrupted()) {
+                Utils.sleep(CLEANUP_PERIOD);
+
+                try {
+                    maintenance();
+                } catch (Exception e) {
+                    log.warn("pool -> error while performing maintenance: {}", e.getMessage());
+                }
+            }
+        }, "process-host-pool-cleanup");
+
+        t.start();
+    }
+
+    /**
+     * Starts a new process in a host JVM with the specified command line,
+     * starting a new host JVM if necessary.
+     *
+     * @param hc       the host's command line hash
+     * @param launcher starts new host JVMs
+     * @param workDir  the process' working directory
+     * @return the process handle. The process' stdout and stderr are merged
+     */
+    public Process start(HashCode hc, HostLauncher launcher, Path workDir) throws IOException {
+        Host host = reserve(hc, launcher);
+        try {
+            return host.start(workDir);
+        } catch (IOException e) {
+            host.kill();
+            throw e;
+        }
+    }
+
+    private synchronized Host reserve(HashCode hc, HostLauncher launcher) {
+        List<Host> l = hosts.computeIfAbsent(hc, k -> new ArrayList<>());
+
+        Host host = null;
+        for (Host h : l) {
+            if (h.canAccept()) {
+                host = h;
+                break;
+            }
+        }
+
+        if (host == null) {
+            host = new Host(hc, launcher);
+            l.add(host);
+        }
+
+        host.running++;
+        host.total++;
+
+        return host;
+    }
+
+    private synchronized void onExit(Host host) {
+        host.running--;
+        host.lastUsed = System.currentTimeMillis();
+    }
+
+    private synchronized void remove(Host host) {
+        List<Host> l = hosts.get(host.hc);
+        if (l == null) {
+            return;
+        }
+
+        l.remove(host);
+        if (l.isEmpty()) {
+            hosts.remove(host.hc);
+        }
+    }
+
+    private void maintenance() {
+        long now = System.currentTimeMillis();
+
+        List<Host> hostsToKill = new ArrayList<>();
+        synchronized (this) {
+            for (List<Host> l : hosts.values()) {
+                for (Host h : l) {
+                    if (h.running > 0) {
+                        continue;
+                    }
+
+                    if (h.total >= maxProcesses || now - h.lastUsed >= maxIdleTime) {
+                        hostsToKill.add(h);
+                    }
+                }
+            }
+
+            hostsToKill.forEach(h -> {
+                h.dead = true;
+                remove(h);
+            });
+        }
+
+        for (Host h : hostsToKill) {
+            h.stop();
+        }
+
+        log.info("maintenance -> stopped {} hosts", hostsToKill.size());
+    }
+
+    public interface HostLauncher {
+
+        /**
+         * Starts a new host JVM. The JVM's stdin and stdout are used
+         * for the host protocol.
+         */
+        Process start() throws IOException;
+    }
+
+    private final class Host {
+
+        private final HashCode hc;
+        private final HostLauncher launcher;
+        private final Map<Integer, HostedProcess> processes = new ConcurrentHashMap<>();
+
+        // guarded by the pool
+        private int running;
+        private int total;
+        private long lastUsed = System.currentTimeMillis();
+
+        private volatile boolean dead;
+
+        // guarded by the host
+        private Process process;
+        private Writer commands;
+        private int nextId;
+
+        private Host(HashCode hc, HostLauncher launcher) {
+            this.hc = hc;
+            this.launcher = launcher;
+        }
+
+        boolean canAccept() {
+            return !dead && running < maxConcurrency && total < maxProcesses;
+        }
+
+        synchronized Process start(Path workDir) throws IOException {
+            if (dead) {
+                throw new IOException("Process host terminated");
+            }
+
+            if (process == null) {
+                process = launcher.start();
+                commands = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+
+                Thread t = new Thread(this::read, "process-host-reader");
+                t.setDaemon(true);
+                t.start();
+
+                log.info("start -> new process host: {}", process);
+            }
+
+            int id = nextId++;
+            HostedProcess p = new HostedProcess(this, id);
+            processes.put(id, p);
+
+            send("start " + id + " " + workDir.toAbsolutePath());
+
+            return p;
+        }
+
+        synchronized void cancel(int id) {
+            try {
+                send("cancel " + id);
+            } catch (IOException e) {
+                log.warn("cancel ['{}'] -> error while sending the command: {}", id, e.getMessage());
+            }
+        }
+
+        /**
+         * Closes the host's stdin, the host exits when it's done with the current processes.
+         */
+        synchronized void stop() {
+            if (commands == null) {
+                return;
+            }
+
+            try {
+                commands.close();
+            } catch (IOException e) {
+                log.warn("stop -> error while stopping the process host: {}", e.getMessage());
+            }
+        }
+
+        /**
+         * Kills the host JVM and all processes running in it.
+         */
+        void kill() {
+            synchronized (ProcessHostPool.this) {
+                dead = true;
+                remove(this);
+            }
+
+            Process p;
+            synchronized (this) {
+                p = process;
+            }
+
+            if (p != null) {
+                p.destroyForcibly();
+            }
+        }
+
+        private void send(String command) throws IOException {
+            commands.write(command);
+            commands.write('\n');
+            commands.flush();
+        }
+
+        private void read() {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(process.getInputStream()))) {
+                while (true) {
+                    byte type = in.readByte();
+                    int id = in.readInt();
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+
+                    HostedProcess p = processes.get(id);
+                    if (p == null) {
+                        continue;
+                    }
+
+                    if (type == OUTPUT) {
+                        p.output(data);
+                    } else if (type == EXIT) {
+                        processes.remove(id);
+                        onExit(this);
+                        p.exit(new DataInputStream(new ByteArrayInputStream(data)).readInt());
+                    }
+                }
+            } catch (IOException e) {
+                // EOF or a broken pipe, the host JVM is gone
+                log.info("read -> process host terminated: {}", process);
+            }
+
+            synchronized (ProcessHostPool.this) {
+                remove(this);
+            }
+
+            // no new processes can be added after this point
+            List<HostedProcess> l;
+            synchronized (this) {
+                dead = true;
+                l = new ArrayList<>(processes.values());
+                processes.clear();
+            }
+
+            for (HostedProcess p : l) {
+                p.output("Runner host JVM terminated\n".getBytes(StandardCharsets.UTF_8));
+                p.exit(1);
+            }
+        }
+    }
+
+    /**
+     * A process running in a host JVM.
+     */
+    private static final class HostedProcess extends Process {
+
+        private final Host host;
+        private final int id;
+
+        private final PipedInputStream in;
+        private final PipedOutputStream out;
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private volatile int exitCode;
+
+        private HostedProcess(Host host, int id) throws IOException {
+            this.host = host;
+            this.id = id;
+            this.in = new PipedInputStream(PIPE_SIZE);
+            this.out = new PipedOutputStream(in);
+        }
+
+        void output(byte[] data) {
+            try {
+                out.write(data);
+            } catch (IOException e) {
+                // nobody reads the output anymore
+                log.warn("output ['{}'] -> error while writing the process' output: {}", id, e.getMessage());
+            }
+        }
+
+        void exit(int code) {
+            this.exitCode = code;
+
+            try {
+                out.close();
+            } catch (IOException e) {
+                // ignore
+            }
+
+            done.countDown();
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new OutputStream() {
+                @Override
+                public void write(int b) {
+                    // processes don't have stdin
+                }
+            };
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return in;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            // merged with the process' output
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            done.await();
+            return exitCode;
+        }
+
+        @Override
+        public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+            return done.await(timeout, unit);
+        }
+
+        @Override
+        public int exitValue() {
+            if (done.getCount() > 0) {
+                throw new IllegalThreadStateException("process hasn't exited");
+            }
+            return exitCode;
+        }
+
+        @Override
+        public void destroy() {
+            host.cancel(id);
+        }
+
+        /**
+         * Kills the whole host JVM, including other processes running in it.
+         */
+        @Override
+        public Process destroyForcibly() {
+            host.kill();
+            return this;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return done.getCount() > 0;
+        }
+
+        @Override
+        public String toString() {
+            return "hosted process " + id + " in " + host.process;
+        }
+    }
+}
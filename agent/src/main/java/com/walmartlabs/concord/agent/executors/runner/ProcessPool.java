@@ -21,7 +21,6 @@ package com.walmartlabs.concord.agent.executors.runner;
  */
 
 import com.google.common.hash.HashCode;
-import com.walmartlabs.concord.agent.ExecutionException;
 import com.walmartlabs.concord.agent.Utils;
 import com.walmartlabs.concord.agent.cfg.PreForkConfiguration;
 import org.slf4j.Logger;
@@ -33,9 +32,22 @@ import javax.inject.Singleton;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of "pre-forked" JVMs, grouped by the command line hash.
+ * <p>
+ * The pool tracks the number of takes per command line within the
+ * {@code maxAge} window and keeps roughly that many JVMs warm, within
+ * the total count and memory limits. JVMs are started in background
+ * threads, {@link #take(HashCode, long, ProcessLauncher)} never waits
+ * for other forks.
+ */
 @Named
 @Singleton
 public class ProcessPool {
@@ -46,19 +58,37 @@ public class ProcessPool {
 
     private final long maxEntryAge;
     private final int maxEntryCount;
-    private final Map<HashCode, Queue<ProcessEntry>> pool = new HashMap<>();
+    private final long maxMemory;
+
+    private final Map<HashCode, Slot> pool = new ConcurrentHashMap<>();
     private final ExecutorService executor = Executors.newCachedThreadPool();
 
+    /**
+     * Number of entries in the pool, including the JVMs being started.
+     */
+    private final AtomicInteger reservedCount = new AtomicInteger();
+
+    /**
+     * Memory reserved by the entries in the pool, including the JVMs being started.
+     */
+    private final AtomicLong reservedMemory = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong warmCount = new AtomicLong();
+    private final AtomicLong warmTime = new AtomicLong();
+
     @Inject
     public ProcessPool(PreForkConfiguration cfg) {
         this.maxEntryAge = cfg.getMaxAge();
         this.maxEntryCount = cfg.getMaxCount();
+        this.maxMemory = cfg.getMaxMemory();
         init();
     }
 
     public void init() {
         Thread t = new Thread(() -> {
-            log.info("run -> starting cleanup thread, max entry age {}ms, max entry count {}", maxEntryAge, maxEntryCount);
+            log.info("run -> starting cleanup thread, max entry age {}ms, max entry count {}, max memory {}", maxEntryAge, maxEntryCount, maxMemory);
 
             while (!Thread.currentThread().isInterrupted()) {
                 Utils.sleep(CLEANUP_PERIOD);
@@ -74,96 +104,187 @@ public class ProcessPool {
         t.start();
     }
 
-    public ProcessEntry take(HashCode hc, ProcessLauncher launcher) throws ExecutionException {
-        synchronized (pool) {
-            Queue<ProcessEntry> q = pool.computeIfAbsent(hc, k -> new LinkedList<>());
+    /**
+     * Takes a pre-forked JVM from the pool. On a miss the caller is expected
+     * to start a new JVM itself, with the process' payload already in place,
+     * so the JVM doesn't have to wait for it.
+     *
+     * @param hc       the command line hash
+     * @param memory   the estimated memory footprint of the JVM, in bytes. Zero if unknown
+     * @param launcher starts new pre-forked JVMs
+     * @return a pre-forked JVM or {@code null} if there are none available
+     */
+    public ProcessEntry take(HashCode hc, long memory, ProcessLauncher launcher) {
+        // register the take atomically, so the slot can't be removed by the maintenance thread in between
+        Slot slot = pool.compute(hc, (k, v) -> {
+            Slot s = v != null ? v : new Slot();
+            s.onTake(memory, launcher);
+            return s;
+        });
+
+        ProcessEntry entry = slot.poll();
+        if (entry != null) {
+            release(entry);
+            hits.incrementAndGet();
+            log.info("take -> using a pre-forked instance: {}", entry.procDir);
+        } else {
+            misses.incrementAndGet();
+            log.info("take -> no pre-forked instances available");
+        }
 
-            ProcessEntry entry = q.poll();
-            if (entry == null) {
-                try {
-                    entry = launcher.start();
-                } catch (IOException e) {
-                    throw new ExecutionException("Error while starting a new process", e);
-                }
+        warmUp(hc, slot);
 
-                log.info("take -> started a new process: {}", entry.procDir);
-            } else {
-                log.info("take -> using a pre-forked instance: {}", entry.procDir);
-            }
+        return entry;
+    }
 
-            executor.submit(() -> populate(hc, launcher));
+    public Stats getStats() {
+        long warmed = warmCount.get();
+        return new Stats(hits.get(), misses.get(), warmed, warmed > 0 ? warmTime.get() / warmed : 0,
+                reservedCount.get(), reservedMemory.get());
+    }
 
-            return entry;
+    /**
+     * Starts new JVMs until the number of available (or starting) instances
+     * matches the recent demand.
+     */
+    private void warmUp(HashCode hc, Slot slot) {
+        long now = System.currentTimeMillis();
+
+        while (slot.available() < slot.demand(now)) {
+            if (!reserve(hc, slot.memory)) {
+                return;
+            }
+
+            slot.warming.incrementAndGet();
+            executor.submit(() -> warm(slot));
         }
     }
 
-    private void populate(HashCode hc, ProcessLauncher launcher) {
-        synchronized (pool) {
-            // calculate the total number of processes in the pool
-            int total = 0;
-            for (Map.Entry<HashCode, Queue<ProcessEntry>> e : pool.entrySet()) {
-                total += e.getValue().size();
-            }
+    private void warm(Slot slot) {
+        long t1 = System.currentTimeMillis();
+        try {
+            ProcessEntry entry = slot.launcher.start();
+            entry.memory = slot.memory;
+            slot.entries.add(entry);
+
+            warmCount.incrementAndGet();
+            warmTime.addAndGet(System.currentTimeMillis() - t1);
+        } catch (Exception e) {
+            log.error("warm -> error while starting a new process", e);
+            release(slot.memory);
+        } finally {
+            slot.warming.decrementAndGet();
+        }
+    }
 
-            if (total >= maxEntryCount) {
-                // mark the oldest entry for removal
-                ProcessEntry oldest = null;
-                for (Map.Entry<HashCode, Queue<ProcessEntry>> q : pool.entrySet()) {
-                    for (ProcessEntry e : q.getValue()) {
-                        if (oldest == null || oldest.timestamp > e.timestamp) {
-                            oldest = e;
-                        }
-                    }
+    /**
+     * Reserves space for a new entry, evicting idle entries with lower demand
+     * if necessary.
+     *
+     * @return {@code false} if there's no space for a new entry
+     */
+    private boolean reserve(HashCode hc, long memory) {
+        while (true) {
+            int count = reservedCount.get();
+            long mem = reservedMemory.get();
+
+            boolean fits = count < maxEntryCount && (maxMemory <= 0 || mem + memory <= maxMemory);
+            if (fits) {
+                if (reservedCount.compareAndSet(count, count + 1)) {
+                    reservedMemory.addAndGet(memory);
+                    return true;
                 }
+                continue;
+            }
 
-                // it's never null
-                assert oldest != null;
+            if (!evict(hc)) {
+                return false;
+            }
+        }
+    }
 
-                oldest.remove = true;
+    /**
+     * Kills an idle entry of the command line with the lowest demand.
+     * Only the entries of other command lines with lower demand are considered.
+     */
+    private boolean evict(HashCode requester) {
+        long now = System.currentTimeMillis();
+
+        Slot slot = pool.get(requester);
+        int requesterDemand = slot != null ? slot.demand(now) : 0;
+
+        Slot victim = null;
+        int victimDemand = Integer.MAX_VALUE;
+        for (Map.Entry<HashCode, Slot> e : pool.entrySet()) {
+            if (e.getKey().equals(requester) || e.getValue().entries.isEmpty()) {
+                continue;
             }
 
-            // add a new pool entry
-            Queue<ProcessEntry> q = pool.computeIfAbsent(hc, k -> new LinkedList<>());
-            try {
-                q.add(launcher.start());
-            } catch (IOException e) {
-                log.error("populate -> error while starting a new process", e);
+            int d = e.getValue().demand(now);
+            if (d < requesterDemand && d < victimDemand) {
+                victim = e.getValue();
+                victimDemand = d;
             }
         }
+
+        if (victim == null) {
+            return false;
+        }
+
+        ProcessEntry entry = victim.entries.pollLast();
+        if (entry == null) {
+            // taken by someone else in the meantime, retry
+            return true;
+        }
+
+        release(entry);
+        Utils.kill(entry.process);
+        return true;
+    }
+
+    private void release(ProcessEntry entry) {
+        release(entry.memory);
+    }
+
+    private void release(long memory) {
+        reservedCount.decrementAndGet();
+        reservedMemory.addAndGet(-memory);
     }
 
     private void maintenance() {
-        List<HashCode> queuesToRemove = new ArrayList<>();
         List<Process> processesToKill = new ArrayList<>();
 
-        long t = System.currentTimeMillis();
+        long now = System.currentTimeMillis();
 
-        synchronized (pool) {
-            pool.forEach((hc, q) -> {
-                q.removeIf(e -> {
-                    if (e.remove || t - e.timestamp >= maxEntryAge) {
-                        processesToKill.add(e.process);
-                        return true;
-                    }
-                    return false;
-                });
+        int queuesRemoved = 0;
+        for (HashCode hc : new ArrayList<>(pool.keySet())) {
+            Slot slot = pool.get(hc);
+            if (slot == null) {
+                continue;
+            }
 
-                if (q.isEmpty()) {
-                    queuesToRemove.add(hc);
+            for (Iterator<ProcessEntry> i = slot.entries.iterator(); i.hasNext(); ) {
+                ProcessEntry pe = i.next();
+                if (now - pe.timestamp >= maxEntryAge && slot.entries.removeFirstOccurrence(pe)) {
+                    release(pe);
+                    processesToKill.add(pe.process);
                 }
-            });
+            }
 
-            for (HashCode hc : queuesToRemove) {
-                pool.remove(hc);
+            if (pool.computeIfPresent(hc, (k, v) -> v.isUnused(now) ? null : v) == null) {
+                queuesRemoved++;
+                continue;
             }
-        }
 
-        log.info("maintenance -> removed {} queues", queuesToRemove.size());
+            // replace the expired entries if there's still demand for them
+            warmUp(hc, slot);
+        }
 
         for (Process p : processesToKill) {
             Utils.kill(p);
         }
-        log.info("maintenance -> killed {} processes", processesToKill.size());
+
+        log.info("maintenance -> removed {} queues, killed {} processes, {}", queuesRemoved, processesToKill.size(), getStats());
     }
 
     public interface ProcessLauncher {
@@ -177,7 +298,7 @@ public class ProcessPool {
         private final Process process;
         private final Path procDir;
 
-        private boolean remove = false;
+        private long memory;
 
         public ProcessEntry(Process process, Path procDir) {
             this.timestamp = System.currentTimeMillis();
@@ -193,4 +314,110 @@ public class ProcessPool {
             return procDir;
         }
     }
+
+    public static final class Stats {
+
+        private final long hits;
+        private final long misses;
+        private final long warmCount;
+        private final long avgWarmTime;
+        private final int entryCount;
+        private final long memory;
+
+        private Stats(long hits, long misses, long warmCount, long avgWarmTime, int entryCount, long memory) {
+            this.hits = hits;
+            this.misses = misses;
+            this.warmCount = warmCount;
+            this.avgWarmTime = avgWarmTime;
+            this.entryCount = entryCount;
+            this.memory = memory;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getWarmCount() {
+            return warmCount;
+        }
+
+        public long getAvgWarmTime() {
+            return avgWarmTime;
+        }
+
+        public int getEntryCount() {
+            return entryCount;
+        }
+
+        public long getMemory() {
+            return memory;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits +
+                    ", misses=" + misses +
+                    ", warmCount=" + warmCount +
+                    ", avgWarmTime=" + avgWarmTime + "ms" +
+                    ", entryCount=" + entryCount +
+                    ", memory=" + memory;
+        }
+    }
+
+    /**
+     * Pre-forked JVMs and the recent takes of a single command line.
+     */
+    private final class Slot {
+
+        private final Deque<ProcessEntry> entries = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger warming = new AtomicInteger();
+
+        /**
+         * Timestamps of the takes within the {@code maxEntryAge} window.
+         */
+        private final Deque<Long> takes = new ArrayDeque<>();
+
+        private volatile ProcessLauncher launcher;
+        private volatile long memory;
+
+        void onTake(long memory, ProcessLauncher launcher) {
+            this.memory = memory;
+            this.launcher = launcher;
+
+            synchronized (takes) {
+                takes.addLast(System.currentTimeMillis());
+            }
+        }
+
+        ProcessEntry poll() {
+            // the newest entries have the most time left to live
+            return entries.pollLast();
+        }
+
+        int available() {
+            return entries.size() + warming.get();
+        }
+
+        /**
+         * @return the number of takes within the {@code maxEntryAge} window,
+         * i.e. the number of entries which would have been used if they were
+         * started in advance.
+         */
+        int demand(long now) {
+            synchronized (takes) {
+                while (!takes.isEmpty() && now - takes.peekFirst() >= maxEntryAge) {
+                    takes.removeFirst();
+                }
+                return Math.min(takes.size(), maxEntryCount);
+            }
+        }
+
+        boolean isUnused(long now) {
+            return entries.isEmpty() && warming.get() == 0 && demand(now) == 0;
+        }
+    }
 }
@@ -173,6 +173,7 @@ public class RunnerJob {
                 .api(ApiConfiguration.builder()
                         .baseUrl(execCfg.serverApiBaseUrl())
                         .maxNoHeartbeatInterval(execCfg.maxHeartbeatInterval())
+                        .heartbeatEnabled(!execCfg.agentHeartbeats())
                         .build())
                 .docker(DockerConfiguration.builder()
                         .extraVolumes(execCfg.extraDockerVolumes())
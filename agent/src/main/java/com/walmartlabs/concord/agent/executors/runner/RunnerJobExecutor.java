@@ -69,12 +69,15 @@ public class RunnerJobExecutor implements JobExecutor {
 
     private static final Logger log = LoggerFactory.getLogger(RunnerJobExecutor.class);
 
+    private static final String PROCESS_HOST_MAIN_CLASS = "com.walmartlabs.concord.runtime.v2.runner.ProcessHost";
+
     protected final DependencyManager dependencyManager;
 
     private final RunnerJobExecutorConfiguration cfg;
     private final DefaultDependencies defaultDependencies;
     private final List<JobPostProcessor> postProcessors;
     private final ProcessPool processPool;
+    private final ProcessHostPool processHostPool;
     private final ProcessLogFactory logFactory;
     private final ExecutorService executor;
 
@@ -85,6 +88,7 @@ public class RunnerJobExecutor implements JobExecutor {
                              DefaultDependencies defaultDependencies,
                              List<JobPostProcessor> postProcessors,
                              ProcessPool processPool,
+                             ProcessHostPool processHostPool,
                              ProcessLogFactory processLogFactory,
                              ExecutorService executor) {
 
@@ -93,6 +97,7 @@ public class RunnerJobExecutor implements JobExecutor {
         this.defaultDependencies = defaultDependencies;
         this.postProcessors = postProcessors;
         this.processPool = processPool;
+        this.processHostPool = processHostPool;
         this.logFactory = processLogFactory;
         this.executor = executor;
 
@@ -183,11 +188,18 @@ public class RunnerJobExecutor implements JobExecutor {
 
     protected ProcessEntry buildProcessEntry(RunnerJob job) throws Exception {
         List<String> jvmParams = getJvmParams(job.getPayloadDir(), job.getProcessCfg());
-        String[] cmd = createCmd(job, jvmParams);
+        String[] cmd = createCmd(job, jvmParams, cfg.runnerMainClass());
 
         boolean prefork = canUsePrefork(job);
+        if (prefork && cfg.processHost()) {
+            ProcessEntry entry = startHosted(job, createCmd(job, jvmParams, PROCESS_HOST_MAIN_CLASS));
+            if (entry != null) {
+                return entry;
+            }
+        }
+
         if (prefork) {
-            return fork(job, cmd);
+            return fork(job, jvmParams, cmd);
         } else {
             log.info("start ['{}'] -> can't use pre-forked instances", job.getInstanceId());
             Path procDir = IOUtils.createTempDir("onetime");
@@ -321,7 +333,7 @@ public class RunnerJobExecutor implements JobExecutor {
         job.getLog().info("Dependencies: {}", b);
     }
 
-    private String[] createCmd(RunnerJob job, List<String> jvmParams) throws IOException {
+    private String[] createCmd(RunnerJob job, List<String> jvmParams, String mainClass) throws IOException {
         Path runnerCfgFile = storeRunnerCfg(cfg.runnerCfgDir(), job.getRunnerCfg());
         return new RunnerCommandBuilder()
                 .javaCmd(cfg.javaCmd())
@@ -329,37 +341,99 @@ public class RunnerJobExecutor implements JobExecutor {
                 .extraDockerVolumesFile(createExtraDockerVolumesFile(job))
                 .runnerPath(cfg.runnerPath().toAbsolutePath())
                 .runnerCfgPath(runnerCfgFile.toAbsolutePath())
-                .mainClass(cfg.runnerMainClass())
+                .mainClass(mainClass)
                 .jvmParams(jvmParams).build();
     }
 
-    private ProcessEntry fork(RunnerJob job, String[] cmd) throws ExecutionException, IOException {
+    private ProcessEntry fork(RunnerJob job, List<String> jvmParams, String[] cmd) throws IOException {
         long t1 = System.currentTimeMillis();
 
         HashCode hc = hash(cmd);
 
-        // take a "pre-forked" JVM from the pool or start a new one
-        ProcessEntry entry = processPool.take(hc, () -> {
+        // take a "pre-forked" JVM from the pool
+        ProcessEntry entry = processPool.take(hc, getMaxHeapSize(jvmParams), () -> {
             Path forkDir = IOUtils.createTempDir("prefork");
             return start(forkDir, cmd);
         });
 
+        if (entry == null) {
+            // no pre-forked JVMs available, start a new one with the payload in place
+            // (otherwise the new JVM would wait for the payload like a pre-forked one)
+            Path procDir = IOUtils.createTempDir("prefork");
+            entry = startOneTime(job, cmd, procDir);
+        } else {
+            // the job's payload directory containing all files from the process' state snapshot and/or the repository's data
+            Path src = job.getPayloadDir();
+            // the VM's payload directory
+            Path dst = entry.getProcDir().resolve(Constants.Files.PAYLOAD_DIR_NAME);
+            // TODO use move
+            IOUtils.copy(src, dst);
+
+            writeInstanceId(job.getInstanceId(), dst);
+        }
+
+        long t2 = System.currentTimeMillis();
+
+        if (job.isDebugMode()) {
+            job.getLog().info("Forking a VM took {}ms", (t2 - t1));
+        }
+
+        return entry;
+    }
+
+    /**
+     * Starts the process in a shared "process host" JVM.
+     *
+     * @return the process or {@code null} if the host can't be used
+     */
+    private ProcessEntry startHosted(RunnerJob job, String[] hostCmd) throws IOException {
+        long t1 = System.currentTimeMillis();
+
+        Path procDir = IOUtils.createTempDir("hosted");
+
         // the job's payload directory containing all files from the process' state snapshot and/or the repository's data
         Path src = job.getPayloadDir();
-        // the VM's payload directory
-        Path dst = entry.getProcDir().resolve(Constants.Files.PAYLOAD_DIR_NAME);
-        // TODO use move
-        IOUtils.copy(src, dst);
+        // the process' payload directory
+        Path dst = procDir.resolve(Constants.Files.PAYLOAD_DIR_NAME);
+        Files.move(src, dst, StandardCopyOption.ATOMIC_MOVE);
 
         writeInstanceId(job.getInstanceId(), dst);
 
+        Process p;
+        try {
+            p = processHostPool.start(hash(hostCmd), () -> startHost(hostCmd), dst);
+        } catch (IOException e) {
+            log.warn("startHosted ['{}'] -> can't use the process host, falling back to a new JVM: {}", job.getInstanceId(), e.getMessage());
+
+            // move the payload back, the fallback expects it in the original location
+            Files.move(dst, src, StandardCopyOption.ATOMIC_MOVE);
+            IOUtils.deleteRecursively(procDir);
+            return null;
+        }
+
         long t2 = System.currentTimeMillis();
 
         if (job.isDebugMode()) {
-            job.getLog().info("Forking a VM took {}ms", (t2 - t1));
+            job.getLog().info("Starting a process in a shared JVM took {}ms", (t2 - t1));
         }
 
-        return entry;
+        return new ProcessEntry(p, procDir);
+    }
+
+    private Process startHost(String[] cmd) throws IOException {
+        Path hostDir = IOUtils.createTempDir("processhost");
+
+        log.info("startHost -> {}, {}", hostDir, String.join(" ", cmd));
+
+        // stdout is used for the host protocol, stderr is for the host's own messages
+        ProcessBuilder b = new ProcessBuilder()
+                .directory(hostDir.toFile())
+                .command(cmd)
+                .redirectError(ProcessBuilder.Redirect.INHERIT);
+
+        configureEnv(b.environment());
+
+        return b.start();
     }
 
     protected ProcessEntry startOneTime(RunnerJob job, String[] cmd, Path procDir) throws IOException {
@@ -389,19 +463,23 @@ public class RunnerJobExecutor implements JobExecutor {
 
         // TODO constants
         Map<String, String> env = b.environment();
-        env.put(IOUtils.TMP_DIR_KEY, IOUtils.TMP_DIR.toAbsolutePath().toString());
+        configureEnv(env);
         env.put("_CONCORD_ATTACHMENTS_DIR", payloadDir.resolve(Constants.Files.JOB_ATTACHMENTS_DIR_NAME)
                 .toAbsolutePath().toString());
 
+        Process p = b.start();
+        return new ProcessEntry(p, procDir);
+    }
+
+    private static void configureEnv(Map<String, String> env) {
+        env.put(IOUtils.TMP_DIR_KEY, IOUtils.TMP_DIR.toAbsolutePath().toString());
+
         // pass through the docker mode
         String dockerMode = System.getenv(CONCORD_DOCKER_LOCAL_MODE_KEY);
         if (dockerMode != null) {
             log.debug("start -> using Docker mode: {}", dockerMode);
             env.put(CONCORD_DOCKER_LOCAL_MODE_KEY, dockerMode);
         }
-
-        Process p = b.start();
-        return new ProcessEntry(p, procDir);
     }
 
     protected Path storeRunnerCfg(Path baseDir, RunnerConfiguration runnerCfg) throws IOException {
@@ -516,6 +594,44 @@ public class RunnerJobExecutor implements JobExecutor {
         return !Files.exists(workDir.resolve(Constants.Agent.AGENT_PARAMS_FILE_NAME));
     }
 
+    /**
+     * @return the value of {@code -Xmx} in bytes or 0 if not specified.
+     */
+    static long getMaxHeapSize(List<String> jvmParams) {
+        long result = 0;
+
+        for (String p : jvmParams) {
+            if (!p.startsWith("-Xmx") || p.length() <= 4) {
+                continue;
+            }
+
+            String v = p.substring(4).toLowerCase();
+
+            long multiplier = 1;
+            char unit = v.charAt(v.length() - 1);
+            if (unit == 'k') {
+                multiplier = 1024L;
+            } else if (unit == 'm') {
+                multiplier = 1024L * 1024;
+            } else if (unit == 'g') {
+                multiplier = 1024L * 1024 * 1024;
+            }
+
+            if (multiplier > 1) {
+                v = v.substring(0, v.length() - 1);
+            }
+
+            try {
+                // the last one wins, same as in the JVM
+                result = Long.parseLong(v) * multiplier;
+            } catch (NumberFormatException e) {
+                log.warn("getMaxHeapSize -> invalid value: {}", p);
+            }
+        }
+
+        return result;
+    }
+
     private static HashCode hash(String[] as) {
         HashFunction f = Hashing.sha256();
         Hasher h = f.newHasher();
@@ -617,6 +733,24 @@ public class RunnerJobExecutor implements JobExecutor {
 
         long maxHeartbeatInterval();
 
+        /**
+         * If {@code true} the process heartbeats are sent by the agent and
+         * the runner doesn't send its own.
+         */
+        @Value.Default
+        default boolean agentHeartbeats() {
+            return false;
+        }
+
+        /**
+         * If {@code true} the processes are started in shared "process host" JVMs
+         * when possible. Supported only by the runtime v2.
+         */
+        @Value.Default
+        default boolean processHost() {
+            return false;
+        }
+
         static ImmutableRunnerJobExecutorConfiguration.Builder builder() {
             return ImmutableRunnerJobExecutorConfiguration.builder();
         }
@@ -50,11 +50,13 @@ public class RunnerJobExecutorProvider implements Provider<JobExecutor> {
 
     private final RunnerV1Configuration runnerV1Cfg;
     private final RunnerV2Configuration runnerV2Cfg;
+    private final ProcessHostConfiguration processHostCfg;
 
     private final DependencyManager dependencyManager;
     private final DefaultDependencies defaultDependencies;
     private final List<JobPostProcessor> postProcessors;
     private final ProcessPool processPool;
+    private final ProcessHostPool processHostPool;
     private final ProcessLogFactory processLogFactory;
 
     private final ExecutorService executor;
@@ -65,10 +67,12 @@ public class RunnerJobExecutorProvider implements Provider<JobExecutor> {
                                      DockerConfiguration dockerCfg,
                                      RunnerV1Configuration runnerV1Cfg,
                                      RunnerV2Configuration runnerV2Cfg,
+                                     ProcessHostConfiguration processHostCfg,
                                      DependencyManager dependencyManager,
                                      DefaultDependencies defaultDependencies,
                                      List<JobPostProcessor> postProcessors,
                                      ProcessPool processPool,
+                                     ProcessHostPool processHostPool,
                                      ProcessLogFactory processLogFactory) {
 
         this.agentCfg = agentCfg;
@@ -77,11 +81,13 @@ public class RunnerJobExecutorProvider implements Provider<JobExecutor> {
 
         this.runnerV1Cfg = runnerV1Cfg;
         this.runnerV2Cfg = runnerV2Cfg;
+        this.processHostCfg = processHostCfg;
 
         this.dependencyManager = dependencyManager;
         this.defaultDependencies = defaultDependencies;
         this.postProcessors = postProcessors;
         this.processPool = processPool;
+        this.processHostPool = processHostPool;
         this.processLogFactory = processLogFactory;
 
         this.executor = Executors.newCachedThreadPool();
@@ -100,9 +106,11 @@ public class RunnerJobExecutorProvider implements Provider<JobExecutor> {
                 AbstractRunnerConfiguration runnerCfg = runnerV1Cfg;
 
                 boolean segmentedLogs = false;
+                boolean processHost = false;
                 if (isV2(jobRequest)) {
                     runnerCfg = runnerV2Cfg;
                     segmentedLogs = true;
+                    processHost = processHostCfg.isEnabled();
                 }
 
                 jobRequest.getLog().info("Runtime: {}", runnerCfg.getRuntimeName());
@@ -120,11 +128,13 @@ public class RunnerJobExecutorProvider implements Provider<JobExecutor> {
                         .runnerMainClass(runnerCfg.getMainClass())
                         .extraDockerVolumes(dockerCfg.getExtraVolumes())
                         .maxHeartbeatInterval(serverCfg.getMaxNoHeartbeatInterval())
+                        .agentHeartbeats(serverCfg.isBatchProcessHeartbeats())
                         .segmentedLogs(segmentedLogs)
+                        .processHost(processHost)
                         .logDir(agentCfg.getLogDir())
                         .build();
 
-                JobExecutor delegate = new RunnerJobExecutor(runnerExecutorCfg, dependencyManager, defaultDependencies, postProcessors, processPool, processLogFactory, executor);
+                JobExecutor delegate = new RunnerJobExecutor(runnerExecutorCfg, dependencyManager, defaultDependencies, postProcessors, processPool, processHostPool, processLogFactory, executor);
                 return delegate.exec(jobRequest);
             }
         };
@@ -0,0 +1,194 @@
+package com.walmartlabs.concord.agent.logging;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the process log directories using a single {@link WatchService}
+ * (and a single thread) per agent. Falls back to polling if the file system
+ * doesn't support watching.
+ */
+@Named
+@Singleton
+public class FileWatchService {
+
+    private static final Logger log = LoggerFactory.getLogger(FileWatchService.class);
+
+    private final Map<WatchKey, Registration> registrations = new ConcurrentHashMap<>();
+
+    private WatchService watchService;
+    private boolean initialized;
+
+    /**
+     * Starts watching the specified directory. The caller must close
+     * the returned registration.
+     */
+    public Registration register(Path dir) {
+        WatchService ws = getWatchService();
+        if (ws == null) {
+            return new Registration(dir, null);
+        }
+
+        try {
+            WatchKey key = dir.register(ws, ENTRY_CREATE, ENTRY_MODIFY);
+            Registration r = new Registration(dir, key);
+            registrations.put(key, r);
+            return r;
+        } catch (IOException e) {
+            log.warn("register ['{}'] -> error, falling back to polling: {}", dir, e.getMessage());
+            return new Registration(dir, null);
+        }
+    }
+
+    private synchronized WatchService getWatchService() {
+        if (initialized) {
+            return watchService;
+        }
+
+        initialized = true;
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("getWatchService -> not available, falling back to polling: {}", e.getMessage());
+            return null;
+        }
+
+        Thread t = new Thread(() -> run(watchService), "log-file-watcher");
+        t.setDaemon(true);
+        t.start();
+
+        return watchService;
+    }
+
+    private void run(WatchService ws) {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = ws.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ClosedWatchServiceException e) {
+                break;
+            }
+
+            List<WatchEvent<?>> events = key.pollEvents();
+
+            // the events received before the registration is complete are ignored,
+            // FileWatcher performs a full scan right after the registration
+            Registration r = registrations.get(key);
+            if (r != null) {
+                r.signal(events);
+            }
+
+            key.reset();
+        }
+    }
+
+    public final class Registration implements AutoCloseable {
+
+        private final Path dir;
+        private final WatchKey key;
+
+        private final Set<Path> changed = new HashSet<>();
+        private boolean overflow;
+
+        private Registration(Path dir, WatchKey key) {
+            this.dir = dir;
+            this.key = key;
+        }
+
+        /**
+         * @return {@code true} if the directory is watched, {@code false} if
+         * the registration falls back to polling.
+         */
+        public boolean isWatching() {
+            return key != null;
+        }
+
+        /**
+         * Waits for changes in the directory.
+         *
+         * @return the changed files (empty if nothing changed within the specified timeout)
+         * or {@code null} if the changes are unknown and the directory must be re-scanned.
+         */
+        public Set<Path> await(long timeout) throws InterruptedException {
+            if (key == null) {
+                // polling mode
+                Thread.sleep(timeout);
+                return null;
+            }
+
+            synchronized (this) {
+                long deadline = System.currentTimeMillis() + timeout;
+                long remaining = timeout;
+                while (changed.isEmpty() && !overflow && remaining > 0) {
+                    wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+
+                if (overflow || !key.isValid()) {
+                    overflow = false;
+                    changed.clear();
+                    return null;
+                }
+
+                Set<Path> result = new HashSet<>(changed);
+                changed.clear();
+                return result;
+            }
+        }
+
+        synchronized void signal(List<WatchEvent<?>> events) {
+            for (WatchEvent<?> e : events) {
+                if (e.kind() == OVERFLOW) {
+                    overflow = true;
+                } else {
+                    changed.add(dir.resolve((Path) e.context()));
+                }
+            }
+            notifyAll();
+        }
+
+        @Override
+        public void close() {
+            if (key != null) {
+                key.cancel();
+                registrations.remove(key);
+            }
+        }
+    }
+}
@@ -24,17 +24,16 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.RemovalListener;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.immutables.value.Value;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.nio.file.FileVisitResult;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -44,15 +43,24 @@ import java.util.function.Supplier;
 
 public final class FileWatcher<T> implements Closeable {
 
-    public static <T> void watch(Path path, Supplier<Boolean> stopCondition, long maxDelay, FileNameParser<T> fileNameParser, FileListener<T> listener) throws IOException {
-        try (FileWatcher<T> watcher = new FileWatcher<>(path, maxDelay, fileNameParser, listener)) {
-            watcher.run(stopCondition);
+    public static <T> void watch(Path path, Supplier<Boolean> stopCondition, long maxDelay, FileWatchService watchService,
+                                 FileNameParser<T> fileNameParser, FileListener<T> listener) throws IOException {
+
+        try (FileWatcher<T> watcher = new FileWatcher<>(path, maxDelay, fileNameParser, listener);
+             FileWatchService.Registration registration = watchService.register(path)) {
+            watcher.run(stopCondition, registration);
         }
     }
 
     private static final Logger log = LoggerFactory.getLogger(FileWatcher.class);
 
-    private static final int MAX_OPEN_FILES = 10;
+    private static final int MAX_OPEN_FILES = 64;
+
+    /**
+     * Interval between full directory scans when the directory is watched
+     * using {@link FileWatchService}. Just in case some events were lost.
+     */
+    private static final long FULL_SCAN_INTERVAL = 30000;
 
     private final Path watchDir;
     private final long maxDelay;
@@ -75,21 +83,40 @@ public final class FileWatcher<T> implements Closeable {
         fileCache.close();
     }
 
-    private void run(Supplier<Boolean> stopCondition) throws IOException {
-        while (!Thread.currentThread().isInterrupted()) {
-            processFiles();
+    private void run(Supplier<Boolean> stopCondition, FileWatchService.Registration registration) throws IOException {
+        // the files created before the registration are picked up by the initial scan
+        processFiles();
+        listener.onScanComplete();
+        long lastFullScan = System.currentTimeMillis();
 
+        while (!Thread.currentThread().isInterrupted()) {
             if (stopCondition.get()) {
                 processFiles();
+                listener.onScanComplete();
                 break;
             }
 
+            Set<Path> changed;
             try {
-                Thread.sleep(maxDelay);
+                changed = registration.await(maxDelay);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 break;
             }
+
+            long now = System.currentTimeMillis();
+            if (changed == null || now - lastFullScan >= FULL_SCAN_INTERVAL) {
+                processFiles();
+                lastFullScan = now;
+            } else {
+                for (Path p : changed) {
+                    if (Files.isRegularFile(p)) {
+                        processFile(p);
+                    }
+                }
+            }
+
+            listener.onScanComplete();
         }
     }
 
@@ -104,46 +131,48 @@ public final class FileWatcher<T> implements Closeable {
             }
 
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                if (ignoreFiles.contains(file)) {
-                    return FileVisitResult.CONTINUE;
-                }
+                processFile(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
 
-                FileEntry<T> filePointer = filePointers.get(file);
-                if (filePointer == null) {
-                    T fileName = fileNameParser.parse(file);
-                    if (fileName == null) {
-                        ignoreFiles.add(file);
-                        return FileVisitResult.CONTINUE;
-                    }
+    private void processFile(Path file) {
+        if (ignoreFiles.contains(file)) {
+            return;
+        }
 
-                    boolean success = listener.onNewFile(fileName);
-                    if (!success) {
-                        return FileVisitResult.CONTINUE;
-                    }
-                    filePointer = FileEntry.of(fileName, 0L);
-                    filePointers.put(file, filePointer);
-                }
+        FileEntry<T> filePointer = filePointers.get(file);
+        if (filePointer == null) {
+            T fileName = fileNameParser.parse(file);
+            if (fileName == null) {
+                ignoreFiles.add(file);
+                return;
+            }
 
-                if (isChanged(file, filePointer.pointer())) {
-                    long newPos = notifyChanged(file, filePointer);
-                    if (newPos == -1) {
-                        deleteFile(file);
-                        filePointers.remove(file);
-                        return FileVisitResult.CONTINUE;
-                    } else if (newPos > 0) {
-                        filePointers.put(file, FileEntry.of(filePointer.name(), newPos));
-                    }
-                }
+            boolean success = listener.onNewFile(fileName);
+            if (!success) {
+                return;
+            }
+            filePointer = FileEntry.of(fileName, 0L);
+            filePointers.put(file, filePointer);
+        }
 
-                return FileVisitResult.CONTINUE;
+        if (isChanged(file, filePointer.pointer())) {
+            long newPos = notifyChanged(file, filePointer);
+            if (newPos == -1) {
+                deleteFile(file);
+                filePointers.remove(file);
+            } else if (newPos > 0) {
+                filePointers.put(file, FileEntry.of(filePointer.name(), newPos));
             }
-        });
+        }
     }
 
     public boolean isChanged(Path path, long totalRead) {
         try {
-            return (Files.size(path) > totalRead);
-        } catch (IOException e) {
+            return (fileCache.get(path).size() > totalRead);
+        } catch (IOException | UncheckedExecutionException e) {
             log.warn("isChanged ['{}'] -> error: {}", path, e.getMessage());
             return false;
         }
@@ -151,9 +180,8 @@ public final class FileWatcher<T> implements Closeable {
 
     private long notifyChanged(Path path, FileEntry<T> fileEntry) {
         try {
-            RandomAccessFile file = fileCache.get(path);
-            file.seek(fileEntry.pointer());
-            long newPos = listener.onChanged(fileEntry.name(), file);
+            FileChannel file = fileCache.get(path);
+            long newPos = listener.onChanged(fileEntry.name(), file, fileEntry.pointer());
             if (newPos == -1) {
                 fileCache.close(path);
             }
@@ -177,9 +205,16 @@ public final class FileWatcher<T> implements Closeable {
         boolean onNewFile(T fileName);
 
         /**
+         * @param pos the current file offset
          * @return new file offset or -1 if file no longer tracked (e.g. all file read)
          */
-        long onChanged(T fileName, RandomAccessFile in) throws IOException;
+        long onChanged(T fileName, FileChannel in, long pos) throws IOException;
+
+        /**
+         * Called after all changed files were processed.
+         */
+        default void onScanComplete() {
+        }
     }
 
     public interface FileNameParser<T> {
@@ -193,32 +228,34 @@ public final class FileWatcher<T> implements Closeable {
     public interface FileReader {
 
         /**
+         * Reads the file starting from {@code pos}.
          * @return new file offset
          */
-        long read(RandomAccessFile in, ChunkConsumer consumer) throws IOException;
+        long read(FileChannel in, long pos, ChunkConsumer consumer) throws IOException;
     }
 
     public static class ByteArrayFileReader implements FileReader {
 
-        private final byte[] dataBuffer = new byte[8192];
+        private final ByteBuffer dataBuffer = ByteBuffer.allocate(65536);
 
         @Override
-        public long read(RandomAccessFile in, ChunkConsumer consumer) throws IOException {
-            long result = in.getFilePointer();
+        public long read(FileChannel in, long pos, ChunkConsumer consumer) throws IOException {
+            long result = pos;
 
             try {
                 while (!Thread.currentThread().isInterrupted()) {
-                    int read = in.read(dataBuffer, 0, dataBuffer.length);
+                    dataBuffer.clear();
+                    // positional reads, no need to seek
+                    int read = in.read(dataBuffer, result);
                     if (read <= 0) {
                         break;
                     }
 
-                    int consumed = consumer.consume(new Chunk(dataBuffer, read));
+                    int consumed = consumer.consume(new Chunk(dataBuffer.array(), read));
                     if (consumed == -1) {
                         return -1;
                     }
                     result += consumed;
-                    in.seek(result);
                 }
             } catch (IOException e) {
                 log.warn("read error: {}", e.getMessage());
@@ -230,12 +267,12 @@ public final class FileWatcher<T> implements Closeable {
 
     private static class FileCache implements Closeable {
 
-        private final LoadingCache<Path, RandomAccessFile> cache;
+        private final LoadingCache<Path, FileChannel> cache;
 
         public FileCache() {
             this.cache = CacheBuilder.newBuilder()
                     .maximumSize(MAX_OPEN_FILES)
-                    .removalListener((RemovalListener<Path, RandomAccessFile>) notification -> {
+                    .removalListener((RemovalListener<Path, FileChannel>) notification -> {
                         try {
                             notification.getValue().close();
                             log.debug("closing: {}", notification.getKey());
@@ -243,16 +280,16 @@ public final class FileWatcher<T> implements Closeable {
                             log.warn("close error: {}", e.getMessage());
                         }
                     })
-                    .build(new CacheLoader<Path, RandomAccessFile>() {
+                    .build(new CacheLoader<Path, FileChannel>() {
 
                         @Override
-                        public RandomAccessFile load(Path key) throws Exception {
-                            return new RandomAccessFile(key.toFile(), "r");
+                        public FileChannel load(Path key) throws Exception {
+                            return FileChannel.open(key, StandardOpenOption.READ);
                         }
                     });
         }
 
-        public RandomAccessFile get(Path path) {
+        public FileChannel get(Path path) {
             return cache.getUnchecked(path);
         }
 
@@ -20,7 +20,10 @@ package com.walmartlabs.concord.agent.logging;
  * =====
  */
 
+import com.walmartlabs.concord.common.LogSegmentBatch;
+
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 
 public interface LogAppender {
@@ -29,6 +32,15 @@ public interface LogAppender {
 
     boolean appendLog(UUID instanceId, long segmentId, byte[] ab);
 
+    /**
+     * Appends chunks to multiple segments at once, in the specified order.
+     * If the call fails, the chunks that were successfully appended are
+     * removed from the beginning of {@code chunks}.
+     *
+     * @param chunks a mutable list of chunks
+     */
+    boolean appendLog(UUID instanceId, List<LogSegmentBatch.Chunk> chunks);
+
     Long createSegment(UUID instanceId, UUID correlationId, String segmentName, Date createdAt);
 
     boolean updateSegment(UUID instanceId, long segmentId, LogSegmentStats stats);
@@ -0,0 +1,140 @@
+package com.walmartlabs.concord.agent.logging;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.common.LogSegmentBatch;
+
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+
+/**
+ * Coalesces the chunks of a process' log segments and sends them using
+ * a single {@link LogAppender#appendLog(UUID, List)} call. The buffered data
+ * is sent when it reaches {@code maxSize} bytes or when the oldest chunk
+ * is older than {@code maxDelay} ms.
+ * <p>
+ * The chunks are sent in the order they were added. Only consecutive
+ * chunks of the same segment are merged.
+ * <p>
+ * Not thread-safe, expected to be used from the log streaming thread only.
+ */
+public class LogSegmentBatcher {
+
+    private final UUID instanceId;
+    private final LogAppender appender;
+    private final long maxSize;
+    private final long maxDelay;
+
+    private final LinkedList<Run> runs = new LinkedList<>();
+    private long size;
+    private long firstChunkAt;
+
+    public LogSegmentBatcher(UUID instanceId, LogAppender appender, long maxSize, long maxDelay) {
+        this.instanceId = instanceId;
+        this.appender = appender;
+        this.maxSize = maxSize;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * @return {@code false} if the buffer is full and the buffered data
+     * cannot be sent. The caller is expected to try again later.
+     */
+    public boolean add(long segmentId, byte[] ab) {
+        if (size > 0 && size + ab.length > maxSize && !flush()) {
+            return false;
+        }
+
+        if (size == 0) {
+            firstChunkAt = System.currentTimeMillis();
+        }
+
+        Run last = runs.peekLast();
+        if (last == null || last.segmentId != segmentId) {
+            last = new Run(segmentId);
+            runs.add(last);
+        }
+        last.data.write(ab, 0, ab.length);
+        size += ab.length;
+
+        if (size >= maxSize) {
+            // if it fails, the data will be sent on the next flush
+            flush();
+        }
+
+        return true;
+    }
+
+    /**
+     * Sends the buffered data if the oldest chunk is older than {@code maxDelay}.
+     */
+    public boolean flushIfExpired() {
+        if (size == 0 || System.currentTimeMillis() - firstChunkAt < maxDelay) {
+            return true;
+        }
+        return flush();
+    }
+
+    /**
+     * Sends all buffered data.
+     *
+     * @return {@code false} if the data wasn't sent. The unsent data
+     * remains in the buffer.
+     */
+    public boolean flush() {
+        if (size == 0) {
+            return true;
+        }
+
+        List<LogSegmentBatch.Chunk> chunks = new ArrayList<>(runs.size());
+        for (Run r : runs) {
+            chunks.add(new LogSegmentBatch.Chunk(r.segmentId, r.data.toByteArray()));
+        }
+
+        if (appender.appendLog(instanceId, chunks)) {
+            runs.clear();
+            size = 0;
+            return true;
+        }
+
+        // the sent chunks are removed from the beginning of the list, keep the rest
+        while (runs.size() > chunks.size()) {
+            Run r = runs.removeFirst();
+            size -= r.data.size();
+        }
+
+        return false;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    private static final class Run {
+
+        private final long segmentId;
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        private Run(long segmentId) {
+            this.segmentId = segmentId;
+        }
+    }
+}
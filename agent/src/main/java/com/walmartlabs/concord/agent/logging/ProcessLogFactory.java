@@ -36,13 +36,19 @@ public class ProcessLogFactory {
 
     private final Path logDir;
     private final long logStreamMaxDelay;
+    private final long logBatchMaxSize;
+    private final long logBatchMaxDelay;
     private final LogAppender logAppender;
+    private final FileWatchService watchService;
 
     @Inject
-    public ProcessLogFactory(AgentConfiguration cfg, LogAppender logAppender) {
+    public ProcessLogFactory(AgentConfiguration cfg, LogAppender logAppender, FileWatchService watchService) {
         this.logDir = cfg.getLogDir();
         this.logStreamMaxDelay = cfg.getLogMaxDelay();
+        this.logBatchMaxSize = cfg.getLogBatchMaxSize();
+        this.logBatchMaxDelay = cfg.getLogBatchMaxDelay();
         this.logAppender = logAppender;
+        this.watchService = watchService;
     }
 
     public RedirectedProcessLog createRedirectedLog(UUID instanceId, boolean segmented) throws IOException {
@@ -52,7 +58,7 @@ public class ProcessLogFactory {
         }
 
         if (segmented) {
-            return new SegmentedProcessLog(dst, instanceId, logAppender, logStreamMaxDelay);
+            return new SegmentedProcessLog(dst, instanceId, logAppender, logStreamMaxDelay, watchService, logBatchMaxSize, logBatchMaxDelay);
         } else {
             return new RedirectedProcessLog(dst, instanceId, logAppender, logStreamMaxDelay);
         }
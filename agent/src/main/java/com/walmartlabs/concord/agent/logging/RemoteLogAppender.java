@@ -23,16 +23,22 @@ package com.walmartlabs.concord.agent.logging;
 import com.walmartlabs.concord.ApiException;
 import com.walmartlabs.concord.agent.AgentConstants;
 import com.walmartlabs.concord.client.*;
+import com.walmartlabs.concord.common.LogSegmentBatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
 import java.time.ZoneOffset;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
 import java.util.UUID;
 
 @Named
+@Singleton
 public class RemoteLogAppender implements LogAppender {
 
     private static final Logger log = LoggerFactory.getLogger(RemoteLogAppender.class);
@@ -40,6 +46,12 @@ public class RemoteLogAppender implements LogAppender {
     private final ProcessApi processApi;
     private final ProcessLogV2Api processLogV2Api;
 
+    /**
+     * Set when the server doesn't support batch appends, i.e. when a batch
+     * request fails with 404 or 405 and a per-segment request succeeds.
+     */
+    private volatile boolean batchUnsupported;
+
     @Inject
     public RemoteLogAppender(ProcessApi processApi) {
         this.processApi = processApi;
@@ -77,6 +89,48 @@ public class RemoteLogAppender implements LogAppender {
         }
     }
 
+    @Override
+    public boolean appendLog(UUID instanceId, List<LogSegmentBatch.Chunk> chunks) {
+        if (!batchUnsupported) {
+            try {
+                appendBatch(instanceId, chunks);
+                return true;
+            } catch (IOException e) {
+                log.warn("appendLog ['{}'] -> error while encoding the data: {}", instanceId, e.getMessage());
+                return false;
+            } catch (ApiException e) {
+                if (e.getCode() != 404 && e.getCode() != 405) {
+                    log.warn("appendLog ['{}'] -> error: {}", instanceId, e.getMessage());
+                    return false;
+                }
+            }
+        }
+
+        // the server doesn't support batches (or the process doesn't exist), send the chunks one by one
+        Iterator<LogSegmentBatch.Chunk> it = chunks.iterator();
+        while (it.hasNext()) {
+            LogSegmentBatch.Chunk c = it.next();
+            if (!appendLog(instanceId, c.getSegmentId(), c.getData())) {
+                return false;
+            }
+            it.remove();
+
+            // the process exists, so it's the batch endpoint that is missing. Don't try it again
+            batchUnsupported = true;
+        }
+        return true;
+    }
+
+    private void appendBatch(UUID instanceId, List<LogSegmentBatch.Chunk> chunks) throws IOException, ApiException {
+        String path = "/api/v2/process/" + instanceId + "/log/data";
+        byte[] ab = LogSegmentBatch.encode(chunks);
+
+        ClientUtils.withRetry(AgentConstants.API_CALL_MAX_RETRIES, AgentConstants.API_CALL_RETRY_DELAY, () -> {
+            ClientUtils.postData(processApi.getApiClient(), path, ab);
+            return null;
+        });
+    }
+
     @Override
     public Long createSegment(UUID instanceId, UUID correlationId, String segmentName, Date createdAt) {
         LogSegmentRequest request = new LogSegmentRequest()
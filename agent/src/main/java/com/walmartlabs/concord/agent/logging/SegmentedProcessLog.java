@@ -26,8 +26,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -39,18 +40,30 @@ public class SegmentedProcessLog extends RedirectedProcessLog {
 
     private final Path logsDir;
     private final Map<LogSegment, Long> segmentIds;
+    private final FileWatchService watchService;
+    private final long logBatchMaxSize;
+    private final long logBatchMaxDelay;
+
+    public SegmentedProcessLog(Path logsDir, UUID instanceId, LogAppender appender, long logSteamMaxDelay,
+                               FileWatchService watchService, long logBatchMaxSize, long logBatchMaxDelay) throws IOException {
 
-    public SegmentedProcessLog(Path logsDir, UUID instanceId, LogAppender appender, long logSteamMaxDelay) throws IOException {
         super(logsDir, instanceId, appender, logSteamMaxDelay);
         this.logsDir = logsDir;
         this.segmentIds = new ConcurrentHashMap<>();
+        this.watchService = watchService;
+        this.logBatchMaxSize = logBatchMaxSize;
+        this.logBatchMaxDelay = logBatchMaxDelay;
     }
 
     @Override
     public void run(Supplier<Boolean> stopCondition) throws Exception {
         FileWatcher.FileReader fileReader = new FileWatcher.ByteArrayFileReader();
+        LogSegmentBatcher batcher = new LogSegmentBatcher(instanceId, appender, logBatchMaxSize, logBatchMaxDelay);
+
+        // status updates of the segments whose data is not sent yet
+        Map<Long, LogSegmentStats> pendingStats = new LinkedHashMap<>();
 
-        FileWatcher.watch(logsDir, stopCondition, logSteamMaxDelay, new LogSegmentNameParser(), new FileWatcher.FileListener<LogSegment>() {
+        FileWatcher.watch(logsDir, stopCondition, logSteamMaxDelay, watchService, new LogSegmentNameParser(), new FileWatcher.FileListener<LogSegment>() {
 
             @Override
             public boolean onNewFile(LogSegment fileName) {
@@ -62,23 +75,26 @@ public class SegmentedProcessLog extends RedirectedProcessLog {
             }
 
             @Override
-            public long onChanged(LogSegment fileName, RandomAccessFile in) throws IOException {
+            public long onChanged(LogSegment fileName, FileChannel in, long pos) throws IOException {
                 Long id = segmentIds.get(fileName);
                 if (id == null) {
                     return -1;
                 }
 
-                return fileReader.read(in, chunk -> {
+                return fileReader.read(in, pos, chunk -> {
                     LogStatsParser.Result result = LogStatsParser.parse(chunk.bytes(), chunk.len());
                     if (result.chunk() != null) {
-                        boolean success = appender.appendLog(instanceId, id, result.chunk());
+                        boolean success = batcher.add(id, result.chunk());
                         if (!success) {
                             return 0;
                         }
                     }
                     LogSegmentStats stats = result.stats();
                     if (stats != null) {
-                        appender.updateSegment(instanceId, id, result.stats());
+                        // the segment's data must be sent before its status
+                        // if the data can't be sent now, the status is sent after the next successful flush
+                        pendingStats.put(id, stats);
+                        flush(batcher, pendingStats);
                         if (isFinal(stats.status())) {
                             segmentIds.remove(fileName);
                             return -1;
@@ -87,7 +103,20 @@ public class SegmentedProcessLog extends RedirectedProcessLog {
                     return result.readPos();
                 });
             }
+
+            @Override
+            public void onScanComplete() {
+                if (pendingStats.isEmpty()) {
+                    batcher.flushIfExpired();
+                } else {
+                    flush(batcher, pendingStats);
+                }
+            }
         });
+
+        if (!flush(batcher, pendingStats)) {
+            log.warn("run -> error while sending the remaining log data ({} bytes) of {}", batcher.size(), instanceId);
+        }
     }
 
     @Override
@@ -100,6 +129,16 @@ public class SegmentedProcessLog extends RedirectedProcessLog {
         }
     }
 
+    private boolean flush(LogSegmentBatcher batcher, Map<Long, LogSegmentStats> pendingStats) {
+        if (!batcher.flush()) {
+            return false;
+        }
+
+        pendingStats.forEach((id, stats) -> appender.updateSegment(instanceId, id, stats));
+        pendingStats.clear();
+        return true;
+    }
+
     private static boolean isFinal(LogSegmentUpdateRequest.StatusEnum status) {
         return status != null && status != LogSegmentUpdateRequest.StatusEnum.RUNNING;
     }
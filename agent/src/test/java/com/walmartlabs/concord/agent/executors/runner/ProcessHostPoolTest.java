@@ -0,0 +1,216 @@
+package com.walmartlabs.concord.agent.executors.runner;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ProcessHostPoolTest {
+
+    @Test(timeout = 10000)
+    public void testProcesses() throws Exception {
+        ProcessHostPool pool = new ProcessHostPool(2, 3, 60000);
+
+        List<FakeHost> hosts = new ArrayList<>();
+        ProcessHostPool.HostLauncher launcher = () -> {
+            FakeHost h = new FakeHost();
+            hosts.add(h);
+            return h;
+        };
+
+        HashCode hc = HashCode.fromInt(1);
+
+        // ---
+
+        Process a = pool.start(hc, launcher, Paths.get("a"));
+        Process b = pool.start(hc, launcher, Paths.get("wait"));
+        assertEquals(1, hosts.size());
+
+        assertEquals("hello a\n", read(a));
+        assertEquals(0, a.waitFor());
+
+        // the host has a free slot again
+        Process c = pool.start(hc, launcher, Paths.get("fail"));
+        assertEquals(1, hosts.size());
+        assertEquals("hello fail\n", read(c));
+        assertEquals(1, c.waitFor());
+
+        // the host ran maxProcesses processes, a new one is started
+        Process d = pool.start(hc, launcher, Paths.get("d"));
+        assertEquals(2, hosts.size());
+        assertEquals(0, d.waitFor());
+
+        assertEquals(true, b.isAlive());
+        b.destroy();
+        assertEquals("hello wait\n", read(b));
+        assertEquals(1, b.waitFor());
+    }
+
+    @Test(timeout = 10000)
+    public void testHostTerminated() throws Exception {
+        ProcessHostPool pool = new ProcessHostPool(2, 10, 60000);
+
+        List<FakeHost> hosts = new ArrayList<>();
+        ProcessHostPool.HostLauncher launcher = () -> {
+            FakeHost h = new FakeHost();
+            hosts.add(h);
+            return h;
+        };
+
+        HashCode hc = HashCode.fromInt(1);
+
+        // ---
+
+        Process a = pool.start(hc, launcher, Paths.get("wait"));
+        Process b = pool.start(hc, launcher, Paths.get("wait"));
+
+        // all processes of a dead host fail
+        hosts.get(0).destroy();
+
+        assertEquals("hello wait\nRunner host JVM terminated\n", read(a));
+        assertEquals(1, a.waitFor());
+        assertEquals(1, b.waitFor());
+        assertFalse(b.isAlive());
+
+        // the dead host is not reused
+        Process c = pool.start(hc, launcher, Paths.get("c"));
+        assertEquals(2, hosts.size());
+        assertEquals(0, c.waitFor());
+
+        // a forced cancel kills the whole host
+        Process d = pool.start(hc, launcher, Paths.get("wait"));
+        d.destroyForcibly();
+        assertEquals(1, d.waitFor());
+        assertFalse(hosts.get(1).isAlive());
+    }
+
+    private static String read(Process p) throws IOException {
+        return new String(ByteStreams.toByteArray(p.getInputStream()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Emulates the host protocol: prints a greeting for each process and
+     * exits immediately unless the process' work dir is "wait".
+     */
+    private static class FakeHost extends Process {
+
+        private final PipedInputStream stdout = new PipedInputStream(64 * 1024);
+        private final DataOutputStream frames;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        private volatile boolean alive = true;
+
+        private FakeHost() throws IOException {
+            this.frames = new DataOutputStream(new PipedOutputStream(stdout));
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    if (b != '\n') {
+                        line.write(b);
+                        return;
+                    }
+
+                    String[] as = new String(line.toByteArray(), StandardCharsets.UTF_8).split(" ");
+                    line.reset();
+
+                    int id = Integer.parseInt(as[1]);
+                    if ("start".equals(as[0])) {
+                        String name = Paths.get(as[2]).getFileName().toString();
+                        frame(ProcessHostPool.OUTPUT, id, ("hello " + name + "\n").getBytes(StandardCharsets.UTF_8));
+                        if (!"wait".equals(name)) {
+                            exit(id, "fail".equals(name) ? 1 : 0);
+                        }
+                    } else if ("cancel".equals(as[0])) {
+                        exit(id, 1);
+                    }
+                }
+
+                @Override
+                public void close() {
+                    destroy();
+                }
+            };
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return stdout;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public int waitFor() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int exitValue() {
+            return 0;
+        }
+
+        @Override
+        public void destroy() {
+            alive = false;
+            try {
+                frames.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public boolean isAlive() {
+            return alive;
+        }
+
+        private void exit(int id, int code) throws IOException {
+            ByteArrayOutputStream b = new ByteArrayOutputStream();
+            new DataOutputStream(b).writeInt(code);
+            frame(ProcessHostPool.EXIT, id, b.toByteArray());
+        }
+
+        private void frame(byte type, int id, byte[] data) throws IOException {
+            frames.writeByte(type);
+            frames.writeInt(id);
+            frames.writeInt(data.length);
+            frames.write(data);
+            frames.flush();
+        }
+    }
+}
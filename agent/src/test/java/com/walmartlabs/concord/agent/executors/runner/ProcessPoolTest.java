@@ -0,0 +1,98 @@
+package com.walmartlabs.concord.agent.executors.runner;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.common.hash.HashCode;
+import com.walmartlabs.concord.agent.cfg.PreForkConfiguration;
+import com.walmartlabs.concord.agent.executors.runner.ProcessPool.ProcessEntry;
+import com.walmartlabs.concord.agent.executors.runner.ProcessPool.ProcessLauncher;
+import org.junit.Test;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ProcessPoolTest {
+
+    @Test(timeout = 10000)
+    public void testWarmUp() throws Exception {
+        ProcessPool pool = new ProcessPool(cfg(0));
+
+        AtomicInteger starts = new AtomicInteger();
+        ProcessLauncher launcher = () -> {
+            starts.incrementAndGet();
+            return new ProcessEntry(mock(Process.class), Paths.get("test"));
+        };
+
+        HashCode hc = HashCode.fromInt(1);
+
+        // ---
+
+        // the caller starts its own JVM on a miss
+        assertNull(pool.take(hc, 0, launcher));
+        assertEquals(1, pool.getStats().getMisses());
+
+        while (pool.getStats().getWarmCount() < 1) {
+            Thread.sleep(10);
+        }
+
+        assertNotNull(pool.take(hc, 0, launcher));
+        assertEquals(1, pool.getStats().getHits());
+        assertEquals(1, pool.getStats().getMisses());
+    }
+
+    @Test(timeout = 10000)
+    public void testMemoryLimit() throws Exception {
+        ProcessPool pool = new ProcessPool(cfg(100));
+
+        ProcessLauncher launcher = () -> new ProcessEntry(mock(Process.class), Paths.get("test"));
+
+        // ---
+
+        pool.take(HashCode.fromInt(1), 200, launcher);
+        assertEquals(0, pool.getStats().getEntryCount());
+
+        pool.take(HashCode.fromInt(2), 50, launcher);
+        assertEquals(1, pool.getStats().getEntryCount());
+        assertEquals(50, pool.getStats().getMemory());
+    }
+
+    @Test
+    public void testMaxHeapSize() {
+        assertEquals(0, RunnerJobExecutor.getMaxHeapSize(Arrays.asList("-Xms64m", "-server")));
+        assertEquals(128L * 1024 * 1024, RunnerJobExecutor.getMaxHeapSize(Arrays.asList("-Xmx128m")));
+        assertEquals(2L * 1024 * 1024 * 1024, RunnerJobExecutor.getMaxHeapSize(Arrays.asList("-Xmx128m", "-Xmx2G")));
+    }
+
+    private static PreForkConfiguration cfg(long maxMemory) {
+        PreForkConfiguration cfg = mock(PreForkConfiguration.class);
+        when(cfg.getMaxAge()).thenReturn(60000L);
+        when(cfg.getMaxCount()).thenReturn(2);
+        when(cfg.getMaxMemory()).thenReturn(maxMemory);
+        return cfg;
+    }
+}
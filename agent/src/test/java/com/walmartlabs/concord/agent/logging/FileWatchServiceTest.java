@@ -0,0 +1,98 @@
+package com.walmartlabs.concord.agent.logging;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.util.Arrays;
+import java.util.Set;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class FileWatchServiceTest {
+
+    @Test(timeout = 30000)
+    public void testChanges() throws Exception {
+        Path dir = Files.createTempDirectory("test");
+        Path file = dir.resolve("test.log");
+
+        FileWatchService watchService = new FileWatchService();
+        try (FileWatchService.Registration r = watchService.register(dir)) {
+            Files.write(file, "hello".getBytes());
+
+            Set<Path> changed = r.await(20000);
+            if (r.isWatching()) {
+                assertNotNull(changed);
+                assertTrue(changed.contains(file));
+            } else {
+                // polling mode, the directory must be re-scanned
+                assertNull(changed);
+            }
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testOverflow() throws Exception {
+        Path dir = Files.createTempDirectory("test");
+
+        FileWatchService watchService = new FileWatchService();
+        try (FileWatchService.Registration r = watchService.register(dir)) {
+            assumeTrue(r.isWatching());
+
+            r.signal(Arrays.<WatchEvent<?>>asList(event(ENTRY_CREATE, Paths.get("a.log")), event(OVERFLOW, null)));
+
+            // some events were lost, the directory must be re-scanned
+            assertNull(r.await(1000));
+
+            // the overflow is reported only once
+            Set<Path> changed = r.await(100);
+            assertNotNull(changed);
+            assertTrue(changed.isEmpty());
+        }
+    }
+
+    private static <T> WatchEvent<T> event(WatchEvent.Kind<T> kind, Object context) {
+        return new WatchEvent<T>() {
+            @Override
+            public Kind<T> kind() {
+                return kind;
+            }
+
+            @Override
+            public int count() {
+                return 1;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T context() {
+                return (T) context;
+            }
+        };
+    }
+}
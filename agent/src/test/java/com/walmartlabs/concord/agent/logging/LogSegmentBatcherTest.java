@@ -0,0 +1,179 @@
+package com.walmartlabs.concord.agent.logging;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.common.LogSegmentBatch;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class LogSegmentBatcherTest {
+
+    @Test
+    public void testCoalescing() {
+        TestAppender appender = new TestAppender();
+        LogSegmentBatcher batcher = new LogSegmentBatcher(UUID.randomUUID(), appender, 1024, 60_000);
+
+        assertTrue(batcher.add(1, "a".getBytes()));
+        assertTrue(batcher.add(2, "b".getBytes()));
+        assertTrue(batcher.add(1, "c".getBytes()));
+        assertTrue(batcher.flushIfExpired());
+        assertTrue(appender.batches.isEmpty());
+
+        assertTrue(batcher.flush());
+        assertEquals(1, appender.batches.size());
+
+        // only consecutive chunks are merged, the order is preserved
+        List<LogSegmentBatch.Chunk> batch = appender.batches.get(0);
+        assertEquals(3, batch.size());
+        assertChunk(1, "a", batch.get(0));
+        assertChunk(2, "b", batch.get(1));
+        assertChunk(1, "c", batch.get(2));
+        assertEquals(0, batcher.size());
+    }
+
+    @Test
+    public void testMergeConsecutive() {
+        TestAppender appender = new TestAppender();
+        LogSegmentBatcher batcher = new LogSegmentBatcher(UUID.randomUUID(), appender, 1024, 60_000);
+
+        assertTrue(batcher.add(1, "a".getBytes()));
+        assertTrue(batcher.add(1, "b".getBytes()));
+        assertTrue(batcher.add(2, "c".getBytes()));
+        assertTrue(batcher.flush());
+
+        List<LogSegmentBatch.Chunk> batch = appender.batches.get(0);
+        assertEquals(2, batch.size());
+        assertChunk(1, "ab", batch.get(0));
+        assertChunk(2, "c", batch.get(1));
+    }
+
+    @Test
+    public void testPartialFailure() {
+        TestAppender appender = new TestAppender();
+        LogSegmentBatcher batcher = new LogSegmentBatcher(UUID.randomUUID(), appender, 1024, 60_000);
+
+        assertTrue(batcher.add(1, "a".getBytes()));
+        assertTrue(batcher.add(2, "bb".getBytes()));
+
+        // the first chunk is sent, the second one isn't
+        appender.failAfter = 1;
+        assertFalse(batcher.flush());
+        assertEquals(2, batcher.size());
+
+        appender.failAfter = -1;
+        assertTrue(batcher.flush());
+        assertEquals(2, appender.batches.size());
+        assertChunk(2, "bb", appender.batches.get(1).get(0));
+    }
+
+    @Test
+    public void testMaxSize() {
+        TestAppender appender = new TestAppender();
+        LogSegmentBatcher batcher = new LogSegmentBatcher(UUID.randomUUID(), appender, 10, 60_000);
+
+        assertTrue(batcher.add(1, new byte[6]));
+        assertTrue(appender.batches.isEmpty());
+
+        // doesn't fit, the buffered data is sent first
+        assertTrue(batcher.add(2, new byte[6]));
+        assertEquals(1, appender.batches.size());
+        assertEquals(6, batcher.size());
+    }
+
+    @Test
+    public void testMaxDelay() {
+        TestAppender appender = new TestAppender();
+        LogSegmentBatcher batcher = new LogSegmentBatcher(UUID.randomUUID(), appender, 1024, 0);
+
+        assertTrue(batcher.add(1, "a".getBytes()));
+        assertTrue(batcher.flushIfExpired());
+        assertEquals(1, appender.batches.size());
+    }
+
+    @Test
+    public void testFailure() {
+        TestAppender appender = new TestAppender();
+        LogSegmentBatcher batcher = new LogSegmentBatcher(UUID.randomUUID(), appender, 10, 60_000);
+
+        assertTrue(batcher.add(1, new byte[6]));
+
+        appender.fail = true;
+        assertFalse(batcher.add(2, new byte[6]));
+        assertEquals(6, batcher.size());
+
+        appender.fail = false;
+        assertTrue(batcher.add(2, new byte[6]));
+        assertTrue(batcher.flush());
+        assertEquals(2, appender.batches.size());
+    }
+
+    private static void assertChunk(long segmentId, String data, LogSegmentBatch.Chunk c) {
+        assertEquals(segmentId, c.getSegmentId());
+        assertArrayEquals(data.getBytes(), c.getData());
+    }
+
+    private static class TestAppender implements LogAppender {
+
+        private final List<List<LogSegmentBatch.Chunk>> batches = new ArrayList<>();
+        private boolean fail;
+        private int failAfter = -1;
+
+        @Override
+        public void appendLog(UUID instanceId, byte[] ab) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean appendLog(UUID instanceId, long segmentId, byte[] ab) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean appendLog(UUID instanceId, List<LogSegmentBatch.Chunk> chunks) {
+            if (fail) {
+                return false;
+            }
+
+            if (failAfter >= 0) {
+                // simulate a partial failure of per-segment requests
+                batches.add(new ArrayList<>(chunks.subList(0, failAfter)));
+                chunks.subList(0, failAfter).clear();
+                return false;
+            }
+
+            batches.add(new ArrayList<>(chunks));
+            return true;
+        }
+
+        @Override
+        public Long createSegment(UUID instanceId, UUID correlationId, String segmentName, Date createdAt) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean updateSegment(UUID instanceId, long segmentId, LogSegmentStats stats) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
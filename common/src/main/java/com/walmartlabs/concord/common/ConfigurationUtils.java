@@ -158,6 +158,33 @@ public final class ConfigurationUtils {
         return root;
     }
 
+    /**
+     * Returns a copy of the specified map. Nested maps and collections
+     * are copied too, other values are copied by reference.
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> deepCopy(Map<String, Object> m) {
+        return (Map<String, Object>) copy(m);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object copy(Object v) {
+        if (v instanceof Map) {
+            Map<Object, Object> result = new LinkedHashMap<>();
+            ((Map<Object, Object>) v).forEach((k, vv) -> result.put(k, copy(vv)));
+            return result;
+        } else if (v instanceof Set) {
+            Set<Object> result = new LinkedHashSet<>();
+            ((Set<Object>) v).forEach(vv -> result.add(copy(vv)));
+            return result;
+        } else if (v instanceof Collection) {
+            List<Object> result = new ArrayList<>();
+            ((Collection<Object>) v).forEach(vv -> result.add(copy(vv)));
+            return result;
+        }
+        return v;
+    }
+
     public static boolean deepEquals(Object a, Object b) {
         if (!Objects.deepEquals(a, b)) {
             return false;
@@ -23,6 +23,7 @@ package com.walmartlabs.concord.common;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.BoundedInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -153,38 +154,76 @@ public final class IOUtils {
     }
 
     public static void unzip(Path in, Path targetDir, boolean skipExisting, FileVisitor visitor, CopyOption... options) throws IOException {
+        unzip(in, targetDir, skipExisting, visitor, null, options);
+    }
+
+    /**
+     * Unpacks the archive into {@code targetDir}. All entries are validated
+     * before anything is written: entries with paths outside of
+     * {@code targetDir} are rejected and, if {@code limit} is specified, the
+     * sizes declared in the archive are checked against the limit. The declared
+     * sizes can't be trusted, so the limit is also enforced on the actual number
+     * of unpacked bytes.
+     */
+    public static void unzip(Path in, Path targetDir, boolean skipExisting, FileVisitor visitor, UnzipLimit limit, CopyOption... options) throws IOException {
         try (ZipFile zip = new ZipFile(in.toFile())) {
-            Enumeration<ZipArchiveEntry> entries = zip.getEntries();
+            // the central directory is read when the archive is opened, the checks below don't read the data
+            List<ZipArchiveEntry> entries = Collections.list(zip.getEntries());
+
+            Path root = targetDir.normalize();
+            long declaredSize = 0;
+            for (ZipArchiveEntry e : entries) {
+                Path p = targetDir.resolve(e.getName());
+                if (!p.normalize().startsWith(root)) {
+                    throw new IOException("Entry is outside of the target directory: " + e.getName());
+                }
+
+                if (limit != null && !e.isDirectory() && e.getSize() > 0 && limit.isCounted(p)) {
+                    declaredSize += e.getSize();
+                }
+            }
 
-            while (entries.hasMoreElements()) {
-                ZipArchiveEntry e = entries.nextElement();
+            if (limit != null) {
+                limit.check(declaredSize);
+            }
 
+            long size = 0;
+            for (ZipArchiveEntry e : entries) {
                 Path p = targetDir.resolve(e.getName());
+
                 if (skipExisting && Files.exists(p)) {
                     continue;
                 }
 
                 if (e.isDirectory()) {
                     Files.createDirectories(p);
-                } else {
-                    Path parent = p.getParent();
-                    if (!Files.exists(parent)) {
-                        Files.createDirectories(parent);
-                    }
+                    continue;
+                }
 
-                    try (InputStream src = zip.getInputStream(e)) {
-                        Files.copy(src, p, options);
-                    }
+                Path parent = p.getParent();
+                if (!Files.exists(parent)) {
+                    Files.createDirectories(parent);
+                }
 
-                    int unixMode = e.getUnixMode();
-                    if (unixMode <= 0) {
-                        unixMode = Posix.DEFAULT_UNIX_MODE;
+                boolean counted = limit != null && limit.isCounted(p);
+                try (InputStream data = zip.getInputStream(e)) {
+                    // stop right after the limit is exceeded
+                    InputStream src = counted ? new BoundedInputStream(data, limit.maxSize() - size + 1) : data;
+                    long n = Files.copy(src, p, options);
+                    if (counted) {
+                        size += n;
+                        limit.check(size);
                     }
+                }
 
-                    Files.setPosixFilePermissions(p, Posix.posix(unixMode));
-                    if (visitor != null) {
-                        visitor.visit(p, p);
-                    }
+                int unixMode = e.getUnixMode();
+                if (unixMode <= 0) {
+                    unixMode = Posix.DEFAULT_UNIX_MODE;
+                }
+
+                Files.setPosixFilePermissions(p, Posix.posix(unixMode));
+                if (visitor != null) {
+                    visitor.visit(p, p);
                 }
             }
         }
@@ -207,18 +246,31 @@ public final class IOUtils {
     }
 
     public static void copy(Path src, Path dst, String ignorePattern, CopyOption... options) throws IOException {
-        _copy(1, src, src, dst, toList(ignorePattern), null, options);
+        _copy(1, src, src, dst, toList(ignorePattern), null, false, options);
     }
 
     public static void copy(Path src, Path dst, String skipContents, FileVisitor visitor, CopyOption... options) throws IOException {
-        _copy(1, src, src, dst, toList(skipContents), visitor, options);
+        _copy(1, src, src, dst, toList(skipContents), visitor, false, options);
     }
 
     public static void copy(Path src, Path dst, List<String> skipContents, FileVisitor visitor, CopyOption... options) throws IOException {
-        _copy(1, src, src, dst, skipContents, visitor, options);
+        _copy(1, src, src, dst, skipContents, visitor, false, options);
+    }
+
+    /**
+     * Same as {@link #copy(Path, Path, List, FileVisitor, CopyOption...)}, but
+     * creates hard links instead of copying the files' data. Falls back to
+     * copying if the file system doesn't support hard links (or {@code src}
+     * and {@code dst} are on different file systems).
+     * <p>
+     * The linked files share the data with the source files, they must be
+     * replaced, not modified in place.
+     */
+    public static void link(Path src, Path dst, List<String> skipContents, FileVisitor visitor) throws IOException {
+        _copy(1, src, src, dst, skipContents, visitor, true, StandardCopyOption.REPLACE_EXISTING);
     }
 
-    private static void _copy(int depth, Path root, Path src, Path dst, List<String> ignorePattern, FileVisitor visitor, CopyOption... options) throws IOException {
+    private static void _copy(int depth, Path root, Path src, Path dst, List<String> ignorePattern, FileVisitor visitor, boolean link, CopyOption... options) throws IOException {
         if (depth >= MAX_COPY_DEPTH) {
             throw new IOException("Too deep: " + src);
         }
@@ -264,7 +316,11 @@ public final class IOUtils {
                     return FileVisitResult.CONTINUE;
                 }
 
-                Files.copy(a, b, options);
+                if (link) {
+                    linkOrCopy(a, b, options);
+                } else {
+                    Files.copy(a, b, options);
+                }
 
                 if (visitor != null) {
                     visitor.visit(a, b);
@@ -275,6 +331,16 @@ public final class IOUtils {
         });
     }
 
+    private static void linkOrCopy(Path src, Path dst, CopyOption... options) throws IOException {
+        Files.deleteIfExists(dst);
+
+        try {
+            Files.createLink(dst, src);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            Files.copy(src, dst, options);
+        }
+    }
+
     public static List<String> grep(String pattern, byte[] ab) throws IOException {
         return grep(pattern, new ByteArrayInputStream(ab));
     }
@@ -0,0 +1,107 @@
+package com.walmartlabs.concord.common;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Wire format of the batched log segment appends: a GZIP-compressed
+ * sequence of {@code [segmentId:int64][length:int32][data]} frames.
+ */
+public final class LogSegmentBatch {
+
+    /**
+     * Encodes the chunks in the specified order. The same segment can
+     * appear multiple times.
+     */
+    public static byte[] encode(List<Chunk> chunks) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(result))) {
+            for (Chunk c : chunks) {
+                byte[] data = c.getData();
+                out.writeLong(c.getSegmentId());
+                out.writeInt(data.length);
+                out.write(data);
+            }
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Decodes the frames in the order they were written.
+     *
+     * @param maxSize maximum total size of the uncompressed data
+     * @throws IOException if the data is malformed or larger than {@code maxSize}
+     */
+    public static List<Chunk> decode(InputStream in, long maxSize) throws IOException {
+        List<Chunk> result = new ArrayList<>();
+
+        long total = 0;
+        try (DataInputStream data = new DataInputStream(new GZIPInputStream(in))) {
+            while (true) {
+                long segmentId;
+                try {
+                    segmentId = data.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                int len = data.readInt();
+                total += len;
+                if (len < 0 || total > maxSize) {
+                    throw new IOException("Invalid chunk size: " + len + " (max total size: " + maxSize + ")");
+                }
+
+                byte[] ab = new byte[len];
+                data.readFully(ab);
+                result.add(new Chunk(segmentId, ab));
+            }
+        }
+
+        return result;
+    }
+
+    public static final class Chunk {
+
+        private final long segmentId;
+        private final byte[] data;
+
+        public Chunk(long segmentId, byte[] data) { // NOSONAR
+            this.segmentId = segmentId;
+            this.data = data;
+        }
+
+        public long getSegmentId() {
+            return segmentId;
+        }
+
+        public byte[] getData() {
+            return data; // NOSONAR
+        }
+    }
+
+    private LogSegmentBatch() {
+    }
+}
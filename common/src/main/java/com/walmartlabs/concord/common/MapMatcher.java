@@ -22,9 +22,19 @@ package com.walmartlabs.concord.common;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 public final class MapMatcher {
 
+    private static final int MAX_CACHED_PATTERNS = 1024;
+
+    /**
+     * Compiled condition patterns. The same conditions (e.g. agent requirements or
+     * trigger conditions) are matched over and over again, no need to recompile them.
+     */
+    private static final Map<String, Pattern> patterns = new ConcurrentHashMap<>();
+
     public static boolean matches(Map<String, Object> data, Map<String, Object> conditions) {
         if (conditions == null || conditions.isEmpty()) {
             return true;
@@ -95,7 +105,22 @@ public final class MapMatcher {
     }
 
     private static boolean compareStringValues(String dataValue, String conditionValue) {
-        return dataValue.matches(conditionValue);
+        return pattern(conditionValue).matcher(dataValue).matches();
+    }
+
+    private static Pattern pattern(String regex) {
+        Pattern p = patterns.get(regex);
+        if (p != null) {
+            return p;
+        }
+
+        if (patterns.size() >= MAX_CACHED_PATTERNS) {
+            patterns.clear();
+        }
+
+        p = Pattern.compile(regex);
+        patterns.put(regex, p);
+        return p;
     }
 
     private static boolean compareValues(Object dataValue, Object conditionValue) {
@@ -0,0 +1,49 @@
+package com.walmartlabs.concord.common;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Limits the total size of the files unpacked by
+ * {@link IOUtils#unzip(Path, Path, boolean, FileVisitor, UnzipLimit, java.nio.file.CopyOption...)}.
+ */
+public interface UnzipLimit {
+
+    /**
+     * @return {@code true} if the file counts towards the limit
+     */
+    boolean isCounted(Path file);
+
+    /**
+     * @return the max total size of the counted files, in bytes
+     */
+    long maxSize();
+
+    /**
+     * Checks the total size of the counted files. Called with the sizes
+     * declared in the archive before anything is unpacked and then with
+     * the actual number of unpacked bytes after each counted file.
+     * Throws an exception if the size exceeds the limit.
+     */
+    void check(long size) throws IOException;
+}
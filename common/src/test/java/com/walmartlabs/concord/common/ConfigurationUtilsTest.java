@@ -22,9 +22,7 @@ package com.walmartlabs.concord.common;
 
 import org.junit.Test;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
 import static org.junit.Assert.*;
 
@@ -56,4 +54,23 @@ public class ConfigurationUtilsTest {
         b = Collections.singletonMap("x", Collections.singletonList("test"));
         assertTrue(ConfigurationUtils.deepEquals(a, b));
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void deepCopyTest() {
+        Map<String, Object> nested = new HashMap<>();
+        nested.put("x", new ArrayList<>(Collections.singletonList("y")));
+
+        Map<String, Object> m = new HashMap<>();
+        m.put("a", nested);
+
+        Map<String, Object> result = ConfigurationUtils.deepCopy(m);
+        assertTrue(ConfigurationUtils.deepEquals(m, result));
+
+        ((Map<String, Object>) result.get("a")).put("z", "z-value");
+        ((List<Object>) ((Map<String, Object>) result.get("a")).get("x")).add("w");
+
+        assertEquals(1, nested.size());
+        assertEquals(Collections.singletonList("y"), nested.get("x"));
+    }
 }
@@ -28,7 +28,10 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.Collections;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -76,6 +79,35 @@ public class IOUtilsTest {
         assertTrue(Files.exists(dst.resolve("a/b/c.txt")));
     }
 
+    @Test
+    public void testLink() throws Exception {
+        Path src = Files.createTempDirectory("test");
+        Path dst = Files.createTempDirectory("test");
+
+        // ---
+
+        Path nestedDir = src.resolve("a/b");
+        Files.createDirectories(nestedDir);
+        Files.write(nestedDir.resolve("c.txt"), "hello".getBytes());
+        Files.write(src.resolve("ignored.txt"), "hello".getBytes());
+
+        Files.write(dst.resolve("existing.txt"), "old".getBytes());
+        Files.write(src.resolve("existing.txt"), "new".getBytes());
+
+        // ---
+
+        IOUtils.link(src, dst, Collections.singletonList("ignored\\.txt"), null);
+
+        assertEquals("hello", new String(Files.readAllBytes(dst.resolve("a/b/c.txt"))));
+        assertEquals("new", new String(Files.readAllBytes(dst.resolve("existing.txt"))));
+        assertFalse(Files.exists(dst.resolve("ignored.txt")));
+
+        // the files are linked, not copied
+        assertTrue(Files.isSameFile(nestedDir.resolve("c.txt"), dst.resolve("a/b/c.txt")));
+        assertTrue(Files.isSameFile(src.resolve("existing.txt"), dst.resolve("existing.txt")));
+        assertEquals(2, Files.getAttribute(dst.resolve("a/b/c.txt"), "unix:nlink"));
+    }
+
     @Test
     public void testSymlinks() throws Exception {
         Path src = Files.createTempDirectory("test");
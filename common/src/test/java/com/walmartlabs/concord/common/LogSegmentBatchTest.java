@@ -0,0 +1,71 @@
+package com.walmartlabs.concord.common;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LogSegmentBatchTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<LogSegmentBatch.Chunk> chunks = Arrays.asList(
+                new LogSegmentBatch.Chunk(5L, "hello".getBytes()),
+                new LogSegmentBatch.Chunk(0L, new byte[0]),
+                new LogSegmentBatch.Chunk(3L, "world".getBytes()),
+                new LogSegmentBatch.Chunk(5L, "again".getBytes()));
+
+        byte[] ab = LogSegmentBatch.encode(chunks);
+        List<LogSegmentBatch.Chunk> result = LogSegmentBatch.decode(new ByteArrayInputStream(ab), 1024);
+
+        assertEquals(4, result.size());
+        assertEquals(5L, result.get(0).getSegmentId());
+        assertArrayEquals("hello".getBytes(), result.get(0).getData());
+        assertEquals(0L, result.get(1).getSegmentId());
+        assertEquals(0, result.get(1).getData().length);
+        assertEquals(3L, result.get(2).getSegmentId());
+        assertArrayEquals("world".getBytes(), result.get(2).getData());
+        assertEquals(5L, result.get(3).getSegmentId());
+        assertArrayEquals("again".getBytes(), result.get(3).getData());
+    }
+
+    @Test
+    public void testMaxSize() throws Exception {
+        List<LogSegmentBatch.Chunk> chunks = Arrays.asList(
+                new LogSegmentBatch.Chunk(1L, new byte[100]),
+                new LogSegmentBatch.Chunk(2L, new byte[100]));
+
+        byte[] ab = LogSegmentBatch.encode(chunks);
+
+        try {
+            LogSegmentBatch.decode(new ByteArrayInputStream(ab), 150);
+            fail("exception expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("150"));
+        }
+    }
+}
@@ -29,6 +29,7 @@ import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.collection.CollectRequest;
 import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
 import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
 import org.eclipse.aether.impl.DefaultServiceLocator;
 import org.eclipse.aether.repository.LocalRepository;
 import org.eclipse.aether.repository.RemoteRepository;
@@ -36,6 +37,7 @@ import org.eclipse.aether.repository.RepositoryPolicy;
 import org.eclipse.aether.resolution.*;
 import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
 import org.eclipse.aether.spi.connector.transport.TransporterFactory;
+import org.eclipse.aether.spi.synccontext.SyncContextFactory;
 import org.eclipse.aether.transfer.AbstractTransferListener;
 import org.eclipse.aether.transfer.ArtifactNotFoundException;
 import org.eclipse.aether.transfer.TransferEvent;
@@ -43,6 +45,7 @@ import org.eclipse.aether.transport.file.FileTransporterFactory;
 import org.eclipse.aether.transport.http.HttpTransporterFactory;
 import org.eclipse.aether.util.artifact.JavaScopes;
 import org.eclipse.aether.util.repository.AuthenticationBuilder;
+import org.eclipse.aether.version.VersionConstraint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,6 +60,10 @@ import java.nio.file.*;
 import java.security.MessageDigest;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 public class DependencyManager {
@@ -64,11 +71,18 @@ public class DependencyManager {
     private static final Logger log = LoggerFactory.getLogger(DependencyManager.class);
 
     private static final String CFG_FILE_KEY = "CONCORD_MAVEN_CFG";
+    private static final String DYNAMIC_VERSION_TTL_KEY = "CONCORD_MAVEN_DYNAMIC_VERSION_TTL";
+
+    /**
+     * Default TTL (ms) of the cached dependency sets with SNAPSHOT or dynamic versions.
+     */
+    private static final long DEFAULT_DYNAMIC_VERSION_TTL = 5 * 60 * 1000;
 
     private static final int RETRY_COUNT = 3;
     private static final long RETRY_INTERVAL = 5000;
 
     private static final String FILES_CACHE_DIR = "files";
+    private static final String RESOLVED_CACHE_DIR = "resolved";
     public static final String MAVEN_SCHEME = "mvn";
 
     private static final MavenRepository MAVEN_CENTRAL = MavenRepository.builder()
@@ -85,7 +99,9 @@ public class DependencyManager {
     private final Path cacheDir;
     private final Path localCacheDir;
     private final List<RemoteRepository> repositories;
-    private final Object mutex = new Object();
+    private final List<String> repositoryKeys;
+    private final ResolvedArtifactCache resolvedCache;
+    private final ConcurrentMap<String, CompletableFuture<Object>> inflight = new ConcurrentHashMap<>();
     private final RepositorySystem maven = newMavenRepositorySystem();
 
     public DependencyManager(Path cacheDir) throws IOException {
@@ -105,6 +121,11 @@ public class DependencyManager {
 
         log.info("init -> using repositories: {}", repositories);
         this.repositories = toRemote(repositories);
+        this.repositoryKeys = this.repositories.stream()
+                .map(DependencyManager::toKey)
+                .collect(Collectors.toList());
+
+        this.resolvedCache = new ResolvedArtifactCache(cacheDir.resolve(RESOLVED_CACHE_DIR), getDynamicVersionTtl());
     }
 
     public Collection<DependencyEntity> resolve(Collection<URI> items) throws IOException {
@@ -210,7 +231,7 @@ public class DependencyManager {
 
         Path dst = baseDir.resolve(name);
 
-        synchronized (mutex) {
+        return resolveOnce("file:" + dst, () -> {
             if (!skipCache && Files.exists(dst)) {
                 log.info("resolveFile -> using a cached copy of {}...", uri);
                 return dst;
@@ -228,9 +249,8 @@ public class DependencyManager {
                 }
             }
 
-
             return dst;
-        }
+        });
     }
 
     private static Path getConfigFileLocation() {
@@ -241,6 +261,14 @@ public class DependencyManager {
         return Paths.get(s);
     }
 
+    private static long getDynamicVersionTtl() {
+        String s = System.getenv(DYNAMIC_VERSION_TTL_KEY);
+        if (s == null || s.trim().isEmpty()) {
+            return DEFAULT_DYNAMIC_VERSION_TTL;
+        }
+        return Long.parseLong(s.trim());
+    }
+
     private static List<MavenRepository> getRepositories() {
         Path src = getConfigFileLocation();
         if (src == null) {
@@ -266,14 +294,14 @@ public class DependencyManager {
         req.setArtifact(dep.artifact);
         req.setRepositories(repositories);
 
-        synchronized (mutex) {
+        return resolveOnce("artifact:" + toKey(dep), () -> {
             try {
                 ArtifactResult r = maven.resolveArtifact(session, req);
                 return r.getArtifact();
             } catch (ArtifactResolutionException e) {
                 throw new IOException(e);
             }
-        }
+        });
     }
 
     private Collection<Artifact> resolveMavenSingleDependencies(Collection<MavenDependency> deps) throws IOException {
@@ -285,26 +313,122 @@ public class DependencyManager {
     }
 
     private Collection<Artifact> resolveMavenTransitiveDependencies(Collection<MavenDependency> deps) throws IOException {
-        RepositorySystem system = newMavenRepositorySystem();
-        RepositorySystemSession session = newRepositorySystemSession(system);
+        if (deps.isEmpty()) {
+            return Collections.emptySet();
+        }
 
-        CollectRequest req = new CollectRequest();
-        req.setDependencies(deps.stream()
-                .map(d -> new Dependency(d.artifact, d.scope))
-                .collect(Collectors.toList()));
-        req.setRepositories(repositories);
+        List<String> depKeys = deps.stream()
+                .map(DependencyManager::toKey)
+                .sorted()
+                .collect(Collectors.toList());
+
+        String cacheKey = ResolvedArtifactCache.key(depKeys, repositoryKeys);
+
+        return resolveOnce("set:" + cacheKey, () -> {
+            Collection<Artifact> cached = resolvedCache.get(cacheKey);
+            if (cached != null) {
+                log.debug("resolveMavenTransitiveDependencies -> using the cached result for {}", depKeys);
+                return cached;
+            }
+
+            RepositorySystemSession session = newRepositorySystemSession(maven);
 
-        DependencyRequest dependencyRequest = new DependencyRequest(req, null);
+            CollectRequest req = new CollectRequest();
+            req.setDependencies(deps.stream()
+                    .map(d -> new Dependency(d.artifact, d.scope))
+                    .collect(Collectors.toList()));
+            req.setRepositories(repositories);
 
-        synchronized (mutex) {
+            DependencyRequest dependencyRequest = new DependencyRequest(req, null);
+
+            DependencyResult dependencyResult;
             try {
-                return system.resolveDependencies(session, dependencyRequest)
-                        .getArtifactResults().stream()
-                        .map(ArtifactResult::getArtifact)
-                        .collect(Collectors.toSet());
+                dependencyResult = maven.resolveDependencies(session, dependencyRequest);
             } catch (DependencyResolutionException e) {
                 throw new IOException(e);
             }
+
+            Collection<Artifact> result = dependencyResult.getArtifactResults().stream()
+                    .map(ArtifactResult::getArtifact)
+                    .collect(Collectors.toSet());
+
+            // transitive dependencies can use SNAPSHOTs or version ranges too
+            boolean dynamic = deps.stream().anyMatch(d -> ResolvedArtifactCache.isDynamic(d.artifact.getVersion()))
+                    || hasDynamicVersions(dependencyResult.getRoot());
+            resolvedCache.put(cacheKey, dynamic, result);
+
+            return result;
+        });
+    }
+
+    private static boolean hasDynamicVersions(DependencyNode node) {
+        if (node == null) {
+            return false;
+        }
+
+        VersionConstraint c = node.getVersionConstraint();
+        if (c != null && ResolvedArtifactCache.isDynamic(c.toString())) {
+            return true;
+        }
+
+        Artifact a = node.getArtifact();
+        if (a != null && a.isSnapshot()) {
+            return true;
+        }
+
+        for (DependencyNode child : node.getChildren()) {
+            if (hasDynamicVersions(child)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Concurrent calls with the same key are resolved once, the other callers
+     * wait for the result. Calls with different keys run in parallel.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T resolveOnce(String key, Callable<T> c) throws IOException {
+        CompletableFuture<Object> f = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inflight.putIfAbsent(key, f);
+        if (existing != null) {
+            return (T) await(existing);
+        }
+
+        try {
+            T result = c.call();
+            f.complete(result);
+            return result;
+        } catch (IOException | RuntimeException | Error e) {
+            f.completeExceptionally(e);
+            throw e;
+        } catch (Exception e) {
+            IOException ex = new IOException(e);
+            f.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inflight.remove(key, f);
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the dependency resolution", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
         }
     }
 
@@ -372,6 +496,9 @@ public class DependencyManager {
         locator.addService(TransporterFactory.class, FileTransporterFactory.class);
         locator.addService(TransporterFactory.class, HttpTransporterFactory.class);
 
+        // the default implementation doesn't lock anything
+        locator.setServices(SyncContextFactory.class, new LocalRepositorySyncContextFactory());
+
         locator.setErrorHandler(new DefaultServiceLocator.ErrorHandler() {
             @Override
             public void serviceCreationFailed(Class<?> type, Class<?> impl, Throwable exception) {
@@ -382,6 +509,18 @@ public class DependencyManager {
         return locator.getService(RepositorySystem.class);
     }
 
+    private static String toKey(MavenDependency d) {
+        return d.artifact.toString() + "|" + d.scope;
+    }
+
+    private static String toKey(RemoteRepository r) {
+        return r.getId() + "|" + r.getUrl() + "|" + toKey(r.getPolicy(false)) + "|" + toKey(r.getPolicy(true));
+    }
+
+    private static String toKey(RepositoryPolicy p) {
+        return p.isEnabled() + "/" + p.getUpdatePolicy() + "/" + p.getChecksumPolicy();
+    }
+
     private static List<RemoteRepository> toRemote(List<MavenRepository> l) {
         return l.stream()
                 .map(DependencyManager::toRemote)
@@ -0,0 +1,112 @@
+package com.walmartlabs.concord.dependencymanager;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SyncContext;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.metadata.Metadata;
+import org.eclipse.aether.spi.synccontext.SyncContextFactory;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Synchronizes access to the artifacts and metadata in the local repository.
+ * <p>
+ * The default {@link SyncContextFactory} of maven-resolver doesn't lock anything,
+ * so concurrent resolutions of different dependency sets can download the same
+ * artifact into the local repository at the same time.
+ * <p>
+ * Uses striped reentrant locks shared by all instances in the JVM. Shared and
+ * exclusive contexts are treated the same: the resolver can request an exclusive
+ * context while holding a shared one for the same metadata in the same thread.
+ * <p>
+ * The resolver locks the metadata while holding the artifact locks (to resolve
+ * the artifacts' versions), but not the other way around. The artifacts and
+ * the metadata use separate stripes and the locks of a single
+ * {@link SyncContext#acquire(Collection, Collection)} call are taken in the stripe
+ * order, so the stripes can't form a cycle.
+ */
+class LocalRepositorySyncContextFactory implements SyncContextFactory {
+
+    private static final int LOCK_STRIPES = 128;
+
+    private static final ReentrantLock[] artifactLocks = newLocks(LOCK_STRIPES);
+    private static final ReentrantLock[] metadataLocks = newLocks(LOCK_STRIPES);
+
+    @Override
+    public SyncContext newInstance(RepositorySystemSession session, boolean shared) {
+        return new StripedSyncContext();
+    }
+
+    private static ReentrantLock[] newLocks(int count) {
+        ReentrantLock[] result = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = new ReentrantLock();
+        }
+        return result;
+    }
+
+    private static class StripedSyncContext implements SyncContext {
+
+        private final Deque<ReentrantLock> acquired = new ArrayDeque<>();
+
+        @Override
+        public void acquire(Collection<? extends Artifact> artifacts, Collection<? extends Metadata> metadatas) {
+            SortedSet<Integer> artifactStripes = new TreeSet<>();
+            if (artifacts != null) {
+                for (Artifact a : artifacts) {
+                    artifactStripes.add(stripe(a.getGroupId() + ":" + a.getArtifactId() + ":" + a.getBaseVersion()));
+                }
+            }
+
+            SortedSet<Integer> metadataStripes = new TreeSet<>();
+            if (metadatas != null) {
+                for (Metadata m : metadatas) {
+                    metadataStripes.add(stripe(m.getGroupId() + ":" + m.getArtifactId() + ":" + m.getVersion() + ":" + m.getType()));
+                }
+            }
+
+            lock(artifactLocks, artifactStripes);
+            lock(metadataLocks, metadataStripes);
+        }
+
+        @Override
+        public void close() {
+            while (!acquired.isEmpty()) {
+                acquired.pop().unlock();
+            }
+        }
+
+        private void lock(ReentrantLock[] locks, SortedSet<Integer> stripes) {
+            for (int i : stripes) {
+                ReentrantLock l = locks[i];
+                l.lock();
+                acquired.push(l);
+            }
+        }
+
+        private static int stripe(String key) {
+            return (key.hashCode() & 0x7fffffff) % LOCK_STRIPES;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.walmartlabs.concord.dependencymanager;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * On-disk cache of resolved transitive dependency sets. Allows to skip
+ * the dependency graph collection when the same set of dependencies
+ * was already resolved.
+ * <p>
+ * Sets with only release versions are cached indefinitely. Sets with
+ * SNAPSHOT, LATEST/RELEASE or version range dependencies are cached for
+ * the specified TTL.
+ */
+class ResolvedArtifactCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ResolvedArtifactCache.class);
+
+    private final Path dir;
+    private final long dynamicVersionTtl;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * @param dir               the cache directory
+     * @param dynamicVersionTtl TTL (ms) of sets with SNAPSHOT or dynamic versions. Zero disables caching of such sets
+     */
+    ResolvedArtifactCache(Path dir, long dynamicVersionTtl) throws IOException {
+        this.dir = dir;
+        this.dynamicVersionTtl = dynamicVersionTtl;
+
+        if (!Files.exists(dir)) {
+            Files.createDirectories(dir);
+        }
+    }
+
+    /**
+     * Calculates the cache key of a set of dependencies.
+     *
+     * @param dependencies normalized (sorted) dependency coordinates, including the scope
+     * @param repositories the repository configuration used to resolve the dependencies
+     */
+    static String key(List<String> dependencies, List<String> repositories) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (String d : dependencies) {
+                md.update(d.getBytes(StandardCharsets.UTF_8));
+                md.update((byte) '\n');
+            }
+            md.update((byte) 0);
+            for (String r : repositories) {
+                md.update(r.getBytes(StandardCharsets.UTF_8));
+                md.update((byte) '\n');
+            }
+            return DatatypeConverter.printHexBinary(md.digest()).toLowerCase();
+        } catch (Exception e) {
+            throw new RuntimeException("Hash error", e);
+        }
+    }
+
+    static boolean isDynamic(String version) {
+        if (version == null) {
+            return false;
+        }
+
+        return version.endsWith("SNAPSHOT")
+                || "LATEST".equals(version)
+                || "RELEASE".equals(version)
+                || version.startsWith("[")
+                || version.startsWith("(");
+    }
+
+    /**
+     * @return the cached artifacts or {@code null} if there's no valid entry
+     * for the specified key.
+     */
+    Collection<Artifact> get(String key) {
+        Path p = dir.resolve(key + ".json");
+        if (!Files.exists(p)) {
+            return null;
+        }
+
+        Entry e;
+        try (InputStream in = Files.newInputStream(p)) {
+            e = objectMapper.readValue(in, Entry.class);
+        } catch (IOException ex) {
+            log.warn("get ['{}'] -> invalid cache entry, ignoring: {}", key, ex.getMessage());
+            return null;
+        }
+
+        if (e.dynamic && System.currentTimeMillis() - e.createdAt > dynamicVersionTtl) {
+            return null;
+        }
+
+        Collection<Artifact> result = new HashSet<>(e.artifacts.size());
+        for (CachedArtifact a : e.artifacts) {
+            Path f = Paths.get(a.file);
+            if (!Files.exists(f)) {
+                // the local repository was cleaned up, need to resolve the dependencies again
+                return null;
+            }
+
+            result.add(new DefaultArtifact(a.groupId, a.artifactId, a.classifier, a.extension, a.version)
+                    .setFile(f.toFile()));
+        }
+
+        return result;
+    }
+
+    /**
+     * Saves the resolved artifacts.
+     *
+     * @param key       the cache key, see {@link #key(List, List)}
+     * @param dynamic   {@code true} if the requested dependencies use dynamic versions
+     * @param artifacts the resolved artifacts
+     */
+    void put(String key, boolean dynamic, Collection<Artifact> artifacts) {
+        List<CachedArtifact> l = new ArrayList<>(artifacts.size());
+        for (Artifact a : artifacts) {
+            if (a.getFile() == null) {
+                return;
+            }
+
+            dynamic = dynamic || a.isSnapshot();
+            l.add(new CachedArtifact(a.getGroupId(), a.getArtifactId(), a.getClassifier(), a.getExtension(),
+                    a.getVersion(), a.getFile().getAbsolutePath()));
+        }
+
+        if (dynamic && dynamicVersionTtl <= 0) {
+            return;
+        }
+
+        Path dst = dir.resolve(key + ".json");
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(dir, key, ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                objectMapper.writeValue(out, new Entry(System.currentTimeMillis(), dynamic, l));
+            }
+            Files.move(tmp, dst, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("put ['{}'] -> error while saving a cache entry: {}", key, e.getMessage());
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final long createdAt;
+        private final boolean dynamic;
+        private final List<CachedArtifact> artifacts;
+
+        @JsonCreator
+        private Entry(@JsonProperty("createdAt") long createdAt,
+                      @JsonProperty("dynamic") boolean dynamic,
+                      @JsonProperty("artifacts") List<CachedArtifact> artifacts) {
+
+            this.createdAt = createdAt;
+            this.dynamic = dynamic;
+            this.artifacts = artifacts;
+        }
+
+        @JsonProperty("createdAt")
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        @JsonProperty("dynamic")
+        public boolean isDynamic() {
+            return dynamic;
+        }
+
+        @JsonProperty("artifacts")
+        public List<CachedArtifact> getArtifacts() {
+            return artifacts;
+        }
+    }
+
+    private static final class CachedArtifact {
+
+        private final String groupId;
+        private final String artifactId;
+        private final String classifier;
+        private final String extension;
+        private final String version;
+        private final String file;
+
+        @JsonCreator
+        private CachedArtifact(@JsonProperty("groupId") String groupId,
+                               @JsonProperty("artifactId") String artifactId,
+                               @JsonProperty("classifier") String classifier,
+                               @JsonProperty("extension") String extension,
+                               @JsonProperty("version") String version,
+                               @JsonProperty("file") String file) {
+
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.classifier = classifier;
+            this.extension = extension;
+            this.version = version;
+            this.file = file;
+        }
+
+        @JsonProperty("groupId")
+        public String getGroupId() {
+            return groupId;
+        }
+
+        @JsonProperty("artifactId")
+        public String getArtifactId() {
+            return artifactId;
+        }
+
+        @JsonProperty("classifier")
+        public String getClassifier() {
+            return classifier;
+        }
+
+        @JsonProperty("extension")
+        public String getExtension() {
+            return extension;
+        }
+
+        @JsonProperty("version")
+        public String getVersion() {
+            return version;
+        }
+
+        @JsonProperty("file")
+        public String getFile() {
+            return file;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.walmartlabs.concord.dependencymanager;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.eclipse.aether.SyncContext;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LocalRepositorySyncContextFactoryTest {
+
+    @Test(timeout = 10000)
+    public void testExclusiveAccess() throws Exception {
+        LocalRepositorySyncContextFactory factory = new LocalRepositorySyncContextFactory();
+
+        CountDownLatch acquired = new CountDownLatch(1);
+
+        SyncContext a = factory.newInstance(null, false);
+        a.acquire(Collections.singletonList(new DefaultArtifact("a:b:1.0")), null);
+
+        // the same thread can acquire the same artifact again
+        try (SyncContext nested = factory.newInstance(null, false)) {
+            nested.acquire(Collections.singletonList(new DefaultArtifact("a:b:1.0")), null);
+        }
+
+        Thread t = new Thread(() -> {
+            try (SyncContext b = factory.newInstance(null, true)) {
+                b.acquire(Collections.singletonList(new DefaultArtifact("a:b:1.0")), null);
+                acquired.countDown();
+            }
+        });
+        t.start();
+
+        assertFalse(acquired.await(500, TimeUnit.MILLISECONDS));
+
+        a.close();
+
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        t.join();
+    }
+}
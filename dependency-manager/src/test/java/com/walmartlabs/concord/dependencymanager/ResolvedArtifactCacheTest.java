@@ -0,0 +1,91 @@
+package com.walmartlabs.concord.dependencymanager;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ResolvedArtifactCacheTest {
+
+    @Test
+    public void testKey() {
+        String a = ResolvedArtifactCache.key(Arrays.asList("a:b:jar:1.0|compile", "c:d:jar:2.0|compile"), Collections.singletonList("central"));
+        String b = ResolvedArtifactCache.key(Arrays.asList("a:b:jar:1.0|compile", "c:d:jar:2.0|compile"), Collections.singletonList("central"));
+        String c = ResolvedArtifactCache.key(Arrays.asList("a:b:jar:1.0|compile", "c:d:jar:2.0|compile"), Collections.singletonList("other"));
+
+        assertEquals(a, b);
+        assertNotEquals(a, c);
+    }
+
+    @Test
+    public void testGetPut() throws Exception {
+        Path dir = Files.createTempDirectory("test");
+        Path jar = Files.createTempFile(dir, "test", ".jar");
+
+        ResolvedArtifactCache cache = new ResolvedArtifactCache(dir.resolve("cache"), 0);
+
+        Artifact release = new DefaultArtifact("a:b:1.0").setFile(jar.toFile());
+        Artifact snapshot = new DefaultArtifact("a:c:1.0-SNAPSHOT").setFile(jar.toFile());
+
+        // ---
+
+        assertNull(cache.get("k1"));
+
+        cache.put("k1", false, Collections.singletonList(release));
+        Collection<Artifact> result = cache.get("k1");
+        assertNotNull(result);
+        assertEquals(1, result.size());
+
+        Artifact a = result.iterator().next();
+        assertEquals("a:b:jar:1.0", a.toString());
+        assertEquals(jar.toFile().getAbsoluteFile(), a.getFile());
+
+        // dynamic versions are not cached with zero TTL
+
+        cache.put("k2", true, Collections.singletonList(release));
+        assertNull(cache.get("k2"));
+
+        cache.put("k3", false, Arrays.asList(release, snapshot));
+        assertNull(cache.get("k3"));
+
+        // missing files invalidate the entry
+
+        Files.delete(jar);
+        assertNull(cache.get("k1"));
+    }
+
+    @Test
+    public void testIsDynamic() {
+        assertTrue(ResolvedArtifactCache.isDynamic("1.0-SNAPSHOT"));
+        assertTrue(ResolvedArtifactCache.isDynamic("LATEST"));
+        assertTrue(ResolvedArtifactCache.isDynamic("[1.0,2.0)"));
+        assertFalse(ResolvedArtifactCache.isDynamic("1.0"));
+    }
+}
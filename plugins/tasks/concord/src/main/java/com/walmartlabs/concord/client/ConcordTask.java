@@ -51,6 +51,12 @@ public class ConcordTask extends AbstractConcordTask {
     private static final long DEFAULT_KILL_TIMEOUT = 10000;
     private static final long DEFAULT_POLL_DELAY = 5000;
 
+    /**
+     * Server-side wait timeout (seconds), must be less than the client's read timeout.
+     */
+    private static final int WAIT_REQUEST_TIMEOUT = 30;
+    private static final String WAIT_NOT_FOUND_MESSAGE = "Process instance(s) not found";
+
     /**
      * @deprecated use {@link #PAYLOAD_KEY}
      */
@@ -186,12 +192,68 @@ public class ConcordTask extends AbstractConcordTask {
     }
 
     public <T> Map<String, T> waitForCompletion(@InjectVariable("context") Context ctx, List<String> ids, long timeout, Function<ProcessEntry, T> processor) {
-        Map<String, T> result = new HashMap<>();
+        Map<String, T> result = new ConcurrentHashMap<>();
+        Set<UUID> remaining = ids.stream()
+                .map(UUID::fromString)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+
+        log.info("Waiting for {}...", ids);
 
-        ids.parallelStream().map(UUID::fromString).forEach(id -> {
-            log.info("Waiting for {}...", id);
+        long t1 = System.currentTimeMillis();
+        try {
+            while (!remaining.isEmpty()) {
+                int waitTimeout = waitRequestTimeout(t1, timeout);
 
-            long t1 = System.currentTimeMillis();
+                List<ProcessStatusEntry> l;
+                try {
+                    l = ClientUtils.withRetry(3, 1000, () -> withClient(ctx, client -> {
+                        ProcessV2Api api = new ProcessV2Api(client);
+                        return api.waitForCompletion(new ProcessWaitRequest()
+                                .instanceIds(new ArrayList<>(remaining))
+                                .timeout(waitTimeout));
+                    }));
+                } catch (ApiException e) {
+                    if (!isBulkWaitUnsupported(e)) {
+                        throw e;
+                    }
+
+                    // older servers don't support the bulk wait
+                    log.warn("waitForCompletion -> falling back to polling: {}", e.getCode());
+                    pollForCompletion(ctx, remaining, t1, timeout, processor, result);
+                    return result;
+                }
+
+                for (ProcessStatusEntry s : l) {
+                    if (!isFinalStatus(s.getStatus())) {
+                        continue;
+                    }
+
+                    UUID id = s.getInstanceId();
+                    ProcessEntry e = ClientUtils.withRetry(3, 1000, () -> withClient(ctx, client -> {
+                        ProcessApi api = new ProcessApi(client);
+                        return api.get(id);
+                    }));
+
+                    T t = processor.apply(e);
+                    if (t != null) {
+                        result.put(id.toString(), t);
+                    }
+                    remaining.remove(id);
+                }
+
+                if (!remaining.isEmpty()) {
+                    assertTimeout(remaining, t1, timeout);
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        return result;
+    }
+
+    private <T> void pollForCompletion(Context ctx, Collection<UUID> ids, long t1, long timeout, Function<ProcessEntry, T> processor, Map<String, T> result) {
+        ids.parallelStream().forEach(id -> {
             while (true) {
                 try {
                     ProcessEntry e = ClientUtils.withRetry(3, 1000, () -> withClient(ctx, client -> {
@@ -208,14 +270,7 @@ public class ConcordTask extends AbstractConcordTask {
                         }
                         break;
                     } else {
-                        long t2 = System.currentTimeMillis();
-                        if (timeout > 0) {
-                            long dt = t2 - t1;
-                            if (dt >= timeout) {
-                                throw new TimeoutException("Timeout waiting for " + id + ": " + dt);
-                            }
-                        }
-
+                        assertTimeout(Collections.singleton(id), t1, timeout);
                         Thread.sleep(DEFAULT_POLL_DELAY);
                     }
                 } catch (Exception e) {
@@ -223,8 +278,44 @@ public class ConcordTask extends AbstractConcordTask {
                 }
             }
         });
+    }
 
-        return result;
+    /**
+     * Older servers don't have the bulk wait endpoint. The endpoint's own
+     * "not found" errors (e.g. for unknown process IDs) must not be mistaken
+     * for a missing endpoint.
+     */
+    private static boolean isBulkWaitUnsupported(ApiException e) {
+        if (e.getCode() == 405) {
+            return true;
+        }
+
+        if (e.getCode() != 404) {
+            return false;
+        }
+
+        String body = e.getResponseBody();
+        return body == null || !body.startsWith(WAIT_NOT_FOUND_MESSAGE);
+    }
+
+    private static int waitRequestTimeout(long t1, long timeout) {
+        if (timeout <= 0) {
+            return WAIT_REQUEST_TIMEOUT;
+        }
+
+        long left = timeout - (System.currentTimeMillis() - t1);
+        return (int) Math.max(1, Math.min(WAIT_REQUEST_TIMEOUT, TimeUnit.MILLISECONDS.toSeconds(left)));
+    }
+
+    private static void assertTimeout(Collection<UUID> ids, long t1, long timeout) throws TimeoutException {
+        if (timeout <= 0) {
+            return;
+        }
+
+        long dt = System.currentTimeMillis() - t1;
+        if (dt >= timeout) {
+            throw new TimeoutException("Timeout waiting for " + ids + ": " + dt);
+        }
     }
 
     @SuppressWarnings("rawtypes")
@@ -905,6 +996,13 @@ public class ConcordTask extends AbstractConcordTask {
                 || s == ProcessEntry.StatusEnum.TIMED_OUT;
     }
 
+    private static boolean isFinalStatus(ProcessStatusEntry.StatusEnum s) {
+        return s == ProcessStatusEntry.StatusEnum.FAILED
+                || s == ProcessStatusEntry.StatusEnum.FINISHED
+                || s == ProcessStatusEntry.StatusEnum.CANCELLED
+                || s == ProcessStatusEntry.StatusEnum.TIMED_OUT;
+    }
+
 
     private enum Action {
 
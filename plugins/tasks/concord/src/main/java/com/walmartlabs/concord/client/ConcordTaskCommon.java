@@ -54,6 +54,12 @@ public class ConcordTaskCommon {
     private static final long DEFAULT_KILL_TIMEOUT = 10000;
     private static final long DEFAULT_POLL_DELAY = 5000;
 
+    /**
+     * Server-side wait timeout (seconds), must be less than the client's read timeout.
+     */
+    private static final int WAIT_REQUEST_TIMEOUT = 30;
+    private static final String WAIT_NOT_FOUND_MESSAGE = "Process instance(s) not found";
+
     private static final int MAX_EXECUTOR_THREADS = 20;
 
     private static final Set<String> FAILED_STATUSES;
@@ -125,12 +131,66 @@ public class ConcordTaskCommon {
     }
 
     public <T> Map<String, T> waitForCompletion(List<UUID> ids, long timeout, Function<ProcessEntry, T> processor) {
-        Map<String, T> result = new HashMap<>();
+        Map<String, T> result = new ConcurrentHashMap<>();
+        Set<UUID> remaining = new LinkedHashSet<>(ids);
 
-        ids.parallelStream().forEach(id -> {
-            log.info("Waiting for {}...", id);
+        log.info("Waiting for {}...", ids);
+
+        long t1 = System.currentTimeMillis();
+        try {
+            while (!remaining.isEmpty()) {
+                int waitTimeout = waitRequestTimeout(t1, timeout);
+
+                List<ProcessStatusEntry> l;
+                try {
+                    l = ClientUtils.withRetry(3, 1000, () -> withClient(client -> {
+                        ProcessV2Api api = new ProcessV2Api(client);
+                        return api.waitForCompletion(new ProcessWaitRequest()
+                                .instanceIds(new ArrayList<>(remaining))
+                                .timeout(waitTimeout));
+                    }));
+                } catch (ApiException e) {
+                    if (!isBulkWaitUnsupported(e)) {
+                        throw e;
+                    }
+
+                    // older servers don't support the bulk wait
+                    log.warn("waitForCompletion -> falling back to polling: {}", e.getCode());
+                    pollForCompletion(remaining, t1, timeout, processor, result);
+                    return result;
+                }
+
+                for (ProcessStatusEntry s : l) {
+                    if (!isFinalStatus(s.getStatus())) {
+                        continue;
+                    }
+
+                    UUID id = s.getInstanceId();
+                    ProcessEntry e = ClientUtils.withRetry(3, 1000, () -> withClient(client -> {
+                        ProcessApi api = new ProcessApi(client);
+                        return api.get(id);
+                    }));
+
+                    T t = processor.apply(e);
+                    if (t != null) {
+                        result.put(id.toString(), t);
+                    }
+                    remaining.remove(id);
+                }
+
+                if (!remaining.isEmpty()) {
+                    assertTimeout(remaining, t1, timeout);
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        return result;
+    }
 
-            long t1 = System.currentTimeMillis();
+    private <T> void pollForCompletion(Collection<UUID> ids, long t1, long timeout, Function<ProcessEntry, T> processor, Map<String, T> result) {
+        ids.parallelStream().forEach(id -> {
             while (true) {
                 try {
                     ProcessEntry e = ClientUtils.withRetry(3, 1000,
@@ -148,14 +208,7 @@ public class ConcordTaskCommon {
                         }
                         break;
                     } else {
-                        long t2 = System.currentTimeMillis();
-                        if (timeout > 0) {
-                            long dt = t2 - t1;
-                            if (dt >= timeout) {
-                                throw new TimeoutException("Timeout waiting for " + id + ": " + dt);
-                            }
-                        }
-
+                        assertTimeout(Collections.singleton(id), t1, timeout);
                         Thread.sleep(DEFAULT_POLL_DELAY);
                     }
                 } catch (Exception e) {
@@ -163,8 +216,44 @@ public class ConcordTaskCommon {
                 }
             }
         });
+    }
 
-        return result;
+    /**
+     * Older servers don't have the bulk wait endpoint. The endpoint's own
+     * "not found" errors (e.g. for unknown process IDs) must not be mistaken
+     * for a missing endpoint.
+     */
+    private static boolean isBulkWaitUnsupported(ApiException e) {
+        if (e.getCode() == 405) {
+            return true;
+        }
+
+        if (e.getCode() != 404) {
+            return false;
+        }
+
+        String body = e.getResponseBody();
+        return body == null || !body.startsWith(WAIT_NOT_FOUND_MESSAGE);
+    }
+
+    private static int waitRequestTimeout(long t1, long timeout) {
+        if (timeout <= 0) {
+            return WAIT_REQUEST_TIMEOUT;
+        }
+
+        long left = timeout - (System.currentTimeMillis() - t1);
+        return (int) Math.max(1, Math.min(WAIT_REQUEST_TIMEOUT, TimeUnit.MILLISECONDS.toSeconds(left)));
+    }
+
+    private static void assertTimeout(Collection<UUID> ids, long t1, long timeout) throws TimeoutException {
+        if (timeout <= 0) {
+            return;
+        }
+
+        long dt = System.currentTimeMillis() - t1;
+        if (dt >= timeout) {
+            throw new TimeoutException("Timeout waiting for " + ids + ": " + dt);
+        }
     }
 
     public void kill(KillParams in) throws Exception {
@@ -626,6 +715,13 @@ public class ConcordTaskCommon {
                 || s == ProcessEntry.StatusEnum.TIMED_OUT;
     }
 
+    private static boolean isFinalStatus(ProcessStatusEntry.StatusEnum s) {
+        return s == ProcessStatusEntry.StatusEnum.FAILED
+                || s == ProcessStatusEntry.StatusEnum.FINISHED
+                || s == ProcessStatusEntry.StatusEnum.CANCELLED
+                || s == ProcessStatusEntry.StatusEnum.TIMED_OUT;
+    }
+
     private <T> T withClient(CheckedFunction<ApiClient, T> f) throws Exception {
         return withClient(ApiClientConfiguration.builder().build(), f);
     }
@@ -75,6 +75,38 @@ public class WorkspacePolicy {
         return new CheckResult<>(Collections.emptyList(), deny);
     }
 
+    /**
+     * @return the max total size of the workspace's files or {@code null}
+     * if the size is not limited
+     */
+    public Long getMaxSize() {
+        return rule != null ? rule.getMaxSizeInBytes() : null;
+    }
+
+    /**
+     * @return {@code true} if the file counts towards the workspace's size limit
+     */
+    public boolean isCounted(Path file) {
+        return getMaxSize() != null && !isIgnored(file, rule.getIgnoredFiles());
+    }
+
+    /**
+     * Checks the total size of the workspace's files counted by the caller,
+     * e.g. while unpacking an archive. Only the files accepted by
+     * {@link #isCounted(Path)} should be included into {@code size}.
+     *
+     * @param p    the workspace directory
+     * @param size the total size of the files
+     */
+    public CheckResult<WorkspaceRule, Path> check(Path p, long size) {
+        Long maxSize = getMaxSize();
+        if (maxSize == null || size <= maxSize) {
+            return CheckResult.success();
+        }
+
+        return CheckResult.error(new CheckResult.Item<>(rule, p, "Workspace too big: " + size + " byte(s)"));
+    }
+
     private static boolean isIgnored(Path p, Set<String> patterns) {
         if (patterns == null) {
             return false;
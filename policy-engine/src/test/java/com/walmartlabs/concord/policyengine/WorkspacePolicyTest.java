@@ -25,7 +25,9 @@ import org.junit.Test;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.Collections;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -46,6 +48,24 @@ public class WorkspacePolicyTest {
         assertAllow(tenBytes, p);
     }
 
+    @Test
+    public void testMaxSizeCounted() {
+        Path p = Paths.get("/workspace");
+
+        WorkspacePolicy fiveBytes = new WorkspacePolicy(new WorkspaceRule("5 bytes", 5L, Collections.singleton(".*/ignored\\.bin")));
+        WorkspacePolicy noLimit = new WorkspacePolicy(null);
+
+        // ---
+
+        assertTrue(fiveBytes.isCounted(p.resolve("test.bin")));
+        assertFalse(fiveBytes.isCounted(p.resolve("ignored.bin")));
+        assertFalse(noLimit.isCounted(p.resolve("test.bin")));
+
+        assertFalse(fiveBytes.check(p, 6L).getDeny().isEmpty());
+        assertTrue(fiveBytes.check(p, 5L).getDeny().isEmpty());
+        assertTrue(noLimit.check(p, 100L).getDeny().isEmpty());
+    }
+
     private static void assertAllow(WorkspacePolicy policy, Path p) throws IOException {
         CheckResult<WorkspaceRule, Path> result = policy.check(p);
         assertTrue(result.getDeny().isEmpty());
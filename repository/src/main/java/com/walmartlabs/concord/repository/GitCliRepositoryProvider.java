@@ -39,9 +39,23 @@ public class GitCliRepositoryProvider implements RepositoryProvider {
     public static final String DEFAULT_BRANCH = "master";
 
     private final GitClient client;
+    private final boolean useHardLinks;
 
     public GitCliRepositoryProvider(GitClientConfiguration cfg) {
+        this(cfg, false);
+    }
+
+    /**
+     * @param useHardLinks if {@code true} the exported files are hard-linked
+     *                     to the cached checkout instead of being copied.
+     *                     The exported files must not be modified in place.
+     *                     Each fetch restores the checkout ({@code checkout -f},
+     *                     {@code clean -fdx}) and replaces the changed files,
+     *                     so the previously exported files are not affected.
+     */
+    public GitCliRepositoryProvider(GitClientConfiguration cfg, boolean useHardLinks) {
         this.client = new GitClient(cfg);
+        this.useHardLinks = useHardLinks;
     }
 
     @Override
@@ -86,7 +100,11 @@ public class GitCliRepositoryProvider implements RepositoryProvider {
         List<String> allIgnorePatterns = new ArrayList<>();
         allIgnorePatterns.add(GIT_FILES);
         allIgnorePatterns.addAll(ignorePatterns);
-        IOUtils.copy(src, dst, allIgnorePatterns, snapshot, StandardCopyOption.REPLACE_EXISTING);
+        if (useHardLinks) {
+            IOUtils.link(src, dst, allIgnorePatterns, snapshot);
+        } else {
+            IOUtils.copy(src, dst, allIgnorePatterns, snapshot, StandardCopyOption.REPLACE_EXISTING);
+        }
         return snapshot;
     }
 
@@ -166,7 +166,7 @@ public final class StateManager {
         IOUtils.zip(zip, name, src);
     }
 
-    private static void saveState(Path baseDir, Serializable state) throws IOException {
+    public static void saveState(Path baseDir, Serializable state) throws IOException {
         Path stateDir = baseDir.resolve(Constants.Files.JOB_ATTACHMENTS_DIR_NAME)
                 .resolve(Constants.Files.JOB_STATE_DIR_NAME);
 
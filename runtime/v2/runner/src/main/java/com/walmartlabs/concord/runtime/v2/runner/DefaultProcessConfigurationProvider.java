@@ -38,6 +38,12 @@ import java.util.UUID;
  */
 public class DefaultProcessConfigurationProvider implements Provider<ProcessConfiguration> {
 
+    /**
+     * How often to check for the instanceId file. Pre-forked JVMs wait for
+     * the payload, the interval directly affects the process startup time.
+     */
+    private static final long INSTANCE_ID_POLL_INTERVAL = 100;
+
     private final Path workDir;
 
     public DefaultProcessConfigurationProvider(Path workDir) {
@@ -72,7 +78,7 @@ public class DefaultProcessConfigurationProvider implements Provider<ProcessConf
 
             // we are not using WatchService as it has issues when running in Docker
             try {
-                Thread.sleep(1000);
+                Thread.sleep(INSTANCE_ID_POLL_INTERVAL);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
@@ -48,8 +48,10 @@ import java.util.UUID;
 public class InjectorFactory {
 
     public static Injector createDefault(RunnerConfiguration runnerCfg) {
-        Path src = Paths.get(System.getProperty("user.dir"));
+        return createDefault(runnerCfg, Paths.get(System.getProperty("user.dir")));
+    }
 
+    public static Injector createDefault(RunnerConfiguration runnerCfg, Path src) {
         Provider<ProcessConfiguration> processCfgProvider = new DefaultProcessConfigurationProvider(src);
         WorkingDirectory workDir = new WorkingDirectory(src);
 
@@ -24,6 +24,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import com.walmartlabs.concord.ApiClient;
+import com.walmartlabs.concord.common.IOUtils;
 import com.walmartlabs.concord.imports.NoopImportManager;
 import com.walmartlabs.concord.runtime.common.ProcessHeartbeat;
 import com.walmartlabs.concord.runtime.common.StateManager;
@@ -32,8 +33,10 @@ import com.walmartlabs.concord.runtime.v2.NoopImportsNormalizer;
 import com.walmartlabs.concord.runtime.v2.ProjectLoaderV2;
 import com.walmartlabs.concord.runtime.v2.model.ProcessConfiguration;
 import com.walmartlabs.concord.runtime.v2.model.ProcessDefinition;
+import com.walmartlabs.concord.runtime.v2.runner.compiler.CompilerUtils;
 import com.walmartlabs.concord.runtime.v2.runner.guice.ObjectMapperProvider;
 import com.walmartlabs.concord.runtime.v2.runner.logging.LoggingConfigurator;
+import com.walmartlabs.concord.runtime.v2.sdk.Compiler;
 import com.walmartlabs.concord.runtime.v2.sdk.WorkingDirectory;
 import com.walmartlabs.concord.sdk.Constants;
 import com.walmartlabs.concord.svm.ThreadStatus;
@@ -79,30 +82,88 @@ public class Main {
         // in "pre-fork" situations
         Injector injector = InjectorFactory.createDefault(runnerCfg);
 
+        // pre-forked JVMs can use the time while waiting for the payload
+        // to load and initialize the commonly used classes. JVMs started
+        // for a specific process (including pre-fork pool misses) get
+        // the payload before they start
+        WorkingDirectory workDir = injector.getInstance(WorkingDirectory.class);
+        if (Files.notExists(workDir.getValue().resolve(Constants.Files.INSTANCE_ID_FILE_NAME))) {
+            warmUp(injector);
+        }
+
         try {
+            run(injector, runnerCfg);
+            System.exit(0);
+        } catch (Throwable t) {
+            t.printStackTrace(System.err);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the process in the specified working directory without terminating
+     * the JVM. Used by {@link ProcessHost} to run processes in a shared JVM.
+     */
+    public static void run(Path runnerCfgFile, Path workDir) throws Exception {
+        RunnerConfiguration runnerCfg = readRunnerConfiguration(runnerCfgFile);
+        Injector injector = InjectorFactory.createDefault(runnerCfg, workDir);
+        run(injector, runnerCfg);
+    }
+
+    private static void run(Injector injector, RunnerConfiguration runnerCfg) throws Exception {
+        ProcessHeartbeat heartbeat = null;
+        if (runnerCfg.api().heartbeatEnabled()) {
             ProcessConfiguration processCfg = injector.getInstance(ProcessConfiguration.class);
             ApiClient apiClient = injector.getInstance(ApiClient.class);
-            ProcessHeartbeat heartbeat = new ProcessHeartbeat(apiClient, processCfg.instanceId(), runnerCfg.api().maxNoHeartbeatInterval());
+            heartbeat = new ProcessHeartbeat(apiClient, processCfg.instanceId(), runnerCfg.api().maxNoHeartbeatInterval());
             heartbeat.start();
+        }
 
+        try {
             Main main = injector.getInstance(Main.class);
             main.execute();
+        } finally {
+            if (heartbeat != null) {
+                heartbeat.stop();
+            }
+        }
+    }
 
-            System.exit(0);
-        } catch (Throwable t) {
-            t.printStackTrace(System.err);
-            System.exit(1);
+    /**
+     * Parses and compiles a small built-in flow.
+     */
+    private static void warmUp(Injector injector) {
+        try {
+            Path tmpDir = Files.createTempDirectory("warmup");
+            try {
+                Path src = tmpDir.resolve("concord.yml");
+                try (InputStream in = Main.class.getResourceAsStream("warmup.concord.yml")) {
+                    Files.copy(in, src);
+                }
+
+                ProcessDefinition pd = new ProjectLoaderV2(new NoopImportManager())
+                        .loadFromFile(src)
+                        .getProjectDefinition();
+
+                CompilerUtils.compile(injector.getInstance(Compiler.class), pd, Constants.Request.DEFAULT_ENTRY_POINT_NAME);
+            } finally {
+                IOUtils.deleteRecursively(tmpDir);
+            }
+        } catch (Exception e) {
+            // ignore, the warm-up is optional
+            // (and the output of pre-forked JVMs ends up in the next process' log)
         }
     }
 
     private static RunnerConfiguration readRunnerConfiguration(String[] args) throws IOException {
-        Path src;
-        if (args.length > 0) {
-            src = Paths.get(args[0]);
-        } else {
+        if (args.length == 0) {
             throw new IllegalArgumentException("Path to the runner configuration file is required");
         }
 
+        return readRunnerConfiguration(Paths.get(args[0]));
+    }
+
+    private static RunnerConfiguration readRunnerConfiguration(Path src) throws IOException {
         ObjectMapper om = ObjectMapperProvider.getInstance();
         try (InputStream in = Files.newInputStream(src)) {
             return om.readValue(in, RunnerConfiguration.class);
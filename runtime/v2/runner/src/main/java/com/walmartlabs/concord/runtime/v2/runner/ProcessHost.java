@@ -0,0 +1,226 @@
+package com.walmartlabs.concord.runtime.v2.runner;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs several processes in one long-lived JVM. Each process gets its own
+ * classloader, so the runtime's static state (e.g. the logging configuration)
+ * is not shared between processes. Started by the agent instead of {@link Main}
+ * when the agent's {@code processHost} mode is enabled.
+ * <p>
+ * The agent sends commands to the host's stdin, one per line:
+ * <ul>
+ *     <li>{@code start <id> <workDir>} - start a new process in the specified directory;</li>
+ *     <li>{@code cancel <id>} - interrupt the process' threads.</li>
+ * </ul>
+ * The host writes frames to its stdout: {@code type (byte), id (int), length (int), data}.
+ * {@link #OUTPUT} frames contain the process' output, {@link #EXIT} frames contain the
+ * process' exit code. The host exits when its stdin is closed.
+ * <p>
+ * The output of the threads started by a process goes to that process, the output of
+ * any other threads goes to the host's stderr.
+ */
+public class ProcessHost {
+
+    public static final byte OUTPUT = 1;
+    public static final byte EXIT = 2;
+
+    private static final InheritableThreadLocal<Channel> currentChannel = new InheritableThreadLocal<>();
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("Path to the runner configuration file is required");
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+
+        PrintStream stderr = System.err;
+        PrintStream router = routingStream(stderr);
+        System.setOut(router);
+        System.setErr(router);
+
+        ProcessHost host = new ProcessHost(Paths.get(args[0]), classpath(), Main.class.getName(), out, stderr);
+        host.run(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+
+        // the agent closed the stdin, it doesn't need the host anymore
+        System.exit(0);
+    }
+
+    /**
+     * Returns a stream that writes to the current process' output or,
+     * if the current thread doesn't belong to any process, to {@code fallback}.
+     */
+    static PrintStream routingStream(OutputStream fallback) throws UnsupportedEncodingException {
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                Channel c = currentChannel.get();
+                if (c != null) {
+                    c.write(b, off, len);
+                } else {
+                    fallback.write(b, off, len);
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                fallback.flush();
+            }
+        };
+
+        return new PrintStream(out, true, StandardCharsets.UTF_8.name());
+    }
+
+    private final Path runnerCfgFile;
+    private final URL[] classpath;
+    private final String mainClass;
+    private final DataOutputStream out;
+    private final PrintStream log;
+
+    private final Map<Integer, ThreadGroup> processes = new ConcurrentHashMap<>();
+
+    ProcessHost(Path runnerCfgFile, URL[] classpath, String mainClass, DataOutputStream out, PrintStream log) {
+        this.runnerCfgFile = runnerCfgFile;
+        this.classpath = classpath;
+        this.mainClass = mainClass;
+        this.out = out;
+        this.log = log;
+    }
+
+    void run(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] as = line.split(" ", 3);
+            try {
+                if (as.length == 3 && "start".equals(as[0])) {
+                    start(Integer.parseInt(as[1]), Paths.get(as[2]));
+                } else if (as.length == 2 && "cancel".equals(as[0])) {
+                    cancel(Integer.parseInt(as[1]));
+                } else {
+                    log.println("Unknown command: " + line);
+                }
+            } catch (NumberFormatException e) {
+                log.println("Invalid command: " + line);
+            }
+        }
+    }
+
+    private void start(int id, Path workDir) {
+        Channel channel = new Channel(id);
+
+        // all threads started by the process end up in the same group
+        ThreadGroup group = new ThreadGroup("process-" + id);
+        processes.put(id, group);
+
+        Thread t = new Thread(group, () -> {
+            currentChannel.set(channel);
+            try {
+                channel.exit(execute(workDir) ? 0 : 1);
+            } finally {
+                processes.remove(id);
+            }
+        }, "process-" + id);
+
+        t.start();
+    }
+
+    private void cancel(int id) {
+        ThreadGroup group = processes.get(id);
+        if (group != null) {
+            group.interrupt();
+        }
+    }
+
+    private boolean execute(Path workDir) {
+        // the runner's classes are loaded again for each process
+        try (URLClassLoader cl = new URLClassLoader(classpath, ClassLoader.getSystemClassLoader().getParent())) {
+            Thread.currentThread().setContextClassLoader(cl);
+
+            Class<?> main = cl.loadClass(mainClass);
+            main.getMethod("run", Path.class, Path.class).invoke(null, runnerCfgFile, workDir);
+            return true;
+        } catch (InvocationTargetException e) {
+            e.getCause().printStackTrace(System.err);
+            return false;
+        } catch (Throwable t) {
+            t.printStackTrace(System.err);
+            return false;
+        }
+    }
+
+    private static URL[] classpath() throws IOException {
+        String[] as = System.getProperty("java.class.path").split(File.pathSeparator);
+
+        URL[] result = new URL[as.length];
+        for (int i = 0; i < as.length; i++) {
+            result[i] = Paths.get(as[i]).toUri().toURL();
+        }
+        return result;
+    }
+
+    private class Channel {
+
+        private final int id;
+
+        private Channel(int id) {
+            this.id = id;
+        }
+
+        void write(byte[] b, int off, int len) throws IOException {
+            synchronized (out) {
+                out.writeByte(OUTPUT);
+                out.writeInt(id);
+                out.writeInt(len);
+                out.write(b, off, len);
+                out.flush();
+            }
+        }
+
+        void exit(int code) {
+            try {
+                synchronized (out) {
+                    out.writeByte(EXIT);
+                    out.writeInt(id);
+                    out.writeInt(4);
+                    out.writeInt(code);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                log.println("Can't send the exit code of process " + id + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.walmartlabs.concord.runtime.v2.runner.checkpoints;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Snapshot of the files included into checkpoints. Used to find the files
+ * changed between two checkpoints.
+ */
+final class CheckpointFiles {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Lists the regular files in the specified directories (relative to {@code baseDir}).
+     * Symlinks to regular files are included and hashed by the target's content,
+     * they are archived as copies of the target, same as in full checkpoints.
+     * Empty directories and symlinks to directories are not included.
+     */
+    static CheckpointFiles scan(Path baseDir, String... dirs) throws IOException {
+        Map<String, String> hashes = new HashMap<>();
+
+        for (String d : dirs) {
+            Path dir = baseDir.resolve(d);
+            if (Files.notExists(dir)) {
+                continue;
+            }
+
+            Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (attrs.isRegularFile() || (attrs.isSymbolicLink() && Files.isRegularFile(file))) {
+                        hashes.put(baseDir.relativize(file).toString(), hash(file));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        return new CheckpointFiles(hashes);
+    }
+
+    private final Map<String, String> hashes;
+
+    private CheckpointFiles(Map<String, String> hashes) {
+        this.hashes = hashes;
+    }
+
+    Set<String> all() {
+        return new TreeSet<>(hashes.keySet());
+    }
+
+    /**
+     * @return new or modified files
+     */
+    Set<String> changedSince(CheckpointFiles prev) {
+        Set<String> result = new TreeSet<>();
+        for (Map.Entry<String, String> e : hashes.entrySet()) {
+            if (!e.getValue().equals(prev.hashes.get(e.getKey()))) {
+                result.add(e.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return files removed since the previous snapshot
+     */
+    Set<String> deletedSince(CheckpointFiles prev) {
+        Set<String> result = new TreeSet<>(prev.hashes.keySet());
+        result.removeAll(hashes.keySet());
+        return result;
+    }
+
+    private static String hash(Path p) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] ab = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(p)) {
+            int read;
+            while ((read = in.read(ab)) > 0) {
+                md.update(ab, 0, read);
+            }
+        }
+
+        return Base64.getEncoder().encodeToString(md.digest());
+    }
+}
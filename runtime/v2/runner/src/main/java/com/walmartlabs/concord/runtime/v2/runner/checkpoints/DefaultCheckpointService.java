@@ -23,6 +23,7 @@ package com.walmartlabs.concord.runtime.v2.runner.checkpoints;
 import com.walmartlabs.concord.ApiClient;
 import com.walmartlabs.concord.ApiException;
 import com.walmartlabs.concord.client.ClientUtils;
+import com.walmartlabs.concord.common.IOUtils;
 import com.walmartlabs.concord.runtime.common.StateManager;
 import com.walmartlabs.concord.runtime.common.cfg.ApiConfiguration;
 import com.walmartlabs.concord.runtime.common.cfg.RunnerConfiguration;
@@ -31,21 +32,32 @@ import com.walmartlabs.concord.runtime.v2.runner.ProcessSnapshot;
 import com.walmartlabs.concord.runtime.v2.sdk.WorkingDirectory;
 import com.walmartlabs.concord.sdk.Constants;
 import com.walmartlabs.concord.svm.Runtime;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import javax.inject.Singleton;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
+/**
+ * Uploads checkpoints to the server. The first checkpoint of the process (or
+ * of the current runner's run) contains the whole state, the subsequent ones
+ * contain only the files changed since the previous checkpoint.
+ */
+@Singleton
 public class DefaultCheckpointService implements CheckpointService {
 
     private static final Logger log = LoggerFactory.getLogger(DefaultCheckpointService.class);
 
+    private static final String[] CHECKPOINT_DIRS = {Constants.Files.JOB_ATTACHMENTS_DIR_NAME, Constants.Files.CONCORD_SYSTEM_DIR_NAME};
+
     private final InstanceId instanceId;
     private final WorkingDirectory workingDirectory;
     private final ApiClient apiClient;
@@ -59,20 +71,59 @@ public class DefaultCheckpointService implements CheckpointService {
         this.apiClient = apiClient;
     }
 
+    // the last uploaded checkpoint, the base for the next delta checkpoint
+    private UUID lastCheckpointId;
+    private CheckpointFiles lastCheckpointFiles;
+
+    // false if the server doesn't accept delta checkpoints
+    private boolean deltaSupported = true;
+
     @Override
-    public void create(String name, Runtime runtime, ProcessSnapshot snapshot) {
+    public synchronized void create(String name, Runtime runtime, ProcessSnapshot snapshot) {
         UUID checkpointId = UUID.randomUUID();
 
         Path checkpointArchive = null;
         try {
-            checkpointArchive = archiveState(checkpointId, name, snapshot);
+            Path baseDir = workingDirectory.getValue();
+            StateManager.saveState(baseDir, snapshot);
+
+            CheckpointFiles files = CheckpointFiles.scan(baseDir, CHECKPOINT_DIRS);
+
+            boolean uploaded = false;
+            if (lastCheckpointId != null && deltaSupported) {
+                Set<String> changed = files.changedSince(lastCheckpointFiles);
+                Set<String> deleted = files.deletedSince(lastCheckpointFiles);
+
+                checkpointArchive = archive(baseDir, checkpointId, name, changed);
+
+                Map<String, Object> data = new HashMap<>();
+                data.put("id", checkpointId);
+                data.put("name", name);
+                data.put("parentId", lastCheckpointId);
+                data.put("deletedFiles", String.join("\n", deleted));
+                data.put("data", checkpointArchive);
+
+                uploaded = uploadDeltaCheckpoint(instanceId.getValue(), data);
+                if (uploaded) {
+                    log.info("create ['{}'] -> delta checkpoint: {} changed, {} deleted file(s)", name, changed.size(), deleted.size());
+                } else {
+                    Files.delete(checkpointArchive);
+                }
+            }
+
+            if (!uploaded) {
+                checkpointArchive = archive(baseDir, checkpointId, name, files.all());
 
-            Map<String, Object> data = new HashMap<>();
-            data.put("id", checkpointId);
-            data.put("name", name);
-            data.put("data", checkpointArchive);
+                Map<String, Object> data = new HashMap<>();
+                data.put("id", checkpointId);
+                data.put("name", name);
+                data.put("data", checkpointArchive);
+
+                uploadCheckpoint(instanceId.getValue(), data);
+            }
 
-            uploadCheckpoint(instanceId.getValue(), data);
+            lastCheckpointId = checkpointId;
+            lastCheckpointFiles = files;
         } catch (Exception e) {
             throw new RuntimeException("Checkpoint upload error", e);
         } finally {
@@ -88,17 +139,43 @@ public class DefaultCheckpointService implements CheckpointService {
         log.info("create ['{}'] -> done", name);
     }
 
-    private Path archiveState(UUID checkpointId, String checkpointName, ProcessSnapshot snapshot) throws IOException {
-        Path checkpointDir = workingDirectory.getValue().resolve(Constants.Files.JOB_CHECKPOINTS_DIR_NAME);
+    private static Path archive(Path baseDir, UUID checkpointId, String checkpointName, Set<String> files) throws IOException {
+        Path checkpointDir = baseDir.resolve(Constants.Files.JOB_CHECKPOINTS_DIR_NAME);
         if (!Files.exists(checkpointDir)) {
             Files.createDirectories(checkpointDir);
         }
 
         Path result = checkpointDir.resolve(checkpointId + "_" + checkpointName + ".zip");
-        StateManager.archive(workingDirectory.getValue(), snapshot, result);
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(Files.newOutputStream(result))) {
+            for (String f : files) {
+                IOUtils.zipFile(zip, baseDir.resolve(f), f);
+            }
+        }
         return result;
     }
 
+    /**
+     * @return {@code false} if the server doesn't support delta checkpoints
+     */
+    private boolean uploadDeltaCheckpoint(UUID instanceId, Map<String, Object> data) throws ApiException {
+        String path = "/api/v1/process/" + instanceId + "/checkpoint/delta";
+
+        try {
+            ClientUtils.withRetry(apiConfiguration.retryCount(), apiConfiguration.retryInterval(), () -> {
+                ClientUtils.postData(apiClient, path, data, null);
+                return null;
+            });
+            return true;
+        } catch (ApiException e) {
+            if (e.getCode() == 404 || e.getCode() == 405) {
+                log.info("uploadDeltaCheckpoint -> not supported by the server, using full checkpoints");
+                deltaSupported = false;
+                return false;
+            }
+            throw e;
+        }
+    }
+
     private void uploadCheckpoint(UUID instanceId, Map<String, Object> data) throws ApiException {
         String path = "/api/v1/process/" + instanceId + "/checkpoint";
 
@@ -20,6 +20,8 @@ package com.walmartlabs.concord.runtime.v2.runner.el;
  * =====
  */
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.walmartlabs.concord.runtime.v2.runner.el.functions.AllVariablesFunction;
 import com.walmartlabs.concord.runtime.v2.runner.el.functions.HasVariableFunction;
 import com.walmartlabs.concord.runtime.v2.runner.el.resolvers.BeanELResolver;
@@ -39,10 +41,29 @@ import static com.walmartlabs.concord.runtime.v2.runner.el.ThreadLocalEvalContex
  */
 public class LazyExpressionEvaluator implements ExpressionEvaluator {
 
+    private static final int EXPRESSION_CACHE_SIZE = 1024;
+
     private final ExpressionFactory expressionFactory = ExpressionFactory.newInstance();
     private final TaskProviders taskProviders;
     private final FunctionMapper functionMapper;
 
+    /**
+     * Parsed expressions. {@link ValueExpression} instances don't hold any
+     * evaluation state and can be shared between threads.
+     */
+    private final Cache<ExpressionKey, ValueExpression> expressionCache = CacheBuilder.newBuilder()
+            .maximumSize(EXPRESSION_CACHE_SIZE)
+            .build();
+
+    // stateless (or thread-safe) resolvers shared by all resolver chains
+    // BeanELResolver caches the bean properties internally, so it's important to reuse it
+    private final ELResolver staticFieldResolver = new StaticFieldELResolver();
+    private final ELResolver mapResolver = new MapELResolver();
+    private final ELResolver resourceBundleResolver = new ResourceBundleELResolver();
+    private final ELResolver listResolver = new ListELResolver();
+    private final ELResolver arrayResolver = new ArrayELResolver();
+    private final ELResolver beanResolver = new BeanELResolver();
+
     public LazyExpressionEvaluator(TaskProviders taskProviders) {
         this.taskProviders = taskProviders;
         this.functionMapper = createFunctionMapper();
@@ -137,7 +158,7 @@ public class LazyExpressionEvaluator implements ExpressionEvaluator {
         };
         sc.putContext(ExpressionFactory.class, expressionFactory);
 
-        ValueExpression x = expressionFactory.createValueExpression(sc, expr, type);
+        ValueExpression x = getExpression(sc, expr, type);
         try {
             Object v = withEvalContext(ctx, () -> x.getValue(sc));
             return type.cast(v);
@@ -150,9 +171,24 @@ public class LazyExpressionEvaluator implements ExpressionEvaluator {
         }
     }
 
+    private ValueExpression getExpression(ELContext sc, String expr, Class<?> type) {
+        ExpressionKey key = new ExpressionKey(expr, type);
+
+        ValueExpression x = expressionCache.getIfPresent(key);
+        if (x == null) {
+            // parse errors are thrown as is, invalid expressions are not cached
+            x = expressionFactory.createValueExpression(sc, expr, type);
+            expressionCache.put(key, x);
+        }
+
+        return x;
+    }
+
     /**
      * Based on the original code from {@link StandardELContext#getELResolver()}.
      * Creates a {@link ELResolver} instance with "sub-resolvers" in the original order.
+     * The chain is cheap to create: only the context-specific resolvers are
+     * new instances, the stateless ones are shared.
      */
     private ELResolver createResolver(LazyEvalContext evalContext,
                                       ExpressionFactory expressionFactory) {
@@ -166,15 +202,15 @@ public class LazyExpressionEvaluator implements ExpressionEvaluator {
             r.add(new TaskResolver(evalContext.context(), taskProviders));
         }
         r.add(expressionFactory.getStreamELResolver());
-        r.add(new StaticFieldELResolver());
-        r.add(new MapELResolver());
-        r.add(new ResourceBundleELResolver());
-        r.add(new ListELResolver());
-        r.add(new ArrayELResolver());
+        r.add(staticFieldResolver);
+        r.add(mapResolver);
+        r.add(resourceBundleResolver);
+        r.add(listResolver);
+        r.add(arrayResolver);
         if (evalContext.context() != null) {
             r.add(new TaskMethodResolver(evalContext.context()));
         }
-        r.add(new BeanELResolver());
+        r.add(beanResolver);
         return r;
     }
 
@@ -188,4 +224,32 @@ public class LazyExpressionEvaluator implements ExpressionEvaluator {
     private static boolean hasExpression(String s) {
         return s.contains("${");
     }
+
+    private static final class ExpressionKey {
+
+        private final String expr;
+        private final Class<?> type;
+
+        private ExpressionKey(String expr, Class<?> type) {
+            this.expr = expr;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ExpressionKey that = (ExpressionKey) o;
+            return expr.equals(that.expr) && type.equals(that.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(expr, type);
+        }
+    }
 }
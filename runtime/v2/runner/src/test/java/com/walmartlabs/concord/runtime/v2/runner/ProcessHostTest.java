@@ -0,0 +1,127 @@
+package com.walmartlabs.concord.runtime.v2.runner;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.junit.Test;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessHostTest {
+
+    @Test(timeout = 30000)
+    public void testProcesses() throws Exception {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        ByteArrayOutputStream hostLog = new ByteArrayOutputStream();
+
+        URL[] classpath = {TestProcess.class.getProtectionDomain().getCodeSource().getLocation()};
+        ProcessHost host = new ProcessHost(Paths.get("runner.json"), classpath, TestProcess.class.getName(),
+                new DataOutputStream(frames), new PrintStream(hostLog, true));
+
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        try {
+            System.setOut(ProcessHost.routingStream(hostLog));
+            System.setErr(ProcessHost.routingStream(hostLog));
+
+            host.run(new BufferedReader(new StringReader("start 1 /tmp/ok\n" +
+                    "start 2 /tmp/fail\n" +
+                    "start 3 /tmp/ok\n" +
+                    "unknown\n")));
+
+            Frames f = new Frames();
+            while (f.exitCodes.size() < 3) {
+                Thread.sleep(100);
+                f = new Frames(frames.toByteArray());
+            }
+
+            assertEquals(0, (int) f.exitCodes.get(1));
+            assertEquals(1, (int) f.exitCodes.get(2));
+            assertEquals(0, (int) f.exitCodes.get(3));
+
+            // each process has its own copy of TestProcess, the counter is not shared
+            assertEquals("ok: 1\nchild: ok\n", f.output.get(1));
+            assertTrue(f.output.get(2).startsWith("fail: 1\nchild: fail\njava.lang.RuntimeException: boom"));
+            assertEquals("ok: 1\nchild: ok\n", f.output.get(3));
+
+            assertTrue(hostLog.toString().contains("Unknown command: unknown"));
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+    }
+
+    public static class TestProcess {
+
+        private static final AtomicInteger runs = new AtomicInteger();
+
+        public static void run(Path runnerCfgFile, Path workDir) throws Exception {
+            String name = workDir.getFileName().toString();
+            System.out.println(name + ": " + runs.incrementAndGet());
+
+            // the output of the threads started by the process goes to the same process
+            Thread t = new Thread(() -> System.out.println("child: " + name));
+            t.start();
+            t.join();
+
+            if ("fail".equals(name)) {
+                throw new RuntimeException("boom");
+            }
+        }
+    }
+
+    private static class Frames {
+
+        private final Map<Integer, String> output = new HashMap<>();
+        private final Map<Integer, Integer> exitCodes = new HashMap<>();
+
+        private Frames() {
+        }
+
+        private Frames(byte[] ab) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(ab));
+            try {
+                while (in.available() > 0) {
+                    byte type = in.readByte();
+                    int id = in.readInt();
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+
+                    if (type == ProcessHost.OUTPUT) {
+                        output.merge(id, new String(data), String::concat);
+                    } else if (type == ProcessHost.EXIT) {
+                        exitCodes.put(id, new DataInputStream(new ByteArrayInputStream(data)).readInt());
+                    }
+                }
+            } catch (EOFException e) {
+                // the last frame is incomplete, will be read next time
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.walmartlabs.concord.runtime.v2.runner;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Injector;
+import com.google.inject.multibindings.Multibinder;
+import com.walmartlabs.concord.common.IOUtils;
+import com.walmartlabs.concord.runtime.common.cfg.ApiConfiguration;
+import com.walmartlabs.concord.runtime.common.cfg.RunnerConfiguration;
+import com.walmartlabs.concord.runtime.v2.model.ProcessConfiguration;
+import com.walmartlabs.concord.runtime.v2.runner.checkpoints.CheckpointService;
+import com.walmartlabs.concord.runtime.v2.runner.guice.BaseRunnerModule;
+import com.walmartlabs.concord.runtime.v2.runner.tasks.TaskV2Provider;
+import com.walmartlabs.concord.runtime.v2.sdk.PersistenceService;
+import com.walmartlabs.concord.runtime.v2.sdk.TaskProvider;
+import com.walmartlabs.concord.runtime.v2.sdk.WorkingDirectory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Measures the expression evaluation overhead of a flow with a large {@code withItems} loop.
+ * <p>
+ * Not executed as a part of the build. Run {@link #main(String[])} from the IDE
+ * or using the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WithItemsBenchmark {
+
+    private static final int ITEMS_COUNT = 10_000;
+
+    private static final String FLOW = "flows:\n" +
+            "  default:\n" +
+            "    - call: processItem\n" +
+            "      in:\n" +
+            "        x: \"${item * 2}\"\n" +
+            "        params:\n" +
+            "          name: \"item-${item}\"\n" +
+            "          even: \"${item % 2 == 0}\"\n" +
+            "      withItems: \"${items}\"\n" +
+            "\n" +
+            "  processItem:\n" +
+            "    - if: \"${params.even}\"\n" +
+            "      then:\n" +
+            "        - set:\n" +
+            "            y: \"${x + 1}\"\n" +
+            "      else:\n" +
+            "        - set:\n" +
+            "            y: \"${params.name.length()}\"\n";
+
+    private Path workDir;
+    private ProcessConfiguration processConfiguration;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws Exception {
+        workDir = Files.createTempDirectory("bench");
+        Files.write(workDir.resolve("concord.yml"), FLOW.getBytes());
+
+        List<Integer> items = IntStream.range(0, ITEMS_COUNT).boxed().collect(Collectors.toList());
+        processConfiguration = ProcessConfiguration.builder()
+                .instanceId(UUID.randomUUID())
+                .putArguments("items", items)
+                .build();
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws Exception {
+        IOUtils.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public void withItems() throws Exception {
+        AbstractModule testServices = new AbstractModule() {
+            @Override
+            protected void configure() {
+                install(new BaseRunnerModule());
+
+                bind(CheckpointService.class).toInstance(mock(CheckpointService.class));
+                bind(PersistenceService.class).toInstance(mock(PersistenceService.class));
+                bind(ProcessStatusCallback.class).toInstance(mock(ProcessStatusCallback.class));
+                bind(DefaultTaskVariablesService.class).toProvider(new DefaultTaskVariablesProvider(processConfiguration));
+
+                Multibinder<TaskProvider> taskProviders = Multibinder.newSetBinder(binder(), TaskProvider.class);
+                taskProviders.addBinding().to(TaskV2Provider.class);
+            }
+        };
+
+        RunnerConfiguration runnerCfg = RunnerConfiguration.builder()
+                .agentId(UUID.randomUUID().toString())
+                .api(ApiConfiguration.builder()
+                        .baseUrl("http://localhost:8001")
+                        .build())
+                .build();
+
+        Injector injector = new InjectorFactory(new WorkingDirectory(workDir), runnerCfg, () -> processConfiguration, testServices)
+                .create();
+
+        injector.getInstance(Main.class).execute();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opts = new OptionsBuilder()
+                .include(WithItemsBenchmark.class.getSimpleName())
+                .build();
+
+        // fully qualified to avoid confusion with the runtime's Runner
+        new org.openjdk.jmh.runner.Runner(opts).run();
+    }
+}
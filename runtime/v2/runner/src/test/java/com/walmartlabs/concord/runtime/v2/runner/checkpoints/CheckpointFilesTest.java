@@ -0,0 +1,82 @@
+package com.walmartlabs.concord.runtime.v2.runner.checkpoints;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.common.IOUtils;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+
+public class CheckpointFilesTest {
+
+    @Test
+    public void testChanges() throws Exception {
+        Path baseDir = IOUtils.createTempDir("test");
+        Path dir = Files.createDirectories(baseDir.resolve("a"));
+
+        Files.write(dir.resolve("unchanged"), "1".getBytes());
+        Files.write(dir.resolve("changed"), "2".getBytes());
+        Files.write(dir.resolve("deleted"), "3".getBytes());
+        Files.write(baseDir.resolve("ignored"), "4".getBytes());
+
+        CheckpointFiles prev = CheckpointFiles.scan(baseDir, "a", "b");
+        assertEquals(new HashSet<>(Arrays.asList("a/unchanged", "a/changed", "a/deleted")), prev.all());
+
+        Files.write(dir.resolve("changed"), "22".getBytes());
+        Files.delete(dir.resolve("deleted"));
+        Files.write(dir.resolve("added"), "5".getBytes());
+
+        CheckpointFiles next = CheckpointFiles.scan(baseDir, "a", "b");
+        assertEquals(new HashSet<>(Arrays.asList("a/changed", "a/added")), next.changedSince(prev));
+        assertEquals(Collections.singleton("a/deleted"), next.deletedSince(prev));
+
+        IOUtils.deleteRecursively(baseDir);
+    }
+
+    @Test
+    public void testSymlinks() throws Exception {
+        Path baseDir = IOUtils.createTempDir("test");
+        Path dir = Files.createDirectories(baseDir.resolve("a"));
+
+        Files.write(dir.resolve("target"), "1".getBytes());
+        Files.createSymbolicLink(dir.resolve("link"), dir.resolve("target"));
+        Files.createSymbolicLink(dir.resolve("dangling"), dir.resolve("missing"));
+        Files.createSymbolicLink(dir.resolve("dir-link"), Files.createDirectories(baseDir.resolve("b")));
+        Files.createDirectories(dir.resolve("empty"));
+
+        CheckpointFiles prev = CheckpointFiles.scan(baseDir, "a");
+        assertEquals(new HashSet<>(Arrays.asList("a/target", "a/link")), prev.all());
+
+        // the link's target is changed
+        Files.write(dir.resolve("target"), "2".getBytes());
+
+        CheckpointFiles next = CheckpointFiles.scan(baseDir, "a");
+        assertEquals(new HashSet<>(Arrays.asList("a/target", "a/link")), next.changedSince(prev));
+
+        IOUtils.deleteRecursively(baseDir);
+    }
+}
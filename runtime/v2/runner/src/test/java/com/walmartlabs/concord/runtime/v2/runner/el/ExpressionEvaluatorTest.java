@@ -47,6 +47,18 @@ public class ExpressionEvaluatorTest {
         assertEquals("Hello ${Concord}", str);
     }
 
+    @Test
+    public void testSameExpressionDifferentContexts() {
+        ExpressionEvaluator ee = new DefaultExpressionEvaluator(new TaskProviders());
+
+        // the parsed expression is cached, the results must still depend on the context
+        for (int i = 0; i < 3; i++) {
+            Map<String, Object> vars = Collections.singletonMap("item", i);
+            Object result = ee.eval(global(vars), "${item * 2}", Object.class);
+            assertEquals(2L * i, result);
+        }
+    }
+
     @Test
     public void testStrict() {
         ExpressionEvaluator ee = new DefaultExpressionEvaluator(new TaskProviders());
@@ -84,6 +84,43 @@ public abstract class AbstractDao {
         }
     }
 
+    /**
+     * Returns a stream of the specified column of all rows returned by the query.
+     * The rows are fetched from a DB cursor in batches of {@code fetchSize} as the
+     * stream is consumed. The caller must close the stream.
+     *
+     * @return the stream or {@code null} if the query returned no rows
+     */
+    protected InputStream getDataStream(Function<DSLContext, String> sqlFn, PreparedStatementHandler h, int columnIndex, int fetchSize) {
+        String sql;
+        try (DSLContext create = DSL.using(cfg)) {
+            sql = sqlFn.apply(create);
+        }
+
+        Connection conn = cfg.connectionProvider().acquire(); // NOSONAR
+        PreparedStatement ps = null;
+        try {
+            // PostgreSQL uses cursors only inside transactions
+            conn.setAutoCommit(false);
+
+            ps = conn.prepareStatement(sql);
+            ps.setFetchSize(fetchSize);
+            h.apply(ps);
+
+            InputStream in = ResultSetInputStream.openAll(conn, ps, columnIndex);
+            if (in == null) { // NOSONAR
+                JDBCUtils.safeClose(ps);
+                JDBCUtils.safeClose(conn);
+                return null;
+            }
+            return in;
+        } catch (SQLException e) {
+            JDBCUtils.safeClose(ps);
+            JDBCUtils.safeClose(conn);
+            throw new DataAccessException("Error while opening a stream", e);
+        }
+    }
+
     public interface Tx {
 
         void run(DSLContext tx) throws Exception;
@@ -63,6 +63,10 @@ public final class PgUtils {
         return DSL.condition("{0} @> {1}", field, DSL.value(value));
     }
 
+    public static Field<Integer> lowerRange(Field<Object> field) {
+        return DSL.field("lower({0})", Integer.class, field);
+    }
+
     public static Field<Integer> upperRange(Field<Object> field) {
         return DSL.field("upper({0})", Integer.class, field);
     }
@@ -46,7 +46,28 @@ public class ResultSetInputStream extends InputStream {
             closeSilently(rs);
             throw e;
         }
-        return new ResultSetInputStream(conn, rs, columnIndex);
+        return new ResultSetInputStream(conn, rs, columnIndex, false);
+    }
+
+    /**
+     * Same as {@link #open(Connection, PreparedStatement, int)}, but concatenates
+     * the specified column of all rows in the result set. Rows are read as the
+     * stream is consumed, use {@link PreparedStatement#setFetchSize(int)} to avoid
+     * loading the whole result set into memory.
+     */
+    public static InputStream openAll(Connection conn, PreparedStatement ps, int columnIndex) throws SQLException {
+        ResultSet rs = null; // NOSONAR
+        try {
+            rs = ps.executeQuery(); // NOSONAR
+            if (!rs.next()) {
+                closeSilently(rs);
+                return null;
+            }
+        } catch (SQLException e) {
+            closeSilently(rs);
+            throw e;
+        }
+        return new ResultSetInputStream(conn, rs, columnIndex, true);
     }
 
     private static void closeSilently(AutoCloseable c) {
@@ -64,28 +85,40 @@ public class ResultSetInputStream extends InputStream {
     private final Connection conn;
     private final ResultSet rs;
     private final int columnIndex;
+    private final boolean allRows;
 
     private InputStream delegate;
 
-    private ResultSetInputStream(Connection conn, ResultSet rs, int columnIndex) {
+    private ResultSetInputStream(Connection conn, ResultSet rs, int columnIndex, boolean allRows) {
         this.conn = conn;
         this.rs = rs;
         this.columnIndex = columnIndex;
+        this.allRows = allRows;
     }
 
     @Override
     public int read() throws IOException {
-        return ensureDelegate().read();
+        while (true) {
+            int b = ensureDelegate().read();
+            if (b >= 0 || !nextRow()) {
+                return b;
+            }
+        }
     }
 
     @Override
     public int read(byte[] b) throws IOException {
-        return ensureDelegate().read(b);
+        return read(b, 0, b.length);
     }
 
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
-        return ensureDelegate().read(b, off, len);
+        while (true) {
+            int n = ensureDelegate().read(b, off, len);
+            if (n != -1 || !nextRow()) {
+                return n;
+            }
+        }
     }
 
     @Override
@@ -100,6 +133,10 @@ public class ResultSetInputStream extends InputStream {
 
     @Override
     public synchronized void mark(int readlimit) {
+        if (allRows) {
+            return;
+        }
+
         try {
             ensureDelegate().mark(readlimit);
         } catch (IOException e) {
@@ -109,11 +146,19 @@ public class ResultSetInputStream extends InputStream {
 
     @Override
     public synchronized void reset() throws IOException {
+        if (allRows) {
+            throw new IOException("mark/reset not supported");
+        }
+
         ensureDelegate().reset();
     }
 
     @Override
     public boolean markSupported() {
+        if (allRows) {
+            return false;
+        }
+
         try {
             return ensureDelegate().markSupported();
         } catch (IOException e) {
@@ -132,6 +177,24 @@ public class ResultSetInputStream extends InputStream {
         return delegate;
     }
 
+    private boolean nextRow() throws IOException {
+        if (!allRows) {
+            return false;
+        }
+
+        try {
+            if (!rs.next()) {
+                return false;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Can't fetch the next row", e);
+        }
+
+        closeSilently(delegate);
+        delegate = null;
+        return true;
+    }
+
     @Override
     public void close() throws IOException {
         closeSilently(delegate);
@@ -65,7 +65,7 @@ public abstract class PeriodicTask implements BackgroundTask {
             try {
                 boolean isContinue = performTask();
                 if (!isContinue) {
-                    sleep(interval);
+                    idle(interval);
                 }
             } catch (Exception e) {
                 log.warn("run -> task {} error: {}. Will retry in {}ms...", taskName(), e.getMessage(), errorDelay, e);
@@ -80,6 +80,14 @@ public abstract class PeriodicTask implements BackgroundTask {
 
     protected abstract boolean performTask() throws Exception;
 
+    /**
+     * Called between {@link #performTask()} runs when there's nothing to do.
+     * Subclasses can override it to wake up earlier than {@code interval}.
+     */
+    protected void idle(long interval) {
+        sleep(interval);
+    }
+
     protected static void sleep(long ms) {
         try {
             Thread.sleep(ms);
@@ -104,7 +104,9 @@ public class PrivateKeyProcessor implements PayloadProcessor {
         Path dst = workspace.resolve(PRIVATE_KEY_FILE_NAME);
 
         try {
-            Files.write(dst, keyPair.getPrivateKey(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            // the file can be hard-linked to the repository cache, replace it instead of overwriting
+            Files.deleteIfExists(dst);
+            Files.write(dst, keyPair.getPrivateKey(), StandardOpenOption.CREATE_NEW);
         } catch (IOException e) {
             logManager.error(processKey, "Error while copying a private key: " + dst, e);
             throw new ProcessException(processKey, "Error while copying a private key: " + dst, e);
@@ -28,13 +28,16 @@ import com.walmartlabs.concord.server.jooq.tables.AuditLog;
 import com.walmartlabs.concord.server.jooq.tables.Users;
 import com.walmartlabs.concord.server.org.EntityOwner;
 import com.walmartlabs.concord.server.user.UserType;
+import org.immutables.value.Value;
 import org.jooq.Configuration;
 import org.jooq.JSONB;
 import org.jooq.Record9;
 import org.jooq.SelectOnConditionStep;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.sql.PreparedStatement;
 import java.sql.Timestamp;
 import java.util.List;
 import java.util.Map;
@@ -69,6 +72,49 @@ public class AuditDao extends AbstractDao {
                 .execute());
     }
 
+    /**
+     * Inserts multiple entries using a single JDBC batch.
+     */
+    public void insert(List<PendingEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        tx(tx -> {
+            String sql = tx.insertInto(AUDIT_LOG)
+                    .set(AUDIT_LOG.ENTRY_DATE, (Timestamp) null)
+                    .set(AUDIT_LOG.USER_ID, (UUID) null)
+                    .set(AUDIT_LOG.ENTRY_OBJECT, (String) null)
+                    .set(AUDIT_LOG.ENTRY_ACTION, (String) null)
+                    .set(AUDIT_LOG.ENTRY_DETAILS, (JSONB) null)
+                    .getSQL();
+
+            tx.connection(conn -> {
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    for (PendingEntry e : entries) {
+                        ps.setTimestamp(1, e.entryDate());
+                        ps.setObject(2, e.userId());
+                        ps.setString(3, e.object().toString());
+                        ps.setString(4, e.action().toString());
+                        ps.setString(5, e.details().toString());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            });
+        });
+    }
+
+    public PendingEntry toPendingEntry(UUID userId, AuditObject object, AuditAction action, Object details) {
+        return ImmutablePendingEntry.builder()
+                .entryDate(new Timestamp(System.currentTimeMillis()))
+                .userId(userId)
+                .object(object)
+                .action(action)
+                .details(objectMapper.toJSONB(details))
+                .build();
+    }
+
     public List<AuditLogEntry> list(AuditLogFilter filter) {
         return txResult(tx -> {
             AuditLog l = AUDIT_LOG.as("l");
@@ -151,4 +197,22 @@ public class AuditDao extends AbstractDao {
 
         return b.build();
     }
+
+    @Value.Immutable
+    public interface PendingEntry {
+
+        Timestamp entryDate();
+
+        @Nullable
+        UUID userId();
+
+        AuditObject object();
+
+        AuditAction action();
+
+        /**
+         * Serialized when the entry is created, the original details map can be modified afterwards.
+         */
+        JSONB details();
+    }
 }
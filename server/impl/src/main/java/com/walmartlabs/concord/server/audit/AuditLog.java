@@ -35,6 +35,7 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -60,12 +61,14 @@ public class AuditLog {
 
     private final AuditConfiguration cfg;
     private final AuditDao auditDao;
+    private final AuditLogWriter writer;
     private final Listeners listeners;
 
     @Inject
-    public AuditLog(AuditConfiguration cfg, AuditDao auditDao, Listeners listeners) {
+    public AuditLog(AuditConfiguration cfg, AuditDao auditDao, AuditLogWriter writer, Listeners listeners) {
         this.cfg = cfg;
         this.auditDao = auditDao;
+        this.writer = writer;
         this.listeners = listeners;
     }
 
@@ -170,12 +173,24 @@ public class AuditLog {
                 details.put("changes", changes);
             }
 
-            auditDao.insert(userId, object, action, details);
+            if (isAsync(action)) {
+                // if the queue is full, write the entry synchronously
+                if (!writer.offer(auditDao.toPendingEntry(userId, object, action, details))) {
+                    auditDao.insert(userId, object, action, details);
+                }
+            } else {
+                auditDao.insert(userId, object, action, details);
+            }
 
             listeners.onAuditEvent(new AuditEvent(userId, object.name(), action.name(), details));
         }
     }
 
+    private boolean isAsync(AuditAction action) {
+        List<String> actions = cfg.getAsyncActions();
+        return actions != null && actions.contains(action.name());
+    }
+
     public static class ActionSourceParameters {
 
         private final ActionSource source;
@@ -0,0 +1,156 @@
+package com.walmartlabs.concord.server.audit;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.PeriodicTask;
+import com.walmartlabs.concord.server.cfg.AuditConfiguration;
+import com.walmartlabs.concord.server.sdk.metrics.InjectCounter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.walmartlabs.concord.server.audit.AuditDao.PendingEntry;
+
+/**
+ * Writes audit log entries in the background. Entries are accumulated in
+ * a bounded in-memory queue and inserted in batches.
+ * <p>
+ * When the queue is full, {@link #offer(PendingEntry)} returns {@code false}
+ * and the caller is expected to write the entry synchronously.
+ */
+@Named
+@Singleton
+public class AuditLogWriter extends PeriodicTask {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditLogWriter.class);
+
+    private static final long ERROR_DELAY = TimeUnit.SECONDS.toMillis(10);
+
+    private final AuditDao auditDao;
+    private final int batchSize;
+    private final BlockingQueue<PendingEntry> queue;
+    private final Histogram batchInsertHistogram;
+
+    @InjectCounter
+    private final Counter auditLogQueueOverflows;
+
+    @Inject
+    public AuditLogWriter(AuditConfiguration cfg,
+                          AuditDao auditDao,
+                          MetricRegistry metricRegistry,
+                          Counter auditLogQueueOverflows) {
+
+        super(cfg.getFlushInterval(), ERROR_DELAY);
+
+        this.auditDao = auditDao;
+        this.batchSize = cfg.getFlushBatchSize();
+        this.queue = new ArrayBlockingQueue<>(cfg.getQueueCapacity());
+        this.auditLogQueueOverflows = auditLogQueueOverflows;
+
+        this.batchInsertHistogram = metricRegistry.histogram("audit-log-batch-insert");
+        metricRegistry.register("audit-log-queue-size", (Gauge<Integer>) queue::size);
+    }
+
+    /**
+     * @return {@code false} if the queue is full and the entry wasn't accepted
+     */
+    public boolean offer(PendingEntry entry) {
+        if (queue.offer(entry)) {
+            return true;
+        }
+
+        auditLogQueueOverflows.inc();
+        return false;
+    }
+
+    /**
+     * Writes all queued entries to the DB.
+     */
+    public void flush() {
+        while (writeBatch()) {
+            // continue
+        }
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("stop -> error while writing audit log entries: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    protected boolean performTask() {
+        // keep going while there's a backlog
+        return writeBatch();
+    }
+
+    /**
+     * @return {@code true} if there might be more entries in the queue
+     */
+    private boolean writeBatch() {
+        List<PendingEntry> batch = new ArrayList<>(batchSize);
+        queue.drainTo(batch, batchSize);
+        if (batch.isEmpty()) {
+            return false;
+        }
+
+        try {
+            auditDao.insert(batch);
+        } catch (Exception e) {
+            // put the entries back, they will be retried after the error delay
+            int lost = 0;
+            for (PendingEntry entry : batch) {
+                if (!queue.offer(entry)) {
+                    lost++;
+                }
+            }
+
+            if (lost > 0) {
+                auditLogQueueOverflows.inc(lost);
+                log.error("writeBatch -> error while inserting audit log entries, {} entries are lost: {}", lost, e.getMessage());
+            }
+
+            throw e;
+        }
+
+        batchInsertHistogram.update(batch.size());
+        log.debug("writeBatch -> {} entries", batch.size());
+
+        return batch.size() == batchSize;
+    }
+}
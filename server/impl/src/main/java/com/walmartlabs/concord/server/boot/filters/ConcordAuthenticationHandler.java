@@ -23,6 +23,7 @@ package com.walmartlabs.concord.server.boot.filters;
 import com.walmartlabs.concord.sdk.Constants;
 import com.walmartlabs.concord.server.cfg.SecretStoreConfiguration;
 import com.walmartlabs.concord.server.org.secret.SecretUtils;
+import com.walmartlabs.concord.server.security.AuthenticationCache;
 import com.walmartlabs.concord.server.security.apikey.ApiKey;
 import com.walmartlabs.concord.server.security.apikey.ApiKeyDao;
 import com.walmartlabs.concord.server.security.apikey.ApiKeyEntry;
@@ -57,11 +58,13 @@ public class ConcordAuthenticationHandler implements AuthenticationHandler {
     private static final String BEARER_AUTH_PREFIX = "Bearer ";
 
     private final ApiKeyDao apiKeyDao;
+    private final AuthenticationCache authCache;
     private final SecretStoreConfiguration secretCfg;
 
     @Inject
-    public ConcordAuthenticationHandler(ApiKeyDao apiKeyDao, SecretStoreConfiguration secretCfg) {
+    public ConcordAuthenticationHandler(ApiKeyDao apiKeyDao, AuthenticationCache authCache, SecretStoreConfiguration secretCfg) {
         this.apiKeyDao = apiKeyDao;
+        this.authCache = authCache;
         this.secretCfg = secretCfg;
     }
 
@@ -101,7 +104,8 @@ public class ConcordAuthenticationHandler implements AuthenticationHandler {
 
             validateApiKey(h);
 
-            ApiKeyEntry apiKey = apiKeyDao.find(h);
+            String key = h;
+            ApiKeyEntry apiKey = authCache.getApiKey(key, () -> apiKeyDao.find(key));
             if (apiKey == null) {
                 return new UsernamePasswordToken();
             }
@@ -20,9 +20,25 @@ package com.walmartlabs.concord.server.boot.filters;
  * =====
  */
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.RateLimiter;
+import com.walmartlabs.concord.sdk.Constants;
 import com.walmartlabs.concord.server.cfg.QosConfiguration;
+import com.walmartlabs.concord.server.cfg.SecretStoreConfiguration;
+import com.walmartlabs.concord.server.org.project.ProjectDao;
+import com.walmartlabs.concord.server.org.project.ProjectEntry;
+import com.walmartlabs.concord.server.org.secret.SecretUtils;
+import com.walmartlabs.concord.server.process.PartialProcessKey;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
 import org.apache.shiro.web.util.WebUtils;
 import org.immutables.value.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -32,66 +48,145 @@ import javax.servlet.*;
 import javax.servlet.annotation.WebFilter;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
+import javax.ws.rs.core.HttpHeaders;
 import java.io.IOException;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.Semaphore;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * copy from {@link org.eclipse.jetty.servlets.QoSFilter} but with custom error code
+ * Based on {@link org.eclipse.jetty.servlets.QoSFilter} but with custom error code
+ * and per-tenant fair queueing.
+ * <p>
+ * Requests are grouped by tenant (project, user or caller's credentials, see {@link #getTenantKey(ServletRequest)}).
+ * Each tenant can have a concurrency limit, a rate limit and a weight. When the global limit is reached,
+ * requests are suspended and resumed using deficit round-robin across tenants, so a single tenant
+ * can't starve the others.
+ * <p>
+ * Idle tenants are removed after {@link #TENANT_IDLE_TIMEOUT_MS}. Only the tenants listed in
+ * {@code qos.tenantWeights} get their own metrics, the rest share the {@code qos-other-*} metrics.
  */
 @Named
 @Singleton
 @WebFilter(value = {"/api/v1/process/*", "/api/v1/org/*"})
 public class QoSFilter implements Filter {
 
+    private static final Logger log = LoggerFactory.getLogger(QoSFilter.class);
+
     private static final int TOO_MANY_REQUESTS_CODE = 429;
 
-    private static final int DEFAULT_MAX_PRIORITY = 2;
+    private static final int MAX_TENANTS = 10000;
+    private static final String OTHER_TENANT = "other";
+
+    private static final long TENANT_IDLE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final long TENANT_SWEEP_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final long TENANT_SWEEP_MIN_INTERVAL_MS = TimeUnit.SECONDS.toMillis(1);
 
-    // currently we only care about `POST /api/v1/process`
+    // currently we only care about `POST /api/v1/process`, `POST /api/v1/process/{id}/fork`
     // and `GET /api/v1/org/{orgName}/project/{projectName}/repo/{repoName}/start/{entryPoint}`
     // requests (i.e. process start requests)
+    private static final Pattern PROJECT_START_PATTERN = Pattern.compile("^/api/v1/org/([^/]*)/project/([^/]*)/repo/[^/]*/start/[^/]+$");
+
     private static UrlPattern[] PATTERNS = {
-            UrlPattern.prefix("/api/v1/process", "POST"),
-            UrlPattern.regexp("^/api/v1/org/[^/]*/project/[^/]*/repo/[^/]*/start/[^/]+$", "GET")
+            UrlPattern.regexp("^/api/v1/process/?$", "POST"),
+            UrlPattern.regexp("^/api/v1/process/[^/]+/fork$", "POST"),
+            UrlPattern.of(PROJECT_START_PATTERN, "GET")
     };
 
     private final String _suspended = "QoSFilter@" + Integer.toHexString(hashCode()) + ".SUSPENDED";
     private final String _resumed = "QoSFilter@" + Integer.toHexString(hashCode()) + ".RESUMED";
+    private final String _tenant = "QoSFilter@" + Integer.toHexString(hashCode()) + ".TENANT";
+    private final String _suspendedAt = "QoSFilter@" + Integer.toHexString(hashCode()) + ".SUSPENDED_AT";
 
     private final long waitMs;
     private final long suspendMs;
     private final int maxRequests;
-
-    private final Queue<AsyncContext>[] queues;
-    private final AsyncListener[] listeners;
-    private final Semaphore passes;
+    private final int tenantMaxRequests;
+    private final double tenantRate;
+    private final Map<String, Object> tenantWeights;
+
+    private final SecretStoreConfiguration secretCfg;
+    private final ProcessQueueDao queueDao;
+    private final ProjectDao projectDao;
+    private final AsyncListener listener;
+
+    /**
+     * Tenant keys of running processes by the process' instance ID.
+     * Used for requests made with process session tokens.
+     */
+    private final Cache<UUID, String> processTenants = CacheBuilder.newBuilder()
+            .maximumSize(MAX_TENANTS)
+            .expireAfterWrite(TENANT_IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .build();
+
+    private final Timer otherWaitTime;
+    private final Meter otherRejects;
+    private final MetricRegistry metricRegistry;
+
+    /**
+     * Used to track the tenants' idle time.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Guards all fields below.
+     */
+    private final Object lock = new Object();
+    private final Map<String, Tenant> tenants = new HashMap<>();
+
+    /**
+     * Tenants with suspended requests, in the round-robin order.
+     */
+    private final Deque<Tenant> rotation = new ArrayDeque<>();
+
+    private int active;
+    private long lastSweep;
 
     @Inject
-    public QoSFilter(QosConfiguration qosConfiguration) {
+    public QoSFilter(QosConfiguration qosConfiguration,
+                     SecretStoreConfiguration secretCfg,
+                     ProcessQueueDao queueDao,
+                     ProjectDao projectDao,
+                     MetricRegistry metricRegistry) {
+
+        this(qosConfiguration, secretCfg, queueDao, projectDao, metricRegistry, System::currentTimeMillis);
+    }
+
+    QoSFilter(QosConfiguration qosConfiguration,
+              SecretStoreConfiguration secretCfg,
+              ProcessQueueDao queueDao,
+              ProjectDao projectDao,
+              MetricRegistry metricRegistry,
+              LongSupplier clock) {
+
+        this.clock = clock;
+        this.lastSweep = clock.getAsLong();
+
         this.maxRequests = qosConfiguration.getMaxRequests();
         this.waitMs = qosConfiguration.getMaxWaitMs();
         this.suspendMs = qosConfiguration.getSuspendMs();
-
-        this.queues = new AsyncContextQueue[DEFAULT_MAX_PRIORITY + 1];
-        this.listeners = new AsyncListener[this.queues.length];
-        this.passes = new Semaphore(this.maxRequests, true);
+        this.tenantMaxRequests = qosConfiguration.getTenantMaxRequests();
+        this.tenantRate = qosConfiguration.getTenantRate();
+        this.tenantWeights = qosConfiguration.getTenantWeights() != null ? qosConfiguration.getTenantWeights() : Collections.emptyMap();
+
+        this.secretCfg = secretCfg;
+        this.queueDao = queueDao;
+        this.projectDao = projectDao;
+        this.listener = new QoSAsyncListener();
+
+        this.metricRegistry = metricRegistry;
+        this.otherWaitTime = metricRegistry.timer(metricName(OTHER_TENANT) + "-wait-time");
+        this.otherRejects = metricRegistry.meter(metricName(OTHER_TENANT) + "-rejects");
     }
 
     @Override
     public void init(FilterConfig filterConfig) {
-        if (isDisabled()) {
-            return;
-        }
-
-        for (int p = 0; p < this.queues.length; ++p) {
-            this.queues[p] = new AsyncContextQueue();
-            this.listeners[p] = new QoSAsyncListener(p);
-        }
+        // do nothing
     }
 
     @Override
@@ -141,38 +236,55 @@ public class QoSFilter implements Filter {
     }
 
     private void filter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        Tenant tenant = null;
         boolean accepted = false;
         try {
             Boolean suspended = (Boolean) request.getAttribute(_suspended);
             if (suspended == null) {
-                accepted = passes.tryAcquire(waitMs, TimeUnit.MILLISECONDS);
+                tenant = getTenant(getTenantKey(request));
+                request.setAttribute(_tenant, tenant);
+
+                if (!tenant.tryAcquireRate()) {
+                    tenant.rejects.mark();
+                    ((HttpServletResponse) response).sendError(TOO_MANY_REQUESTS_CODE);
+                    return;
+                }
+
+                accepted = tryAcquire(tenant, waitMs);
                 if (accepted) {
                     request.setAttribute(_suspended, Boolean.FALSE);
                 } else {
                     request.setAttribute(_suspended, Boolean.TRUE);
-                    int priority = getPriority(request);
+                    request.setAttribute(_suspendedAt, System.nanoTime());
                     AsyncContext asyncContext = request.startAsync();
                     if (suspendMs > 0) {
                         asyncContext.setTimeout(suspendMs);
                     }
-                    asyncContext.addListener(listeners[priority]);
-                    queues[priority].add(asyncContext);
+                    asyncContext.addListener(listener);
+                    suspend(tenant, asyncContext);
                     return;
                 }
             } else {
+                tenant = (Tenant) request.getAttribute(_tenant);
+
                 if (suspended) {
                     request.setAttribute(_suspended, Boolean.FALSE);
                     Boolean resumed = (Boolean) request.getAttribute(_resumed);
                     if (Boolean.TRUE.equals(resumed)) {
-                        passes.acquire();
+                        // the slot was reserved when the request was resumed
                         accepted = true;
                     } else {
                         // Timeout! try 1 more time.
-                        accepted = passes.tryAcquire(waitMs, TimeUnit.MILLISECONDS);
+                        accepted = tryAcquire(tenant, waitMs);
+                    }
+
+                    Long suspendedAt = (Long) request.getAttribute(_suspendedAt);
+                    if (suspendedAt != null) {
+                        tenant.waitTime.update(System.nanoTime() - suspendedAt, TimeUnit.NANOSECONDS);
                     }
                 } else {
                     // Pass through resume of previously accepted request.
-                    passes.acquire();
+                    acquire(tenant);
                     accepted = true;
                 }
             }
@@ -180,6 +292,7 @@ public class QoSFilter implements Filter {
             if (accepted) {
                 chain.doFilter(request, response);
             } else {
+                tenant.rejects.mark();
                 ((HttpServletResponse) response).sendError(TOO_MANY_REQUESTS_CODE);
             }
         } catch (InterruptedException e) {
@@ -187,46 +300,310 @@ public class QoSFilter implements Filter {
             Thread.currentThread().interrupt();
         } finally {
             if (accepted) {
-                for (int p = queues.length - 1; p >= 0; --p) {
-                    AsyncContext asyncContext = queues[p].poll();
-                    if (asyncContext != null) {
-                        ServletRequest candidate = asyncContext.getRequest();
-                        Boolean suspended = (Boolean) candidate.getAttribute(_suspended);
-                        if (Boolean.TRUE.equals(suspended)) {
-                            candidate.setAttribute(_resumed, Boolean.TRUE);
-                            asyncContext.dispatch();
-                            break;
-                        }
-                    }
+                AsyncContext next = release(tenant);
+                if (next != null) {
+                    next.dispatch();
                 }
-                passes.release();
             }
         }
     }
 
-    private int getPriority(ServletRequest request) {
-        HttpServletRequest baseRequest = (HttpServletRequest) request;
-        if (baseRequest.getUserPrincipal() != null) {
-            return 2;
-        } else {
-            HttpSession session = baseRequest.getSession(false);
-            if (session != null && !session.isNew())
-                return 1;
-            else
-                return 0;
+    private Tenant getTenant(String key) {
+        synchronized (lock) {
+            long now = clock.getAsLong();
+
+            boolean full = tenants.size() >= MAX_TENANTS && !tenants.containsKey(key);
+            if (now - lastSweep >= TENANT_SWEEP_INTERVAL_MS || (full && now - lastSweep >= TENANT_SWEEP_MIN_INTERVAL_MS)) {
+                removeIdleTenants(now);
+                full = tenants.size() >= MAX_TENANTS && !tenants.containsKey(key);
+            }
+
+            if (full) {
+                // too many distinct callers, put the rest into a shared bucket
+                key = OTHER_TENANT;
+            }
+
+            Tenant t = tenants.computeIfAbsent(key, this::createTenant);
+            t.lastAccess = now;
+            return t;
         }
     }
 
-    private static class AsyncContextQueue extends ConcurrentLinkedQueue<AsyncContext> {
+    /**
+     * @return the keys of the currently known tenants. Used in tests.
+     */
+    Set<String> getTenantKeys() {
+        synchronized (lock) {
+            return new HashSet<>(tenants.keySet());
+        }
     }
 
-    private class QoSAsyncListener implements AsyncListener {
+    private Tenant createTenant(String key) {
+        if (tenantWeights.containsKey(key)) {
+            String name = metricName(key);
+            return new Tenant(getWeight(key), tenantRate, metricRegistry.timer(name + "-wait-time"), metricRegistry.meter(name + "-rejects"));
+        }
+        return new Tenant(getWeight(key), tenantRate, otherWaitTime, otherRejects);
+    }
+
+    /**
+     * Removes the tenants without active or suspended requests that weren't used recently.
+     * Must be called while holding the lock.
+     */
+    private void removeIdleTenants(long now) {
+        lastSweep = now;
+        tenants.values().removeIf(t -> t.active == 0 && t.waiting.isEmpty() && now - t.lastAccess >= TENANT_IDLE_TIMEOUT_MS);
+    }
+
+    private int getWeight(String key) {
+        Object v = tenantWeights.get(key);
+        if (v instanceof Number) {
+            return Math.max(1, ((Number) v).intValue());
+        }
+        return 1;
+    }
+
+    private boolean tryAcquire(Tenant tenant, long waitMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + waitMs;
+        synchronized (lock) {
+            while (!canAcquire(tenant)) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    return false;
+                }
+                lock.wait(left);
+            }
+
+            reserve(tenant);
+            return true;
+        }
+    }
+
+    private void acquire(Tenant tenant) throws InterruptedException {
+        synchronized (lock) {
+            while (!canAcquire(tenant)) {
+                lock.wait();
+            }
+
+            reserve(tenant);
+        }
+    }
+
+    private boolean canAcquire(Tenant tenant) {
+        // don't overtake the tenant's own suspended requests
+        return active < maxRequests && tenant.hasCapacity(tenantMaxRequests) && tenant.waiting.isEmpty();
+    }
+
+    private void reserve(Tenant tenant) {
+        active++;
+        tenant.active++;
+    }
+
+    private void suspend(Tenant tenant, AsyncContext asyncContext) {
+        AsyncContext next = null;
+        synchronized (lock) {
+            if (tenant.waiting.isEmpty()) {
+                rotation.addLast(tenant);
+            }
+            tenant.waiting.addLast(asyncContext);
+
+            // the capacity might've been released while the request was being suspended
+            if (active < maxRequests) {
+                next = poll();
+            }
+        }
+
+        if (next != null) {
+            next.dispatch();
+        }
+    }
+
+    /**
+     * Releases the slot and, if possible, reserves it for the next suspended request.
+     *
+     * @return the suspended request to resume or {@code null}
+     */
+    private AsyncContext release(Tenant tenant) {
+        synchronized (lock) {
+            active--;
+            tenant.active--;
 
-        private final int priority;
+            AsyncContext next = poll();
 
-        QoSAsyncListener(int priority) {
-            this.priority = priority;
+            lock.notifyAll();
+            return next;
         }
+    }
+
+    /**
+     * Picks the next suspended request using deficit round-robin.
+     * Each request costs one unit, each visit adds the tenant's weight to its deficit.
+     * Must be called while holding the lock.
+     */
+    private AsyncContext poll() {
+        int n = rotation.size();
+        for (int i = 0; i < n; i++) {
+            Tenant t = rotation.pollFirst();
+
+            if (t.waiting.isEmpty()) {
+                t.deficit = 0;
+                continue;
+            }
+
+            if (!t.hasCapacity(tenantMaxRequests)) {
+                rotation.addLast(t);
+                continue;
+            }
+
+            if (t.deficit <= 0) {
+                t.deficit += t.weight;
+            }
+
+            AsyncContext asyncContext = t.waiting.pollFirst();
+            t.deficit--;
+
+            if (t.waiting.isEmpty()) {
+                t.deficit = 0;
+            } else if (t.deficit > 0) {
+                // the tenant can use the rest of its quantum
+                rotation.addFirst(t);
+            } else {
+                rotation.addLast(t);
+            }
+
+            reserve(t);
+            asyncContext.getRequest().setAttribute(_resumed, Boolean.TRUE);
+            return asyncContext;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return {@code true} if the request was still waiting and was removed from the queue
+     */
+    private boolean remove(Tenant tenant, AsyncContext asyncContext) {
+        synchronized (lock) {
+            boolean removed = tenant.waiting.remove(asyncContext);
+            if (removed && tenant.waiting.isEmpty()) {
+                rotation.remove(tenant);
+                tenant.deficit = 0;
+            }
+            return removed;
+        }
+    }
+
+    /**
+     * Determines the tenant of the request: the project for project start requests,
+     * the process' project for requests made with a process session token (e.g. forks),
+     * the current user if the request is already authenticated, the caller's credentials or
+     * the caller's address otherwise.
+     */
+    private String getTenantKey(ServletRequest request) {
+        HttpServletRequest req = WebUtils.toHttp(request);
+
+        Matcher m = PROJECT_START_PATTERN.matcher(req.getRequestURI());
+        if (m.matches()) {
+            return projectKey(m.group(1), m.group(2));
+        }
+
+        String sessionToken = req.getHeader(Constants.Headers.SESSION_TOKEN);
+        if (sessionToken != null) {
+            String key = getProcessTenantKey(sessionToken);
+            if (key != null) {
+                return key;
+            }
+        }
+
+        Principal p = req.getUserPrincipal();
+        if (p != null) {
+            return "user:" + p.getName();
+        }
+
+        String auth = req.getHeader(HttpHeaders.AUTHORIZATION);
+        if (auth != null) {
+            // don't keep the credentials in memory
+            return "auth:" + Hashing.sha256().hashString(auth, StandardCharsets.UTF_8).toString().substring(0, 16);
+        }
+
+        return "addr:" + req.getRemoteAddr();
+    }
+
+    /**
+     * Returns the tenant key of the process' project (or the process' initiator
+     * if the process doesn't belong to a project) or {@code null} if the token
+     * is invalid or the process doesn't exist.
+     */
+    private String getProcessTenantKey(String sessionToken) {
+        UUID instanceId;
+        try {
+            byte[] ab = SecretUtils.decrypt(Base64.getDecoder().decode(sessionToken), secretCfg.getServerPwd(), secretCfg.getSecretStoreSalt());
+            instanceId = UUID.fromString(new String(ab));
+        } catch (Exception e) {
+            // invalid tokens are rejected later by the authentication filter
+            return null;
+        }
+
+        try {
+            String key = processTenants.get(instanceId, () -> {
+                ProcessQueueDao.ProjectIdAndInitiator ids = queueDao.getProjectIdAndInitiator(PartialProcessKey.from(instanceId));
+                if (ids == null) {
+                    return "";
+                }
+
+                if (ids.getProjectId() != null) {
+                    ProjectEntry p = projectDao.get(ids.getProjectId());
+                    if (p != null) {
+                        return projectKey(p.getOrgName(), p.getName());
+                    }
+                }
+
+                return ids.getInitiatorId() != null ? "initiator:" + ids.getInitiatorId() : "";
+            });
+            return key.isEmpty() ? null : key;
+        } catch (ExecutionException e) {
+            log.warn("getProcessTenantKey ['{}'] -> error: {}", instanceId, e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    private static String projectKey(String orgName, String projectName) {
+        return "project:" + orgName + "/" + projectName;
+    }
+
+    private static String metricName(String key) {
+        return "qos-" + key.replaceAll("[^A-Za-z0-9_\\-:/]", "_");
+    }
+
+    private static class Tenant {
+
+        private final int weight;
+        private final RateLimiter rateLimiter;
+        private final Timer waitTime;
+        private final Meter rejects;
+
+        private final Deque<AsyncContext> waiting = new ArrayDeque<>();
+        private int active;
+        private int deficit;
+        private long lastAccess;
+
+        private Tenant(int weight, double rate, Timer waitTime, Meter rejects) {
+            this.weight = weight;
+            this.rateLimiter = rate > 0 ? RateLimiter.create(rate) : null;
+            this.waitTime = waitTime;
+            this.rejects = rejects;
+        }
+
+        private boolean hasCapacity(int maxRequests) {
+            return maxRequests <= 0 || active < maxRequests;
+        }
+
+        private boolean tryAcquireRate() {
+            return rateLimiter == null || rateLimiter.tryAcquire();
+        }
+    }
+
+    private class QoSAsyncListener implements AsyncListener {
 
         @Override
         public void onStartAsync(AsyncEvent event) {
@@ -241,8 +618,10 @@ public class QoSFilter implements Filter {
             // Remove before it's redispatched, so it won't be
             // redispatched again at the end of the filtering.
             AsyncContext asyncContext = event.getAsyncContext();
-            queues[priority].remove(asyncContext);
-            asyncContext.dispatch();
+            Tenant tenant = (Tenant) asyncContext.getRequest().getAttribute(_tenant);
+            if (remove(tenant, asyncContext)) {
+                asyncContext.dispatch();
+            }
         }
 
         @Override
@@ -269,8 +648,12 @@ public class QoSFilter implements Filter {
         }
 
         static UrlPattern regexp(String regexp, String method) {
+            return of(Pattern.compile(regexp), method);
+        }
+
+        static UrlPattern of(Pattern regexp, String method) {
             return ImmutableUrlPattern.builder()
-                    .regexp(Pattern.compile(regexp))
+                    .regexp(regexp)
                     .method(method)
                     .build();
         }
@@ -26,6 +26,7 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import java.io.Serializable;
+import java.util.List;
 
 @Named
 @Singleton
@@ -43,6 +44,22 @@ public class AuditConfiguration implements Serializable {
     @Config("audit.maxLogAge")
     private long maxLogAge;
 
+    @Inject
+    @Config("audit.asyncActions")
+    private List<String> asyncActions;
+
+    @Inject
+    @Config("audit.queueCapacity")
+    private int queueCapacity;
+
+    @Inject
+    @Config("audit.flushInterval")
+    private long flushInterval;
+
+    @Inject
+    @Config("audit.flushBatchSize")
+    private int flushBatchSize;
+
     public boolean isEnabled() {
         return enabled;
     }
@@ -54,4 +71,20 @@ public class AuditConfiguration implements Serializable {
     public long getMaxLogAge() {
         return maxLogAge;
     }
+
+    public List<String> getAsyncActions() {
+        return asyncActions;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    public int getFlushBatchSize() {
+        return flushBatchSize;
+    }
 }
@@ -42,10 +42,30 @@ public class EnqueueWorkersConfiguration {
     @Config("queue.enqueueBatchEnabled")
     private boolean batchEnabled;
 
+    @Inject
+    @Config("queue.enqueueMaxBatchSize")
+    private int maxBatchSize;
+
     @Inject
     @Config("queue.enqueuePollInterval")
     private long interval;
 
+    @Inject
+    @Config("queue.enqueueRepositoryAffinity.enabled")
+    private boolean repositoryAffinityEnabled;
+
+    @Inject
+    @Config("queue.enqueueRepositoryAffinity.heartbeatInterval")
+    private long heartbeatInterval;
+
+    @Inject
+    @Config("queue.enqueueRepositoryAffinity.nodeTtl")
+    private String nodeTtl;
+
+    @Inject
+    @Config("queue.enqueueRepositoryAffinity.maxWait")
+    private String maxWait;
+
     public int getWorkersCount() {
         return workersCount;
     }
@@ -61,4 +81,24 @@ public class EnqueueWorkersConfiguration {
     public int getBatchSize() {
         return batchSize;
     }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public boolean isRepositoryAffinityEnabled() {
+        return repositoryAffinityEnabled;
+    }
+
+    public long getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public String getNodeTtl() {
+        return nodeTtl;
+    }
+
+    public String getMaxWait() {
+        return maxWait;
+    }
 }
@@ -61,9 +61,25 @@ public class ProcessConfiguration implements Serializable {
     @Config("process.checkpointCleanup")
     private boolean checkpointCleanup;
 
+    @Inject
+    @Config("process.cleanupBatchSize")
+    private int cleanupBatchSize;
+
+    @Inject
+    @Config("process.cleanupBatchDelay")
+    private long cleanupBatchDelay;
+
+    @Inject
+    @Config("process.cleanupDropPartitions")
+    private boolean cleanupDropPartitions;
+
     @Inject
     @Config("process.maxStateAge")
     private long maxStateAge;
+    @Inject
+    @Config("process.stateBlobGcGracePeriod")
+    private String stateBlobGcGracePeriod;
+
     @Inject
     @Config("process.secureFiles")
     private List<String> secureFiles;
@@ -88,6 +104,14 @@ public class ProcessConfiguration implements Serializable {
     @Config("process.checkLogPermissions")
     private boolean checkLogPermissions;
 
+    @Inject
+    @Config("process.heartbeatFlushInterval")
+    private long heartbeatFlushInterval;
+
+    @Inject
+    @Config("process.checkpointMaxChainLength")
+    private int checkpointMaxChainLength;
+
     private Instant newLogsActivationDate;
 
     @Inject
@@ -98,8 +122,13 @@ public class ProcessConfiguration implements Serializable {
     }
 
     public ProcessConfiguration(long maxStateAge, List<String> secureFiles) {
+        this(maxStateAge, secureFiles, "1 hour");
+    }
+
+    public ProcessConfiguration(long maxStateAge, List<String> secureFiles, String stateBlobGcGracePeriod) {
         this.maxStateAge = maxStateAge;
         this.secureFiles = secureFiles;
+        this.stateBlobGcGracePeriod = stateBlobGcGracePeriod;
     }
 
     public long getCleanupInterval() {
@@ -126,10 +155,26 @@ public class ProcessConfiguration implements Serializable {
         return checkpointCleanup;
     }
 
+    public int getCleanupBatchSize() {
+        return cleanupBatchSize;
+    }
+
+    public long getCleanupBatchDelay() {
+        return cleanupBatchDelay;
+    }
+
+    public boolean isCleanupDropPartitions() {
+        return cleanupDropPartitions;
+    }
+
     public long getMaxStateAge() {
         return maxStateAge;
     }
 
+    public String getStateBlobGcGracePeriod() {
+        return stateBlobGcGracePeriod;
+    }
+
     public List<String> getSecureFiles() {
         return secureFiles;
     }
@@ -146,6 +191,14 @@ public class ProcessConfiguration implements Serializable {
         return signingKeyPath;
     }
 
+    public long getHeartbeatFlushInterval() {
+        return heartbeatFlushInterval;
+    }
+
+    public int getCheckpointMaxChainLength() {
+        return checkpointMaxChainLength;
+    }
+
     public int getLogSizeLimit() {
         return logSizeLimit;
     }
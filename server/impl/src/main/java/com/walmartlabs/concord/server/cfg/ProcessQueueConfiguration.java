@@ -39,6 +39,14 @@ public class ProcessQueueConfiguration implements Serializable {
     @Config("queue.dispatcher.batchSize")
     private int dispatcherBatchSize;
 
+    @Inject
+    @Config("queue.dispatcher.maxProcessesPerRequest")
+    private int dispatcherMaxProcessesPerRequest;
+
+    @Inject
+    @Config("queue.dispatcher.runningProcessCacheReloadInterval")
+    private long runningProcessCacheReloadInterval;
+
     public long getDispatcherPollDelay() {
         return dispatcherPollDelay;
     }
@@ -46,4 +54,12 @@ public class ProcessQueueConfiguration implements Serializable {
     public int getDispatcherBatchSize() {
         return dispatcherBatchSize;
     }
+
+    public int getDispatcherMaxProcessesPerRequest() {
+        return dispatcherMaxProcessesPerRequest;
+    }
+
+    public long getRunningProcessCacheReloadInterval() {
+        return runningProcessCacheReloadInterval;
+    }
 }
@@ -22,8 +22,10 @@ package com.walmartlabs.concord.server.cfg;
 
 import com.walmartlabs.ollie.config.Config;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.io.Serializable;
+import java.util.Map;
 
 public class QosConfiguration implements Serializable {
 
@@ -39,6 +41,19 @@ public class QosConfiguration implements Serializable {
     @Config("qos.suspendMs")
     public int suspendMs;
 
+    @Inject
+    @Config("qos.tenantMaxRequests")
+    public int tenantMaxRequests;
+
+    @Inject
+    @Config("qos.tenantRate")
+    public double tenantRate;
+
+    @Inject
+    @Config("qos.tenantWeights")
+    @Nullable
+    public Map<String, Object> tenantWeights;
+
     public int getMaxRequests() {
         return maxRequests;
     }
@@ -50,4 +65,16 @@ public class QosConfiguration implements Serializable {
     public int getSuspendMs() {
         return suspendMs;
     }
+
+    public int getTenantMaxRequests() {
+        return tenantMaxRequests;
+    }
+
+    public double getTenantRate() {
+        return tenantRate;
+    }
+
+    public Map<String, Object> getTenantWeights() {
+        return tenantWeights;
+    }
 }
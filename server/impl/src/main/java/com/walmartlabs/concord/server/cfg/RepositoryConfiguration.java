@@ -59,6 +59,10 @@ public class RepositoryConfiguration {
     @Config("repositoryCache.lockCount")
     private int lockCount;
 
+    @Inject
+    @Config("repositoryCache.useHardLinks")
+    private boolean useHardLinks;
+
     @Inject
     public RepositoryConfiguration(@Config("repositoryCache.cacheDir") @Nullable String cacheDir,
                                    @Config("repositoryCache.cacheInfoDir") @Nullable String cacheInfoDir) throws IOException {
@@ -92,4 +96,8 @@ public class RepositoryConfiguration {
     public Path getCacheInfoDir() {
         return cacheInfoDir;
     }
+
+    public boolean isUseHardLinks() {
+        return useHardLinks;
+    }
 }
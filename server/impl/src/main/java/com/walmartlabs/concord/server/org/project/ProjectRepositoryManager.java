@@ -32,6 +32,7 @@ import com.walmartlabs.concord.server.org.ResourceAccessLevel;
 import com.walmartlabs.concord.server.org.secret.SecretDao;
 import com.walmartlabs.concord.server.org.secret.SecretManager;
 import com.walmartlabs.concord.server.process.ImportsNormalizerFactory;
+import com.walmartlabs.concord.server.process.ProcessDefinitionCache;
 import com.walmartlabs.concord.server.repository.RepositoryManager;
 import org.jooq.DSLContext;
 import org.sonatype.siesta.ValidationErrorsException;
@@ -52,7 +53,7 @@ public class ProjectRepositoryManager {
     private final RepositoryDao repositoryDao;
     private final ExternalEventResource externalEventResource;
     private final AuditLog auditLog;
-    private final ProjectLoader projectLoader;
+    private final ProcessDefinitionCache processDefinitionCache;
     private final ImportsNormalizerFactory importsNormalizerFactory;
 
     @Inject
@@ -63,7 +64,7 @@ public class ProjectRepositoryManager {
                                     RepositoryDao repositoryDao,
                                     ExternalEventResource externalEventResource,
                                     AuditLog auditLog,
-                                    ProjectLoader projectLoader,
+                                    ProcessDefinitionCache processDefinitionCache,
                                     ImportsNormalizerFactory importsNormalizerFactory) {
 
         this.projectAccessManager = projectAccessManager;
@@ -73,7 +74,7 @@ public class ProjectRepositoryManager {
         this.repositoryDao = repositoryDao;
         this.externalEventResource = externalEventResource;
         this.auditLog = auditLog;
-        this.projectLoader = projectLoader;
+        this.processDefinitionCache = processDefinitionCache;
         this.importsNormalizerFactory = importsNormalizerFactory;
     }
 
@@ -179,7 +180,7 @@ public class ProjectRepositoryManager {
         try {
             ProcessDefinition pd = repositoryManager.withLock(repo.getUrl(), () -> {
                 Repository repository = repositoryManager.fetch(projectId, repo);
-                ProjectLoader.Result result = projectLoader.loadProject(repository.path(), importsNormalizerFactory.forProject(repo.getProjectId()));
+                ProjectLoader.Result result = processDefinitionCache.loadProject(repo.getId(), repository.fetchedCommitId(), repo.getPath(), repository.path(), importsNormalizerFactory.forProject(repo.getProjectId()));
                 return result.projectDefinition();
             });
 
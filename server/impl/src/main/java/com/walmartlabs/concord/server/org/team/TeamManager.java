@@ -28,6 +28,7 @@ import com.walmartlabs.concord.server.org.OrganizationEntry;
 import com.walmartlabs.concord.server.org.OrganizationManager;
 import com.walmartlabs.concord.server.org.ResourceAccessUtils;
 import com.walmartlabs.concord.server.sdk.ConcordApplicationException;
+import com.walmartlabs.concord.server.security.AuthenticationCache;
 import com.walmartlabs.concord.server.security.Roles;
 import com.walmartlabs.concord.server.security.UserPrincipal;
 import com.walmartlabs.concord.server.user.User;
@@ -64,19 +65,22 @@ public class TeamManager {
     private final OrganizationManager orgManager;
     private final UserManager userManager;
     private final AuditLog auditLog;
+    private final AuthenticationCache authCache;
 
     @Inject
     public TeamManager(TeamDao teamDao,
                        OrganizationDao orgDao,
                        OrganizationManager orgManager,
                        UserManager userManager,
-                       AuditLog auditLog) {
+                       AuditLog auditLog,
+                       AuthenticationCache authCache) {
 
         this.teamDao = teamDao;
         this.orgDao = orgDao;
         this.orgManager = orgManager;
         this.userManager = userManager;
         this.auditLog = auditLog;
+        this.authCache = authCache;
     }
 
     public UUID insert(UUID orgId, String teamName, String description) {
@@ -120,6 +124,7 @@ public class TeamManager {
         TeamEntry t = assertTeam(orgName, teamName, TeamRole.OWNER, true, true);
 
         teamDao.delete(t.getId());
+        authCache.invalidateUsers();
 
         auditLog.add(AuditObject.TEAM, AuditAction.DELETE)
                 .field("orgId", t.getOrgId())
@@ -166,6 +171,8 @@ public class TeamManager {
             validateUsers(tx, t.getOrgId());
         });
 
+        authCache.invalidateUsers();
+
         auditLog.add(AuditObject.TEAM, AuditAction.UPDATE)
                 .field("orgId", t.getOrgId())
                 .field("teamId", t.getId())
@@ -225,6 +232,7 @@ public class TeamManager {
                 .collect(Collectors.toSet());
 
         teamDao.removeUsers(t.getId(), userIds);
+        authCache.invalidateUsers();
 
         auditLog.add(AuditObject.TEAM, AuditAction.UPDATE)
                 .field("orgId", t.getOrgId())
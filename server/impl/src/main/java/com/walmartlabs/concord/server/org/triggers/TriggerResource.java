@@ -29,6 +29,7 @@ import com.walmartlabs.concord.server.org.OrganizationManager;
 import com.walmartlabs.concord.server.org.ResourceAccessLevel;
 import com.walmartlabs.concord.server.org.project.*;
 import com.walmartlabs.concord.server.process.ImportsNormalizerFactory;
+import com.walmartlabs.concord.server.process.ProcessDefinitionCache;
 import com.walmartlabs.concord.server.repository.RepositoryManager;
 import com.walmartlabs.concord.server.sdk.ConcordApplicationException;
 import com.walmartlabs.concord.server.security.Roles;
@@ -70,7 +71,7 @@ public class TriggerResource implements Resource {
     private final ProjectAccessManager projectAccessManager;
     private final OrganizationManager orgManager;
     private final TriggerManager triggerManager;
-    private final ProjectLoader projectLoader;
+    private final ProcessDefinitionCache processDefinitionCache;
     private final ImportsNormalizerFactory importsNormalizerFactory;
 
     @Inject
@@ -80,7 +81,7 @@ public class TriggerResource implements Resource {
                            ProjectAccessManager projectAccessManager,
                            OrganizationManager orgManager,
                            TriggerManager triggerManager,
-                           ProjectLoader projectLoader,
+                           ProcessDefinitionCache processDefinitionCache,
                            ImportsNormalizerFactory importsNormalizerFactory) {
 
         this.repositoryDao = repositoryDao;
@@ -89,7 +90,7 @@ public class TriggerResource implements Resource {
         this.projectAccessManager = projectAccessManager;
         this.orgManager = orgManager;
         this.triggerManager = triggerManager;
-        this.projectLoader = projectLoader;
+        this.processDefinitionCache = processDefinitionCache;
         this.importsNormalizerFactory = importsNormalizerFactory;
     }
 
@@ -165,7 +166,7 @@ public class TriggerResource implements Resource {
         try {
             pd = repositoryManager.withLock(repo.getUrl(), () -> {
                 Repository repository = repositoryManager.fetch(repo.getProjectId(), repo);
-                ProjectLoader.Result result = projectLoader.loadProject(repository.path(), importsNormalizerFactory.forProject(repo.getProjectId()));
+                ProjectLoader.Result result = processDefinitionCache.loadProject(repo.getId(), repository.fetchedCommitId(), repo.getPath(), repository.path(), importsNormalizerFactory.forProject(repo.getProjectId()));
                 return result.projectDefinition();
             });
 
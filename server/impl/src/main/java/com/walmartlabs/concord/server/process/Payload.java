@@ -33,10 +33,16 @@ import java.util.*;
 
 public class Payload {
 
+    /**
+     * {@code true} if the workspace contains files added by the user
+     * (e.g. a payload archive or attachments) in addition to the repository's files.
+     */
+    public static final HeaderKey<Boolean> WORKSPACE_MODIFIED = HeaderKey.register("_workspaceModified", Boolean.class);
     public static final HeaderKey<HttpServletRequest> SERVLET_REQUEST = HeaderKey.register("_servletRequest", HttpServletRequest.class);
     public static final HeaderKey<Imports> IMPORTS = HeaderKey.register("_imports", Imports.class);
     public static final HeaderKey<List<String>> ACTIVE_PROFILES = HeaderKey.registerList("_activeProfiles");
     public static final HeaderKey<Map<String, Object>> CONFIGURATION = HeaderKey.registerMap("_cfg");
+    public static final HeaderKey<Map<String, String>> EXPORTED_STATE_BLOBS = HeaderKey.registerMap("_exportedStateBlobs");
     public static final HeaderKey<Path> BASE_DIR = HeaderKey.register("_baseDir", Path.class);
     public static final HeaderKey<Path> WORKSPACE_DIR = HeaderKey.register("_workspace", Path.class);
     public static final HeaderKey<PolicyEngine> POLICY = HeaderKey.register("_policy", PolicyEngine.class);
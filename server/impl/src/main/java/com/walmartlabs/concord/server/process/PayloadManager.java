@@ -48,7 +48,6 @@ import java.util.UUID;
 import java.util.function.Function;
 
 import static com.walmartlabs.concord.server.process.state.ProcessStateManager.copyTo;
-import static com.walmartlabs.concord.server.process.state.ProcessStateManager.exclude;
 
 @Named
 public class PayloadManager {
@@ -219,11 +218,12 @@ public class PayloadManager {
         Path tmpDir = IOUtils.createTempDir("payload");
 
         // skip forms and the parent process' arguments
-        if (!stateManager.export(parentProcessKey, exclude(copyTo(tmpDir), FORMS_PATH_PATTERN))) {
+        Map<String, String> blobHashes = stateManager.exportReusable(parentProcessKey, tmpDir, FORMS_PATH_PATTERN);
+        if (blobHashes == null) {
             throw new ProcessException(processKey, "Can't fork '" + parentProcessKey + "', the state snapshot not found");
         }
 
-        return PayloadBuilder.start(processKey)
+        Payload payload = PayloadBuilder.start(processKey)
                 .parentInstanceId(parentProcessKey.getInstanceId())
                 .kind(kind)
                 .initiator(initiatorId, initiator)
@@ -234,6 +234,9 @@ public class PayloadManager {
                 .handlers(handlers)
                 .imports(imports)
                 .build();
+
+        // the files which are not modified by the fork pipeline share the parent's blobs
+        return payload.putHeader(Payload.EXPORTED_STATE_BLOBS, blobHashes);
     }
 
     public EntryPoint parseEntryPoint(PartialProcessKey processKey, UUID orgId, String entryPoint) {
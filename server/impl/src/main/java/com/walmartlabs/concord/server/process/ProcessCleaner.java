@@ -20,15 +20,15 @@ package com.walmartlabs.concord.server.process;
  * =====
  */
 
+import com.codahale.metrics.Counter;
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.db.MainDB;
 import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.process.state.ProcessStateManager;
 import com.walmartlabs.concord.server.sdk.ProcessStatus;
 import com.walmartlabs.concord.server.sdk.ScheduledTask;
-import org.jooq.Configuration;
-import org.jooq.Record1;
-import org.jooq.SelectConditionStep;
-import org.jooq.SelectJoinStep;
+import com.walmartlabs.concord.server.sdk.metrics.InjectCounter;
+import org.jooq.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,6 +36,8 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_LOG_DATA;
@@ -45,7 +47,16 @@ import static com.walmartlabs.concord.server.jooq.tables.ProcessEvents.PROCESS_E
 import static com.walmartlabs.concord.server.jooq.tables.ProcessLogs.PROCESS_LOGS;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QUEUE;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessState.PROCESS_STATE;
-
+import static org.jooq.impl.DSL.*;
+
+/**
+ * Removes the data of old processes. The work is done in small batches,
+ * each in its own short transaction, so the cleaner doesn't hold locks
+ * on the process tables for the whole run.
+ * <p>
+ * Optionally, drops whole partitions of range-partitioned process tables
+ * when all processes in the partition are eligible for removal.
+ */
 @Named("process-cleaner")
 @Singleton
 public class ProcessCleaner implements ScheduledTask {
@@ -58,13 +69,35 @@ public class ProcessCleaner implements ScheduledTask {
             ProcessStatus.RESUMING.toString()
     };
 
+    private static final String[] FINAL_STATUSES = {
+            ProcessStatus.FINISHED.toString(),
+            ProcessStatus.FAILED.toString(),
+            ProcessStatus.CANCELLED.toString(),
+            ProcessStatus.TIMED_OUT.toString()
+    };
+
     private final ProcessConfiguration cfg;
     private final CleanerDao cleanerDao;
+    private final ProcessStateManager stateManager;
+
+    @InjectCounter
+    private final Counter processesCleanedUp;
+
+    @InjectCounter
+    private final Counter partitionsDropped;
 
     @Inject
-    public ProcessCleaner(ProcessConfiguration cfg, CleanerDao cleanerDao) {
+    public ProcessCleaner(ProcessConfiguration cfg,
+                          CleanerDao cleanerDao,
+                          ProcessStateManager stateManager,
+                          Counter processesCleanedUp,
+                          Counter partitionsDropped) {
+
         this.cfg = cfg;
         this.cleanerDao = cleanerDao;
+        this.stateManager = stateManager;
+        this.processesCleanedUp = processesCleanedUp;
+        this.partitionsDropped = partitionsDropped;
     }
 
     @Override
@@ -73,122 +106,382 @@ public class ProcessCleaner implements ScheduledTask {
     }
 
     @Override
-    public void performTask() {
+    public void performTask() throws Exception {
         Timestamp cutoff = new Timestamp(System.currentTimeMillis() - cfg.getMaxStateAge());
-        cleanerDao.deleteOldState(cutoff, cfg);
-        cleanerDao.deleteOrphans(cfg);
+
+        if (cfg.isCleanupDropPartitions()) {
+            dropPartitions(cutoff);
+        }
+
+        deleteOldState(cutoff);
+        deleteOrphans();
+
+        if (cfg.isStateCleanup()) {
+            deleteUnusedBlobs();
+        }
+    }
+
+    private void dropPartitions(Timestamp cutoff) {
+        long t1 = System.currentTimeMillis();
+
+        // partitions are dropped only if all processes in them are eligible for removal
+        // the horizon is only used to find candidates, each partition is re-checked before dropping
+        Timestamp horizon = cleanerDao.getRetentionHorizon(cutoff);
+
+        int dropped = 0;
+        if (cfg.isQueueCleanup()) {
+            dropped += dropPartitions(PROCESS_QUEUE, PROCESS_QUEUE.CREATED_AT, horizon, cutoff);
+        }
+        if (cfg.isStateCleanup()) {
+            dropped += dropPartitions(PROCESS_STATE, PROCESS_STATE.INSTANCE_CREATED_AT, horizon, cutoff);
+        }
+        if (cfg.isEventsCleanup()) {
+            dropped += dropPartitions(PROCESS_EVENTS, PROCESS_EVENTS.INSTANCE_CREATED_AT, horizon, cutoff);
+        }
+        if (cfg.isLogsCleanup()) {
+            dropped += dropPartitions(PROCESS_LOGS, PROCESS_LOGS.INSTANCE_CREATED_AT, horizon, cutoff);
+            dropped += dropPartitions(PROCESS_LOG_DATA, PROCESS_LOG_DATA.INSTANCE_CREATED_AT, horizon, cutoff);
+            dropped += dropPartitions(PROCESS_LOG_SEGMENTS, PROCESS_LOG_SEGMENTS.INSTANCE_CREATED_AT, horizon, cutoff);
+        }
+        if (cfg.isCheckpointCleanup()) {
+            dropped += dropPartitions(PROCESS_CHECKPOINTS, PROCESS_CHECKPOINTS.INSTANCE_CREATED_AT, horizon, cutoff);
+        }
+
+        long t2 = System.currentTimeMillis();
+        log.info("dropPartitions -> dropped {} partition(s) older than {}, took {}ms", dropped, horizon, (t2 - t1));
+    }
+
+    private int dropPartitions(Table<?> table, Field<Timestamp> key, Timestamp horizon, Timestamp cutoff) {
+        int result = 0;
+
+        List<Partition> partitions = cleanerDao.findExpiredPartitions(table, key, horizon);
+        for (Partition p : partitions) {
+            log.info("dropPartitions -> dropping {} (partition of {})", p.name, table.getName());
+            if (!cleanerDao.dropPartition(p, cutoff)) {
+                log.info("dropPartitions -> {} contains active processes, skipping", p.name);
+                continue;
+            }
+
+            partitionsDropped.inc();
+            result++;
+        }
+
+        return result;
+    }
+
+    private void deleteOldState(Timestamp cutoff) throws InterruptedException {
+        long t1 = System.currentTimeMillis();
+
+        int batchSize = cfg.getCleanupBatchSize();
+
+        int processes = 0;
+        int rows = 0;
+
+        ProcessKey after = null;
+        while (!Thread.currentThread().isInterrupted()) {
+            List<ProcessKey> batch = cleanerDao.nextBatch(cutoff, after, batchSize);
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            BatchResult r = cleanerDao.deleteBatch(batch, cutoff, cfg);
+            processes += r.processes;
+            rows += r.rows;
+            processesCleanedUp.inc(r.processes);
+
+            log.info("deleteOldState -> removed {} process(es), {} row(s) so far", processes, rows);
+
+            if (batch.size() < batchSize) {
+                break;
+            }
+
+            after = batch.get(batch.size() - 1);
+            throttle();
+        }
+
+        long t2 = System.currentTimeMillis();
+        log.info("deleteOldState -> removed {} process(es) older than {} ({} row(s)), took {}ms", processes, cutoff, rows, (t2 - t1));
+    }
+
+    private void deleteOrphans() throws InterruptedException {
+        long t1 = System.currentTimeMillis();
+
+        int stateRecords = 0;
+        if (cfg.isStateCleanup()) {
+            stateRecords = deleteOrphans(PROCESS_STATE, PROCESS_STATE.INSTANCE_ID);
+        }
+
+        int events = 0;
+        if (cfg.isEventsCleanup()) {
+            events = deleteOrphans(PROCESS_EVENTS, PROCESS_EVENTS.INSTANCE_ID);
+        }
+
+        int logEntries = 0;
+        if (cfg.isLogsCleanup()) {
+            logEntries = deleteOrphans(PROCESS_LOGS, PROCESS_LOGS.INSTANCE_ID);
+        }
+
+        int checkpoints = 0;
+        if (cfg.isCheckpointCleanup()) {
+            checkpoints = deleteOrphans(PROCESS_CHECKPOINTS, PROCESS_CHECKPOINTS.INSTANCE_ID);
+        }
+
+        long t2 = System.currentTimeMillis();
+        log.info("deleteOrphans -> removed orphan data: {} log entries, {} state item(s), {} event(s), {} checkpoint(s), took {}ms",
+                logEntries, stateRecords, events, checkpoints, (t2 - t1));
+    }
+
+    private int deleteOrphans(Table<?> table, Field<UUID> instanceId) throws InterruptedException {
+        int batchSize = cfg.getCleanupBatchSize();
+
+        int result = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            List<UUID> ids = cleanerDao.nextOrphans(table, instanceId, batchSize);
+            if (ids.isEmpty()) {
+                break;
+            }
+
+            result += cleanerDao.deleteOrphans(table, instanceId, ids);
+
+            if (ids.size() < batchSize) {
+                break;
+            }
+
+            throttle();
+        }
+        return result;
+    }
+
+    private void deleteUnusedBlobs() {
+        long t1 = System.currentTimeMillis();
+        int blobs = stateManager.deleteUnusedBlobs();
+        long t2 = System.currentTimeMillis();
+        log.info("deleteUnusedBlobs -> removed {} state blob(s), took {}ms", blobs, (t2 - t1));
+    }
+
+    private void throttle() throws InterruptedException {
+        long delay = cfg.getCleanupBatchDelay();
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+
+    static class BatchResult {
+
+        final int processes;
+        final int rows;
+
+        private BatchResult(int processes, int rows) {
+            this.processes = processes;
+            this.rows = rows;
+        }
+    }
+
+    static class Partition {
+
+        final String name;
+        final Timestamp upperBound;
+
+        private Partition(String name, Timestamp upperBound) {
+            this.name = name;
+            this.upperBound = upperBound;
+        }
     }
 
     @Named
-    private static class CleanerDao extends AbstractDao {
+    static class CleanerDao extends AbstractDao {
 
         @Inject
         protected CleanerDao(@MainDB Configuration cfg) {
             super(cfg);
         }
 
-        void deleteOldState(Timestamp cutoff, ProcessConfiguration jobCfg) {
-            long t1 = System.currentTimeMillis();
+        /**
+         * Returns the next batch of processes eligible for removal,
+         * ordered by (CREATED_AT, INSTANCE_ID).
+         */
+        List<ProcessKey> nextBatch(Timestamp cutoff, ProcessKey after, int limit) {
+            Condition c = PROCESS_QUEUE.LAST_UPDATED_AT.lessThan(cutoff)
+                    .and(PROCESS_QUEUE.CURRENT_STATUS.notIn(EXCLUDE_STATUSES));
+
+            if (after != null) {
+                c = c.and(row(PROCESS_QUEUE.CREATED_AT, PROCESS_QUEUE.INSTANCE_ID).gt(after.getCreatedAt(), after.getInstanceId()));
+            }
+
+            return txResult(tx -> tx.select(PROCESS_QUEUE.INSTANCE_ID, PROCESS_QUEUE.CREATED_AT)
+                    .from(PROCESS_QUEUE)
+                    .where(c)
+                    .orderBy(PROCESS_QUEUE.CREATED_AT, PROCESS_QUEUE.INSTANCE_ID)
+                    .limit(limit)
+                    .fetch(r -> new ProcessKey(r.value1(), r.value2())));
+        }
 
-            tx(tx -> {
-                SelectConditionStep<Record1<UUID>> ids = tx.select(PROCESS_QUEUE.INSTANCE_ID)
-                        .from(PROCESS_QUEUE)
-                        .where(PROCESS_QUEUE.LAST_UPDATED_AT.lessThan(cutoff)
-                                .and(PROCESS_QUEUE.CURRENT_STATUS.notIn(EXCLUDE_STATUSES)));
+        BatchResult deleteBatch(List<ProcessKey> batch, Timestamp cutoff, ProcessConfiguration jobCfg) {
+            List<UUID> candidates = new ArrayList<>(batch.size());
+            for (ProcessKey k : batch) {
+                candidates.add(k.getInstanceId());
+            }
 
-                int queueEntries = 0;
+            // the batch is ordered by CREATED_AT, the range allows the planner to skip unrelated partitions
+            Timestamp minCreatedAt = batch.get(0).getCreatedAt();
+            Timestamp maxCreatedAt = batch.get(batch.size() - 1).getCreatedAt();
+
+            return txResult(tx -> {
+                // re-check the conditions, the processes might've been restarted since the batch was selected
+                Condition eligible = PROCESS_QUEUE.INSTANCE_ID.in(candidates)
+                        .and(PROCESS_QUEUE.CREATED_AT.between(minCreatedAt, maxCreatedAt))
+                        .and(PROCESS_QUEUE.LAST_UPDATED_AT.lessThan(cutoff))
+                        .and(PROCESS_QUEUE.CURRENT_STATUS.notIn(EXCLUDE_STATUSES));
+
+                List<UUID> ids;
                 if (jobCfg.isQueueCleanup()) {
-                    queueEntries = tx.deleteFrom(PROCESS_QUEUE)
-                            .where(PROCESS_QUEUE.INSTANCE_ID.in(ids))
-                            .execute();
+                    ids = tx.deleteFrom(PROCESS_QUEUE)
+                            .where(eligible)
+                            .returning(PROCESS_QUEUE.INSTANCE_ID)
+                            .fetch(PROCESS_QUEUE.INSTANCE_ID);
+                } else {
+                    ids = tx.select(PROCESS_QUEUE.INSTANCE_ID)
+                            .from(PROCESS_QUEUE)
+                            .where(eligible)
+                            .fetch(PROCESS_QUEUE.INSTANCE_ID);
                 }
 
-                int stateRecords = 0;
+                if (ids.isEmpty()) {
+                    return new BatchResult(0, 0);
+                }
+
+                int rows = jobCfg.isQueueCleanup() ? ids.size() : 0;
+
                 if (jobCfg.isStateCleanup()) {
-                    stateRecords = tx.deleteFrom(PROCESS_STATE)
-                            .where(PROCESS_STATE.INSTANCE_ID.in(ids))
+                    rows += tx.deleteFrom(PROCESS_STATE)
+                            .where(PROCESS_STATE.INSTANCE_ID.in(ids)
+                                    .and(PROCESS_STATE.INSTANCE_CREATED_AT.between(minCreatedAt, maxCreatedAt)))
                             .execute();
                 }
 
-                int events = 0;
                 if (jobCfg.isEventsCleanup()) {
-                    events = tx.deleteFrom(PROCESS_EVENTS)
-                            .where(PROCESS_EVENTS.INSTANCE_ID.in(ids))
+                    rows += tx.deleteFrom(PROCESS_EVENTS)
+                            .where(PROCESS_EVENTS.INSTANCE_ID.in(ids)
+                                    .and(PROCESS_EVENTS.INSTANCE_CREATED_AT.between(minCreatedAt, maxCreatedAt)))
                             .execute();
                 }
 
-                int logEntries = 0;
-                int logDataEntries = 0;
-                int logSegmentEntries = 0;
                 if (jobCfg.isLogsCleanup()) {
-                    logEntries = tx.deleteFrom(PROCESS_LOGS)
-                            .where(PROCESS_LOGS.INSTANCE_ID.in(ids))
+                    rows += tx.deleteFrom(PROCESS_LOGS)
+                            .where(PROCESS_LOGS.INSTANCE_ID.in(ids)
+                                    .and(PROCESS_LOGS.INSTANCE_CREATED_AT.between(minCreatedAt, maxCreatedAt)))
                             .execute();
 
-                    logDataEntries = tx.deleteFrom(PROCESS_LOG_DATA)
-                            .where(PROCESS_LOG_DATA.INSTANCE_ID.in(ids))
+                    rows += tx.deleteFrom(PROCESS_LOG_DATA)
+                            .where(PROCESS_LOG_DATA.INSTANCE_ID.in(ids)
+                                    .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.between(minCreatedAt, maxCreatedAt)))
                             .execute();
 
-                    logSegmentEntries = tx.deleteFrom(PROCESS_LOG_SEGMENTS)
-                            .where(PROCESS_LOG_SEGMENTS.INSTANCE_ID.in(ids))
+                    rows += tx.deleteFrom(PROCESS_LOG_SEGMENTS)
+                            .where(PROCESS_LOG_SEGMENTS.INSTANCE_ID.in(ids)
+                                    .and(PROCESS_LOG_SEGMENTS.INSTANCE_CREATED_AT.between(minCreatedAt, maxCreatedAt)))
                             .execute();
                 }
 
-                int checkpoints = 0;
                 if (jobCfg.isCheckpointCleanup()) {
-                    checkpoints = tx.deleteFrom(PROCESS_CHECKPOINTS)
-                            .where(PROCESS_CHECKPOINTS.INSTANCE_ID.in(ids))
+                    rows += tx.deleteFrom(PROCESS_CHECKPOINTS)
+                            .where(PROCESS_CHECKPOINTS.INSTANCE_ID.in(ids)
+                                    .and(PROCESS_CHECKPOINTS.INSTANCE_CREATED_AT.between(minCreatedAt, maxCreatedAt)))
                             .execute();
                 }
 
-                log.info("deleteOldState -> removed older than {}: {} queue entries, {} log entries, {} log data entries, {} log segments, {} state item(s), {} event(s), {} checkpoint(s)",
-                        cutoff, queueEntries, logEntries, logDataEntries, logSegmentEntries, stateRecords, events, checkpoints);
+                return new BatchResult(ids.size(), rows);
             });
+        }
 
-            long t2 = System.currentTimeMillis();
-            log.info("deleteOldState -> took {}ms", (t2 - t1));
+        List<UUID> nextOrphans(Table<?> table, Field<UUID> instanceId, int limit) {
+            return txResult(tx -> tx.selectDistinct(instanceId)
+                    .from(table)
+                    .where(notExists(selectOne()
+                            .from(PROCESS_QUEUE)
+                            .where(PROCESS_QUEUE.INSTANCE_ID.eq(instanceId))))
+                    .limit(limit)
+                    .fetch(instanceId));
         }
 
-        void deleteOrphans(ProcessConfiguration jobCfg) {
-            long t1 = System.currentTimeMillis();
+        int deleteOrphans(Table<?> table, Field<UUID> instanceId, List<UUID> ids) {
+            return txResult(tx -> tx.deleteFrom(table)
+                    .where(instanceId.in(ids)
+                            .and(notExists(selectOne()
+                                    .from(PROCESS_QUEUE)
+                                    .where(PROCESS_QUEUE.INSTANCE_ID.eq(instanceId)))))
+                    .execute());
+        }
 
-            tx(tx -> {
-                SelectJoinStep<Record1<UUID>> alive = tx.select(PROCESS_QUEUE.INSTANCE_ID).from(PROCESS_QUEUE);
+        /**
+         * Returns the creation date of the oldest process that must be kept.
+         * All processes created before the returned value are eligible for removal.
+         */
+        Timestamp getRetentionHorizon(Timestamp cutoff) {
+            Timestamp oldestKept = txResult(tx -> tx.select(min(PROCESS_QUEUE.CREATED_AT))
+                    .from(PROCESS_QUEUE)
+                    .where(PROCESS_QUEUE.LAST_UPDATED_AT.greaterOrEqual(cutoff)
+                            .or(PROCESS_QUEUE.CURRENT_STATUS.in(EXCLUDE_STATUSES)))
+                    .fetchOne(min(PROCESS_QUEUE.CREATED_AT)));
+
+            if (oldestKept == null || oldestKept.after(cutoff)) {
+                return cutoff;
+            }
+            return oldestKept;
+        }
 
-                int stateRecords = 0;
-                if (jobCfg.isStateCleanup()) {
-                    stateRecords = tx.deleteFrom(PROCESS_STATE)
-                            .where(PROCESS_STATE.INSTANCE_ID.notIn(alive))
-                            .execute();
-                }
+        /**
+         * Returns the partitions of the specified table with the upper bound
+         * less or equal than {@code horizon}. Only declarative RANGE partitioning on
+         * the {@code key} column is supported, for other tables returns an empty list.
+         */
+        List<Partition> findExpiredPartitions(Table<?> table, Field<Timestamp> key, Timestamp horizon) {
+            String upperBound = "substring(pg_get_expr(child.relpartbound, child.oid) from 'TO \\(''([^'']+)''\\)')::timestamp";
+
+            String sql = "select child.relname, " + upperBound + " " +
+                    "from pg_inherits " +
+                    "join pg_class parent on pg_inherits.inhparent = parent.oid " +
+                    "join pg_class child on pg_inherits.inhrelid = child.oid " +
+                    "where parent.relname = lower(?) " +
+                    "and parent.relkind = 'p' " +
+                    "and lower(pg_get_partkeydef(parent.oid)) = 'range (' || lower(?) || ')' " +
+                    "and " + upperBound + " <= ? " +
+                    "order by child.relname";
+
+            return txResult(tx -> tx.resultQuery(sql, table.getName(), key.getName(), horizon)
+                    .fetch(r -> new Partition(r.get(0, String.class), r.get(1, Timestamp.class))));
+        }
 
-                int events = 0;
-                if (jobCfg.isEventsCleanup()) {
-                    events = tx.deleteFrom(PROCESS_EVENTS)
-                            .where(PROCESS_EVENTS.INSTANCE_ID.notIn(alive))
-                            .execute();
-                }
+        /**
+         * Drops the partition if all processes created before its upper bound
+         * are still eligible for removal. The check and the DROP are done in
+         * the same transaction, unfinished processes are locked, so they can't
+         * be resumed or restarted in between.
+         *
+         * @return {@code true} if the partition was dropped
+         */
+        boolean dropPartition(Partition p, Timestamp cutoff) {
+            return txResult(tx -> {
+                tx.select(PROCESS_QUEUE.INSTANCE_ID)
+                        .from(PROCESS_QUEUE)
+                        .where(PROCESS_QUEUE.CREATED_AT.lessThan(p.upperBound)
+                                .and(PROCESS_QUEUE.CURRENT_STATUS.notIn(FINAL_STATUSES)))
+                        .forShare()
+                        .execute();
 
-                int logEntries = 0;
-                if (jobCfg.isLogsCleanup()) {
-                    logEntries = tx.deleteFrom(PROCESS_LOGS)
-                            .where(PROCESS_LOGS.INSTANCE_ID.notIn(alive))
-                            .execute();
-                }
+                boolean active = tx.fetchExists(selectOne()
+                        .from(PROCESS_QUEUE)
+                        .where(PROCESS_QUEUE.CREATED_AT.lessThan(p.upperBound)
+                                .and(PROCESS_QUEUE.LAST_UPDATED_AT.greaterOrEqual(cutoff)
+                                        .or(PROCESS_QUEUE.CURRENT_STATUS.in(EXCLUDE_STATUSES)))));
 
-                int checkpoints = 0;
-                if (jobCfg.isCheckpointCleanup()) {
-                    checkpoints = tx.deleteFrom(PROCESS_CHECKPOINTS)
-                            .where(PROCESS_CHECKPOINTS.INSTANCE_ID.notIn(alive))
-                            .execute();
+                if (active) {
+                    return false;
                 }
 
-                log.info("deleteOrphans -> removed orphan data: {} log entries, {} state item(s), {} event(s), {} checkpoint(s)",
-                        logEntries, stateRecords, events, checkpoints);
+                tx.dropTable(name(p.name)).execute();
+                return true;
             });
-
-            long t2 = System.currentTimeMillis();
-            log.info("deleteOrphans -> took {}ms", (t2 - t1));
         }
     }
 }
@@ -0,0 +1,187 @@
+package com.walmartlabs.concord.server.process;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.walmartlabs.concord.process.loader.ImportsNormalizer;
+import com.walmartlabs.concord.process.loader.ProjectLoader;
+import com.walmartlabs.concord.process.loader.model.ProcessDefinition;
+import com.walmartlabs.concord.repository.Snapshot;
+import com.walmartlabs.concord.server.cfg.ProcessDefinitionCacheConfiguration;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of parsed process definitions by the repository's commit ID.
+ * <p>
+ * Only the definitions without {@code imports} are cached: imports are
+ * exported into the working directory as a side effect of loading and
+ * can point to branches, i.e. the result depends on more than the commit ID.
+ * <p>
+ * The cached definitions are shared between callers and must not be modified.
+ */
+@Named
+@Singleton
+public class ProcessDefinitionCache {
+
+    private final ProjectLoader projectLoader;
+    private final boolean enabled;
+    private final Cache<Key, ProcessDefinition> cache;
+    private final Timer parseTime;
+
+    @Inject
+    public ProcessDefinitionCache(ProcessDefinitionCacheConfiguration cfg,
+                                  ProjectLoader projectLoader,
+                                  MetricRegistry metricRegistry) {
+
+        this.projectLoader = projectLoader;
+        this.enabled = cfg.getTtl() > 0;
+        this.cache = CacheBuilder.newBuilder()
+                .expireAfterAccess(Math.max(cfg.getTtl(), 0), TimeUnit.MILLISECONDS)
+                .maximumSize(cfg.getMaxSize())
+                .recordStats()
+                .build();
+        this.parseTime = metricRegistry.timer("process-definition-parse-time");
+
+        metricRegistry.register("process-definition-cache-hit-ratio", (Gauge<Double>) () -> cache.stats().hitRate());
+    }
+
+    /**
+     * Loads the process definition from the specified directory. The runtime
+     * type is determined using the directory's {@code concord.yml}.
+     *
+     * @see #loadProject(UUID, String, String, Path, String, ImportsNormalizer)
+     */
+    public ProjectLoader.Result loadProject(UUID repoId, String commitId, String repoPath,
+                                            Path workDir, ImportsNormalizer importsNormalizer) throws Exception {
+
+        return loadProject(repoId, commitId, repoPath, workDir, null, importsNormalizer);
+    }
+
+    /**
+     * Loads the process definition from the specified directory or returns
+     * a previously loaded definition of the same repository commit.
+     *
+     * @param repoId   ID of the repository the {@code workDir}'s content comes from
+     * @param commitId the repository's commit ID. If {@code null} the cache is not used
+     * @param repoPath path inside the repository
+     * @param runtime  runtime type. If {@code null} the type is determined automatically
+     */
+    public ProjectLoader.Result loadProject(UUID repoId, String commitId, String repoPath,
+                                            Path workDir, String runtime, ImportsNormalizer importsNormalizer) throws Exception {
+
+        if (!enabled || repoId == null || commitId == null) {
+            return load(workDir, runtime, importsNormalizer);
+        }
+
+        Key key = new Key(repoId, commitId, repoPath, runtime);
+
+        ProcessDefinition cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return new CachedResult(cached);
+        }
+
+        ProjectLoader.Result result = load(workDir, runtime, importsNormalizer);
+
+        ProcessDefinition pd = result.projectDefinition();
+        if (pd.imports() == null || pd.imports().isEmpty()) {
+            cache.put(key, pd);
+        }
+
+        return result;
+    }
+
+    private ProjectLoader.Result load(Path workDir, String runtime, ImportsNormalizer importsNormalizer) throws Exception {
+        try (Timer.Context ignored = parseTime.time()) {
+            if (runtime == null) {
+                return projectLoader.loadProject(workDir, importsNormalizer);
+            }
+            return projectLoader.loadProject(workDir, runtime, importsNormalizer);
+        }
+    }
+
+    private static final class CachedResult implements ProjectLoader.Result {
+
+        private final ProcessDefinition pd;
+
+        private CachedResult(ProcessDefinition pd) {
+            this.pd = pd;
+        }
+
+        @Override
+        public List<Snapshot> snapshots() {
+            // snapshots are produced by imports only, the cached definitions have none
+            return Collections.emptyList();
+        }
+
+        @Override
+        public ProcessDefinition projectDefinition() {
+            return pd;
+        }
+    }
+
+    private static final class Key {
+
+        private final UUID repoId;
+        private final String commitId;
+        private final String repoPath;
+        private final String runtime;
+
+        private Key(UUID repoId, String commitId, String repoPath, String runtime) {
+            this.repoId = repoId;
+            this.commitId = commitId;
+            this.repoPath = repoPath;
+            this.runtime = runtime;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return repoId.equals(key.repoId)
+                    && commitId.equals(key.commitId)
+                    && Objects.equals(repoPath, key.repoPath)
+                    && Objects.equals(runtime, key.runtime);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(repoId, commitId, repoPath, runtime);
+        }
+    }
+}
@@ -20,7 +20,7 @@ package com.walmartlabs.concord.server.process;
  * =====
  */
 
-import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
+import com.walmartlabs.concord.server.process.queue.ProcessHeartbeats;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
@@ -30,9 +30,12 @@ import org.sonatype.siesta.Resource;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.core.MediaType;
+import java.util.List;
 import java.util.UUID;
 
 @Named
@@ -41,11 +44,11 @@ import java.util.UUID;
 @Path("/api/v1/process")
 public class ProcessHeartbeatResource implements Resource {
 
-    private final ProcessQueueDao queueDao;
+    private final ProcessHeartbeats heartbeats;
 
     @Inject
-    public ProcessHeartbeatResource(ProcessQueueDao queueDao) {
-        this.queueDao = queueDao;
+    public ProcessHeartbeatResource(ProcessHeartbeats heartbeats) {
+        this.heartbeats = heartbeats;
     }
 
 
@@ -53,8 +56,24 @@ public class ProcessHeartbeatResource implements Resource {
     @ApiOperation("Process heartbeat")
     @Path("{id}/ping")
     public void ping(@ApiParam @PathParam("id") UUID instanceId) {
-        if (!queueDao.touch(instanceId)) {
+        if (!heartbeats.onHeartbeat(instanceId)) {
             throw new IllegalArgumentException("Process not found: " + instanceId);
         }
     }
+
+    /**
+     * Heartbeat for multiple processes, e.g. for all processes running on an agent.
+     * Unknown process IDs are ignored.
+     */
+    @POST
+    @ApiOperation("Heartbeat for multiple processes")
+    @Path("ping")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public void pingBatch(@ApiParam List<UUID> instanceIds) {
+        if (instanceIds == null) {
+            return;
+        }
+
+        instanceIds.forEach(heartbeats::onHeartbeat);
+    }
 }
@@ -20,14 +20,20 @@ package com.walmartlabs.concord.server.process;
  * =====
  */
 
+import com.google.common.collect.ImmutableSet;
 import com.walmartlabs.concord.common.IOUtils;
+import com.walmartlabs.concord.common.LogSegmentBatch;
 import com.walmartlabs.concord.server.HttpUtils;
 import com.walmartlabs.concord.server.OperationResult;
 import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
 import com.walmartlabs.concord.server.process.logs.ProcessLogAccessManager;
+import com.walmartlabs.concord.server.process.logs.ProcessLogData;
+import com.walmartlabs.concord.server.process.logs.ProcessLogFollowers;
 import com.walmartlabs.concord.server.process.logs.ProcessLogManager;
 import com.walmartlabs.concord.server.process.queue.ProcessKeyCache;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
 import com.walmartlabs.concord.server.sdk.ConcordApplicationException;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
 import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -40,16 +46,19 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
-import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
-import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLogChunk;
 
 /**
  * API to work with segmented process logs.
@@ -60,23 +69,35 @@ import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.Process
 @Path("/api/v2/process")
 public class ProcessLogResourceV2 implements Resource {
 
+    private static final int MAX_FOLLOW_TIMEOUT = 60;
+    private static final String PROCESS_STATUS_HEADER = "X-Concord-Process-Status";
+
+    private static final Set<ProcessStatus> FINAL_STATUSES = ImmutableSet.of(
+            ProcessStatus.FINISHED,
+            ProcessStatus.FAILED,
+            ProcessStatus.CANCELLED,
+            ProcessStatus.TIMED_OUT);
+
     private final ProcessKeyCache processKeyCache;
     private final ProcessManager processManager;
     private final ProcessLogManager logManager;
     private final ProcessLogAccessManager logAccessManager;
     private final ProcessConfiguration processCfg;
+    private final ProcessQueueDao queueDao;
 
     @Inject
     public ProcessLogResourceV2(ProcessKeyCache processKeyCache,
                                 ProcessManager processManager,
                                 ProcessLogManager logManager,
                                 ProcessLogAccessManager logAccessManager,
-                                ProcessConfiguration processCfg) {
+                                ProcessConfiguration processCfg,
+                                ProcessQueueDao queueDao) {
         this.processKeyCache = processKeyCache;
         this.processManager = processManager;
         this.logManager = logManager;
         this.logAccessManager = logAccessManager;
         this.processCfg = processCfg;
+        this.queueDao = queueDao;
     }
 
     /**
@@ -152,10 +173,58 @@ public class ProcessLogResourceV2 implements Resource {
 
         ProcessKey processKey = logAccessManager.assertLogAccess(instanceId);
         HttpUtils.Range range = HttpUtils.parseRangeHeaderValue(rangeHeader);
-        ProcessLog l = logManager.segmentData(processKey, segmentId, range.start(), range.end());
+        ProcessLogData l = logManager.segmentData(processKey, segmentId, range.start(), range.end());
         return toResponse(instanceId, l, range);
     }
 
+    /**
+     * Follows the process log: waits until there is new data after {@code offset}
+     * and returns it.
+     * <ul>
+     * <li>{@code 200} with the data: the client is expected to reconnect with
+     * the offset increased by the number of received bytes;</li>
+     * <li>{@code 200} without data: no new data within {@code timeout} seconds,
+     * the client is expected to reconnect with the same offset;</li>
+     * <li>{@code 204}: the process is finished and there is no more data after
+     * {@code offset}, the client should stop following.</li>
+     * </ul>
+     * The {@value #PROCESS_STATUS_HEADER} header contains the process status
+     * if it was checked while handling the request.
+     * <p>
+     * The request doesn't hold a server thread while waiting, the check is
+     * performed only when {@link ProcessLogFollowers} signals the subscription.
+     */
+    @GET
+    @ApiOperation(value = "Follow the log")
+    @Path("/{id}/log/follow")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public void follow(@ApiParam @PathParam("id") UUID instanceId,
+                       @ApiParam @QueryParam("offset") @DefaultValue("0") int offset,
+                       @ApiParam @QueryParam("timeout") @DefaultValue("20") int timeout,
+                       @Suspended AsyncResponse asyncResponse) {
+
+        if (offset < 0) {
+            throw new ValidationErrorsException("'offset' must be a positive number or zero");
+        }
+
+        if (timeout < 1) {
+            throw new ValidationErrorsException("'timeout' must be a positive number");
+        }
+
+        ProcessKey processKey = logAccessManager.assertLogAccess(instanceId);
+
+        LogFollower f = new LogFollower(processKey, offset, asyncResponse);
+
+        asyncResponse.setTimeoutHandler(ar -> f.complete(null, null));
+        asyncResponse.setTimeout(Math.min(timeout, MAX_FOLLOW_TIMEOUT), TimeUnit.SECONDS);
+
+        // subscribe before the first check, otherwise the data appended in between can be missed
+        ProcessLogFollowers.Subscription s = logManager.follow(processKey, f);
+        asyncResponse.register((CompletionCallback) t -> s.close());
+
+        f.run();
+    }
+
     /**
      * Appends a process' log.
      */
@@ -172,36 +241,49 @@ public class ProcessLogResourceV2 implements Resource {
         try {
             byte[] ab = IOUtils.toByteArray(data);
             int upper = logManager.log(processKey, segmentId, ab);
-
-            int logSizeLimit = processCfg.getLogSizeLimit();
-            if (upper >= logSizeLimit) {
-                logManager.error(processKey, "Maximum log size reached: {}. Process cancelled.", logSizeLimit);
-                processManager.kill(processKey);
-            }
+            assertLogSize(processKey, upper);
         } catch (IOException e) {
             throw new ConcordApplicationException("Error while appending a log: " + e.getMessage());
         }
     }
 
-    public static Response toResponse(UUID instanceId, ProcessLog l, HttpUtils.Range range) {
-        List<ProcessLogChunk> data = l.getChunks();
-        if (data.isEmpty()) {
+    /**
+     * Appends a batch of log chunks, possibly to multiple segments.
+     * The body must be in the {@link LogSegmentBatch} format.
+     */
+    @POST
+    @ApiOperation(value = "Append a batch of log chunks")
+    @Path("{id}/log/data")
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @WithTimer
+    public void appendBatch(@ApiParam @PathParam("id") UUID instanceId,
+                            InputStream data) {
+
+        ProcessKey processKey = assertProcessKey(instanceId);
+
+        List<LogSegmentBatch.Chunk> chunks;
+        try {
+            chunks = LogSegmentBatch.decode(data, processCfg.getLogSizeLimit());
+        } catch (IOException e) {
+            throw new ConcordApplicationException("Error while appending a log: " + e.getMessage(), Response.Status.BAD_REQUEST);
+        }
+
+        int upper = logManager.log(processKey, chunks);
+        assertLogSize(processKey, upper);
+    }
+
+    public static Response toResponse(UUID instanceId, ProcessLogData l, HttpUtils.Range range) {
+        if (l.isEmpty()) {
             int actualStart = range.start() != null ? range.start() : 0;
             int actualEnd = range.end() != null ? range.end() : actualStart;
             return downloadableFile(instanceId, null, actualStart, actualEnd, l.getSize());
         }
 
-        ProcessLogChunk firstChunk = data.get(0);
-        int actualStart = firstChunk.getStart();
+        int actualStart = l.getStart();
+        int actualEnd = l.getEnd();
 
-        ProcessLogChunk lastChunk = data.get(data.size() - 1);
-        int actualEnd = lastChunk.getStart() + lastChunk.getData().length;
-
-        StreamingOutput out = output -> {
-            for (ProcessLogChunk e : data) {
-                output.write(e.getData());
-            }
-        };
+        // the data is streamed directly from the DB
+        StreamingOutput out = output -> l.writeTo(output, actualStart);
 
         return downloadableFile(instanceId, out, actualStart, actualEnd, l.getSize());
     }
@@ -214,6 +296,14 @@ public class ProcessLogResourceV2 implements Resource {
         return processKey;
     }
 
+    private void assertLogSize(ProcessKey processKey, int upper) {
+        int logSizeLimit = processCfg.getLogSizeLimit();
+        if (upper >= logSizeLimit) {
+            logManager.error(processKey, "Maximum log size reached: {}. Process cancelled.", logSizeLimit);
+            processManager.kill(processKey);
+        }
+    }
+
     private static Response downloadableFile(UUID instanceId, StreamingOutput out, int start, int end, int size) {
         return (out != null ? Response.ok(out) : Response.ok())
                 .header("Content-Range", "bytes " + start + "-" + end + "/" + size)
@@ -221,4 +311,77 @@ public class ProcessLogResourceV2 implements Resource {
                 .header("Content-Disposition", "attachment; filename=\"" + instanceId + ".log\"")
                 .build();
     }
+
+    private final class LogFollower implements Runnable {
+
+        private final ProcessKey processKey;
+        private final int offset;
+        private final AsyncResponse asyncResponse;
+
+        private LogFollower(ProcessKey processKey, int offset, AsyncResponse asyncResponse) {
+            this.processKey = processKey;
+            this.offset = offset;
+            this.asyncResponse = asyncResponse;
+        }
+
+        @Override
+        public synchronized void run() {
+            if (asyncResponse.isDone()) {
+                return;
+            }
+
+            try {
+                ProcessLogData l = read();
+                if (l != null) {
+                    complete(l, null);
+                    return;
+                }
+
+                ProcessStatus status = queueDao.getStatus(processKey);
+                if (status == null) {
+                    asyncResponse.resume(new ConcordApplicationException("Process instance not found: " + processKey.getInstanceId(), Response.Status.NOT_FOUND));
+                } else if (FINAL_STATUSES.contains(status)) {
+                    // the process can write its last bytes and finish after the read above
+                    complete(read(), status);
+                }
+            } catch (Exception e) {
+                asyncResponse.resume(e);
+            }
+        }
+
+        private ProcessLogData read() {
+            ProcessLogData l = logManager.get(processKey, offset, null);
+            if (l.isEmpty() || l.getEnd() <= offset) {
+                return null;
+            }
+            return l;
+        }
+
+        /**
+         * @param l      the new data or {@code null} if there's none
+         * @param status the final status of the process or {@code null}
+         *               if the process wasn't finished when checked
+         */
+        private synchronized void complete(ProcessLogData l, ProcessStatus status) {
+            if (asyncResponse.isDone()) {
+                return;
+            }
+
+            Response.ResponseBuilder b;
+            if (l != null) {
+                StreamingOutput out = output -> l.writeTo(output, offset);
+                b = Response.ok(out, MediaType.APPLICATION_OCTET_STREAM);
+            } else if (status != null) {
+                b = Response.noContent();
+            } else {
+                b = Response.ok().type(MediaType.APPLICATION_OCTET_STREAM);
+            }
+
+            if (status != null) {
+                b.header(PROCESS_STATUS_HEADER, status.name());
+            }
+
+            asyncResponse.resume(b.build());
+        }
+    }
 }
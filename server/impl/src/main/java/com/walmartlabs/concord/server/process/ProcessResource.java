@@ -45,8 +45,8 @@ import com.walmartlabs.concord.server.process.ProcessEntry.ProcessWaitHistoryEnt
 import com.walmartlabs.concord.server.process.ProcessManager.ProcessResult;
 import com.walmartlabs.concord.server.process.event.ProcessEventDao;
 import com.walmartlabs.concord.server.process.logs.ProcessLogAccessManager;
+import com.walmartlabs.concord.server.process.logs.ProcessLogData;
 import com.walmartlabs.concord.server.process.logs.ProcessLogManager;
-import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
 import com.walmartlabs.concord.server.process.queue.*;
 import com.walmartlabs.concord.server.process.state.ProcessStateManager;
 import com.walmartlabs.concord.server.sdk.ConcordApplicationException;
@@ -818,7 +818,7 @@ public class ProcessResource implements Resource {
 
         HttpUtils.Range range = HttpUtils.parseRangeHeaderValue(rangeHeader);
 
-        ProcessLog l = logManager.get(processKey, range.start(), range.end());
+        ProcessLogData l = logManager.get(processKey, range.start(), range.end());
         return ProcessLogResourceV2.toResponse(instanceId, l, range);
     }
 
@@ -20,6 +20,7 @@ package com.walmartlabs.concord.server.process;
  * =====
  */
 
+import com.google.common.collect.ImmutableSet;
 import com.walmartlabs.concord.server.IsoDateParam;
 import com.walmartlabs.concord.server.org.OrganizationEntry;
 import com.walmartlabs.concord.server.org.OrganizationManager;
@@ -49,6 +50,9 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -56,6 +60,7 @@ import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriInfo;
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 @Named
 @Singleton
@@ -65,6 +70,15 @@ public class ProcessResourceV2 implements Resource {
 
     private static final Logger log = LoggerFactory.getLogger(ProcessResourceV2.class);
 
+    private static final Set<ProcessStatus> FINAL_STATUSES = ImmutableSet.of(
+            ProcessStatus.FINISHED,
+            ProcessStatus.FAILED,
+            ProcessStatus.CANCELLED,
+            ProcessStatus.TIMED_OUT);
+
+    private static final int DEFAULT_WAIT_TIMEOUT = 20;
+    private static final int MAX_WAIT_TIMEOUT = 60;
+
     private final ProcessQueueDao queueDao;
     private final ProcessQueueManager processQueueManager;
     private final ProjectDao projectDao;
@@ -72,6 +86,7 @@ public class ProcessResourceV2 implements Resource {
     private final UserDao userDao;
     private final OrganizationManager orgManager;
     private final ProjectAccessManager projectAccessManager;
+    private final ProcessStatusWatchers statusWatchers;
 
     @Inject
     public ProcessResourceV2(ProcessQueueDao queueDao,
@@ -80,7 +95,8 @@ public class ProcessResourceV2 implements Resource {
                              RepositoryDao repositoryDao,
                              UserDao userDao,
                              OrganizationManager orgManager,
-                             ProjectAccessManager projectAccessManager) {
+                             ProjectAccessManager projectAccessManager,
+                             ProcessStatusWatchers statusWatchers) {
 
         this.queueDao = queueDao;
         this.processQueueManager = processQueueManager;
@@ -89,6 +105,7 @@ public class ProcessResourceV2 implements Resource {
         this.userDao = userDao;
         this.orgManager = orgManager;
         this.projectAccessManager = projectAccessManager;
+        this.statusWatchers = statusWatchers;
     }
 
     /**
@@ -117,6 +134,49 @@ public class ProcessResourceV2 implements Resource {
         return e;
     }
 
+    /**
+     * Waits until any (or all, see {@link ProcessWaitRequest#waitForAll()}) of
+     * the specified processes reach a final status. Returns the current statuses
+     * of the processes when the condition is met or after {@code timeout} seconds.
+     * In the latter case the client is expected to repeat the request.
+     * <p>
+     * The request doesn't hold a server thread while waiting, the statuses are
+     * re-checked only when {@link ProcessStatusWatchers} signals the subscription.
+     */
+    @POST
+    @ApiOperation(value = "Wait for processes to finish", responseContainer = "list", response = ProcessStatusEntry.class)
+    @Path("/wait")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void waitForCompletion(@ApiParam ProcessWaitRequest request,
+                                  @Suspended AsyncResponse asyncResponse) {
+
+        Set<UUID> instanceIds = new HashSet<>(request.instanceIds());
+        if (instanceIds.isEmpty()) {
+            throw new ValidationErrorsException("'instanceIds' is required");
+        }
+
+        int timeout = request.timeout() != null ? request.timeout() : DEFAULT_WAIT_TIMEOUT;
+        if (timeout < 1) {
+            throw new ValidationErrorsException("'timeout' must be a positive number");
+        }
+
+        for (UUID projectId : queueDao.getProjectIds(instanceIds)) {
+            projectAccessManager.assertAccess(projectId, ResourceAccessLevel.READER, false);
+        }
+
+        StatusWaiter w = new StatusWaiter(instanceIds, request.waitForAll(), asyncResponse);
+
+        asyncResponse.setTimeoutHandler(ar -> w.complete());
+        asyncResponse.setTimeout(Math.min(timeout, MAX_WAIT_TIMEOUT), TimeUnit.SECONDS);
+
+        // subscribe before the first check, otherwise the changes made in between can be missed
+        ProcessStatusWatchers.Subscription s = statusWatchers.subscribe(instanceIds, w);
+        asyncResponse.register((CompletionCallback) t -> s.close());
+
+        w.run();
+    }
+
     /**
      * Returns a list of processes applying the specified filters.
      */
@@ -319,4 +379,65 @@ public class ProcessResourceV2 implements Resource {
         Calendar c = p.getValue();
         return new Timestamp(c.getTimeInMillis());
     }
+
+    private static Set<UUID> notFound(Set<UUID> instanceIds, List<ProcessStatusEntry> found) {
+        Set<UUID> result = new HashSet<>(instanceIds);
+        found.forEach(e -> result.remove(e.instanceId()));
+        return result;
+    }
+
+    private final class StatusWaiter implements Runnable {
+
+        private final Set<UUID> instanceIds;
+        private final boolean waitForAll;
+        private final AsyncResponse asyncResponse;
+
+        private StatusWaiter(Set<UUID> instanceIds, boolean waitForAll, AsyncResponse asyncResponse) {
+            this.instanceIds = instanceIds;
+            this.waitForAll = waitForAll;
+            this.asyncResponse = asyncResponse;
+        }
+
+        @Override
+        public synchronized void run() {
+            if (asyncResponse.isDone()) {
+                return;
+            }
+
+            try {
+                List<ProcessStatusEntry> result = getStatuses();
+
+                long finished = result.stream()
+                        .filter(e -> FINAL_STATUSES.contains(e.status()))
+                        .count();
+
+                boolean done = waitForAll ? finished == result.size() : finished > 0;
+                if (done) {
+                    asyncResponse.resume(result);
+                }
+            } catch (Exception e) {
+                asyncResponse.resume(e);
+            }
+        }
+
+        private synchronized void complete() {
+            if (asyncResponse.isDone()) {
+                return;
+            }
+
+            try {
+                asyncResponse.resume(getStatuses());
+            } catch (Exception e) {
+                asyncResponse.resume(e);
+            }
+        }
+
+        private List<ProcessStatusEntry> getStatuses() {
+            List<ProcessStatusEntry> result = queueDao.getStatuses(instanceIds);
+            if (result.size() != instanceIds.size()) {
+                throw new ConcordApplicationException("Process instance(s) not found: " + notFound(instanceIds, result), Status.NOT_FOUND);
+            }
+            return result;
+        }
+    }
 }
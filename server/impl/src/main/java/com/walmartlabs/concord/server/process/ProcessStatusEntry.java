@@ -0,0 +1,46 @@
+package com.walmartlabs.concord.server.process;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.immutables.value.Value;
+
+import java.util.UUID;
+
+@Value.Immutable
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+@JsonSerialize(as = ImmutableProcessStatusEntry.class)
+@JsonDeserialize(as = ImmutableProcessStatusEntry.class)
+public interface ProcessStatusEntry {
+
+    @Value.Parameter
+    UUID instanceId();
+
+    @Value.Parameter
+    ProcessStatus status();
+
+    static ProcessStatusEntry of(UUID instanceId, ProcessStatus status) {
+        return ImmutableProcessStatusEntry.of(instanceId, status);
+    }
+}
@@ -40,6 +40,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonatype.siesta.Resource;
 import org.sonatype.siesta.Validate;
+import org.sonatype.siesta.ValidationErrorsException;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -51,6 +52,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
@@ -130,4 +133,41 @@ public class ProcessCheckpointResource implements Resource {
 
         log.info("uploadCheckpoint ['{}'] -> done", processKey);
     }
+
+    /**
+     * Uploads a delta checkpoint: the files changed since the parent checkpoint.
+     * The {@code deletedFiles} part is a newline-separated list of files removed
+     * since the parent checkpoint.
+     */
+    @POST
+    @javax.ws.rs.Path("{id}/checkpoint/delta")
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    public void uploadDeltaCheckpoint(@PathParam("id") UUID instanceId,
+                                      @ApiParam MultipartInput input) {
+
+        ProcessEntry entry = processManager.assertProcess(instanceId);
+        ProcessKey processKey = ProcessKey.from(entry);
+
+        UUID checkpointId = MultipartUtils.getUuid(input, "id");
+        String checkpointName = MultipartUtils.getString(input, "name");
+        UUID parentId = MultipartUtils.getUuid(input, "parentId");
+        if (parentId == null) {
+            throw new ValidationErrorsException("'parentId' is required");
+        }
+
+        String deleted = MultipartUtils.getString(input, "deletedFiles");
+        List<String> deletedFiles = deleted != null ? Arrays.asList(deleted.split("\n")) : Collections.emptyList();
+
+        try (InputStream data = MultipartUtils.getStream(input, "data");
+             TemporaryPath tmpIn = IOUtils.tempFile("checkpoint", ".zip")) {
+
+            Files.copy(data, tmpIn.path(), StandardCopyOption.REPLACE_EXISTING);
+            checkpointManager.importDeltaCheckpoint(processKey, checkpointId, checkpointName, parentId, deletedFiles, tmpIn.path());
+        } catch (IOException e) {
+            log.error("uploadDeltaCheckpoint ['{}'] -> error", processKey, e);
+            throw new ConcordApplicationException("upload error: " + e.getMessage());
+        }
+
+        log.info("uploadDeltaCheckpoint ['{}'] -> done", processKey);
+    }
 }
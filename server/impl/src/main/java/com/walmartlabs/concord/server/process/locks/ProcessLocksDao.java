@@ -43,6 +43,11 @@ public class ProcessLocksDao extends AbstractDao {
         super(cfg);
     }
 
+    @Override
+    public void tx(Tx t) {
+        super.tx(t);
+    }
+
     public LockEntry tryLock(UUID instanceId, UUID orgId, UUID projectId, ProcessLockScope scope, String lockName) {
         while (true) {
             boolean locked = insert(instanceId, orgId, projectId, scope, lockName);
@@ -71,8 +76,18 @@ public class ProcessLocksDao extends AbstractDao {
         return txResult(tx -> insert(tx, instanceId, orgId, projectId, scope, lockName));
     }
 
-    public void delete(UUID instanceId, UUID orgId, UUID projectId, ProcessLockScope scope, String lockName) {
-        tx(tx -> delete(tx, instanceId, orgId, projectId, scope, lockName));
+    /**
+     * @return {@code true} if the lock was removed.
+     */
+    public boolean delete(DSLContext tx, UUID instanceId, UUID orgId, UUID projectId, ProcessLockScope scope, String lockName) {
+        ProcessLocks l = PROCESS_LOCKS.as("l");
+        return tx.deleteFrom(l)
+                .where(l.INSTANCE_ID.eq(instanceId)
+                        .and(l.ORG_ID.eq(orgId))
+                        .and(l.PROJECT_ID.eq(projectId))
+                        .and(l.LOCK_SCOPE.eq(scope))
+                        .and(l.LOCK_NAME.eq(lockName)))
+                .execute() == 1;
     }
 
     private boolean insert(DSLContext tx, UUID instanceId, UUID orgId, UUID projectId, ProcessLockScope scope, String lockName) {
@@ -108,15 +123,4 @@ public class ProcessLocksDao extends AbstractDao {
                 .name(r.getLockName())
                 .build());
     }
-
-    private void delete(DSLContext tx, UUID instanceId, UUID orgId, UUID projectId, ProcessLockScope scope, String lockName) {
-        ProcessLocks l = PROCESS_LOCKS.as("l");
-        tx.deleteFrom(l)
-                .where(l.INSTANCE_ID.eq(instanceId)
-                        .and(l.ORG_ID.eq(orgId))
-                        .and(l.PROJECT_ID.eq(projectId))
-                        .and(l.LOCK_SCOPE.eq(scope))
-                        .and(l.LOCK_NAME.eq(lockName)))
-                .execute();
-    }
 }
@@ -27,6 +27,7 @@ import com.walmartlabs.concord.server.process.ProcessKey;
 import com.walmartlabs.concord.server.process.queue.AbstractWaitCondition;
 import com.walmartlabs.concord.server.process.queue.ProcessLockCondition;
 import com.walmartlabs.concord.server.process.queue.ProcessQueueManager;
+import com.walmartlabs.concord.server.process.queue.ProcessWaitIndex;
 import com.walmartlabs.concord.server.sdk.ConcordApplicationException;
 import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
 import io.swagger.annotations.Api;
@@ -51,12 +52,14 @@ public class ProcessLocksResource implements Resource {
     private final ProcessQueueManager processQueueManager;
     private final ProcessQueueManager queueManager;
     private final ProcessLocksDao dao;
+    private final ProcessWaitIndex waitIndex;
 
     @Inject
-    public ProcessLocksResource(ProcessQueueManager processQueueManager, ProcessQueueManager queueManager, ProcessLocksDao dao) {
+    public ProcessLocksResource(ProcessQueueManager processQueueManager, ProcessQueueManager queueManager, ProcessLocksDao dao, ProcessWaitIndex waitIndex) {
         this.processQueueManager = processQueueManager;
         this.queueManager = queueManager;
         this.dao = dao;
+        this.waitIndex = waitIndex;
     }
 
     /**
@@ -96,7 +99,11 @@ public class ProcessLocksResource implements Resource {
                        @QueryParam("scope") @DefaultValue("PROJECT") ProcessLockScope scope) {
 
         ProcessEntry e = assertProcess(instanceId);
-        dao.delete(e.instanceId(), e.orgId(), e.projectId(), scope, lockName);
+        dao.tx(tx -> {
+            if (dao.delete(tx, e.instanceId(), e.orgId(), e.projectId(), scope, lockName)) {
+                waitIndex.onLockRelease(tx, e.orgId(), e.projectId(), scope, lockName);
+            }
+        });
     }
 
     private ProcessEntry assertProcess(UUID instanceId) {
@@ -25,10 +25,13 @@ import com.walmartlabs.concord.db.MainDB;
 import com.walmartlabs.concord.server.Utils;
 import com.walmartlabs.concord.server.jooq.tables.ProcessLocks;
 import com.walmartlabs.concord.server.jooq.tables.ProcessQueue;
+import com.walmartlabs.concord.server.jooq.tables.records.ProcessLocksRecord;
+import com.walmartlabs.concord.server.process.queue.ProcessWaitIndex;
 import com.walmartlabs.concord.server.sdk.ProcessStatus;
 import com.walmartlabs.concord.server.sdk.ScheduledTask;
 import org.jooq.Configuration;
 import org.jooq.Record1;
+import org.jooq.Result;
 import org.jooq.SelectConditionStep;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,10 +55,12 @@ public class ProcessLocksWatchdog implements ScheduledTask {
     private static final Logger log = LoggerFactory.getLogger(ProcessLocksWatchdog.class);
 
     private final WatchdogDao dao;
+    private final ProcessWaitIndex waitIndex;
 
     @Inject
-    public ProcessLocksWatchdog(WatchdogDao dao) {
+    public ProcessLocksWatchdog(WatchdogDao dao, ProcessWaitIndex waitIndex) {
         this.dao = dao;
+        this.waitIndex = waitIndex;
     }
 
     @Override
@@ -66,7 +71,7 @@ public class ProcessLocksWatchdog implements ScheduledTask {
 
     @Override
     public void performTask() {
-        int count = dao.deleteStalledLocks();
+        int count = dao.deleteStalledLocks(waitIndex);
         log.debug("performTask -> {} locks deleted", count);
     }
 
@@ -85,7 +90,7 @@ public class ProcessLocksWatchdog implements ScheduledTask {
             super(cfg);
         }
 
-        public int deleteStalledLocks() {
+        public int deleteStalledLocks(ProcessWaitIndex waitIndex) {
             return txResult(tx -> {
                 ProcessQueue q = PROCESS_QUEUE.as("q");
                 ProcessLocks l = PROCESS_LOCKS.as("l");
@@ -95,9 +100,14 @@ public class ProcessLocksWatchdog implements ScheduledTask {
                         .where(q.INSTANCE_ID.eq(l.INSTANCE_ID)
                                 .and(q.CURRENT_STATUS.in(Utils.toString(FINISHED_STATUSES))));
 
-                return tx.deleteFrom(l)
+                Result<ProcessLocksRecord> deleted = tx.deleteFrom(l)
                         .where(l.INSTANCE_ID.in(finishedProcesses))
-                        .execute();
+                        .returning()
+                        .fetch();
+
+                deleted.forEach(r -> waitIndex.onLockRelease(tx, r.getOrgId(), r.getProjectId(), r.getLockScope(), r.getLockName()));
+
+                return deleted.size();
             });
         }
     }
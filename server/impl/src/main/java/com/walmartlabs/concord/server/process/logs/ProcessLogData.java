@@ -0,0 +1,155 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.common.io.ByteStreams;
+import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.LogRange;
+import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
+import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLogChunk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * A range of a process log. The data is read only when {@link #writeTo(OutputStream, int)}
+ * is called.
+ */
+public final class ProcessLogData {
+
+    public static ProcessLogData of(LogRange range, DataSource source) {
+        return new ProcessLogData(range.getStart(), range.getEnd(), range.getSize(), source);
+    }
+
+    public static ProcessLogData of(ProcessLog log) {
+        List<ProcessLogChunk> chunks = log.getChunks();
+        if (chunks.isEmpty()) {
+            return new ProcessLogData(null, null, log.getSize(), null);
+        }
+
+        ProcessLogChunk first = chunks.get(0);
+        ProcessLogChunk last = chunks.get(chunks.size() - 1);
+        return new ProcessLogData(first.getStart(), last.getStart() + last.getData().length, log.getSize(), (start, end) -> new ChunkInputStream(chunks));
+    }
+
+    private final Integer start;
+    private final Integer end;
+    private final int size;
+    private final DataSource source;
+
+    private ProcessLogData(Integer start, Integer end, int size, DataSource source) {
+        this.start = start;
+        this.end = end;
+        this.size = size;
+        this.source = source;
+    }
+
+    /**
+     * @return the start of the data or {@code null} if there's no data
+     */
+    public Integer getStart() {
+        return start;
+    }
+
+    /**
+     * @return the end of the data or {@code null} if there's no data
+     */
+    public Integer getEnd() {
+        return end;
+    }
+
+    /**
+     * @return the total size of the log
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return start == null || end == null || end <= start;
+    }
+
+    /**
+     * Writes the data starting from the {@code from} offset.
+     */
+    public void writeTo(OutputStream out, int from) throws IOException {
+        if (isEmpty()) {
+            return;
+        }
+
+        try (InputStream in = source.open(start, end)) {
+            if (in == null) {
+                return;
+            }
+
+            if (from > start) {
+                ByteStreams.skipFully(in, (long) from - start);
+            }
+
+            ByteStreams.copy(in, out);
+        }
+    }
+
+    public interface DataSource {
+
+        /**
+         * @return the data stream or {@code null} if there's no data
+         */
+        InputStream open(int start, int end);
+    }
+
+    private static final class ChunkInputStream extends InputStream {
+
+        private final List<ProcessLogChunk> chunks;
+        private int chunk;
+        private int pos;
+
+        private ChunkInputStream(List<ProcessLogChunk> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public int read() {
+            byte[] ab = new byte[1];
+            int n = read(ab, 0, 1);
+            return n < 0 ? -1 : ab[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            while (chunk < chunks.size()) {
+                byte[] data = chunks.get(chunk).getData();
+                if (pos < data.length) {
+                    int n = Math.min(len, data.length - pos);
+                    System.arraycopy(data, pos, b, off, n);
+                    pos += n;
+                    return n;
+                }
+
+                chunk++;
+                pos = 0;
+            }
+
+            return -1;
+        }
+    }
+}
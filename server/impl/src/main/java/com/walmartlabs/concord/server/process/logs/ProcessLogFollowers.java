@@ -0,0 +1,208 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.process.queue.dispatcher.DispatcherSignal;
+import com.walmartlabs.concord.server.sdk.BackgroundTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Notifies the clients following process logs about new data.
+ * <p>
+ * The appends made on the current server node are signalled immediately.
+ * The IDs of the appended processes are also collected and published
+ * with {@link DispatcherSignal} every {@link #PUBLISH_INTERVAL}ms, so
+ * the followers connected to the other nodes are signalled too.
+ * <p>
+ * The listeners are called in a fixed thread pool. The signals are coalesced
+ * per subscription: a subscription is queued at most once until its listener
+ * runs, so the queue never holds more entries than there are subscriptions.
+ */
+@Named
+@Singleton
+public class ProcessLogFollowers implements BackgroundTask, DispatcherSignal.Listener {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessLogFollowers.class);
+
+    private static final String APPEND_PREFIX = "log:";
+    private static final long PUBLISH_INTERVAL = 250;
+    private static final int MAX_IDS_PER_NOTIFICATION = 100;
+    private static final int THREAD_COUNT = 4;
+
+    private final DispatcherSignal signal;
+    private final Map<UUID, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final Set<UUID> appended = ConcurrentHashMap.newKeySet();
+
+    private ExecutorService executor;
+    private ScheduledExecutorService publisher;
+
+    @Inject
+    public ProcessLogFollowers(DispatcherSignal signal) {
+        this.signal = signal;
+        signal.addListener(this);
+    }
+
+    @Override
+    public void start() {
+        this.executor = Executors.newFixedThreadPool(THREAD_COUNT, daemon("process-log-followers"));
+        this.publisher = Executors.newSingleThreadScheduledExecutor(daemon("process-log-append-publisher"));
+        this.publisher.scheduleWithFixedDelay(this::publishAppended, PUBLISH_INTERVAL, PUBLISH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (publisher != null) {
+            publisher.shutdownNow();
+            publisher = null;
+        }
+
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Subscribes the {@code listener} to the appends of the process' log.
+     * Subscribe before reading the log, otherwise the data appended in between can be missed.
+     */
+    public Subscription subscribe(UUID instanceId, Runnable listener) {
+        Subscription s = new Subscription(instanceId, listener);
+        subscriptions.compute(instanceId, (k, v) -> {
+            if (v == null) {
+                v = ConcurrentHashMap.newKeySet();
+            }
+            v.add(s);
+            return v;
+        });
+        return s;
+    }
+
+    public void onAppend(UUID instanceId) {
+        appended.add(instanceId);
+        signal(instanceId);
+    }
+
+    @Override
+    public void onConnect() {
+        // notifications might've been lost, let everyone re-check
+        subscriptions.values().forEach(l -> l.forEach(Subscription::signal));
+    }
+
+    @Override
+    public void onNotification(String payload) {
+        if (!payload.startsWith(APPEND_PREFIX)) {
+            return;
+        }
+
+        for (String id : payload.substring(APPEND_PREFIX.length()).split(",")) {
+            signal(UUID.fromString(id));
+        }
+    }
+
+    private void signal(UUID instanceId) {
+        Set<Subscription> l = subscriptions.get(instanceId);
+        if (l != null) {
+            l.forEach(Subscription::signal);
+        }
+    }
+
+    private void publishAppended() {
+        try {
+            List<UUID> ids = new ArrayList<>(appended);
+            if (ids.isEmpty()) {
+                return;
+            }
+            appended.removeAll(ids);
+
+            for (int i = 0; i < ids.size(); i += MAX_IDS_PER_NOTIFICATION) {
+                StringJoiner payload = new StringJoiner(",", APPEND_PREFIX, "");
+                ids.subList(i, Math.min(ids.size(), i + MAX_IDS_PER_NOTIFICATION))
+                        .forEach(id -> payload.add(id.toString()));
+                signal.publishQuiet(payload.toString());
+            }
+        } catch (Exception e) {
+            log.warn("publishAppended -> error: {}", e.getMessage());
+        }
+    }
+
+    private void unsubscribe(Subscription s) {
+        subscriptions.computeIfPresent(s.instanceId, (k, v) -> {
+            v.remove(s);
+            return v.isEmpty() ? null : v;
+        });
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    public final class Subscription implements AutoCloseable {
+
+        private final UUID instanceId;
+        private final Runnable listener;
+        private final AtomicBoolean pending = new AtomicBoolean();
+
+        private Subscription(UUID instanceId, Runnable listener) {
+            this.instanceId = instanceId;
+            this.listener = listener;
+        }
+
+        @Override
+        public void close() {
+            unsubscribe(this);
+        }
+
+        private void signal() {
+            ExecutorService e = executor;
+            if (e == null || !pending.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                e.execute(() -> {
+                    // reset before running, so the signals received while running are not lost
+                    pending.set(false);
+                    try {
+                        listener.run();
+                    } catch (Exception ex) {
+                        log.warn("signal ['{}'] -> listener error: {}", instanceId, ex.getMessage());
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                // shutting down
+                pending.set(false);
+            }
+        }
+    }
+}
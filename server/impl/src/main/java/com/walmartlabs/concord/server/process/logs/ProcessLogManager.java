@@ -21,6 +21,7 @@ package com.walmartlabs.concord.server.process.logs;
  */
 
 import com.codahale.metrics.Counter;
+import com.walmartlabs.concord.common.LogSegmentBatch;
 import com.walmartlabs.concord.common.LogUtils;
 import com.walmartlabs.concord.db.PgIntRange;
 import com.walmartlabs.concord.server.Listeners;
@@ -36,9 +37,10 @@ import javax.inject.Singleton;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static com.walmartlabs.concord.common.LogUtils.LogLevel;
-import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
+import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.LogRange;
 
 @Named
 @Singleton
@@ -50,6 +52,7 @@ public class ProcessLogManager {
     private final ProcessConfiguration processConfiguration;
     private final ProcessLogsDao logsDao;
     private final Listeners listeners;
+    private final ProcessLogFollowers followers;
 
     @InjectCounter
     private final Counter logBytesAppended;
@@ -58,11 +61,13 @@ public class ProcessLogManager {
     public ProcessLogManager(ProcessConfiguration processConfiguration,
                              ProcessLogsDao logsDao,
                              Listeners listeners,
+                             ProcessLogFollowers followers,
                              Counter logBytesAppended) {
 
         this.processConfiguration = processConfiguration;
         this.logsDao = logsDao;
         this.listeners = listeners;
+        this.followers = followers;
         this.logBytesAppended = logBytesAppended;
     }
 
@@ -105,18 +110,26 @@ public class ProcessLogManager {
         logsDao.updateSegment(processKey, segmentId, status, warnings, errors);
     }
 
-    public ProcessLog segmentData(ProcessKey processKey, long segmentId, Integer start, Integer end) {
-        return logsDao.segmentData(processKey, segmentId, start, end);
+    public ProcessLogData segmentData(ProcessKey processKey, long segmentId, Integer start, Integer end) {
+        LogRange range = logsDao.segmentDataRange(processKey, segmentId, start, end);
+        return ProcessLogData.of(range, (s, e) -> logsDao.segmentDataStream(processKey, segmentId, s, e));
     }
 
-    public ProcessLog get(ProcessKey processKey, Integer start, Integer end) {
-        ProcessLog logs;
+    public ProcessLogData get(ProcessKey processKey, Integer start, Integer end) {
         if (isNewLog(processKey)) {
-            logs = logsDao.data(processKey, start, end);
-        } else {
-            logs = logsDao.get(processKey, start, end);
+            LogRange range = logsDao.dataRange(processKey, start, end);
+            return ProcessLogData.of(range, (s, e) -> logsDao.dataStream(processKey, s, e));
         }
-        return logs;
+
+        return ProcessLogData.of(logsDao.get(processKey, start, end));
+    }
+
+    /**
+     * Calls the {@code listener} when new data might be available in the process log.
+     * Subscribe before reading the log, otherwise the data appended in between can be missed.
+     */
+    public ProcessLogFollowers.Subscription follow(ProcessKey processKey, Runnable listener) {
+        return followers.subscribe(processKey.getInstanceId(), listener);
     }
 
     public int log(ProcessKey processKey, long segmentId, byte[] msg) {
@@ -127,10 +140,43 @@ public class ProcessLogManager {
             range = logsDao.append(processKey, msg);
         }
         logBytesAppended.inc(msg.length);
+        followers.onAppend(processKey.getInstanceId());
         listeners.onProcessLogAppend(processKey, msg);
         return range.getUpper();
     }
 
+    /**
+     * Appends a batch of chunks, possibly to multiple segments.
+     * @return the new size of the log.
+     */
+    public int log(ProcessKey processKey, List<LogSegmentBatch.Chunk> chunks) {
+        List<LogSegmentBatch.Chunk> nonEmpty = chunks.stream()
+                .filter(c -> c.getData().length > 0)
+                .collect(Collectors.toList());
+
+        if (nonEmpty.isEmpty()) {
+            return 0;
+        }
+
+        int upper;
+        if (isNewLog(processKey)) {
+            upper = logsDao.append(processKey, nonEmpty);
+        } else {
+            upper = 0;
+            for (LogSegmentBatch.Chunk c : nonEmpty) {
+                upper = logsDao.append(processKey, c.getData()).getUpper();
+            }
+        }
+
+        for (LogSegmentBatch.Chunk c : nonEmpty) {
+            logBytesAppended.inc(c.getData().length);
+            listeners.onProcessLogAppend(processKey, c.getData());
+        }
+        followers.onAppend(processKey.getInstanceId());
+
+        return upper;
+    }
+
     private void log(ProcessKey processKey, LogLevel level, String msg, Object... args) {
         log(processKey, LogUtils.formatMessage(level, msg, args));
     }
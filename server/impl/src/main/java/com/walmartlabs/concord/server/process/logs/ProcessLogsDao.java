@@ -20,6 +20,7 @@ package com.walmartlabs.concord.server.process.logs;
  * =====
  */
 
+import com.walmartlabs.concord.common.LogSegmentBatch;
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.db.MainDB;
 import com.walmartlabs.concord.db.PgIntRange;
@@ -33,12 +34,13 @@ import org.jooq.impl.DSL;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.sql.Timestamp;
-import java.util.Date;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
+import java.util.stream.Collectors;
 
+import static com.walmartlabs.concord.db.PgUtils.lowerRange;
 import static com.walmartlabs.concord.db.PgUtils.upperRange;
 import static com.walmartlabs.concord.server.jooq.Routines.*;
 import static com.walmartlabs.concord.server.jooq.Tables.*;
@@ -47,6 +49,8 @@ import static org.jooq.impl.DSL.*;
 @Named
 public class ProcessLogsDao extends AbstractDao {
 
+    private static final int STREAM_FETCH_SIZE = 32;
+
     @Inject
     public ProcessLogsDao(@MainDB Configuration cfg) {
         super(cfg);
@@ -100,6 +104,66 @@ public class ProcessLogsDao extends AbstractDao {
         return PgIntRange.parse(r.getLogRange().toString());
     }
 
+    /**
+     * Appends multiple chunks using a single multi-row insert.
+     * The ranges are calculated in the order of the chunks.
+     * @return the new size of the log.
+     */
+    public int append(ProcessKey processKey, List<LogSegmentBatch.Chunk> chunks) {
+        UUID instanceId = processKey.getInstanceId();
+        Timestamp createdAt = processKey.getCreatedAt();
+
+        Set<Long> segmentIds = chunks.stream()
+                .map(LogSegmentBatch.Chunk::getSegmentId)
+                .collect(Collectors.toSet());
+
+        return txResult(tx -> {
+            Condition c = PROCESS_LOG_DATA.INSTANCE_ID.eq(instanceId)
+                    .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(createdAt));
+
+            Field<Integer> logUpper = max(upperRange(PROCESS_LOG_DATA.LOG_RANGE));
+            int logPos = tx.select(logUpper)
+                    .from(PROCESS_LOG_DATA)
+                    .where(c)
+                    .fetchOptional(logUpper)
+                    .orElse(0);
+
+            Field<Integer> segmentUpper = max(upperRange(PROCESS_LOG_DATA.SEGMENT_RANGE));
+            Map<Long, Integer> segmentPos = new HashMap<>(tx.select(PROCESS_LOG_DATA.SEGMENT_ID, segmentUpper)
+                    .from(PROCESS_LOG_DATA)
+                    .where(c.and(PROCESS_LOG_DATA.SEGMENT_ID.in(segmentIds)))
+                    .groupBy(PROCESS_LOG_DATA.SEGMENT_ID)
+                    .fetchMap(PROCESS_LOG_DATA.SEGMENT_ID, segmentUpper));
+
+            InsertValuesStep6<ProcessLogDataRecord, UUID, Timestamp, Long, Object, Object, byte[]> q = tx.insertInto(PROCESS_LOG_DATA)
+                    .columns(PROCESS_LOG_DATA.INSTANCE_ID,
+                            PROCESS_LOG_DATA.INSTANCE_CREATED_AT,
+                            PROCESS_LOG_DATA.SEGMENT_ID,
+                            PROCESS_LOG_DATA.SEGMENT_RANGE,
+                            PROCESS_LOG_DATA.LOG_RANGE,
+                            PROCESS_LOG_DATA.CHUNK_DATA);
+
+            for (LogSegmentBatch.Chunk chunk : chunks) {
+                int len = chunk.getData().length;
+                int segmentStart = segmentPos.getOrDefault(chunk.getSegmentId(), 0);
+
+                q = q.values(value(instanceId),
+                        value(createdAt),
+                        value(chunk.getSegmentId()),
+                        int4range(segmentStart, segmentStart + len),
+                        int4range(logPos, logPos + len),
+                        value(chunk.getData()));
+
+                segmentPos.put(chunk.getSegmentId(), segmentStart + len);
+                logPos += len;
+            }
+
+            q.execute();
+
+            return logPos;
+        });
+    }
+
     /**
      * @deprecated remove after process_logs is no longer in use
      */
@@ -185,42 +249,114 @@ public class ProcessLogsDao extends AbstractDao {
         }
     }
 
-    public ProcessLog segmentData(ProcessKey processKey, long segmentId, Integer start, Integer end) {
+    /**
+     * Returns the boundaries of the segment's chunks that overlap with the specified range.
+     * Use the returned boundaries to read the data with {@link #segmentDataStream(ProcessKey, long, int, int)}.
+     */
+    public LogRange segmentDataRange(ProcessKey processKey, long segmentId, Integer start, Integer end) {
         UUID instanceId = processKey.getInstanceId();
         Timestamp createdAt = processKey.getCreatedAt();
 
-        try (DSLContext tx = DSL.using(cfg)) {
-            List<ProcessLogChunk> chunks = getSegmentChunks(tx, processKey, segmentId, start, end);
+        Condition c = PROCESS_LOG_DATA.INSTANCE_ID.eq(instanceId)
+                .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(createdAt))
+                .and(PROCESS_LOG_DATA.SEGMENT_ID.eq(segmentId));
 
-            Field<Integer> upperRange = max(upperRange(PROCESS_LOG_DATA.SEGMENT_RANGE));
-            int size = tx.select(upperRange)
-                    .from(PROCESS_LOG_DATA)
-                    .where(PROCESS_LOG_DATA.INSTANCE_ID.eq(instanceId)
-                            .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(createdAt))
-                            .and(PROCESS_LOG_DATA.SEGMENT_ID.eq(segmentId)))
-                    .fetchOptional(upperRange)
-                    .orElse(0);
-
-            return new ProcessLogsDao.ProcessLog(size, chunks);
+        try (DSLContext tx = DSL.using(cfg)) {
+            Field<Object> lastNBytes = end != null ? processLogDataSegmentLastNBytes(instanceId, createdAt, segmentId, end) : null;
+            return getRange(tx, PROCESS_LOG_DATA.SEGMENT_RANGE, c, rangeCondition(PROCESS_LOG_DATA.SEGMENT_RANGE, start, end, lastNBytes));
         }
     }
 
-    public ProcessLog data(ProcessKey processKey, Integer start, Integer end) {
+    /**
+     * Returns the boundaries of the log chunks that overlap with the specified range.
+     * Use the returned boundaries to read the data with {@link #dataStream(ProcessKey, int, int)}.
+     */
+    public LogRange dataRange(ProcessKey processKey, Integer start, Integer end) {
         UUID instanceId = processKey.getInstanceId();
         Timestamp createdAt = processKey.getCreatedAt();
 
+        Condition c = PROCESS_LOG_DATA.INSTANCE_ID.eq(instanceId)
+                .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(createdAt));
+
         try (DSLContext tx = DSL.using(cfg)) {
-            List<ProcessLogChunk> chunks = getDataChunks(tx, processKey, start, end);
+            Field<Object> lastNBytes = end != null ? processLogDataLastNBytes(instanceId, createdAt, end) : null;
+            return getRange(tx, PROCESS_LOG_DATA.LOG_RANGE, c, rangeCondition(PROCESS_LOG_DATA.LOG_RANGE, start, end, lastNBytes));
+        }
+    }
 
-            Field<Integer> upperRange = max(upperRange(PROCESS_LOG_DATA.LOG_RANGE));
-            int size = tx.select(upperRange)
-                    .from(PROCESS_LOG_DATA)
-                    .where(PROCESS_LOG_DATA.INSTANCE_ID.eq(instanceId)
-                            .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(createdAt)))
-                    .fetchOptional(upperRange)
-                    .orElse(0);
+    /**
+     * Streams the segment's chunks within the specified chunk boundaries
+     * (as returned by {@link #segmentDataRange(ProcessKey, long, Integer, Integer)}).
+     * The chunks are fetched as the stream is consumed.
+     *
+     * @return the stream or {@code null} if there's no data. The caller must close the stream.
+     */
+    public InputStream segmentDataStream(ProcessKey processKey, long segmentId, int start, int end) {
+        Condition c = PROCESS_LOG_DATA.INSTANCE_ID.eq(processKey.getInstanceId())
+                .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt()))
+                .and(PROCESS_LOG_DATA.SEGMENT_ID.eq(segmentId));
 
-            return new ProcessLog(size, chunks);
+        return getChunkStream(PROCESS_LOG_DATA.SEGMENT_RANGE, c, start, end);
+    }
+
+    /**
+     * Streams the log chunks within the specified chunk boundaries
+     * (as returned by {@link #dataRange(ProcessKey, Integer, Integer)}).
+     * The chunks are fetched as the stream is consumed.
+     *
+     * @return the stream or {@code null} if there's no data. The caller must close the stream.
+     */
+    public InputStream dataStream(ProcessKey processKey, int start, int end) {
+        Condition c = PROCESS_LOG_DATA.INSTANCE_ID.eq(processKey.getInstanceId())
+                .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt()));
+
+        return getChunkStream(PROCESS_LOG_DATA.LOG_RANGE, c, start, end);
+    }
+
+    private static LogRange getRange(DSLContext tx, Field<Object> rangeField, Condition c, Condition rangeCondition) {
+        Field<Integer> size = max(upperRange(rangeField));
+        int total = tx.select(size)
+                .from(PROCESS_LOG_DATA)
+                .where(c)
+                .fetchOptional(size)
+                .orElse(0);
+
+        Field<Integer> lower = min(lowerRange(rangeField));
+        Field<Integer> upper = max(upperRange(rangeField));
+        return tx.select(lower, upper)
+                .from(PROCESS_LOG_DATA)
+                .where(c.and(rangeCondition))
+                .fetchOne(r -> new LogRange(r.value1(), r.value2(), total));
+    }
+
+    private InputStream getChunkStream(Field<Object> rangeField, Condition c, int start, int end) {
+        // chunk boundaries are known, no need to check for overlaps
+        Condition chunks = c.and(lowerRange(rangeField).ge(start))
+                .and(upperRange(rangeField).le(end));
+
+        return getDataStream(tx -> tx.renderInlined(tx.select(PROCESS_LOG_DATA.CHUNK_DATA)
+                        .from(PROCESS_LOG_DATA)
+                        .where(chunks)
+                        .orderBy(rangeField)),
+                ps -> {
+                },
+                1, STREAM_FETCH_SIZE);
+    }
+
+    private static Field<Object> int4range(int lower, int upper) {
+        return field("int4range({0}, {1})", Object.class, val(lower), val(upper));
+    }
+
+    private static Condition rangeCondition(Field<Object> rangeField, Integer start, Integer end, Field<Object> lastNBytes) {
+        if (start == null && end == null) {
+            // entire file
+            return noCondition();
+        } else if (start != null) {
+            // ranges && [start, end)
+            return condition("{0} && int4range({1}, {2})", rangeField, val(start, Integer.class), val(end, Integer.class));
+        } else {
+            // ranges && [upper_bound - end, upper_bound)
+            return condition("{0} && ({1})", rangeField, select(lastNBytes));
         }
     }
 
@@ -264,89 +400,6 @@ public class ProcessLogsDao extends AbstractDao {
         }
     }
 
-    private List<ProcessLogChunk> getSegmentChunks(DSLContext tx, ProcessKey processKey, long segmentId, Integer start, Integer end) {
-        UUID instanceId = processKey.getInstanceId();
-        Timestamp createdAt = processKey.getCreatedAt();
-
-        String lowerBoundExpr = "lower(" + PROCESS_LOG_DATA.SEGMENT_RANGE + ")";
-
-        if (start == null && end == null) {
-            // entire file
-            return tx.select(field(lowerBoundExpr), PROCESS_LOG_DATA.CHUNK_DATA)
-                    .from(PROCESS_LOG_DATA)
-                    .where(PROCESS_LOG_DATA.INSTANCE_ID.eq(instanceId)
-                            .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(createdAt))
-                            .and(PROCESS_LOG_DATA.SEGMENT_ID.eq(segmentId)))
-                    .orderBy(PROCESS_LOG_DATA.SEGMENT_RANGE)
-                    .fetch(ProcessLogsDao::toChunk);
-
-        } else if (start != null) {
-            // ranges && [start, end)
-            String rangeExpr = PROCESS_LOG_DATA.SEGMENT_RANGE.getName() + " && int4range(?, ?)";
-            return tx.select(field(lowerBoundExpr), PROCESS_LOG_DATA.CHUNK_DATA)
-                    .from(PROCESS_LOG_DATA)
-                    .where(PROCESS_LOG_DATA.INSTANCE_ID.eq(instanceId)
-                            .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(createdAt))
-                            .and(PROCESS_LOG_DATA.SEGMENT_ID.eq(segmentId))
-                            .and(rangeExpr, start, end))
-                    .orderBy(PROCESS_LOG_DATA.SEGMENT_RANGE)
-                    .fetch(ProcessLogsDao::toChunk);
-
-        } else {
-            // ranges && [upper_bound - end, upper_bound)
-            String rangeExpr = PROCESS_LOG_DATA.SEGMENT_RANGE.getName() + " && (select range from x)";
-            return tx.with("x").as(select(processLogDataSegmentLastNBytes(instanceId, createdAt, segmentId, end).as("range")))
-                    .select(field(lowerBoundExpr), PROCESS_LOG_DATA.CHUNK_DATA)
-                    .from(PROCESS_LOG_DATA)
-                    .where(PROCESS_LOG_DATA.INSTANCE_ID.eq(instanceId)
-                            .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(createdAt))
-                            .and(PROCESS_LOG_DATA.SEGMENT_ID.eq(segmentId))
-                            .and(rangeExpr, instanceId, end))
-                    .orderBy(PROCESS_LOG_DATA.SEGMENT_RANGE)
-                    .fetch(ProcessLogsDao::toChunk);
-        }
-    }
-
-    private List<ProcessLogChunk> getDataChunks(DSLContext tx, ProcessKey processKey, Integer start, Integer end) {
-        UUID instanceId = processKey.getInstanceId();
-        Timestamp createdAt = processKey.getCreatedAt();
-
-        String lowerBoundExpr = "lower(" + PROCESS_LOG_DATA.LOG_RANGE + ")";
-
-        if (start == null && end == null) {
-            // entire file
-            return tx.select(field(lowerBoundExpr), PROCESS_LOG_DATA.CHUNK_DATA)
-                    .from(PROCESS_LOG_DATA)
-                    .where(PROCESS_LOG_DATA.INSTANCE_ID.eq(instanceId)
-                            .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(createdAt)))
-                    .orderBy(PROCESS_LOG_DATA.LOG_RANGE)
-                    .fetch(ProcessLogsDao::toChunk);
-
-        } else if (start != null) {
-            // ranges && [start, end)
-            String rangeExpr = PROCESS_LOG_DATA.LOG_RANGE.getName() + " && int4range(?, ?)";
-            return tx.select(field(lowerBoundExpr), PROCESS_LOG_DATA.CHUNK_DATA)
-                    .from(PROCESS_LOG_DATA)
-                    .where(PROCESS_LOG_DATA.INSTANCE_ID.eq(instanceId)
-                            .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(createdAt))
-                            .and(rangeExpr, start, end))
-                    .orderBy(PROCESS_LOG_DATA.LOG_RANGE)
-                    .fetch(ProcessLogsDao::toChunk);
-
-        } else {
-            // ranges && [upper_bound - end, upper_bound)
-            String rangeExpr = PROCESS_LOG_DATA.LOG_RANGE.getName() + " && (select range from x)";
-            return tx.with("x").as(select(processLogDataLastNBytes(instanceId, createdAt, end).as("range")))
-                    .select(field(lowerBoundExpr), PROCESS_LOG_DATA.CHUNK_DATA)
-                    .from(PROCESS_LOG_DATA)
-                    .where(PROCESS_LOG_DATA.INSTANCE_ID.eq(instanceId)
-                            .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(createdAt))
-                            .and(rangeExpr, instanceId, end))
-                    .orderBy(PROCESS_LOG_DATA.LOG_RANGE)
-                    .fetch(ProcessLogsDao::toChunk);
-        }
-    }
-
     private static ProcessLogChunk toChunk(Record2<Object, byte[]> r) {
         return new ProcessLogChunk((Integer) r.value1(), r.value2());
     }
@@ -364,6 +417,40 @@ public class ProcessLogsDao extends AbstractDao {
                 .build();
     }
 
+    public static final class LogRange implements Serializable {
+
+        private final Integer start;
+        private final Integer end;
+        private final int size;
+
+        public LogRange(Integer start, Integer end, int size) {
+            this.start = start;
+            this.end = end;
+            this.size = size;
+        }
+
+        /**
+         * @return the start of the first matching chunk or {@code null} if there are no matching chunks
+         */
+        public Integer getStart() {
+            return start;
+        }
+
+        /**
+         * @return the end of the last matching chunk or {@code null} if there are no matching chunks
+         */
+        public Integer getEnd() {
+            return end;
+        }
+
+        /**
+         * @return the total size of the log
+         */
+        public int getSize() {
+            return size;
+        }
+    }
+
     public static final class ProcessLogChunk implements Serializable {
 
         private final int start;
@@ -192,8 +192,10 @@ public class ConfigurationProcessor implements PayloadProcessor {
             return Collections.emptyMap();
         }
 
+        // the definition can be shared with other processes (see ProcessDefinitionCache),
+        // copy the values to avoid modifying them down the pipeline
         Map<String, Object> m = ProcessDefinitionUtils.getVariables(pd, activeProfiles);
-        return m != null ? m : Collections.emptyMap();
+        return m != null ? ConfigurationUtils.deepCopy(m) : Collections.emptyMap();
     }
 
     @SuppressWarnings("unchecked")
@@ -20,13 +20,16 @@ package com.walmartlabs.concord.server.process.pipelines.processors;
  * =====
  */
 
+import com.walmartlabs.concord.process.loader.ImportsNormalizer;
 import com.walmartlabs.concord.process.loader.ProjectLoader;
 import com.walmartlabs.concord.process.loader.model.ProcessDefinition;
+import com.walmartlabs.concord.repository.Repository;
 import com.walmartlabs.concord.repository.Snapshot;
 import com.walmartlabs.concord.sdk.Constants;
 import com.walmartlabs.concord.sdk.MapUtils;
 import com.walmartlabs.concord.server.process.ImportsNormalizerFactory;
 import com.walmartlabs.concord.server.process.Payload;
+import com.walmartlabs.concord.server.process.ProcessDefinitionCache;
 import com.walmartlabs.concord.server.process.ProcessException;
 import com.walmartlabs.concord.server.process.ProcessKey;
 import org.slf4j.Logger;
@@ -41,6 +44,9 @@ import java.util.*;
 
 /**
  * Loads the process definition using the working directory and configured {@code imports}.
+ * <p>
+ * If the working directory contains only the repository's files, the definition
+ * is loaded using the {@link ProcessDefinitionCache}.
  */
 @Named
 @Singleton
@@ -48,14 +54,14 @@ public class ProcessDefinitionProcessor implements PayloadProcessor {
 
     private static final Logger log = LoggerFactory.getLogger(ProcessDefinitionProcessor.class);
 
-    private final ProjectLoader projectLoader;
+    private final ProcessDefinitionCache processDefinitionCache;
     private final ImportsNormalizerFactory importsNormalizer;
 
     @Inject
-    public ProcessDefinitionProcessor(ProjectLoader projectLoader,
+    public ProcessDefinitionProcessor(ProcessDefinitionCache processDefinitionCache,
                                       ImportsNormalizerFactory importsNormalizer) {
 
-        this.projectLoader = projectLoader;
+        this.processDefinitionCache = processDefinitionCache;
         this.importsNormalizer = importsNormalizer;
     }
 
@@ -72,7 +78,7 @@ public class ProcessDefinitionProcessor implements PayloadProcessor {
 
         try {
             String runtime = getRuntimeType(payload);
-            ProjectLoader.Result result = projectLoader.loadProject(workDir, runtime, importsNormalizer.forProject(projectId));
+            ProjectLoader.Result result = loadProject(payload, workDir, runtime, importsNormalizer.forProject(projectId));
 
             List<Snapshot> snapshots = result.snapshots();
             for (Snapshot s : snapshots) {
@@ -96,6 +102,23 @@ public class ProcessDefinitionProcessor implements PayloadProcessor {
         }
     }
 
+    private ProjectLoader.Result loadProject(Payload payload, Path workDir, String runtime, ImportsNormalizer importsNormalizer) throws Exception {
+        UUID repoId = null;
+        String commitId = null;
+        String repoPath = null;
+
+        RepositoryProcessor.RepositoryInfo repoInfo = payload.getHeader(RepositoryProcessor.REPOSITORY_INFO_KEY);
+        Repository repository = payload.getHeader(Payload.REPOSITORY);
+        boolean workspaceModified = payload.getHeader(Payload.WORKSPACE_MODIFIED, false);
+        if (repoInfo != null && repository != null && !workspaceModified) {
+            repoId = repoInfo.getId();
+            commitId = repository.fetchedCommitId();
+            repoPath = repoInfo.getPath();
+        }
+
+        return processDefinitionCache.loadProject(repoId, commitId, repoPath, workDir, runtime, importsNormalizer);
+    }
+
     private static Payload addSnapshot(Payload payload, Snapshot s) {
         List<Snapshot> result = new ArrayList<>();
 
@@ -43,6 +43,7 @@ import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 
 /**
@@ -79,11 +80,13 @@ public class RepositoryProcessor implements PayloadProcessor {
         ProcessKey processKey = payload.getProcessKey();
 
         UUID projectId = payload.getHeader(Payload.PROJECT_ID);
-        RepositoryEntry repo = getRepositoryEntry(payload);
-        if (projectId == null || repo == null) {
+        RepositoryEntry storedRepo = getStoredRepositoryEntry(payload);
+        if (projectId == null || storedRepo == null) {
             return chain.process(payload);
         }
 
+        RepositoryEntry repo = applyOverrides(payload, storedRepo);
+
         logManager.info(processKey, "Copying the repository's data: {} @ {}, {}",
                 repo.getUrl(),
                 repo.getCommitId() != null ? repo.getCommitId() : repo.getBranch(),
@@ -93,8 +96,9 @@ public class RepositoryProcessor implements PayloadProcessor {
 
         Payload newPayload = repositoryManager.withLock(repo.getUrl(), () -> {
             try {
+                // a pre-fetched copy is fetched using the repository's branch and commit ID
                 Repository repository = payload.getHeader(Payload.REPOSITORY);
-                if (repository == null) {
+                if (repository == null || isRevisionOverridden(storedRepo, repo)) {
                     repository = repositoryManager.fetch(projectId, repo);
                 }
 
@@ -122,7 +126,7 @@ public class RepositoryProcessor implements PayloadProcessor {
         return chain.process(newPayload);
     }
 
-    private RepositoryEntry getRepositoryEntry(Payload payload) {
+    private RepositoryEntry getStoredRepositoryEntry(Payload payload) {
         UUID projectId = payload.getHeader(Payload.PROJECT_ID);
         UUID repoId = payload.getHeader(Payload.REPOSITORY_ID);
 
@@ -130,19 +134,23 @@ public class RepositoryProcessor implements PayloadProcessor {
             return null;
         }
 
-        RepositoryEntry repo = repositoryDao.get(projectId, repoId);
-        if (repo == null) {
-            return null;
-        }
+        return repositoryDao.get(projectId, repoId);
+    }
 
+    private static RepositoryEntry applyOverrides(Payload payload, RepositoryEntry repo) {
         Map<String, Object> cfg = payload.getHeader(Payload.CONFIGURATION);
-        if (cfg != null) {
-            String branchOrTag = MapUtils.getString(cfg, Constants.Request.REPO_BRANCH_OR_TAG, repo.getBranch());
-            String commitId = MapUtils.getString(cfg, Constants.Request.REPO_COMMIT_ID, repo.getCommitId());
-            repo = new RepositoryEntry(repo, branchOrTag, commitId);
+        if (cfg == null) {
+            return repo;
         }
 
-        return repo;
+        String branchOrTag = MapUtils.getString(cfg, Constants.Request.REPO_BRANCH_OR_TAG, repo.getBranch());
+        String commitId = MapUtils.getString(cfg, Constants.Request.REPO_COMMIT_ID, repo.getCommitId());
+        return new RepositoryEntry(repo, branchOrTag, commitId);
+    }
+
+    private static boolean isRevisionOverridden(RepositoryEntry stored, RepositoryEntry effective) {
+        return !Objects.equals(stored.getBranch(), effective.getBranch())
+                || !Objects.equals(stored.getCommitId(), effective.getCommitId());
     }
 
     public static final class RepositoryInfo implements Serializable {
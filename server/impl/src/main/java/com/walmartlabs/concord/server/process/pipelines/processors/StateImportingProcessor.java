@@ -34,6 +34,7 @@ import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 
 @Named
 public class StateImportingProcessor implements PayloadProcessor {
@@ -53,7 +54,8 @@ public class StateImportingProcessor implements PayloadProcessor {
         ProcessKey processKey = payload.getProcessKey();
         Path workspace = payload.getHeader(Payload.WORKSPACE_DIR);
         List<Snapshot> snapshots = payload.getHeader(RepositoryProcessor.REPOSITORY_SNAPSHOT);
-        stateManager.replacePath(processKey, workspace, (p, attrs) -> filter(p, attrs, snapshots, workspace));
+        Map<String, String> exportedBlobs = payload.getHeader(Payload.EXPORTED_STATE_BLOBS);
+        stateManager.replacePath(processKey, workspace, (p, attrs) -> filter(p, attrs, snapshots, workspace), exportedBlobs);
 
         return chain.process(payload);
     }
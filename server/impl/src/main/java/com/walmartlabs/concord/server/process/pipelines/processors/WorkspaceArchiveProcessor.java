@@ -20,11 +20,19 @@ package com.walmartlabs.concord.server.process.pipelines.processors;
  * =====
  */
 
+import com.codahale.metrics.Counter;
 import com.walmartlabs.concord.common.IOUtils;
+import com.walmartlabs.concord.common.UnzipLimit;
+import com.walmartlabs.concord.policyengine.CheckResult;
+import com.walmartlabs.concord.policyengine.PolicyEngine;
+import com.walmartlabs.concord.policyengine.WorkspacePolicy;
+import com.walmartlabs.concord.policyengine.WorkspaceRule;
 import com.walmartlabs.concord.server.process.Payload;
 import com.walmartlabs.concord.server.process.ProcessException;
 import com.walmartlabs.concord.server.process.ProcessKey;
 import com.walmartlabs.concord.server.process.logs.ProcessLogManager;
+import com.walmartlabs.concord.server.sdk.metrics.InjectCounter;
+import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -34,20 +42,30 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 
+import static com.walmartlabs.concord.server.process.pipelines.processors.policy.PolicyApplier.appendMsg;
+
 /**
  * Unpacks payload's workspace file, parses request data.
+ * <p>
+ * The workspace policy's size limit is enforced while unpacking, see
+ * {@link IOUtils#unzip(Path, Path, boolean, com.walmartlabs.concord.common.FileVisitor, UnzipLimit, java.nio.file.CopyOption...)}.
  */
 @Named
 public class WorkspaceArchiveProcessor implements PayloadProcessor {
 
     private final ProcessLogManager logManager;
 
+    @InjectCounter
+    private final Counter policyDeny;
+
     @Inject
-    public WorkspaceArchiveProcessor(ProcessLogManager logManager) {
+    public WorkspaceArchiveProcessor(ProcessLogManager logManager, Counter policyDeny) {
         this.logManager = logManager;
+        this.policyDeny = policyDeny;
     }
 
     @Override
+    @WithTimer
     public Payload process(Chain chain, Payload payload) {
         ProcessKey processKey = payload.getProcessKey();
 
@@ -63,13 +81,64 @@ public class WorkspaceArchiveProcessor implements PayloadProcessor {
 
         Path workspace = payload.getHeader(Payload.WORKSPACE_DIR);
         try {
-            IOUtils.unzip(archive, workspace, StandardCopyOption.REPLACE_EXISTING);
+            unpack(payload, archive, workspace);
         } catch (IOException e) {
             logManager.error(processKey, "Error while unpacking an archive: " + archive, e);
             throw new ProcessException(processKey, "Error while unpacking an archive: " + archive, e);
         }
 
-        payload = payload.removeAttachment(Payload.WORKSPACE_ARCHIVE);
+        // the archive is not needed anymore, free up the disk space early
+        try {
+            Files.deleteIfExists(archive);
+        } catch (IOException e) {
+            logManager.warn(processKey, "Can't remove the archive: " + archive);
+        }
+
+        payload = payload.removeAttachment(Payload.WORKSPACE_ARCHIVE)
+                .putHeader(Payload.WORKSPACE_MODIFIED, true);
         return chain.process(payload);
     }
+
+    private void unpack(Payload payload, Path archive, Path workspace) throws IOException {
+        PolicyEngine policy = payload.getHeader(Payload.POLICY);
+        WorkspacePolicy workspacePolicy = policy != null ? policy.getWorkspacePolicy() : null;
+        Long maxSize = workspacePolicy != null ? workspacePolicy.getMaxSize() : null;
+
+        UnzipLimit limit = null;
+        if (maxSize != null) {
+            limit = new UnzipLimit() {
+                @Override
+                public boolean isCounted(Path file) {
+                    return workspacePolicy.isCounted(file);
+                }
+
+                @Override
+                public long maxSize() {
+                    return maxSize;
+                }
+
+                @Override
+                public void check(long size) {
+                    assertPolicy(payload, workspacePolicy.check(workspace, size));
+                }
+            };
+        }
+
+        IOUtils.unzip(archive, workspace, false, null, limit, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void assertPolicy(Payload payload, CheckResult<WorkspaceRule, Path> result) {
+        if (result.getDeny().isEmpty()) {
+            return;
+        }
+
+        ProcessKey processKey = payload.getProcessKey();
+
+        result.getDeny().forEach(i -> {
+            policyDeny.inc();
+            logManager.error(processKey, appendMsg("Workspace policy violation", i.getMsg()), i.getRule());
+        });
+
+        throw new ProcessException(processKey, "Found workspace policy violations");
+    }
 }
@@ -22,11 +22,16 @@ package com.walmartlabs.concord.server.process.queue;
 
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.db.MainDB;
 import com.walmartlabs.concord.repository.Repository;
 import com.walmartlabs.concord.server.PeriodicTask;
 import com.walmartlabs.concord.server.cfg.EnqueueWorkersConfiguration;
+import com.walmartlabs.concord.server.org.project.RepositoryDao;
+import com.walmartlabs.concord.server.org.project.RepositoryEntry;
 import com.walmartlabs.concord.server.process.PartialProcessKey;
 import com.walmartlabs.concord.server.process.Payload;
 import com.walmartlabs.concord.server.process.PayloadBuilder;
@@ -37,8 +42,10 @@ import com.walmartlabs.concord.server.repository.RepositoryManager;
 import com.walmartlabs.concord.server.sdk.ProcessStatus;
 import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
 import org.immutables.value.Value;
+import org.jooq.Condition;
 import org.jooq.Configuration;
 import org.jooq.DSLContext;
+import org.jooq.Field;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,29 +57,58 @@ import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+import static com.walmartlabs.concord.db.PgUtils.interval;
 import static com.walmartlabs.concord.server.jooq.Tables.REPOSITORIES;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QUEUE;
-import static org.jooq.impl.DSL.value;
-
+import static com.walmartlabs.concord.server.jooq.tables.ServerNodes.SERVER_NODES;
+import static org.jooq.impl.DSL.*;
+
+/**
+ * Moves NEW processes to the enqueue pipeline in batches grouped by repository.
+ * <p>
+ * Each batch goes through two stages: the repository prefetch and the pipeline.
+ * The stages run in separate thread pools, so the repository of the next batch is
+ * fetched while the current batch is in the pipeline. The pipeline uses the prefetched
+ * copy for the processes which don't override the repository's branch or commit ID.
+ * <p>
+ * With {@code queue.enqueueRepositoryAffinity} enabled, each repository is assigned
+ * to a single server node (see {@link ServerNodeRegistry}), so the nodes don't fetch
+ * the same repository concurrently. The batch size of each repository grows while
+ * the repository has a backlog.
+ */
 public class EnqueuedBatchTask extends PeriodicTask {
 
     private static final Logger log = LoggerFactory.getLogger(EnqueuedBatchTask.class);
 
     private static final long ERROR_RETRY_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+    private static final int MAX_TRACKED_REPOSITORIES = 10000;
 
     private final Dao dao;
     private final EnqueueWorkersConfiguration cfg;
+    private final ServerNodeRegistry nodeRegistry;
+    private final RepositoryDao repositoryDao;
+    private final RepositoryManager repositoryManager;
+
     private final Histogram batchHistogram;
+    private final Timer prefetchWaitTimer;
+    private final Timer prefetchTimer;
+    private final Timer pipelineWaitTimer;
+    private final Timer pipelineTimer;
 
+    private final ExecutorService prefetchExecutor;
     private final ExecutorService executor;
     private final BlockingQueue<Batch> queue;
     private final List<String> inflightRepoUrls;
+    private final int maxInflightBatches;
     private final AtomicInteger freeWorkersCount;
+    private final Cache<UUID, Integer> batchSizes;
 
     @Inject
     public EnqueuedBatchTask(Dao dao,
                              EnqueueWorkersConfiguration cfg,
+                             ServerNodeRegistry nodeRegistry,
                              EnqueueProcessPipeline pipeline,
+                             RepositoryDao repositoryDao,
                              RepositoryManager repositoryManager,
                              MetricRegistry metricRegistry) {
 
@@ -80,12 +116,27 @@ public class EnqueuedBatchTask extends PeriodicTask {
 
         this.cfg = cfg;
         this.dao = dao;
-        this.batchHistogram = metricRegistry.histogram("enqueued-task-batches-histogram");
-
-        this.queue = new ArrayBlockingQueue<>(cfg.getWorkersCount());
-        this.freeWorkersCount = new AtomicInteger(cfg.getWorkersCount());
-        this.inflightRepoUrls = Collections.synchronizedList(new ArrayList<>(cfg.getWorkersCount()));
+        this.nodeRegistry = nodeRegistry;
+        this.repositoryDao = repositoryDao;
+        this.repositoryManager = repositoryManager;
 
+        this.batchHistogram = metricRegistry.histogram("enqueued-task-batches-histogram");
+        this.prefetchWaitTimer = metricRegistry.timer("enqueued-task-prefetch-wait");
+        this.prefetchTimer = metricRegistry.timer("enqueued-task-prefetch");
+        this.pipelineWaitTimer = metricRegistry.timer("enqueued-task-pipeline-wait");
+        this.pipelineTimer = metricRegistry.timer("enqueued-task-pipeline");
+
+        // one batch per worker in the pipeline stage plus one per worker in the prefetch stage
+        this.maxInflightBatches = cfg.getWorkersCount() * 2;
+
+        this.queue = new ArrayBlockingQueue<>(maxInflightBatches);
+        this.freeWorkersCount = new AtomicInteger(maxInflightBatches);
+        this.inflightRepoUrls = Collections.synchronizedList(new ArrayList<>(maxInflightBatches));
+        this.batchSizes = CacheBuilder.newBuilder()
+                .maximumSize(MAX_TRACKED_REPOSITORIES)
+                .build();
+
+        this.prefetchExecutor = Executors.newFixedThreadPool(cfg.getWorkersCount());
         this.executor = Executors.newFixedThreadPool(cfg.getWorkersCount());
         for (int i = 0; i < cfg.getWorkersCount(); i++) {
             this.executor.submit(new Worker(pipeline, repositoryManager, queue));
@@ -98,7 +149,8 @@ public class EnqueuedBatchTask extends PeriodicTask {
     @Override
     public void stop() {
         super.stop();
-        
+
+        prefetchExecutor.shutdownNow();
         executor.shutdownNow();
 
         try {
@@ -115,22 +167,25 @@ public class EnqueuedBatchTask extends PeriodicTask {
             return false;
         }
 
-        int limit = Math.min(freeWorkersCount.get(), cfg.getWorkersCount());
+        int limit = Math.min(freeWorkersCount.get(), maxInflightBatches);
 
         List<String> ignoreRepoUrls;
         synchronized (inflightRepoUrls) {
             ignoreRepoUrls = new ArrayList<>(inflightRepoUrls);
         }
 
-        Collection<Batch> batches = dao.poll(ignoreRepoUrls, limit);
+        UUID nodeId = cfg.isRepositoryAffinityEnabled() ? nodeRegistry.getNodeId() : null;
+        Collection<Batch> batches = dao.poll(nodeId, cfg.getNodeTtl(), cfg.getMaxWait(), ignoreRepoUrls, limit);
         if (batches.isEmpty()) {
             return false;
         }
 
         for (Batch b : batches) {
             if (b.repoId() != null) {
-                List<ProcessKey> k = dao.poll(b.repoId(), cfg.getBatchSize());
+                int batchSize = batchSize(b.repoId());
+                List<ProcessKey> k = dao.poll(b.repoId(), batchSize);
                 b.keys().addAll(k);
+                batchSizes.put(b.repoId(), nextBatchSize(batchSize, k.size(), cfg.getBatchSize(), cfg.getMaxBatchSize()));
             }
 
             batchHistogram.update(b.keys().size());
@@ -146,11 +201,58 @@ public class EnqueuedBatchTask extends PeriodicTask {
             }
         }
 
-        queue.addAll(batches);
+        for (Batch b : batches) {
+            if (b.repoId() != null) {
+                prefetchExecutor.submit(() -> prefetch(b));
+            } else {
+                b.markReady();
+                queue.add(b);
+            }
+        }
 
         return freeWorkersCount.get() > 0;
     }
 
+    private int batchSize(UUID repoId) {
+        Integer result = batchSizes.getIfPresent(repoId);
+        return result != null ? result : cfg.getBatchSize();
+    }
+
+    /**
+     * Returns the next batch size for a repository. Grows while the repository has
+     * more processes than the batch can take and returns to the configured size
+     * when the backlog is gone.
+     */
+    static int nextBatchSize(int batchSize, int polled, int minBatchSize, int maxBatchSize) {
+        if (polled < batchSize) {
+            return minBatchSize;
+        }
+
+        return Math.max(minBatchSize, (int) Math.min(maxBatchSize, 2L * batchSize));
+    }
+
+    /**
+     * Updates the local copy of the batch's repository, so the pipeline doesn't
+     * have to fetch it again.
+     */
+    private void prefetch(Batch batch) {
+        prefetchWaitTimer.update(System.currentTimeMillis() - batch.createdAt(), TimeUnit.MILLISECONDS);
+
+        try (Timer.Context ignored = prefetchTimer.time()) {
+            RepositoryEntry repo = repositoryDao.get(batch.repoId());
+            if (repo != null) {
+                Repository repository = repositoryManager.withLock(repo.getUrl(), () -> repositoryManager.fetch(repo.getProjectId(), repo));
+                batch.setRepository(repository);
+            }
+        } catch (Exception e) {
+            // the pipeline will try again and report the error to the process log
+            log.warn("prefetch ['{}'] -> error: {}", batch.repoUrl(), e.getMessage());
+        }
+
+        batch.markReady();
+        queue.add(batch);
+    }
+
     private void onWorkerFree(String repoUrl) {
         freeWorkersCount.incrementAndGet();
         if (repoUrl != null) {
@@ -177,7 +279,11 @@ public class EnqueuedBatchTask extends PeriodicTask {
                 try {
                     Batch keys = queue.take();
                     repoUrl = keys.repoUrl();
-                    startProcessBatch(keys);
+
+                    pipelineWaitTimer.update(System.currentTimeMillis() - keys.readyAt(), TimeUnit.MILLISECONDS);
+                    try (Timer.Context ignored = pipelineTimer.time()) {
+                        startProcessBatch(keys);
+                    }
                 } catch (InterruptedException e) {
                     log.warn("run -> interrupted");
                     Thread.currentThread().interrupt();
@@ -192,14 +298,17 @@ public class EnqueuedBatchTask extends PeriodicTask {
 
         private void startProcessBatch(Batch batch) {
             try {
-                if (batch.repoUrl() != null && batch.keys().size() > 1) {
+                if (batch.repoUrl() != null) {
                     repositoryManager.withLock(batch.repoUrl(), () -> {
-                        Repository repository = null;
                         for (ProcessKey key : batch.keys()) {
-                            Payload payload = startProcess(key, repository);
-                            if (payload != null && repository == null) {
-                                repository = payload.getHeader(Payload.REPOSITORY);
+                            // the pre-fetched copy can't be used if the repository was fetched again since,
+                            // e.g. by another process of the batch with a different branch or commit ID
+                            Repository repository = batch.repository();
+                            if (repository != null && !repositoryManager.isCurrent(batch.repoUrl(), repository)) {
+                                repository = null;
                             }
+
+                            startProcess(key, repository);
                         }
                         return null;
                     });
@@ -213,17 +322,16 @@ public class EnqueuedBatchTask extends PeriodicTask {
             }
         }
 
-        private Payload startProcess(ProcessKey key, Repository repository) {
+        private void startProcess(ProcessKey key, Repository repository) {
             try {
                 Payload payload = PayloadBuilder.start(key).build();
                 if (repository != null) {
                     payload = payload.putHeader(Payload.REPOSITORY, repository);
                 }
-                return pipeline.process(payload);
+                pipeline.process(payload);
             } catch (Exception e) {
                 log.error("startProcess ['{}'] -> error", key, e);
             }
-            return null;
         }
     }
 
@@ -236,6 +344,9 @@ public class EnqueuedBatchTask extends PeriodicTask {
         private final UUID repoId;
         private final String repoUrl;
         private final List<ProcessKey> keys;
+        private final long createdAt = System.currentTimeMillis();
+        private volatile long readyAt;
+        private volatile Repository repository;
 
         public Batch(UUID repoId, String repoUrl) {
             this(repoId, repoUrl, new ArrayList<>());
@@ -258,6 +369,29 @@ public class EnqueuedBatchTask extends PeriodicTask {
         public List<ProcessKey> keys() {
             return keys;
         }
+
+        public long createdAt() {
+            return createdAt;
+        }
+
+        public long readyAt() {
+            return readyAt;
+        }
+
+        public void markReady() {
+            this.readyAt = System.currentTimeMillis();
+        }
+
+        /**
+         * The batch's repository fetched using the repository's branch and commit ID.
+         */
+        public Repository repository() {
+            return repository;
+        }
+
+        public void setRepository(Repository repository) {
+            this.repository = repository;
+        }
     }
 
     @Value.Immutable
@@ -287,13 +421,38 @@ public class EnqueuedBatchTask extends PeriodicTask {
             super(cfg);
         }
 
+        /**
+         * Polls NEW processes. If {@code nodeId} is specified, returns only
+         * the processes of the repositories assigned to the node, the processes
+         * without repositories and the processes waiting longer than {@code maxWait}.
+         * <p>
+         * Repositories are assigned to the live nodes using rendezvous hashing: the
+         * node with the highest {@code md5(nodeId || repoId)} is the owner. When a node
+         * joins or leaves, only the repositories of that node are reassigned.
+         */
         @WithTimer
-        public Collection<Batch> poll(List<String> ignoreRepoUrls, int limit) {
+        public Collection<Batch> poll(UUID nodeId, String nodeTtl, String maxWait, List<String> ignoreRepoUrls, int limit) {
             return txResult(tx -> {
+                Condition c = PROCESS_QUEUE.CURRENT_STATUS.eq(ProcessStatus.NEW.name())
+                        .and(REPOSITORIES.REPO_URL.isNull().or(REPOSITORIES.REPO_URL.notIn(ignoreRepoUrls)));
+
+                if (nodeId != null) {
+                    Field<UUID> owner = select(SERVER_NODES.NODE_ID)
+                            .from(SERVER_NODES)
+                            .where(SERVER_NODES.LAST_SEEN_AT.greaterOrEqual(currentTimestamp().minus(interval(nodeTtl))))
+                            .orderBy(field("md5({0}::text || {1}::text)", String.class, SERVER_NODES.NODE_ID, PROCESS_QUEUE.REPO_ID).desc())
+                            .limit(1)
+                            .asField();
+
+                    c = c.and(PROCESS_QUEUE.REPO_ID.isNull()
+                            .or(PROCESS_QUEUE.CREATED_AT.lessThan(currentTimestamp().minus(interval(maxWait))))
+                            // no live nodes registered yet (e.g. on startup), take everything
+                            .or(coalesce(owner, value(nodeId)).eq(nodeId)));
+                }
+
                 List<ProcessItem> items = tx.select(PROCESS_QUEUE.INSTANCE_ID, PROCESS_QUEUE.CREATED_AT, PROCESS_QUEUE.REPO_ID, REPOSITORIES.REPO_URL)
                         .from(PROCESS_QUEUE).leftJoin(REPOSITORIES).on(REPOSITORIES.REPO_ID.eq(PROCESS_QUEUE.REPO_ID))
-                        .where(PROCESS_QUEUE.CURRENT_STATUS.eq(ProcessStatus.NEW.name())
-                                .and(REPOSITORIES.REPO_URL.isNull().or(REPOSITORIES.REPO_URL.notIn(ignoreRepoUrls))))
+                        .where(c)
                         .orderBy(PROCESS_QUEUE.CREATED_AT)
                         .limit(limit)
                         .forUpdate().of(PROCESS_QUEUE)
@@ -0,0 +1,118 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.PeriodicTask;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Node-local table of process heartbeats. Heartbeats are accumulated in memory
+ * and periodically written to {@code PROCESS_QUEUE.LAST_UPDATED_AT} in bulk,
+ * one {@code UPDATE} per batch of processes instead of one per heartbeat.
+ * <p>
+ * The flush interval must be less than the max stalled process age, otherwise
+ * {@link ProcessQueueWatchdog} can mark live processes as stalled.
+ */
+@Named
+@Singleton
+public class ProcessHeartbeats extends PeriodicTask {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessHeartbeats.class);
+
+    private static final long ERROR_DELAY = TimeUnit.SECONDS.toMillis(10);
+    private static final int FLUSH_BATCH_SIZE = 1000;
+
+    private final ProcessQueueDao queueDao;
+    private final ProcessKeyCache keyCache;
+
+    /**
+     * Instance IDs and the times of their last heartbeats received since the last flush.
+     */
+    private final Map<UUID, Long> heartbeats = new ConcurrentHashMap<>();
+
+    @Inject
+    public ProcessHeartbeats(ProcessConfiguration cfg, ProcessQueueDao queueDao, ProcessKeyCache keyCache) {
+        super(cfg.getHeartbeatFlushInterval(), ERROR_DELAY);
+        this.queueDao = queueDao;
+        this.keyCache = keyCache;
+    }
+
+    /**
+     * @return {@code false} if the process doesn't exist
+     */
+    public boolean onHeartbeat(UUID instanceId) {
+        if (keyCache.get(instanceId) == null) {
+            return false;
+        }
+
+        heartbeats.put(instanceId, System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Writes the accumulated heartbeats to the DB.
+     */
+    public void flush() {
+        if (heartbeats.isEmpty()) {
+            return;
+        }
+
+        Map<UUID, Long> m = new HashMap<>(heartbeats);
+        List<UUID> ids = new ArrayList<>(m.keySet());
+        Collections.sort(ids);
+
+        for (int i = 0; i < ids.size(); i += FLUSH_BATCH_SIZE) {
+            List<UUID> batch = ids.subList(i, Math.min(i + FLUSH_BATCH_SIZE, ids.size()));
+            queueDao.touch(batch);
+
+            // keep the heartbeats received while we were flushing
+            batch.forEach(id -> heartbeats.remove(id, m.get(id)));
+        }
+
+        log.debug("flush -> {} process(es) updated", ids.size());
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("stop -> error while flushing heartbeats: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    protected boolean performTask() {
+        flush();
+        return false;
+    }
+}
@@ -283,29 +283,35 @@ public class ProcessQueueDao extends AbstractDao {
         });
     }
 
-    public boolean updateStatus(List<ProcessKey> processKeys, List<ProcessStatus> expected, ProcessStatus status) {
-        return txResult(tx -> {
-            List<UUID> instanceIds = processKeys.stream()
-                    .map(PartialProcessKey::getInstanceId)
-                    .collect(Collectors.toList());
+    /**
+     * Updates status of multiple processes but only if their current status is
+     * in the {@code expected} list of statuses.
+     *
+     * @return the keys of the updated processes
+     */
+    public List<ProcessKey> updateStatus(DSLContext tx, List<ProcessKey> processKeys, List<ProcessStatus> expected, ProcessStatus status) {
+        Map<UUID, ProcessKey> keys = processKeys.stream()
+                .collect(Collectors.toMap(PartialProcessKey::getInstanceId, k -> k, (a, b) -> a));
 
-            UpdateConditionStep<ProcessQueueRecord> q = tx.update(PROCESS_QUEUE)
-                    .set(PROCESS_QUEUE.CURRENT_STATUS, status.toString())
-                    .set(PROCESS_QUEUE.LAST_UPDATED_AT, currentTimestamp())
-                    .set(PROCESS_QUEUE.LAST_RUN_AT, createRunningAtValue(status))
-                    .where(PROCESS_QUEUE.INSTANCE_ID.in(instanceIds));
+        UpdateConditionStep<ProcessQueueRecord> q = tx.update(PROCESS_QUEUE)
+                .set(PROCESS_QUEUE.CURRENT_STATUS, status.toString())
+                .set(PROCESS_QUEUE.LAST_UPDATED_AT, currentTimestamp())
+                .set(PROCESS_QUEUE.LAST_RUN_AT, createRunningAtValue(status))
+                .where(PROCESS_QUEUE.INSTANCE_ID.in(keys.keySet()));
 
-            if (expected != null) {
-                List<String> l = expected.stream()
-                        .map(Enum::toString)
-                        .collect(Collectors.toList());
+        if (expected != null) {
+            List<String> l = expected.stream()
+                    .map(Enum::toString)
+                    .collect(Collectors.toList());
 
-                q.and(PROCESS_QUEUE.CURRENT_STATUS.in(l));
-            }
+            q.and(PROCESS_QUEUE.CURRENT_STATUS.in(l));
+        }
 
-            int i = q.execute();
-            return i == processKeys.size();
-        });
+        return q.returning(PROCESS_QUEUE.INSTANCE_ID)
+                .fetch()
+                .stream()
+                .map(r -> keys.get(r.getInstanceId()))
+                .collect(Collectors.toList());
     }
 
     public void disable(ProcessKey processKey, boolean disabled) {
@@ -341,6 +347,13 @@ public class ProcessQueueDao extends AbstractDao {
         });
     }
 
+    public int touch(Collection<UUID> instanceIds) {
+        return txResult(tx -> tx.update(PROCESS_QUEUE)
+                .set(PROCESS_QUEUE.LAST_UPDATED_AT, currentTimestamp())
+                .where(PROCESS_QUEUE.INSTANCE_ID.in(instanceIds))
+                .execute());
+    }
+
     public ProcessEntry get(ProcessKey processKey) {
         return get(processKey, DEFAULT_INCLUDES);
     }
@@ -370,6 +383,25 @@ public class ProcessQueueDao extends AbstractDao {
         }
     }
 
+    public List<ProcessStatusEntry> getStatuses(Collection<UUID> instanceIds) {
+        try (DSLContext tx = DSL.using(cfg)) {
+            return tx.select(PROCESS_QUEUE.INSTANCE_ID, PROCESS_QUEUE.CURRENT_STATUS)
+                    .from(PROCESS_QUEUE)
+                    .where(PROCESS_QUEUE.INSTANCE_ID.in(instanceIds))
+                    .fetch(r -> ProcessStatusEntry.of(r.value1(), ProcessStatus.valueOf(r.value2())));
+        }
+    }
+
+    public Set<UUID> getProjectIds(Collection<UUID> instanceIds) {
+        try (DSLContext tx = DSL.using(cfg)) {
+            return tx.selectDistinct(PROCESS_QUEUE.PROJECT_ID)
+                    .from(PROCESS_QUEUE)
+                    .where(PROCESS_QUEUE.INSTANCE_ID.in(instanceIds)
+                            .and(PROCESS_QUEUE.PROJECT_ID.isNotNull()))
+                    .fetchSet(PROCESS_QUEUE.PROJECT_ID);
+        }
+    }
+
     public List<ProcessEntry> get(List<PartialProcessKey> processKeys) {
         try (DSLContext tx = DSL.using(cfg)) {
             List<UUID> instanceIds = processKeys.stream()
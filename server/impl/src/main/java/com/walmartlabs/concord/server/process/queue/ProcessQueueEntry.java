@@ -25,6 +25,7 @@ import com.walmartlabs.concord.server.process.ProcessKey;
 import org.immutables.value.Value;
 
 import javax.annotation.Nullable;
+import java.sql.Timestamp;
 import java.util.Map;
 import java.util.UUID;
 
@@ -66,6 +67,9 @@ public interface ProcessQueueEntry {
     @Nullable
     Map<String, Object> requirements();
 
+    @Nullable
+    Timestamp lastUpdatedAt();
+
     static ImmutableProcessQueueEntry.Builder builder() {
         return ImmutableProcessQueueEntry.builder();
     }
@@ -29,6 +29,8 @@ import com.walmartlabs.concord.server.RequestUtils;
 import com.walmartlabs.concord.server.process.*;
 import com.walmartlabs.concord.server.process.event.ProcessEventManager;
 import com.walmartlabs.concord.server.process.logs.ProcessLogManager;
+import com.walmartlabs.concord.server.process.queue.dispatcher.DispatcherSignal;
+import com.walmartlabs.concord.server.process.queue.dispatcher.RunningProcessCache;
 import com.walmartlabs.concord.server.sdk.ProcessStatus;
 import com.walmartlabs.concord.server.sdk.events.ProcessEvent;
 import org.jooq.DSLContext;
@@ -48,19 +50,28 @@ public class ProcessQueueManager {
     private final ProcessKeyCache keyCache;
     private final ProcessEventManager eventManager;
     private final ProcessLogManager processLogManager;
+    private final DispatcherSignal dispatcherSignal;
+    private final RunningProcessCache runningProcesses;
+    private final ProcessWaitIndex waitIndex;
 
     @Inject
     public ProcessQueueManager(ProcessQueueDao queueDao,
                                ConcordObjectMapper objectMapper,
                                ProcessKeyCache keyCache,
                                ProcessEventManager eventManager,
-                               ProcessLogManager processLogManager) {
+                               ProcessLogManager processLogManager,
+                               DispatcherSignal dispatcherSignal,
+                               RunningProcessCache runningProcesses,
+                               ProcessWaitIndex waitIndex) {
 
         this.queueDao = queueDao;
         this.eventManager = eventManager;
         this.objectMapper = objectMapper;
         this.keyCache = keyCache;
         this.processLogManager = processLogManager;
+        this.dispatcherSignal = dispatcherSignal;
+        this.runningProcesses = runningProcesses;
+        this.waitIndex = waitIndex;
     }
 
     /**
@@ -112,6 +123,7 @@ public class ProcessQueueManager {
         queueDao.tx(tx -> {
             queueDao.enqueue(tx, processKey, tags, startAt, requirements, processTimeout, handlers, meta, imports, exclusive, runtime);
             eventManager.insertStatusHistory(tx, processKey, ProcessStatus.ENQUEUED, Collections.emptyMap());
+            runningProcesses.onStatusChange(tx, processKey, ProcessStatus.ENQUEUED);
         });
     }
 
@@ -142,6 +154,7 @@ public class ProcessQueueManager {
     public void updateStatus(DSLContext tx, ProcessKey processKey, ProcessStatus status, Map<String, Object> statusPayload) {
         queueDao.updateStatus(tx, processKey, status);
         eventManager.insertStatusHistory(tx, processKey, status, statusPayload);
+        runningProcesses.onStatusChange(tx, processKey, status);
     }
 
     /**
@@ -153,6 +166,9 @@ public class ProcessQueueManager {
         return queueDao.txResult(tx -> {
             boolean success = queueDao.updateStatus(tx, processKey, expected, status);
             eventManager.insertStatusHistory(tx, processKey, status, Collections.emptyMap());
+            if (success) {
+                runningProcesses.onStatusChange(tx, processKey, status);
+            }
             return success;
         });
     }
@@ -165,9 +181,10 @@ public class ProcessQueueManager {
      */
     public boolean updateExpectedStatus(List<ProcessKey> processKeys, List<ProcessStatus> expected, ProcessStatus status) {
         return queueDao.txResult(tx -> {
-            boolean success = queueDao.updateStatus(processKeys, expected, status);
+            List<ProcessKey> updated = queueDao.updateStatus(tx, processKeys, expected, status);
             eventManager.insertStatusHistory(tx, processKeys, status);
-            return success;
+            updated.forEach(k -> runningProcesses.onStatusChange(tx, k, status));
+            return updated.size() == processKeys.size();
         });
     }
 
@@ -184,6 +201,7 @@ public class ProcessQueueManager {
     public void updateAgentId(DSLContext tx, ProcessKey processKey, String agentId, ProcessStatus status) {
         queueDao.updateAgentId(tx, processKey, agentId, status);
         eventManager.insertStatusHistory(tx, processKey, status, Collections.emptyMap());
+        runningProcesses.onStatusChange(tx, processKey, status);
     }
 
     /**
@@ -202,6 +220,13 @@ public class ProcessQueueManager {
         Map<String, Object> eventData = objectMapper.convertToMap(wait != null ? wait : new NoneCondition());
         ProcessEvent e = new ProcessEvent(processKey, EventType.PROCESS_WAIT.name(), null, eventData);
         eventManager.event(tx, Collections.singletonList(e));
+
+        if (wait == null) {
+            // the process might be ready for dispatching now
+            dispatcherSignal.publish(tx);
+        } else {
+            waitIndex.onWaitChange(tx, processKey);
+        }
     }
 
     /**
@@ -112,6 +112,7 @@ public class ProcessQueueWatchdog implements ScheduledTask {
     private final PayloadManager payloadManager;
     private final ProcessManager processManager;
     private final ProcessQueueManager queueManager;
+    private final ProcessHeartbeats heartbeats;
 
     @Inject
     public ProcessQueueWatchdog(ProcessWatchdogConfiguration cfg,
@@ -122,7 +123,8 @@ public class ProcessQueueWatchdog implements ScheduledTask {
                                 UserDao userDao,
                                 PayloadManager payloadManager,
                                 ProcessManager processManager,
-                                ProcessQueueManager queueManager) {
+                                ProcessQueueManager queueManager,
+                                ProcessHeartbeats heartbeats) {
         this.cfg = cfg;
 
         this.queueDao = queueDao;
@@ -133,6 +135,7 @@ public class ProcessQueueWatchdog implements ScheduledTask {
         this.payloadManager = payloadManager;
         this.processManager = processManager;
         this.queueManager = queueManager;
+        this.heartbeats = heartbeats;
     }
 
     @Override
@@ -194,6 +197,9 @@ public class ProcessQueueWatchdog implements ScheduledTask {
         public void run() {
             String maxAge = cfg.getMaxStalledAge();
 
+            // heartbeats received by other nodes are flushed by those nodes
+            heartbeats.flush();
+
             watchdogDao.transaction(tx -> {
                 Field<Timestamp> cutOff = currentTimestamp().minus(interval(maxAge));
 
@@ -0,0 +1,149 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.process.queue.dispatcher.DispatcherSignal;
+import com.walmartlabs.concord.server.process.queue.dispatcher.RunningProcessCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Notifies the clients waiting for process status changes.
+ * <p>
+ * Uses the status change notifications published with {@link DispatcherSignal},
+ * so the changes made on any server node are signalled. All final statuses
+ * are published.
+ * <p>
+ * The listeners are called in a fixed thread pool. The signals are coalesced
+ * per subscription: a subscription is queued at most once until its listener
+ * runs, so the queue never holds more entries than there are subscriptions.
+ */
+@Named
+@Singleton
+public class ProcessStatusWatchers implements DispatcherSignal.Listener {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessStatusWatchers.class);
+
+    private static final int THREAD_COUNT = 4;
+
+    private final Map<UUID, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    @Inject
+    public ProcessStatusWatchers(DispatcherSignal signal) {
+        this.executor = Executors.newFixedThreadPool(THREAD_COUNT, r -> {
+            Thread t = new Thread(r, "process-status-watchers");
+            t.setDaemon(true);
+            return t;
+        });
+
+        signal.addListener(this);
+    }
+
+    /**
+     * Calls the {@code listener} when any of the specified processes changes
+     * its status. Subscribe before checking the statuses, otherwise the changes
+     * made in between can be missed.
+     */
+    public Subscription subscribe(Collection<UUID> instanceIds, Runnable listener) {
+        Subscription s = new Subscription(new HashSet<>(instanceIds), listener);
+        for (UUID id : s.instanceIds) {
+            subscriptions.compute(id, (k, v) -> {
+                if (v == null) {
+                    v = ConcurrentHashMap.newKeySet();
+                }
+                v.add(s);
+                return v;
+            });
+        }
+        return s;
+    }
+
+    @Override
+    public void onConnect() {
+        // notifications might've been lost, let everyone re-check
+        subscriptions.values().forEach(l -> l.forEach(Subscription::signal));
+    }
+
+    @Override
+    public void onNotification(String payload) {
+        UUID instanceId = RunningProcessCache.getStatusChangeInstanceId(payload);
+        if (instanceId == null) {
+            return;
+        }
+
+        Set<Subscription> l = subscriptions.get(instanceId);
+        if (l != null) {
+            l.forEach(Subscription::signal);
+        }
+    }
+
+    private void unsubscribe(Subscription s) {
+        for (UUID id : s.instanceIds) {
+            subscriptions.computeIfPresent(id, (k, v) -> {
+                v.remove(s);
+                return v.isEmpty() ? null : v;
+            });
+        }
+    }
+
+    public final class Subscription implements AutoCloseable {
+
+        private final Set<UUID> instanceIds;
+        private final Runnable listener;
+        private final AtomicBoolean pending = new AtomicBoolean();
+
+        private Subscription(Set<UUID> instanceIds, Runnable listener) {
+            this.instanceIds = instanceIds;
+            this.listener = listener;
+        }
+
+        @Override
+        public void close() {
+            unsubscribe(this);
+        }
+
+        private void signal() {
+            if (!pending.compareAndSet(false, true)) {
+                return;
+            }
+
+            executor.execute(() -> {
+                // reset before running, so the signals received while running are not lost
+                pending.set(false);
+                try {
+                    listener.run();
+                } catch (Exception e) {
+                    log.warn("signal {} -> listener error: {}", instanceIds, e.getMessage());
+                }
+            });
+        }
+    }
+}
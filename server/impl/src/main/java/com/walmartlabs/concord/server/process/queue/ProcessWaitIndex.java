@@ -0,0 +1,320 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.jooq.enums.ProcessLockScope;
+import com.walmartlabs.concord.server.process.ProcessKey;
+import com.walmartlabs.concord.server.process.queue.dispatcher.DispatcherSignal;
+import com.walmartlabs.concord.server.process.queue.dispatcher.RunningProcessCache;
+import org.jooq.DSLContext;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.*;
+
+/**
+ * Node-local index of the processes with wait conditions. Maps the awaited
+ * processes, locks and sleep deadlines to the waiting processes, so
+ * {@link ProcessWaitWatchdog} can re-check only the processes whose
+ * conditions might've changed.
+ * <p>
+ * The index is maintained using the notifications published with
+ * {@link DispatcherSignal}: process status changes, wait condition changes
+ * and lock releases. The index is marked as stale if some of the notifications
+ * might've been lost, in which case the watchdog must rebuild it from the DB.
+ */
+@Named
+@Singleton
+public class ProcessWaitIndex implements DispatcherSignal.Listener {
+
+    private static final String WAIT_PREFIX = "wait:";
+    private static final String LOCK_PREFIX = "lock:";
+
+    /**
+     * Max number of pending processes. If the watchdog is not running on
+     * the current node, it's cheaper to rebuild the index later than to
+     * keep track of all changes.
+     */
+    private static final int MAX_PENDING = 100_000;
+
+    private final DispatcherSignal signal;
+
+    // guarded by "this"
+    private final Map<UUID, AbstractWaitCondition> waits = new HashMap<>();
+    private final Map<UUID, Set<UUID>> byProcess = new HashMap<>();
+    private final Map<LockKey, Set<UUID>> byLock = new HashMap<>();
+    private final NavigableMap<Long, Set<UUID>> byDeadline = new TreeMap<>();
+    private final Set<UUID> pending = new HashSet<>();
+    private boolean stale = true;
+
+    // the changes seen while the watchdog is checking the processes, see #beginCheck()
+    private boolean checking;
+    private final Set<UUID> seenProcesses = new HashSet<>();
+    private final Set<LockKey> seenLocks = new HashSet<>();
+
+    @Inject
+    public ProcessWaitIndex(DispatcherSignal signal) {
+        this.signal = signal;
+
+        signal.addListener(this);
+    }
+
+    /**
+     * Publishes the wait condition change. Must be called in the same
+     * transaction as the update.
+     */
+    public void onWaitChange(DSLContext tx, ProcessKey processKey) {
+        signal.publishQuiet(tx, WAIT_PREFIX + processKey.getInstanceId());
+    }
+
+    /**
+     * Publishes the lock release. Must be called in the same transaction
+     * as the lock removal.
+     */
+    public void onLockRelease(DSLContext tx, UUID orgId, UUID projectId, ProcessLockScope scope, String name) {
+        LockKey k = LockKey.of(orgId, projectId, scope, name);
+        signal.publishQuiet(tx, LOCK_PREFIX + k.scope + ":" + k.scopeId + ":" + k.name);
+    }
+
+    /**
+     * @return {@code true} if the index must be rebuilt.
+     */
+    public synchronized boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * Clears the index before rebuilding. Keeps the pending processes:
+     * they might've changed while the index was being rebuilt.
+     */
+    public synchronized void reset() {
+        waits.clear();
+        byProcess.clear();
+        byLock.clear();
+        byDeadline.clear();
+        stale = false;
+    }
+
+    /**
+     * Must be called before the watchdog reads the waiting processes from the DB.
+     * The processes are added to the index only after their wait conditions are
+     * evaluated, the changes of their dependencies made in between would be lost.
+     * So the changes are recorded until {@link #endCheck()} is called.
+     */
+    public synchronized void beginCheck() {
+        checking = true;
+        seenProcesses.clear();
+        seenLocks.clear();
+    }
+
+    /**
+     * Marks as pending the processes added to the index since {@link #beginCheck()}
+     * whose dependencies changed in the meantime.
+     */
+    public synchronized void endCheck() {
+        checking = false;
+
+        for (UUID id : seenProcesses) {
+            byProcess.getOrDefault(id, Collections.emptySet()).forEach(this::addPending);
+            if (waits.containsKey(id)) {
+                addPending(id);
+            }
+        }
+
+        for (LockKey k : seenLocks) {
+            byLock.getOrDefault(k, Collections.emptySet()).forEach(this::addPending);
+        }
+
+        seenProcesses.clear();
+        seenLocks.clear();
+    }
+
+    /**
+     * Adds the process to the index or updates its wait conditions.
+     * Removes the process if {@code wait} is {@code null}.
+     */
+    public synchronized void put(UUID instanceId, AbstractWaitCondition wait) {
+        remove(instanceId);
+
+        if (wait == null) {
+            return;
+        }
+
+        waits.put(instanceId, wait);
+
+        if (wait instanceof ProcessCompletionCondition) {
+            for (UUID id : ((ProcessCompletionCondition) wait).processes()) {
+                byProcess.computeIfAbsent(id, k -> new HashSet<>()).add(instanceId);
+            }
+        } else if (wait instanceof ProcessLockCondition) {
+            byLock.computeIfAbsent(LockKey.of((ProcessLockCondition) wait), k -> new HashSet<>()).add(instanceId);
+        } else if (wait instanceof ProcessSleepCondition) {
+            byDeadline.computeIfAbsent(((ProcessSleepCondition) wait).until().getTime(), k -> new HashSet<>()).add(instanceId);
+        }
+    }
+
+    public synchronized void remove(UUID instanceId) {
+        AbstractWaitCondition wait = waits.remove(instanceId);
+        if (wait == null) {
+            return;
+        }
+
+        if (wait instanceof ProcessCompletionCondition) {
+            for (UUID id : ((ProcessCompletionCondition) wait).processes()) {
+                removeFrom(byProcess, id, instanceId);
+            }
+        } else if (wait instanceof ProcessLockCondition) {
+            removeFrom(byLock, LockKey.of((ProcessLockCondition) wait), instanceId);
+        } else if (wait instanceof ProcessSleepCondition) {
+            removeFrom(byDeadline, ((ProcessSleepCondition) wait).until().getTime(), instanceId);
+        }
+    }
+
+    /**
+     * Returns the processes that must be re-checked: the processes with
+     * changed dependencies or expired sleep deadlines.
+     */
+    public synchronized Set<UUID> poll(long now) {
+        Set<UUID> result = new HashSet<>(pending);
+        pending.clear();
+
+        SortedMap<Long, Set<UUID>> expired = byDeadline.headMap(now, true);
+        expired.values().forEach(result::addAll);
+
+        return result;
+    }
+
+    @Override
+    public synchronized void onConnect() {
+        stale = true;
+    }
+
+    @Override
+    public synchronized void onNotification(String payload) {
+        if (payload.startsWith(WAIT_PREFIX)) {
+            addPending(UUID.fromString(payload.substring(WAIT_PREFIX.length())));
+        } else if (payload.startsWith(LOCK_PREFIX)) {
+            String[] as = payload.substring(LOCK_PREFIX.length()).split(":", 3);
+            LockKey k = new LockKey(ProcessLockScope.valueOf(as[0]), UUID.fromString(as[1]), as[2]);
+            byLock.getOrDefault(k, Collections.emptySet()).forEach(this::addPending);
+            if (checking) {
+                seenLocks.add(k);
+                checkSeenSize();
+            }
+        } else {
+            UUID instanceId = RunningProcessCache.getStatusChangeInstanceId(payload);
+            if (instanceId == null) {
+                return;
+            }
+
+            if (checking) {
+                seenProcesses.add(instanceId);
+                checkSeenSize();
+            }
+
+            // the awaited process is finished or the waiting process itself changed its status
+            byProcess.getOrDefault(instanceId, Collections.emptySet()).forEach(this::addPending);
+            if (waits.containsKey(instanceId)) {
+                addPending(instanceId);
+            }
+        }
+    }
+
+    private void addPending(UUID instanceId) {
+        if (stale) {
+            return;
+        }
+
+        pending.add(instanceId);
+
+        if (pending.size() > MAX_PENDING) {
+            pending.clear();
+            stale = true;
+        }
+    }
+
+    private void checkSeenSize() {
+        if (seenProcesses.size() + seenLocks.size() > MAX_PENDING) {
+            seenProcesses.clear();
+            seenLocks.clear();
+            pending.clear();
+            stale = true;
+        }
+    }
+
+    private static <K> void removeFrom(Map<K, Set<UUID>> index, K key, UUID instanceId) {
+        Set<UUID> ids = index.get(key);
+        if (ids == null) {
+            return;
+        }
+
+        ids.remove(instanceId);
+        if (ids.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static final class LockKey {
+
+        private final ProcessLockScope scope;
+        private final UUID scopeId;
+        private final String name;
+
+        private LockKey(ProcessLockScope scope, UUID scopeId, String name) {
+            this.scope = scope;
+            this.scopeId = scopeId;
+            this.name = name;
+        }
+
+        private static LockKey of(ProcessLockCondition c) {
+            return of(c.orgId(), c.projectId(), c.scope(), c.name());
+        }
+
+        private static LockKey of(UUID orgId, UUID projectId, ProcessLockScope scope, String name) {
+            switch (scope) {
+                case ORG:
+                    return new LockKey(scope, orgId, name);
+                case PROJECT:
+                    return new LockKey(scope, projectId, name);
+                default:
+                    throw new IllegalArgumentException("unknown lock scope: " + scope);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            LockKey that = (LockKey) o;
+            return scope == that.scope && scopeId.equals(that.scopeId) && name.equals(that.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(scope, scopeId, name);
+        }
+    }
+}
@@ -41,12 +41,17 @@ import javax.inject.Named;
 import javax.inject.Singleton;
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QUEUE;
 
 /**
  * Takes care of processes with wait conditions.
  * E.g. waiting for other processes to finish, locking, etc.
+ * <p>
+ * Checks only the processes whose dependencies might've changed (see
+ * {@link ProcessWaitIndex}). All processes with wait conditions are checked
+ * periodically and each time the index must be rebuilt.
  */
 @Named("process-wait-watchdog")
 @Singleton
@@ -63,18 +68,23 @@ public class ProcessWaitWatchdog implements ScheduledTask {
     private final ProcessWaitWatchdogConfiguration cfg;
     private final WatchdogDao dao;
     private final ProcessQueueManager queueManager;
+    private final ProcessWaitIndex index;
     private final Map<WaitType, ProcessWaitHandler<AbstractWaitCondition>> processWaitHandlers;
 
+    private long lastFullScanAt;
+
     @Inject
     @SuppressWarnings("unchecked")
     public ProcessWaitWatchdog(ProcessWaitWatchdogConfiguration cfg,
                                WatchdogDao dao,
                                ProcessQueueManager queueManager,
+                               ProcessWaitIndex index,
                                Set<ProcessWaitHandler> handlers) {
 
         this.cfg = cfg;
         this.dao = dao;
         this.queueManager = queueManager;
+        this.index = index;
         this.processWaitHandlers = new HashMap<>();
 
         handlers.forEach(h -> this.processWaitHandlers.put(h.getType(), h));
@@ -87,6 +97,40 @@ public class ProcessWaitWatchdog implements ScheduledTask {
 
     @Override
     public void performTask() {
+        // record the changes made while the processes are checked, they'd be lost otherwise
+        index.beginCheck();
+        try {
+            check();
+        } finally {
+            index.endCheck();
+        }
+    }
+
+    private void check() {
+        long now = System.currentTimeMillis();
+        if (index.isStale() || now - lastFullScanAt >= TimeUnit.SECONDS.toMillis(cfg.getFullScanPeriod())) {
+            fullScan();
+            lastFullScanAt = now;
+        }
+
+        List<UUID> ids = new ArrayList<>(index.poll(now));
+        for (int i = 0; i < ids.size(); i += cfg.getPollLimit()) {
+            List<UUID> batch = ids.subList(i, Math.min(i + cfg.getPollLimit(), ids.size()));
+
+            Set<UUID> notFound = new HashSet<>(batch);
+            for (WaitingProcess p : dao.get(batch)) {
+                notFound.remove(p.instanceId());
+                index.put(p.instanceId(), processHandler(p));
+            }
+
+            // finished or no longer waiting
+            notFound.forEach(index::remove);
+        }
+    }
+
+    private void fullScan() {
+        index.reset();
+
         Timestamp lastUpdatedAt = null;
         while (true) {
             List<WaitingProcess> processes = dao.nextWaitItems(lastUpdatedAt, cfg.getPollLimit());
@@ -95,26 +139,31 @@ public class ProcessWaitWatchdog implements ScheduledTask {
             }
 
             for (WaitingProcess p : processes) {
-                WaitType type = p.waits().type();
-                processHandler(type, p);
+                index.put(p.instanceId(), processHandler(p));
                 lastUpdatedAt = p.lastUpdatedAt();
             }
         }
     }
 
-    private void processHandler(WaitType type, WaitingProcess p) {
+    /**
+     * @return the process' wait conditions after processing.
+     */
+    private AbstractWaitCondition processHandler(WaitingProcess p) {
+        WaitType type = p.waits().type();
+
         ProcessWaitHandler<AbstractWaitCondition> handler = processWaitHandlers.get(type);
         if (handler == null) {
             log.warn("processHandler ['{}'] -> handler '{}' not found", p.instanceId(), type);
-            return;
+            return p.waits();
         }
 
         if (!handler.getProcessStatuses().contains(p.status())) {
             // clear wait conditions for finished processes
             if (FINAL_STATUSES.contains(p.status())) {
                 queueManager.updateWait(new ProcessKey(p.instanceId(), p.instanceCreatedAt()), null);
+                return null;
             }
-            return;
+            return p.waits();
         }
 
         try {
@@ -123,8 +172,10 @@ public class ProcessWaitWatchdog implements ScheduledTask {
             if (!originalWaits.equals(processedWaits)) {
                 queueManager.updateWait(new ProcessKey(p.instanceId(), p.instanceCreatedAt()), processedWaits);
             }
+            return processedWaits;
         } catch (Exception e) {
             log.info("processHandler ['{}', '{}'] -> error", type, p, e);
+            return p.waits();
         }
     }
 
@@ -158,6 +209,22 @@ public class ProcessWaitWatchdog implements ScheduledTask {
             this.objectMapper = objectMapper;
         }
 
+        public List<WaitingProcess> get(Collection<UUID> instanceIds) {
+            return txResult(tx -> {
+                ProcessQueue q = PROCESS_QUEUE.as("q");
+                return tx.select(
+                        q.INSTANCE_ID,
+                        q.CURRENT_STATUS,
+                        q.CREATED_AT,
+                        q.LAST_UPDATED_AT,
+                        q.WAIT_CONDITIONS)
+                        .from(q)
+                        .where(q.INSTANCE_ID.in(instanceIds)
+                                .and(q.WAIT_CONDITIONS.isNotNull()))
+                        .fetch(this::toWaitingProcess);
+            });
+        }
+
         public List<WaitingProcess> nextWaitItems(Timestamp lastUpdatedAt, int pollLimit) {
             return txResult(tx -> {
                 ProcessQueue q = PROCESS_QUEUE.as("q");
@@ -176,14 +243,18 @@ public class ProcessWaitWatchdog implements ScheduledTask {
 
                 return s.orderBy(q.LAST_UPDATED_AT)
                         .limit(pollLimit)
-                        .fetch(r -> WaitingProcess.builder()
-                                .instanceId(r.value1())
-                                .status(ProcessStatus.valueOf(r.value2()))
-                                .instanceCreatedAt(r.value3())
-                                .lastUpdatedAt(r.value4())
-                                .waits(objectMapper.fromJSONB(r.value5(), AbstractWaitCondition.class))
-                                .build());
+                        .fetch(this::toWaitingProcess);
             });
         }
+
+        private WaitingProcess toWaitingProcess(Record5<UUID, String, Timestamp, Timestamp, JSONB> r) {
+            return WaitingProcess.builder()
+                    .instanceId(r.value1())
+                    .status(ProcessStatus.valueOf(r.value2()))
+                    .instanceCreatedAt(r.value3())
+                    .lastUpdatedAt(r.value4())
+                    .waits(objectMapper.fromJSONB(r.value5(), AbstractWaitCondition.class))
+                    .build();
+        }
     }
 }
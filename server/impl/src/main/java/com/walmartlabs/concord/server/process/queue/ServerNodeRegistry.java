@@ -0,0 +1,121 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.db.AbstractDao;
+import com.walmartlabs.concord.db.MainDB;
+import com.walmartlabs.concord.server.PeriodicTask;
+import com.walmartlabs.concord.server.cfg.EnqueueWorkersConfiguration;
+import org.jooq.Configuration;
+import org.jooq.Field;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.sql.Timestamp;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static com.walmartlabs.concord.db.PgUtils.interval;
+import static com.walmartlabs.concord.server.jooq.tables.ServerNodes.SERVER_NODES;
+import static org.jooq.impl.DSL.currentTimestamp;
+import static org.jooq.impl.DSL.value;
+
+/**
+ * Keeps the current server node in the {@code SERVER_NODES} table.
+ * The list of live nodes is used by {@link EnqueuedBatchTask} to assign
+ * repositories to nodes.
+ */
+@Named
+@Singleton
+public class ServerNodeRegistry extends PeriodicTask {
+
+    private static final Logger log = LoggerFactory.getLogger(ServerNodeRegistry.class);
+
+    private static final long ERROR_DELAY = TimeUnit.SECONDS.toMillis(10);
+
+    private final Dao dao;
+    private final String nodeTtl;
+    private final UUID nodeId = UUID.randomUUID();
+
+    @Inject
+    public ServerNodeRegistry(Dao dao, EnqueueWorkersConfiguration cfg) {
+        super(cfg.isBatchEnabled() && cfg.isRepositoryAffinityEnabled() ? cfg.getHeartbeatInterval() : 0, ERROR_DELAY);
+        this.dao = dao;
+        this.nodeTtl = cfg.getNodeTtl();
+    }
+
+    public UUID getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+
+        // let the other nodes pick up our repositories without waiting for the TTL
+        try {
+            dao.delete(nodeId);
+        } catch (Exception e) {
+            log.warn("stop -> error while removing the node {}: {}", nodeId, e.getMessage());
+        }
+    }
+
+    @Override
+    protected boolean performTask() {
+        dao.touch(nodeId);
+        dao.deleteExpired(nodeTtl);
+        return false;
+    }
+
+    @Named
+    static class Dao extends AbstractDao {
+
+        @Inject
+        public Dao(@MainDB Configuration cfg) {
+            super(cfg);
+        }
+
+        public void touch(UUID nodeId) {
+            tx(tx -> tx.insertInto(SERVER_NODES)
+                    .columns(SERVER_NODES.NODE_ID, SERVER_NODES.LAST_SEEN_AT)
+                    .values(value(nodeId), currentTimestamp())
+                    .onConflict(SERVER_NODES.NODE_ID)
+                    .doUpdate().set(SERVER_NODES.LAST_SEEN_AT, currentTimestamp())
+                    .execute());
+        }
+
+        public void deleteExpired(String ttl) {
+            Field<Timestamp> cutOff = currentTimestamp().minus(interval(ttl));
+            tx(tx -> tx.deleteFrom(SERVER_NODES)
+                    .where(SERVER_NODES.LAST_SEEN_AT.lessThan(cutOff))
+                    .execute());
+        }
+
+        public void delete(UUID nodeId) {
+            tx(tx -> tx.deleteFrom(SERVER_NODES)
+                    .where(SERVER_NODES.NODE_ID.eq(nodeId))
+                    .execute());
+        }
+    }
+}
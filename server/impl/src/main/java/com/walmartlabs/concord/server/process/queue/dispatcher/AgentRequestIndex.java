@@ -0,0 +1,93 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.common.MapMatcher;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Groups agent requests by agent capabilities. Agents with identical capabilities
+ * are interchangeable, so the process requirements are matched once per group
+ * instead of once per agent. The match results are cached by requirements for
+ * the lifetime of the index (i.e. a single dispatcher run).
+ */
+public class AgentRequestIndex<T> {
+
+    private final Function<T, Map<String, Object>> capabilitiesFn;
+    private final Map<Map<String, Object>, Deque<T>> groups = new LinkedHashMap<>();
+    private final Map<Map<String, Object>, List<Deque<T>>> matches = new HashMap<>();
+
+    private int size;
+
+    public AgentRequestIndex(Collection<T> requests, Function<T, Map<String, Object>> capabilitiesFn) {
+        this.capabilitiesFn = capabilitiesFn;
+
+        for (T r : requests) {
+            groups.computeIfAbsent(capabilities(r), k -> new ArrayDeque<>()).add(r);
+            size++;
+        }
+    }
+
+    /**
+     * Finds the first request that matches the specified requirements.
+     *
+     * @return the request or {@code null} if there are no matching requests
+     */
+    public T find(Map<String, Object> requirements) {
+        List<Deque<T>> l = matches.computeIfAbsent(requirements, this::matchGroups);
+        for (Deque<T> g : l) {
+            T r = g.peekFirst();
+            if (r != null) {
+                return r;
+            }
+        }
+
+        return null;
+    }
+
+    public void remove(T request) {
+        Deque<T> g = groups.get(capabilities(request));
+        if (g != null && g.remove(request)) {
+            size--;
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private List<Deque<T>> matchGroups(Map<String, Object> requirements) {
+        List<Deque<T>> result = new ArrayList<>();
+        groups.forEach((capabilities, g) -> {
+            if (MapMatcher.matches(capabilities, requirements)) {
+                result.add(g);
+            }
+        });
+        return result;
+    }
+
+    private Map<String, Object> capabilities(T request) {
+        Map<String, Object> m = capabilitiesFn.apply(request);
+        return m != null ? m : Collections.emptyMap();
+    }
+}
@@ -51,13 +51,19 @@ public class ConcurrentProcessFilter extends WaitProcessFinishFilter {
             ProcessStatus.TIMED_OUT);
 
     private final ConcurrentProcessFilterDao dao;
+    private final RunningProcessCache runningProcesses;
     private final PolicyManager policyManager;
 
     @Inject
-    public ConcurrentProcessFilter(PolicyManager policyManager, ProcessQueueManager processQueueManager, ConcurrentProcessFilterDao dao) {
+    public ConcurrentProcessFilter(PolicyManager policyManager,
+                                   ProcessQueueManager processQueueManager,
+                                   ConcurrentProcessFilterDao dao,
+                                   RunningProcessCache runningProcesses) {
+
         super(processQueueManager);
         this.policyManager = policyManager;
         this.dao = dao;
+        this.runningProcesses = runningProcesses;
     }
 
     @Override
@@ -115,7 +121,9 @@ public class ConcurrentProcessFilter extends WaitProcessFinishFilter {
             return Collections.emptyList();
         }
 
-        List<UUID> result = new ArrayList<>(dao.processesPerOrg(tx, orgId));
+        List<UUID> result = runningProcesses.isReady()
+                ? runningProcesses.processesPerOrg(orgId)
+                : new ArrayList<>(dao.processesPerOrg(tx, orgId));
         for (ProcessQueueEntry p : startingProcesses) {
             if (orgId.equals(p.orgId())) {
                 result.add(p.key().getInstanceId());
@@ -129,7 +137,9 @@ public class ConcurrentProcessFilter extends WaitProcessFinishFilter {
             return Collections.emptyList();
         }
 
-        List<UUID> result = new ArrayList<>(dao.processesPerProject(tx, projectId));
+        List<UUID> result = runningProcesses.isReady()
+                ? runningProcesses.processesPerProject(projectId)
+                : new ArrayList<>(dao.processesPerProject(tx, projectId));
         for (ProcessQueueEntry p : startingProcesses) {
             if (projectId.equals(p.projectId())) {
                 result.add(p.key().getInstanceId());
@@ -23,7 +23,6 @@ package com.walmartlabs.concord.server.process.queue.dispatcher;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
-import com.walmartlabs.concord.common.MapMatcher;
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.db.MainDB;
 import com.walmartlabs.concord.imports.Imports;
@@ -37,7 +36,9 @@ import com.walmartlabs.concord.server.process.ProcessKey;
 import com.walmartlabs.concord.server.process.logs.ProcessLogManager;
 import com.walmartlabs.concord.server.process.queue.ProcessQueueEntry;
 import com.walmartlabs.concord.server.process.queue.ProcessQueueManager;
+import com.walmartlabs.concord.server.queueclient.message.Message;
 import com.walmartlabs.concord.server.queueclient.message.MessageType;
+import com.walmartlabs.concord.server.queueclient.message.ProcessBatchResponse;
 import com.walmartlabs.concord.server.queueclient.message.ProcessRequest;
 import com.walmartlabs.concord.server.queueclient.message.ProcessResponse;
 import com.walmartlabs.concord.server.sdk.ProcessStatus;
@@ -55,6 +56,9 @@ import javax.inject.Singleton;
 import java.sql.Timestamp;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 
 import static com.walmartlabs.concord.server.jooq.tables.Organizations.ORGANIZATIONS;
@@ -67,6 +71,10 @@ import static org.jooq.impl.DSL.*;
 
 /**
  * Dispatches processes to agents.
+ * <p>
+ * The dispatcher is woken up by {@link DispatcherSignal} when new agent requests arrive
+ * or when the queue changes. {@code queue.dispatcher.pollDelay} is the upper bound
+ * between the runs.
  */
 @Named
 @Singleton
@@ -84,10 +92,14 @@ public class Dispatcher extends PeriodicTask {
     private final ProcessQueueManager queueManager;
     private final Set<Filter> filters;
     private final ImportsNormalizerFactory importsNormalizerFactory;
+    private final DispatcherSignal signal;
+    private final RunningProcessCache runningProcesses;
 
     private final int batchSize;
+    private final int maxProcessesPerRequest;
 
     private final Histogram dispatchedCountHistogram;
+    private final Histogram offsetHistogram;
     private final Timer responseTimer;
 
     @Inject
@@ -98,6 +110,8 @@ public class Dispatcher extends PeriodicTask {
                       ProcessQueueManager queueManager,
                       Set<Filter> filters,
                       ImportsNormalizerFactory importsNormalizerFactory,
+                      DispatcherSignal signal,
+                      RunningProcessCache runningProcesses,
                       ProcessQueueConfiguration cfg,
                       MetricRegistry metricRegistry) {
 
@@ -110,10 +124,14 @@ public class Dispatcher extends PeriodicTask {
         this.queueManager = queueManager;
         this.filters = filters;
         this.importsNormalizerFactory = importsNormalizerFactory;
+        this.signal = signal;
+        this.runningProcesses = runningProcesses;
 
         this.batchSize = cfg.getDispatcherBatchSize();
+        this.maxProcessesPerRequest = Math.max(1, cfg.getDispatcherMaxProcessesPerRequest());
 
         this.dispatchedCountHistogram = metricRegistry.histogram("process-queue-dispatcher-dispatched-count");
+        this.offsetHistogram = metricRegistry.histogram("process-queue-dispatcher-offset");
         this.responseTimer = metricRegistry.timer("process-queue-dispatcher-response-timer");
     }
 
@@ -129,7 +147,7 @@ public class Dispatcher extends PeriodicTask {
         }
 
         List<Request> l = requests.entrySet().stream()
-                .map(e -> new Request(e.getKey(), e.getValue()))
+                .map(e -> new Request(e.getKey(), e.getValue(), maxProcessesPerRequest))
                 .collect(Collectors.toList());
 
         // prepare all responses in a single transaction
@@ -137,8 +155,10 @@ public class Dispatcher extends PeriodicTask {
         List<Match> matches = dao.txResult(tx -> {
             locks.lock(tx, LOCK_KEY);
             try {
+                runningProcesses.prepare();
                 return match(tx, l);
             } finally {
+                runningProcesses.cleanup();
                 filters.forEach(Filter::cleanup);
             }
         });
@@ -150,23 +170,67 @@ public class Dispatcher extends PeriodicTask {
             return false;
         }
 
+        // an agent can request multiple processes at once, group the matches by request
+        Map<Request, List<ProcessQueueEntry>> responses = new LinkedHashMap<>();
+        for (Match m : matches) {
+            responses.computeIfAbsent(m.request, k -> new ArrayList<>()).add(m.response);
+        }
+
         // send all responses in parallel
-        withTimer(responseTimer, () -> matches.stream()
+        withTimer(responseTimer, () -> responses.entrySet().stream()
                 .parallel()
-                .forEach(this::sendResponse));
+                .forEach(e -> sendResponse(e.getKey(), e.getValue())));
 
         return true;
     }
 
+    @Override
+    protected void idle(long interval) {
+        signal.await(interval);
+    }
+
     private List<Match> match(DSLContext tx, List<Request> requests) {
-        // we need it modifiable
-        List<Request> inbox = new ArrayList<>(requests);
+        List<Match> matches = match(requests,
+                last -> dao.next(tx, last, batchSize),
+                (e, startingProcesses) -> pass(tx, e, startingProcesses),
+                offsetHistogram::update);
+
+        for (Match m : matches) {
+            ProcessQueueEntry candidate = m.response;
+
+            // mark the process as STARTING
+            queueManager.updateStatus(tx, candidate.key(), ProcessStatus.STARTING);
+            runningProcesses.onStarting(tx, candidate);
+        }
+
+        return matches;
+    }
+
+    /**
+     * Matches the ENQUEUED processes against the agent requests, page by page,
+     * until all requests are satisfied or there are no more candidates.
+     *
+     * @param nextPage returns the next page of candidates after the specified
+     *                 entry ({@code null} for the first page)
+     * @param filter   returns {@code true} if the candidate can be dispatched,
+     *                 receives the candidate and the processes matched so far
+     */
+    static List<Match> match(List<Request> requests,
+                             Function<ProcessQueueEntry, List<ProcessQueueEntry>> nextPage,
+                             BiPredicate<ProcessQueueEntry, List<ProcessQueueEntry>> filter,
+                             IntConsumer offsetListener) {
+
+        // group the requests by agent capabilities
+        AgentRequestIndex<Request> inbox = new AgentRequestIndex<>(requests, r -> r.request.getCapabilities());
 
         int offset = 0;
+        ProcessQueueEntry last = null;
         List<Match> matches = new ArrayList<>();
         while (true) {
-            // fetch the next few ENQUEUED processes from the DB
-            List<ProcessQueueEntry> candidates = dao.next(tx, offset, batchSize);
+            offsetListener.accept(offset);
+
+            // fetch the next few ENQUEUED processes
+            List<ProcessQueueEntry> candidates = nextPage.apply(last);
             if (candidates.isEmpty()) {
                 break;
             }
@@ -174,7 +238,7 @@ public class Dispatcher extends PeriodicTask {
             // filter out the candidates that shouldn't be dispatched at the moment (e.g. due to concurrency limits)
             for (ProcessQueueEntry e : candidates) {
                 // find request/agent who can handle process
-                Request req = findRequest(e, inbox);
+                Request req = inbox.find(getAgentRequirements(e));
                 if (req == null) {
                     continue;
                 }
@@ -183,9 +247,13 @@ public class Dispatcher extends PeriodicTask {
                 // we keep them in a separate collection to simplify the filtering
                 List<ProcessQueueEntry> startingProcesses = matches.stream().map(m -> m.response).collect(Collectors.toList());
 
-                if (pass(tx, e, startingProcesses)) {
+                if (filter.test(e, startingProcesses)) {
                     matches.add(new Match(req, e));
-                    inbox.remove(req);
+
+                    req.remaining--;
+                    if (req.remaining <= 0) {
+                        inbox.remove(req);
+                    }
 
                     if (inbox.isEmpty()) {
                         break;
@@ -197,33 +265,15 @@ public class Dispatcher extends PeriodicTask {
                 break;
             }
 
-            offset += batchSize;
-        }
-
-        for (Match m : matches) {
-            ProcessQueueEntry candidate = m.response;
-
-            // mark the process as STARTING
-            queueManager.updateStatus(tx, candidate.key(), ProcessStatus.STARTING);
+            offset += candidates.size();
+            last = candidates.get(candidates.size() - 1);
         }
 
         return matches;
     }
 
-    private static Request findRequest(ProcessQueueEntry candidate, List<Request> requests) {
-        for (Request req : requests) {
-            Map<String, Object> capabilities = req.request.getCapabilities();
-            Map<String, Object> m = getAgentRequirements(candidate);
-            if (MapMatcher.matches(capabilities, m)) {
-                return req;
-            }
-        }
-
-        return null;
-    }
-
     @SuppressWarnings("unchecked")
-    private static Map<String, Object> getAgentRequirements(ProcessQueueEntry entry) {
+    static Map<String, Object> getAgentRequirements(ProcessQueueEntry entry) {
         Map<String, Object> requirements = entry.requirements();
         if (requirements == null) {
             return Collections.emptyMap();
@@ -247,54 +297,68 @@ public class Dispatcher extends PeriodicTask {
         return true;
     }
 
-    private void sendResponse(Match match) {
-        WebSocketChannel channel = match.request.channel;
-        long correlationId = match.request.request.getCorrelationId();
-        ProcessQueueEntry item = match.response;
+    private void sendResponse(Request request, List<ProcessQueueEntry> items) {
+        WebSocketChannel channel = request.channel;
+        long correlationId = request.request.getCorrelationId();
 
-        try {
-            SecretReference secret = null;
-            if (item.repoId() != null) {
-                secret = dao.getSecretReference(item.repoId());
+        List<ProcessResponse> l = new ArrayList<>(items.size());
+        List<ProcessKey> acquired = new ArrayList<>(items.size());
+        for (ProcessQueueEntry item : items) {
+            try {
+                l.add(toResponse(correlationId, item));
+                acquired.add(item.key());
+            } catch (Exception e) {
+                log.error("sendResponse ['{}'] -> failed (instanceId: {})", correlationId, item.key().getInstanceId());
             }
+        }
 
-            // backward compatibility with old process queue entries that are not normalized
-            Imports imports = importsNormalizerFactory.forProject(item.projectId())
-                    .normalize(item.imports());
-
-            ProcessResponse resp = new ProcessResponse(correlationId,
-                    item.key().getInstanceId(),
-                    secret != null ? secret.orgName : null,
-                    item.repoUrl(),
-                    item.repoPath(),
-                    item.commitId(),
-                    secret != null ? secret.secretName : null,
-                    imports);
-
-            if (!channelManager.sendResponse(channel.getChannelId(), resp)) {
-                log.warn("sendResponse ['{}'] -> failed", correlationId);
-            }
+        if (l.isEmpty()) {
+            return;
+        }
+
+        // old agents don't know about batch responses, send them a single process
+        Message resp = request.isBatch() ? new ProcessBatchResponse(correlationId, l) : l.get(0);
 
-            logManager.info(item.key(), "Acquired by: " + channel.getUserAgent());
-        } catch (Exception e) {
-            log.error("sendResponse ['{}'] -> failed (instanceId: {})", correlationId, item.key().getInstanceId());
+        if (!channelManager.sendResponse(channel.getChannelId(), resp)) {
+            log.warn("sendResponse ['{}'] -> failed", correlationId);
         }
+
+        for (ProcessKey k : acquired) {
+            logManager.info(k, "Acquired by: " + channel.getUserAgent());
+        }
+    }
+
+    private ProcessResponse toResponse(long correlationId, ProcessQueueEntry item) {
+        SecretReference secret = null;
+        if (item.repoId() != null) {
+            secret = dao.getSecretReference(item.repoId());
+        }
+
+        // backward compatibility with old process queue entries that are not normalized
+        Imports imports = importsNormalizerFactory.forProject(item.projectId())
+                .normalize(item.imports());
+
+        return new ProcessResponse(correlationId,
+                item.key().getInstanceId(),
+                secret != null ? secret.orgName : null,
+                item.repoUrl(),
+                item.repoPath(),
+                item.commitId(),
+                secret != null ? secret.secretName : null,
+                imports);
     }
 
     @Named
     public static class DispatcherDao extends AbstractDao {
 
         private final ConcordObjectMapper objectMapper;
-        private final Histogram offsetHistogram;
 
         @Inject
         public DispatcherDao(@MainDB Configuration cfg,
-                             ConcordObjectMapper objectMapper,
-                             MetricRegistry metricRegistry) {
+                             ConcordObjectMapper objectMapper) {
 
             super(cfg);
             this.objectMapper = objectMapper;
-            this.offsetHistogram = metricRegistry.histogram("process-queue-dispatcher-offset");
         }
 
         @Override
@@ -302,15 +366,18 @@ public class Dispatcher extends PeriodicTask {
             return super.txResult(t);
         }
 
+        /**
+         * Returns the next {@code limit} dispatchable processes after the {@code after} entry.
+         * Uses keyset pagination over ({@code LAST_UPDATED_AT}, {@code INSTANCE_ID}), so
+         * the rows skipped by the previous pages are not scanned (and locked) again.
+         */
         @WithTimer
-        public List<ProcessQueueEntry> next(DSLContext tx, int offset, int limit) {
-            offsetHistogram.update(offset);
-
+        public List<ProcessQueueEntry> next(DSLContext tx, ProcessQueueEntry after, int limit) {
             ProcessQueue q = PROCESS_QUEUE.as("q");
 
             Field<UUID> orgIdField = select(PROJECTS.ORG_ID).from(PROJECTS).where(PROJECTS.PROJECT_ID.eq(q.PROJECT_ID)).asField();
 
-            SelectJoinStep<Record13<UUID, Timestamp, UUID, UUID, UUID, UUID, String, String, String, UUID, JSONB, JSONB, JSONB>> s =
+            SelectJoinStep<Record14<UUID, Timestamp, UUID, UUID, UUID, UUID, String, String, String, UUID, JSONB, JSONB, JSONB, Timestamp>> s =
                     tx.select(
                             q.INSTANCE_ID,
                             q.CREATED_AT,
@@ -324,16 +391,21 @@ public class Dispatcher extends PeriodicTask {
                             q.REPO_ID,
                             q.IMPORTS,
                             q.REQUIREMENTS,
-                            q.EXCLUSIVE)
+                            q.EXCLUSIVE,
+                            q.LAST_UPDATED_AT)
                             .from(q);
 
-            s.where(q.CURRENT_STATUS.eq(ProcessStatus.ENQUEUED.toString())
+            Condition c = q.CURRENT_STATUS.eq(ProcessStatus.ENQUEUED.toString())
                     .and(or(q.START_AT.isNull(),
                             q.START_AT.le(currentTimestamp())))
-                    .and(q.WAIT_CONDITIONS.isNull()));
+                    .and(q.WAIT_CONDITIONS.isNull());
 
-            return s.orderBy(q.LAST_UPDATED_AT)
-                    .offset(offset)
+            if (after != null) {
+                c = c.and(row(q.LAST_UPDATED_AT, q.INSTANCE_ID).gt(after.lastUpdatedAt(), after.key().getInstanceId()));
+            }
+
+            return s.where(c)
+                    .orderBy(q.LAST_UPDATED_AT, q.INSTANCE_ID)
                     .limit(limit)
                     .forUpdate()
                     .of(q)
@@ -351,6 +423,7 @@ public class Dispatcher extends PeriodicTask {
                             .imports(objectMapper.fromJSONB(r.value11(), Imports.class))
                             .requirements(objectMapper.fromJSONB(r.value12()))
                             .exclusive(objectMapper.fromJSONB(r.value13()))
+                            .lastUpdatedAt(r.value14())
                             .build());
         }
 
@@ -366,18 +439,30 @@ public class Dispatcher extends PeriodicTask {
         }
     }
 
-    private static final class Request {
+    static final class Request {
 
         private final WebSocketChannel channel;
         private final ProcessRequest request;
 
-        private Request(WebSocketChannel channel, ProcessRequest request) {
+        // number of processes the agent can still accept
+        private int remaining;
+
+        Request(WebSocketChannel channel, ProcessRequest request, int maxProcessesPerRequest) {
             this.channel = channel;
             this.request = request;
+
+            // the value is supplied by the agent, keep it within the server's limit
+            Integer maxProcesses = request.getMaxProcesses();
+            this.remaining = maxProcesses != null ? Math.min(Math.max(1, maxProcesses), maxProcessesPerRequest) : 1;
+        }
+
+        private boolean isBatch() {
+            Integer maxProcesses = request.getMaxProcesses();
+            return maxProcesses != null && maxProcesses > 1;
         }
     }
 
-    private static final class Match {
+    static final class Match {
 
         private final Request request;
         private final ProcessQueueEntry response;
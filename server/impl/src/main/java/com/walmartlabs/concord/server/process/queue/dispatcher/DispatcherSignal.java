@@ -0,0 +1,329 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.db.AbstractDao;
+import com.walmartlabs.concord.db.MainDB;
+import com.walmartlabs.concord.server.sdk.BackgroundTask;
+import org.jooq.Configuration;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+import org.jooq.tools.jdbc.JDBCUtils;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.jooq.impl.DSL.field;
+import static org.jooq.impl.DSL.value;
+
+/**
+ * Wakes up the {@link Dispatcher} when the process queue changes, so the dispatcher
+ * doesn't have to wait for the next poll.
+ * <p>
+ * Queue changes are published using PostgreSQL's {@code NOTIFY} in the caller's
+ * transaction. Notifications are delivered only after the transaction commits and
+ * they reach the dispatchers on all server nodes. Node-local events (e.g. new agent
+ * requests) are signalled directly with {@link #wakeUp()}.
+ * <p>
+ * Notifications can carry a payload, which is passed to the registered
+ * {@link Listener}s.
+ */
+@Named
+@Singleton
+public class DispatcherSignal implements BackgroundTask {
+
+    private static final Logger log = LoggerFactory.getLogger(DispatcherSignal.class);
+
+    private static final String CHANNEL = "concord_process_queue";
+    private static final String SYNC_PREFIX = "sync:";
+    private static final String QUIET_PREFIX = "quiet:";
+    private static final long ERROR_DELAY = TimeUnit.SECONDS.toMillis(10);
+    private static final int LISTEN_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(1);
+
+    private final Dao dao;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Object mutex = new Object();
+
+    private final String syncPrefix = SYNC_PREFIX + UUID.randomUUID() + ":";
+    private final AtomicLong syncRequests = new AtomicLong();
+    private final Object syncMutex = new Object();
+    private long syncReceived;
+
+    private boolean signalled;
+    private Thread listener;
+
+    @Inject
+    public DispatcherSignal(Dao dao) {
+        this.dao = dao;
+    }
+
+    @Override
+    public void start() {
+        this.listener = new Thread(this::run, "dispatcher-signal-listener");
+        this.listener.start();
+    }
+
+    @Override
+    public void stop() {
+        if (listener != null) {
+            listener.interrupt();
+            listener = null;
+        }
+    }
+
+    public void addListener(Listener l) {
+        listeners.add(l);
+    }
+
+    /**
+     * Notifies the dispatchers on all server nodes after the specified
+     * transaction commits.
+     */
+    public void publish(DSLContext tx) {
+        publish(tx, "");
+    }
+
+    /**
+     * Notifies the dispatchers on all server nodes after the specified
+     * transaction commits. The {@code payload} is passed to the listeners.
+     */
+    public void publish(DSLContext tx, String payload) {
+        dao.publish(tx, payload);
+    }
+
+    /**
+     * Passes the {@code payload} to the listeners on all server nodes after
+     * the specified transaction commits, without waking up the dispatchers.
+     */
+    public void publishQuiet(DSLContext tx, String payload) {
+        dao.publish(tx, QUIET_PREFIX + payload);
+    }
+
+    /**
+     * Passes the {@code payload} to the listeners on all server nodes
+     * immediately, without waking up the dispatchers.
+     */
+    public void publishQuiet(String payload) {
+        dao.publish(QUIET_PREFIX + payload);
+    }
+
+    /**
+     * Wakes up the local dispatcher immediately.
+     */
+    public void wakeUp() {
+        synchronized (mutex) {
+            signalled = true;
+            mutex.notifyAll();
+        }
+    }
+
+    /**
+     * Waits for a signal or until the specified timeout elapses.
+     */
+    public void await(long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+
+        synchronized (mutex) {
+            try {
+                long remaining = timeout;
+                while (!signalled && remaining > 0) {
+                    mutex.wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                signalled = false;
+            }
+        }
+    }
+
+    /**
+     * Waits until the listeners receive all notifications committed before
+     * this call. PostgreSQL delivers notifications in the commit order, so it is
+     * enough to publish a marker and wait for it to come back.
+     *
+     * @return {@code true} if the marker was received before the timeout
+     */
+    public boolean sync(long timeout) {
+        long n = syncRequests.incrementAndGet();
+        dao.publish(syncPrefix + n);
+
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (syncMutex) {
+            try {
+                long remaining = timeout;
+                while (syncReceived < n && remaining > 0) {
+                    syncMutex.wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return syncReceived >= n;
+        }
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Connection conn = null;
+            try {
+                conn = dao.listen();
+
+                // notifications sent while we weren't listening are lost
+                listeners.forEach(Listener::onConnect);
+
+                PGConnection pgConn = conn.unwrap(PGConnection.class);
+                while (!Thread.currentThread().isInterrupted()) {
+                    PGNotification[] notifications = pgConn.getNotifications(LISTEN_TIMEOUT);
+                    if (notifications == null || notifications.length == 0) {
+                        continue;
+                    }
+
+                    boolean wakeUp = false;
+                    for (PGNotification n : notifications) {
+                        wakeUp |= onNotification(n.getParameter());
+                    }
+
+                    if (wakeUp) {
+                        wakeUp();
+                    }
+                }
+            } catch (SQLException e) {
+                log.warn("run -> error while listening for notifications: {}. Will retry in {}ms...", e.getMessage(), ERROR_DELAY);
+                sleep(ERROR_DELAY);
+            } finally {
+                dao.unlisten(conn);
+            }
+        }
+    }
+
+    private boolean onNotification(String payload) {
+        if (payload.startsWith(SYNC_PREFIX)) {
+            if (payload.startsWith(syncPrefix)) {
+                long n = Long.parseLong(payload.substring(syncPrefix.length()));
+                synchronized (syncMutex) {
+                    syncReceived = Math.max(syncReceived, n);
+                    syncMutex.notifyAll();
+                }
+            }
+            return false;
+        }
+
+        if (payload.startsWith(QUIET_PREFIX)) {
+            notifyListeners(payload.substring(QUIET_PREFIX.length()));
+            return false;
+        }
+
+        if (!payload.isEmpty()) {
+            notifyListeners(payload);
+        }
+
+        return true;
+    }
+
+    private void notifyListeners(String payload) {
+        for (Listener l : listeners) {
+            try {
+                l.onNotification(payload);
+            } catch (Exception e) {
+                log.warn("onNotification ['{}'] -> error in {}: {}", payload, l, e.getMessage());
+            }
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public interface Listener {
+
+        /**
+         * Called when the signal (re)connects to the DB. Any notifications
+         * published before that might be lost.
+         */
+        void onConnect();
+
+        void onNotification(String payload);
+    }
+
+    @Named
+    public static class Dao extends AbstractDao {
+
+        @Inject
+        public Dao(@MainDB Configuration cfg) {
+            super(cfg);
+        }
+
+        public void publish(DSLContext tx, String payload) {
+            tx.select(field("pg_notify({0}, {1})", value(CHANNEL), value(payload))).fetch();
+        }
+
+        public void publish(String payload) {
+            try (DSLContext tx = DSL.using(cfg)) {
+                publish(tx, payload);
+            }
+        }
+
+        public Connection listen() throws SQLException {
+            Connection conn = cfg.connectionProvider().acquire(); // NOSONAR
+            try (Statement st = conn.createStatement()) {
+                conn.setAutoCommit(true);
+                st.execute("LISTEN " + CHANNEL);
+                return conn;
+            } catch (SQLException e) {
+                JDBCUtils.safeClose(conn);
+                throw e;
+            }
+        }
+
+        public void unlisten(Connection conn) {
+            if (conn == null) {
+                return;
+            }
+
+            try (Statement st = conn.createStatement()) {
+                st.execute("UNLISTEN " + CHANNEL);
+            } catch (SQLException e) {
+                log.warn("unlisten -> error: {}", e.getMessage());
+            } finally {
+                JDBCUtils.safeClose(conn);
+            }
+        }
+    }
+}
@@ -43,11 +43,16 @@ public class ExclusiveProcessFilter extends WaitProcessFinishFilter {
     private static final String WAIT_MODE = "wait";
 
     private final ExclusiveProcessFilterDao dao;
+    private final RunningProcessCache runningProcesses;
 
     @Inject
-    public ExclusiveProcessFilter(ProcessQueueManager processQueueManager, ExclusiveProcessFilterDao dao) {
+    public ExclusiveProcessFilter(ProcessQueueManager processQueueManager,
+                                  ExclusiveProcessFilterDao dao,
+                                  RunningProcessCache runningProcesses) {
+
         super(processQueueManager);
         this.dao = dao;
+        this.runningProcesses = runningProcesses;
     }
 
     @Override
@@ -67,7 +72,15 @@ public class ExclusiveProcessFilter extends WaitProcessFinishFilter {
             return Collections.emptyList();
         }
 
-        List<UUID> result = new ArrayList<>(dao.findProcess(tx, item, group));
+        List<UUID> result = null;
+        if (runningProcesses.isReady()) {
+            result = runningProcesses.exclusiveProcesses(item.projectId(), group, item.parentInstanceId());
+        }
+
+        if (result == null) {
+            result = new ArrayList<>(dao.findProcess(tx, item, group));
+        }
+
         for (ProcessQueueEntry p : startingProcesses) {
             if (item.projectId().equals(p.projectId()) && group.equals(getGroup(p))) {
                 result.add(p.key().getInstanceId());
@@ -0,0 +1,519 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.db.AbstractDao;
+import com.walmartlabs.concord.db.MainDB;
+import com.walmartlabs.concord.sdk.MapUtils;
+import com.walmartlabs.concord.server.cfg.ProcessQueueConfiguration;
+import com.walmartlabs.concord.server.jooq.tables.ProcessQueue;
+import com.walmartlabs.concord.server.jooq.tables.Projects;
+import com.walmartlabs.concord.server.process.ProcessKey;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueEntry;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.immutables.value.Value;
+import org.jooq.Configuration;
+import org.jooq.DSLContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.walmartlabs.concord.db.PgUtils.jsonbText;
+
+/**
+ * Node-local cache of the running processes, grouped by org, project and exclusive group.
+ * Used by {@link ConcurrentProcessFilter} and {@link ExclusiveProcessFilter} instead of
+ * querying the DB for every dispatcher candidate.
+ * <p>
+ * The cache is maintained incrementally: process status changes are published with
+ * {@link DispatcherSignal} and applied on every server node. Before each dispatcher run
+ * the cache is synchronized with the notification stream (see {@link DispatcherSignal#sync(long)}).
+ * The cache is periodically reloaded from the DB in a background thread, outside of
+ * the dispatcher's lock. If the cache can't be synchronized quickly or it is being
+ * reloaded after losing notifications, the filters fall back to the DB queries.
+ */
+@Named
+@Singleton
+public class RunningProcessCache implements DispatcherSignal.Listener {
+
+    private static final Logger log = LoggerFactory.getLogger(RunningProcessCache.class);
+
+    /**
+     * The sync is performed while holding the dispatcher's lock. Notifications
+     * usually take a few milliseconds to come back, it's cheaper to use the DB
+     * for a single run than to wait longer.
+     */
+    private static final long SYNC_TIMEOUT = 500;
+
+    /**
+     * Statuses that count towards the "max concurrent processes" limit.
+     */
+    private static final Set<ProcessStatus> CONCURRENT_STATUSES = Collections.unmodifiableSet(EnumSet.of(
+            ProcessStatus.STARTING,
+            ProcessStatus.RUNNING,
+            ProcessStatus.RESUMING));
+
+    /**
+     * Statuses that hold an exclusive group.
+     */
+    private static final Set<ProcessStatus> EXCLUSIVE_STATUSES = Collections.unmodifiableSet(EnumSet.of(
+            ProcessStatus.STARTING,
+            ProcessStatus.SUSPENDED,
+            ProcessStatus.RUNNING,
+            ProcessStatus.RESUMING));
+
+    /**
+     * Status changes that must be published to keep the cache up to date.
+     * Transitions between STARTING and RUNNING don't affect the filters.
+     * The published changes also wake up the dispatchers: they can make other
+     * processes dispatchable by freeing a concurrency slot or an exclusive group.
+     */
+    private static final Set<ProcessStatus> PUBLISHED_STATUSES = Collections.unmodifiableSet(EnumSet.of(
+            ProcessStatus.ENQUEUED,
+            ProcessStatus.SUSPENDED,
+            ProcessStatus.RESUMING,
+            ProcessStatus.FINISHED,
+            ProcessStatus.FAILED,
+            ProcessStatus.CANCELLED,
+            ProcessStatus.TIMED_OUT));
+
+    private static final String STATUS_PREFIX = "status:";
+    private static final String STARTED_PREFIX = "started:";
+
+    private final Dao dao;
+    private final DispatcherSignal signal;
+    private final long reloadInterval;
+
+    private final Counter reloadCounter;
+    private final Counter fallbackCounter;
+
+    private final ExecutorService reloadExecutor;
+
+    // guarded by "this"
+    private final Map<UUID, RunningProcess> processes = new HashMap<>();
+    private final Map<UUID, Set<UUID>> byOrg = new HashMap<>();
+    private final Map<UUID, Set<UUID>> byProject = new HashMap<>();
+    private final Map<GroupKey, Set<UUID>> byGroup = new HashMap<>();
+    private final List<String> pending = new ArrayList<>();
+    private boolean reloading;
+    private boolean stale = true;
+    // the cache became stale while reloading, the loaded data can't be trusted
+    private boolean staleWhileReloading;
+    private long lastReloadAt;
+
+    // accessed only by the dispatcher's thread
+    private boolean ready;
+
+    @Inject
+    public RunningProcessCache(Dao dao,
+                               DispatcherSignal signal,
+                               ProcessQueueConfiguration cfg,
+                               MetricRegistry metricRegistry) {
+
+        this.dao = dao;
+        this.signal = signal;
+        this.reloadInterval = cfg.getRunningProcessCacheReloadInterval();
+
+        this.reloadCounter = metricRegistry.counter("process-queue-running-process-cache-reloads");
+        this.fallbackCounter = metricRegistry.counter("process-queue-running-process-cache-fallbacks");
+
+        this.reloadExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "running-process-cache-reload");
+            t.setDaemon(true);
+            return t;
+        });
+
+        signal.addListener(this);
+    }
+
+    /**
+     * Publishes the process status change. Must be called in the same
+     * transaction as the status update.
+     */
+    public void onStatusChange(DSLContext tx, ProcessKey processKey, ProcessStatus status) {
+        if (PUBLISHED_STATUSES.contains(status)) {
+            signal.publish(tx, STATUS_PREFIX + processKey.getInstanceId() + ":" + status);
+        }
+    }
+
+    /**
+     * Publishes the details of a dispatched (STARTING) process. Must be called
+     * in the dispatcher's transaction.
+     */
+    public void onStarting(DSLContext tx, ProcessQueueEntry e) {
+        signal.publish(tx, STARTED_PREFIX + e.key().getInstanceId()
+                + ":" + toString(e.orgId())
+                + ":" + toString(e.projectId())
+                + ":" + toString(e.parentInstanceId())
+                + ":" + toString(MapUtils.getString(e.exclusive(), "group")));
+    }
+
+    /**
+     * Prepares the cache for a dispatcher run. Must be called while
+     * holding the dispatcher's lock.
+     * <p>
+     * Doesn't block on the DB: if the cache needs to be reloaded, the reload
+     * is started in the background and the current run uses the DB queries
+     * unless the cached data is still valid.
+     */
+    public void prepare() {
+        ready = false;
+
+        if (!signal.sync(SYNC_TIMEOUT)) {
+            log.warn("prepare -> can't sync with the notifications, using the DB instead");
+            fallbackCounter.inc();
+
+            markStale();
+            return;
+        }
+
+        boolean usable;
+        synchronized (this) {
+            if (!reloading && (stale || System.currentTimeMillis() - lastReloadAt >= reloadInterval)) {
+                startReload();
+            }
+
+            // a stale cache stays stale until the reload is done,
+            // periodic reloads of a valid cache don't affect the current run
+            usable = !stale;
+        }
+
+        if (!usable) {
+            fallbackCounter.inc();
+            return;
+        }
+
+        ready = true;
+    }
+
+    public void cleanup() {
+        ready = false;
+    }
+
+    /**
+     * @return the instance ID of the process if the payload is a status change
+     * notification, {@code null} otherwise.
+     */
+    public static UUID getStatusChangeInstanceId(String payload) {
+        if (!payload.startsWith(STATUS_PREFIX)) {
+            return null;
+        }
+
+        String[] as = payload.substring(STATUS_PREFIX.length()).split(":");
+        return UUID.fromString(as[0]);
+    }
+
+    /**
+     * @return {@code true} if the cache can be used in the current dispatcher run.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public synchronized List<UUID> processesPerOrg(UUID orgId) {
+        return new ArrayList<>(byOrg.getOrDefault(orgId, Collections.emptySet()));
+    }
+
+    public synchronized List<UUID> processesPerProject(UUID projectId) {
+        return new ArrayList<>(byProject.getOrDefault(projectId, Collections.emptySet()));
+    }
+
+    /**
+     * Returns the running processes in the specified exclusive group, excluding the
+     * ancestors of the {@code parentInstanceId} process.
+     *
+     * @return the list of processes or {@code null} if some of the ancestors are not
+     * in the cache and the list can't be computed
+     */
+    public synchronized List<UUID> exclusiveProcesses(UUID projectId, String group, UUID parentInstanceId) {
+        List<UUID> result = new ArrayList<>(byGroup.getOrDefault(new GroupKey(projectId, group), Collections.emptySet()));
+
+        UUID id = parentInstanceId;
+        while (id != null) {
+            RunningProcess p = processes.get(id);
+            if (p == null) {
+                // not running, we don't know its parent
+                return null;
+            }
+
+            result.remove(id);
+            id = p.parentInstanceId();
+        }
+
+        return result;
+    }
+
+    @Override
+    public void onConnect() {
+        markStale();
+    }
+
+    private synchronized void markStale() {
+        stale = true;
+        if (reloading) {
+            staleWhileReloading = true;
+        }
+    }
+
+    // guarded by "this"
+    private void startReload() {
+        reloading = true;
+        staleWhileReloading = false;
+        pending.clear();
+
+        try {
+            reloadExecutor.submit(this::reload);
+        } catch (RejectedExecutionException e) {
+            reloading = false;
+            log.warn("startReload -> can't start the reload: {}", e.getMessage());
+        }
+    }
+
+    private void reload() {
+        List<RunningProcess> l;
+        try {
+            l = dao.list();
+        } catch (Exception e) {
+            log.warn("reload -> error while loading the running processes: {}", e.getMessage());
+            synchronized (this) {
+                reloading = false;
+                pending.clear();
+            }
+            return;
+        }
+
+        synchronized (this) {
+            processes.clear();
+            byOrg.clear();
+            byProject.clear();
+            byGroup.clear();
+            l.forEach(this::put);
+
+            // re-apply the notifications received while loading the data
+            reloading = false;
+            pending.forEach(this::apply);
+            pending.clear();
+
+            // onConnect() or a failed sync could mark the cache stale again while we were loading
+            stale = staleWhileReloading;
+            staleWhileReloading = false;
+
+            lastReloadAt = System.currentTimeMillis();
+        }
+
+        reloadCounter.inc();
+    }
+
+    @Override
+    public synchronized void onNotification(String payload) {
+        if (!payload.startsWith(STATUS_PREFIX) && !payload.startsWith(STARTED_PREFIX)) {
+            return;
+        }
+
+        if (reloading) {
+            pending.add(payload);
+        }
+
+        apply(payload);
+    }
+
+    private void apply(String payload) {
+        if (payload.startsWith(STARTED_PREFIX)) {
+            // the exclusive group goes last, it can contain ":"
+            String[] as = payload.substring(STARTED_PREFIX.length()).split(":", 5);
+            put(RunningProcess.builder()
+                    .instanceId(UUID.fromString(as[0]))
+                    .orgId(toUuid(as[1]))
+                    .projectId(toUuid(as[2]))
+                    .parentInstanceId(toUuid(as[3]))
+                    .exclusiveGroup(as[4].isEmpty() ? null : as[4])
+                    .status(ProcessStatus.STARTING)
+                    .build());
+            return;
+        }
+
+        String[] as = payload.substring(STATUS_PREFIX.length()).split(":");
+        UUID instanceId = UUID.fromString(as[0]);
+        ProcessStatus status = ProcessStatus.valueOf(as[1]);
+
+        RunningProcess p = remove(instanceId);
+        if (p != null && EXCLUSIVE_STATUSES.contains(status)) {
+            put(RunningProcess.builder().from(p).status(status).build());
+        }
+    }
+
+    private void put(RunningProcess p) {
+        remove(p.instanceId());
+
+        UUID id = p.instanceId();
+        processes.put(id, p);
+
+        if (CONCURRENT_STATUSES.contains(p.status())) {
+            if (p.orgId() != null) {
+                byOrg.computeIfAbsent(p.orgId(), k -> new HashSet<>()).add(id);
+            }
+            if (p.projectId() != null) {
+                byProject.computeIfAbsent(p.projectId(), k -> new HashSet<>()).add(id);
+            }
+        }
+
+        if (EXCLUSIVE_STATUSES.contains(p.status()) && p.projectId() != null && p.exclusiveGroup() != null) {
+            byGroup.computeIfAbsent(new GroupKey(p.projectId(), p.exclusiveGroup()), k -> new HashSet<>()).add(id);
+        }
+    }
+
+    private RunningProcess remove(UUID instanceId) {
+        RunningProcess p = processes.remove(instanceId);
+        if (p == null) {
+            return null;
+        }
+
+        removeFrom(byOrg, p.orgId(), instanceId);
+        removeFrom(byProject, p.projectId(), instanceId);
+        if (p.projectId() != null && p.exclusiveGroup() != null) {
+            removeFrom(byGroup, new GroupKey(p.projectId(), p.exclusiveGroup()), instanceId);
+        }
+
+        return p;
+    }
+
+    private static <K> void removeFrom(Map<K, Set<UUID>> index, K key, UUID instanceId) {
+        if (key == null) {
+            return;
+        }
+
+        Set<UUID> ids = index.get(key);
+        if (ids == null) {
+            return;
+        }
+
+        ids.remove(instanceId);
+        if (ids.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static String toString(Object o) {
+        return o != null ? o.toString() : "";
+    }
+
+    private static UUID toUuid(String s) {
+        return s.isEmpty() ? null : UUID.fromString(s);
+    }
+
+    @Value.Immutable
+    interface RunningProcess {
+
+        UUID instanceId();
+
+        @Nullable
+        UUID orgId();
+
+        @Nullable
+        UUID projectId();
+
+        @Nullable
+        UUID parentInstanceId();
+
+        @Nullable
+        String exclusiveGroup();
+
+        ProcessStatus status();
+
+        static ImmutableRunningProcess.Builder builder() {
+            return ImmutableRunningProcess.builder();
+        }
+    }
+
+    private static final class GroupKey {
+
+        private final UUID projectId;
+        private final String group;
+
+        private GroupKey(UUID projectId, String group) {
+            this.projectId = projectId;
+            this.group = group;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            GroupKey that = (GroupKey) o;
+            return projectId.equals(that.projectId) && group.equals(that.group);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(projectId, group);
+        }
+    }
+
+    @Named
+    public static class Dao extends AbstractDao {
+
+        private static final List<String> RUNNING_PROCESS_STATUSES = Arrays.asList(
+                ProcessStatus.STARTING.name(),
+                ProcessStatus.SUSPENDED.name(),
+                ProcessStatus.RUNNING.name(),
+                ProcessStatus.RESUMING.name());
+
+        @Inject
+        public Dao(@MainDB Configuration cfg) {
+            super(cfg);
+        }
+
+        public List<RunningProcess> list() {
+            return txResult(this::list);
+        }
+
+        private List<RunningProcess> list(DSLContext tx) {
+            ProcessQueue q = ProcessQueue.PROCESS_QUEUE.as("q");
+            Projects p = Projects.PROJECTS.as("p");
+            return tx.select(q.INSTANCE_ID, p.ORG_ID, q.PROJECT_ID, q.PARENT_INSTANCE_ID, jsonbText(q.EXCLUSIVE, "group"), q.CURRENT_STATUS)
+                    .from(q)
+                    .leftJoin(p).on(p.PROJECT_ID.eq(q.PROJECT_ID))
+                    .where(q.CURRENT_STATUS.in(RUNNING_PROCESS_STATUSES))
+                    .fetch(r -> RunningProcess.builder()
+                            .instanceId(r.value1())
+                            .orgId(r.value2())
+                            .projectId(r.value3())
+                            .parentInstanceId(r.value4())
+                            .exclusiveGroup(r.value5())
+                            .status(ProcessStatus.valueOf(r.value6()))
+                            .build());
+        }
+    }
+}
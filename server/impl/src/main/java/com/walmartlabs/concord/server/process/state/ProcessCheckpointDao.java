@@ -25,9 +25,11 @@ import com.walmartlabs.concord.db.MainDB;
 import com.walmartlabs.concord.server.process.ImmutableProcessCheckpointEntry;
 import com.walmartlabs.concord.server.process.ProcessEntry.ProcessCheckpointEntry;
 import com.walmartlabs.concord.server.process.ProcessKey;
+import org.immutables.value.Value;
 import org.jooq.Configuration;
 import org.jooq.Record;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.io.InputStream;
@@ -37,6 +39,8 @@ import java.nio.file.StandardCopyOption;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -70,7 +74,29 @@ public class ProcessCheckpointDao extends AbstractDao {
                 .fetchOne(PROCESS_CHECKPOINTS.CHECKPOINT_ID));
     }
 
+    public CheckpointLink getLink(ProcessKey processKey, UUID checkpointId) {
+        return txResult(tx -> tx.select(PROCESS_CHECKPOINTS.CHECKPOINT_ID,
+                PROCESS_CHECKPOINTS.PARENT_CHECKPOINT_ID,
+                PROCESS_CHECKPOINTS.CHAIN_LENGTH,
+                PROCESS_CHECKPOINTS.DELETED_FILES)
+                .from(PROCESS_CHECKPOINTS)
+                .where(PROCESS_CHECKPOINTS.CHECKPOINT_ID.eq(checkpointId)
+                        .and(PROCESS_CHECKPOINTS.INSTANCE_ID.eq(processKey.getInstanceId())
+                                .and(PROCESS_CHECKPOINTS.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt()))))
+                .fetchOne(r -> ImmutableCheckpointLink.builder()
+                        .id(r.value1())
+                        .parentId(r.value2())
+                        .chainLength(r.value3())
+                        .deletedFiles(r.value4() != null ? Arrays.asList(r.value4()) : Collections.emptyList())
+                        .build()));
+    }
+
     public void importCheckpoint(ProcessKey processKey, UUID checkpointId, String checkpointName, Path data) {
+        importCheckpoint(processKey, checkpointId, checkpointName, null, 0, Collections.emptyList(), data);
+    }
+
+    public void importCheckpoint(ProcessKey processKey, UUID checkpointId, String checkpointName,
+                                 UUID parentId, int chainLength, List<String> deletedFiles, Path data) {
         tx(tx -> {
             String sql = tx.insertInto(PROCESS_CHECKPOINTS)
                     .columns(PROCESS_CHECKPOINTS.INSTANCE_ID,
@@ -78,8 +104,11 @@ public class ProcessCheckpointDao extends AbstractDao {
                             PROCESS_CHECKPOINTS.CHECKPOINT_ID,
                             PROCESS_CHECKPOINTS.CHECKPOINT_NAME,
                             PROCESS_CHECKPOINTS.CHECKPOINT_DATE,
-                            PROCESS_CHECKPOINTS.CHECKPOINT_DATA)
-                    .values((UUID) null, null, null, null, null, null)
+                            PROCESS_CHECKPOINTS.CHECKPOINT_DATA,
+                            PROCESS_CHECKPOINTS.PARENT_CHECKPOINT_ID,
+                            PROCESS_CHECKPOINTS.CHAIN_LENGTH,
+                            PROCESS_CHECKPOINTS.DELETED_FILES)
+                    .values((UUID) null, null, null, null, null, null, null, null, null)
                     .getSQL();
 
             tx.connection(conn -> {
@@ -89,11 +118,14 @@ public class ProcessCheckpointDao extends AbstractDao {
                     ps.setObject(3, checkpointId);
                     ps.setString(4, checkpointName);
                     ps.setTimestamp(5, new Timestamp(new Date().getTime()));
+                    ps.setObject(7, parentId);
+                    ps.setInt(8, chainLength);
+                    ps.setArray(9, deletedFiles.isEmpty() ? null : conn.createArrayOf("text", deletedFiles.toArray()));
+
                     try (InputStream in = Files.newInputStream(data)) {
                         ps.setBinaryStream(6, in);
+                        ps.execute();
                     }
-
-                    ps.execute();
                 }
             });
         });
@@ -129,6 +161,32 @@ public class ProcessCheckpointDao extends AbstractDao {
         });
     }
 
+    /**
+     * Position of a checkpoint in a chain of delta checkpoints.
+     */
+    @Value.Immutable
+    public interface CheckpointLink {
+
+        UUID id();
+
+        /**
+         * ID of the checkpoint the delta is based on,
+         * {@code null} for full checkpoints.
+         */
+        @Nullable
+        UUID parentId();
+
+        /**
+         * Number of delta checkpoints between this checkpoint and the nearest full one.
+         */
+        int chainLength();
+
+        /**
+         * Files removed since the parent checkpoint.
+         */
+        List<String> deletedFiles();
+    }
+
     private static ProcessCheckpointEntry toEntry(Record r) {
         return ImmutableProcessCheckpointEntry.builder()
                 .id(r.get(PROCESS_CHECKPOINTS.CHECKPOINT_ID))
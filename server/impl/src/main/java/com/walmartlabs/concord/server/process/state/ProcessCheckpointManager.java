@@ -23,6 +23,7 @@ package com.walmartlabs.concord.server.process.state;
 import com.walmartlabs.concord.common.IOUtils;
 import com.walmartlabs.concord.common.TemporaryPath;
 import com.walmartlabs.concord.sdk.Constants;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
 import com.walmartlabs.concord.server.org.ResourceAccessLevel;
 import com.walmartlabs.concord.server.org.project.ProjectAccessManager;
 import com.walmartlabs.concord.server.process.OutVariablesUtils;
@@ -30,10 +31,13 @@ import com.walmartlabs.concord.server.process.ProcessEntry;
 import com.walmartlabs.concord.server.process.ProcessEntry.ProcessCheckpointEntry;
 import com.walmartlabs.concord.server.process.ProcessKey;
 import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
+import com.walmartlabs.concord.server.process.state.ProcessCheckpointDao.CheckpointLink;
 import com.walmartlabs.concord.server.security.Roles;
 import com.walmartlabs.concord.server.security.UserPrincipal;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.shiro.authz.UnauthorizedException;
 import org.immutables.value.Value;
+import org.sonatype.siesta.ValidationErrorsException;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -41,27 +45,28 @@ import javax.inject.Named;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
 
 import static com.walmartlabs.concord.sdk.Constants.Files.CHECKPOINT_META_FILE_NAME;
 
 @Named
 public class ProcessCheckpointManager {
 
+    private final ProcessConfiguration cfg;
     private final ProcessCheckpointDao checkpointDao;
     private final ProcessQueueDao queueDao;
     private final ProcessStateManager stateManager;
     private final ProjectAccessManager projectAccessManager;
 
     @Inject
-    protected ProcessCheckpointManager(ProcessCheckpointDao checkpointDao,
+    protected ProcessCheckpointManager(ProcessConfiguration cfg,
+                                       ProcessCheckpointDao checkpointDao,
                                        ProcessQueueDao queueDao,
                                        ProcessStateManager stateManager,
                                        ProjectAccessManager projectAccessManager) {
 
+        this.cfg = cfg;
         this.checkpointDao = checkpointDao;
         this.queueDao = queueDao;
         this.stateManager = stateManager;
@@ -84,36 +89,73 @@ public class ProcessCheckpointManager {
         checkpointDao.importCheckpoint(processKey, checkpointId, checkpointName, data);
     }
 
+    /**
+     * Import a delta checkpoint: the files changed since the parent checkpoint.
+     * If the resulting chain of deltas is too long, the checkpoint is assembled
+     * and stored as a full checkpoint.
+     *
+     * @param processKey     process key
+     * @param checkpointId   process checkpoint ID
+     * @param checkpointName process checkpoint name
+     * @param parentId       ID of the checkpoint the delta is based on
+     * @param deletedFiles   files removed since the parent checkpoint
+     * @param data           checkpoint data file
+     */
+    public void importDeltaCheckpoint(ProcessKey processKey, UUID checkpointId, String checkpointName,
+                                      UUID parentId, List<String> deletedFiles, Path data) {
+
+        CheckpointLink parent = checkpointDao.getLink(processKey, parentId);
+        if (parent == null) {
+            throw new ValidationErrorsException("Parent checkpoint not found: " + parentId);
+        }
+
+        int chainLength = parent.chainLength() + 1;
+        if (chainLength <= cfg.getCheckpointMaxChainLength()) {
+            checkpointDao.importCheckpoint(processKey, checkpointId, checkpointName, parentId, chainLength, deletedFiles, data);
+            return;
+        }
+
+        try (TemporaryPath dir = IOUtils.tempDir("checkpoint");
+             TemporaryPath full = IOUtils.tempFile("checkpoint", ".zip")) {
+
+            assemble(processKey, parentId, dir.path());
+            apply(dir.path(), deletedFiles, data);
+
+            try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(Files.newOutputStream(full.path()))) {
+                IOUtils.zip(zip, dir.path());
+            }
+
+            checkpointDao.importCheckpoint(processKey, checkpointId, checkpointName, full.path());
+        } catch (IOException e) {
+            throw new RuntimeException("Import checkpoint '" + checkpointId + "' error", e);
+        }
+    }
+
     /**
      * Restore process to a saved checkpoint.
      */
     public CheckpointInfo restoreCheckpoint(ProcessKey processKey, UUID checkpointId) {
-        try (TemporaryPath checkpointArchive = IOUtils.tempFile("checkpoint", ".zip")) {
-
-            String checkpointName = export(processKey, checkpointId, checkpointArchive.path());
+        try (TemporaryPath extractedDir = IOUtils.tempDir("unzipped-checkpoint")) {
+            String checkpointName = assemble(processKey, checkpointId, extractedDir.path());
             if (checkpointName == null) {
                 return null;
             }
 
-            try (TemporaryPath extractedDir = IOUtils.tempDir("unzipped-checkpoint")) {
-                IOUtils.unzip(checkpointArchive.path(), extractedDir.path());
+            // TODO: only for v1 runtime
+            String eventName = readCheckpointEventName(extractedDir.path());
 
-                // TODO: only for v1 runtime
-                String eventName = readCheckpointEventName(extractedDir.path());
+            stateManager.deleteDirectory(processKey, Constants.Files.CONCORD_SYSTEM_DIR_NAME);
+            stateManager.deleteDirectory(processKey, Constants.Files.JOB_ATTACHMENTS_DIR_NAME);
+            stateManager.importPath(processKey, null, extractedDir.path());
 
-                stateManager.deleteDirectory(processKey, Constants.Files.CONCORD_SYSTEM_DIR_NAME);
-                stateManager.deleteDirectory(processKey, Constants.Files.JOB_ATTACHMENTS_DIR_NAME);
-                stateManager.importPath(processKey, null, extractedDir.path());
-
-                Map<String, Object> out = OutVariablesUtils.read(extractedDir.path().resolve(Constants.Files.JOB_ATTACHMENTS_DIR_NAME));
-                if (out.isEmpty()) {
-                    queueDao.removeMeta(processKey, "out");
-                } else {
-                    queueDao.updateMeta(processKey, Collections.singletonMap("out", out));
-                }
-
-                return CheckpointInfo.of(checkpointName, eventName);
+            Map<String, Object> out = OutVariablesUtils.read(extractedDir.path().resolve(Constants.Files.JOB_ATTACHMENTS_DIR_NAME));
+            if (out.isEmpty()) {
+                queueDao.removeMeta(processKey, "out");
+            } else {
+                queueDao.updateMeta(processKey, Collections.singletonMap("out", out));
             }
+
+            return CheckpointInfo.of(checkpointName, eventName);
         } catch (Exception e) {
             throw new RuntimeException("Restore checkpoint '" + checkpointId + "' error", e);
         }
@@ -175,7 +217,53 @@ public class ProcessCheckpointManager {
         return checkpointName;
     }
 
-    private String export(ProcessKey processKey, UUID checkpointId, Path dest) {
-        return checkpointDao.export(processKey, checkpointId, dest);
+    /**
+     * Extracts the checkpoint's data into the specified directory, applying
+     * all delta checkpoints of the chain starting from the nearest full checkpoint.
+     *
+     * @return the checkpoint's name or {@code null} if the checkpoint doesn't exist
+     */
+    private String assemble(ProcessKey processKey, UUID checkpointId, Path dst) throws IOException {
+        Deque<CheckpointLink> chain = new ArrayDeque<>();
+
+        UUID id = checkpointId;
+        while (id != null) {
+            CheckpointLink l = checkpointDao.getLink(processKey, id);
+            if (l == null) {
+                if (chain.isEmpty()) {
+                    return null;
+                }
+                throw new IllegalStateException("Parent checkpoint not found: " + id);
+            }
+
+            chain.push(l);
+            id = l.parentId();
+        }
+
+        String checkpointName = null;
+        for (CheckpointLink l : chain) {
+            try (TemporaryPath archive = IOUtils.tempFile("checkpoint", ".zip")) {
+                checkpointName = checkpointDao.export(processKey, l.id(), archive.path());
+                if (checkpointName == null) {
+                    throw new IllegalStateException("Checkpoint not found: " + l.id());
+                }
+
+                apply(dst, l.deletedFiles(), archive.path());
+            }
+        }
+
+        return checkpointName;
+    }
+
+    private static void apply(Path dst, List<String> deletedFiles, Path archive) throws IOException {
+        for (String f : deletedFiles) {
+            Path p = dst.resolve(f).normalize();
+            if (!p.startsWith(dst)) {
+                throw new ValidationErrorsException("Invalid checkpoint file path: " + f);
+            }
+            Files.deleteIfExists(p);
+        }
+
+        IOUtils.unzip(archive, dst, StandardCopyOption.REPLACE_EXISTING);
     }
 }
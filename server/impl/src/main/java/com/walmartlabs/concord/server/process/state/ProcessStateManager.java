@@ -20,6 +20,8 @@ package com.walmartlabs.concord.server.process.state;
  * =====
  */
 
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
 import com.walmartlabs.concord.common.IOUtils;
 import com.walmartlabs.concord.common.Posix;
 import com.walmartlabs.concord.db.AbstractDao;
@@ -34,6 +36,8 @@ import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.jooq.Configuration;
 import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Table;
 import org.jooq.impl.DSL;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,19 +50,31 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.PosixFilePermission;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.*;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static com.walmartlabs.concord.db.PgUtils.interval;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QUEUE;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessState.PROCESS_STATE;
-
+import static com.walmartlabs.concord.server.jooq.tables.ProcessStateBlobs.PROCESS_STATE_BLOBS;
+import static org.jooq.impl.DSL.*;
+
+/**
+ * Stores process state files. Regular files are stored in {@code PROCESS_STATE_BLOBS}
+ * by the hash of their content and shared between processes, the {@code PROCESS_STATE}
+ * rows act as per-process manifests. Encrypted files and the values stored using
+ * {@link #insert(UUID, Timestamp, String, byte[])} are kept in {@code PROCESS_STATE.ITEM_DATA}.
+ */
 @Named
 @Singleton
 public class ProcessStateManager extends AbstractDao {
@@ -68,9 +84,26 @@ public class ProcessStateManager extends AbstractDao {
     private static final String PATH_SEPARATOR = "/";
     private static final int INSERT_BATCH_SIZE = 10;
 
+    /**
+     * The last modified time of the files exported using {@link #exportReusable(ProcessKey, Path, String...)}.
+     * Any modification of the file changes it.
+     */
+    private static final FileTime EXPORTED_FILE_TIME = FileTime.fromMillis(0);
+
+    private static final Table<?> STATE_WITH_BLOBS = PROCESS_STATE.leftJoin(PROCESS_STATE_BLOBS)
+            .on(PROCESS_STATE_BLOBS.BLOB_HASH.eq(PROCESS_STATE.BLOB_HASH));
+
+    private static final Field<byte[]> ITEM_DATA = coalesce(PROCESS_STATE.ITEM_DATA, PROCESS_STATE_BLOBS.BLOB_DATA);
+
     private final SecretStoreConfiguration secretCfg;
     private final Set<String> secureFiles = new HashSet<>();
 
+    /**
+     * Unreferenced blobs are removed only if they weren't used for this long (PG interval).
+     * Protects blobs referenced by uncommitted imports.
+     */
+    private final String blobGcGracePeriod;
+
     @Inject
     protected ProcessStateManager(@MainDB Configuration cfg,
                                   SecretStoreConfiguration secretCfg,
@@ -79,6 +112,7 @@ public class ProcessStateManager extends AbstractDao {
         this.secretCfg = secretCfg;
 
         this.secureFiles.addAll(stateCfg.getSecureFiles());
+        this.blobGcGracePeriod = stateCfg.getStateBlobGcGracePeriod();
     }
 
     public <T> Optional<T> get(PartialProcessKey partialProcessKey, String path, Function<InputStream, Optional<T>> converter) {
@@ -96,8 +130,8 @@ public class ProcessStateManager extends AbstractDao {
     }
 
     private <T> Optional<T> get(DSLContext tx, ProcessKey processKey, String path, Function<InputStream, Optional<T>> converter) {
-        String sql = tx.select(PROCESS_STATE.IS_ENCRYPTED, PROCESS_STATE.ITEM_DATA)
-                .from(PROCESS_STATE)
+        String sql = tx.select(PROCESS_STATE.IS_ENCRYPTED, ITEM_DATA)
+                .from(STATE_WITH_BLOBS)
                 .where(PROCESS_STATE.INSTANCE_ID.eq((UUID) null)
                         .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq((Timestamp) null))
                         .and(PROCESS_STATE.ITEM_PATH.eq((String) null)))
@@ -129,8 +163,8 @@ public class ProcessStateManager extends AbstractDao {
      */
     public <T> List<T> forEach(ProcessKey processKey, String path, Function<InputStream, Optional<T>> converter) {
         try (DSLContext tx = DSL.using(cfg)) {
-            String sql = tx.select(PROCESS_STATE.IS_ENCRYPTED, PROCESS_STATE.ITEM_DATA)
-                    .from(PROCESS_STATE)
+            String sql = tx.select(PROCESS_STATE.IS_ENCRYPTED, ITEM_DATA)
+                    .from(STATE_WITH_BLOBS)
                     .where(PROCESS_STATE.INSTANCE_ID.eq((UUID) null)
                             .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq((Timestamp) null))
                             .and(PROCESS_STATE.ITEM_PATH.startsWith((String) null)))
@@ -295,7 +329,7 @@ public class ProcessStateManager extends AbstractDao {
      */
     @WithTimer
     public void importPath(ProcessKey processKey, String path, Path src, BiFunction<Path, BasicFileAttributes, Boolean> filter) {
-        tx(tx -> importPath(tx, processKey.getInstanceId(), processKey.getCreatedAt(), path, src, filter));
+        tx(tx -> importPath(tx, processKey.getInstanceId(), processKey.getCreatedAt(), path, src, filter, null));
     }
 
     /**
@@ -303,16 +337,28 @@ public class ProcessStateManager extends AbstractDao {
      * If the filter function returns {@code false}, the matching file will be skipped.
      */
     public void replacePath(ProcessKey processKey, Path src, BiFunction<Path, BasicFileAttributes, Boolean> filter) {
+        replacePath(processKey, src, filter, null);
+    }
+
+    /**
+     * Same as {@link #replacePath(ProcessKey, Path, BiFunction)}, but the files exported using
+     * {@link #exportReusable(ProcessKey, Path, String...)} and not modified since are not read
+     * again, only the references to their blobs are stored.
+     *
+     * @param blobHashes the value returned by {@link #exportReusable(ProcessKey, Path, String...)}
+     */
+    public void replacePath(ProcessKey processKey, Path src, BiFunction<Path, BasicFileAttributes, Boolean> filter, Map<String, String> blobHashes) {
         UUID instanceId = processKey.getInstanceId();
         Timestamp instanceCreatedAt = processKey.getCreatedAt();
 
         tx(tx -> {
             delete(tx, instanceId, instanceCreatedAt);
-            importPath(tx, instanceId, instanceCreatedAt, null, src, filter);
+            importPath(tx, instanceId, instanceCreatedAt, null, src, filter, blobHashes);
         });
     }
 
-    private void importPath(DSLContext tx, UUID instanceId, Timestamp instanceCreatedAt, String path, Path src, BiFunction<Path, BasicFileAttributes, Boolean> filter) {
+    private void importPath(DSLContext tx, UUID instanceId, Timestamp instanceCreatedAt, String path, Path src,
+                            BiFunction<Path, BasicFileAttributes, Boolean> filter, Map<String, String> blobHashes) {
         String prefix = fixPath(path);
 
         List<BatchItem> batch = new ArrayList<>();
@@ -347,7 +393,15 @@ public class ProcessStateManager extends AbstractDao {
                             .and(PROCESS_STATE.ITEM_PATH.eq(n)))
                             .execute();
 
-                    batch.add(new BatchItem(n, file, unixMode, needsEncryption));
+                    String blobHash = null;
+                    if (!needsEncryption) {
+                        blobHash = exportedBlobHash(blobHashes, n, attrs);
+                        if (blobHash == null) {
+                            blobHash = hash(file);
+                        }
+                    }
+
+                    batch.add(new BatchItem(n, file, unixMode, needsEncryption, blobHash));
                     if (batch.size() >= INSERT_BATCH_SIZE) {
                         insert(tx, instanceId, instanceCreatedAt, batch);
                         batch.clear();
@@ -366,9 +420,11 @@ public class ProcessStateManager extends AbstractDao {
     }
 
     private void insert(DSLContext tx, UUID instanceId, Timestamp instanceCreatedAt, Collection<BatchItem> batch) {
+        insertBlobs(tx, batch);
+
         String sql = tx.insertInto(PROCESS_STATE)
-                .columns(PROCESS_STATE.INSTANCE_ID, PROCESS_STATE.INSTANCE_CREATED_AT, PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.ITEM_DATA, PROCESS_STATE.IS_ENCRYPTED)
-                .values((UUID) null, null, null, null, null, null)
+                .columns(PROCESS_STATE.INSTANCE_ID, PROCESS_STATE.INSTANCE_CREATED_AT, PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.ITEM_DATA, PROCESS_STATE.IS_ENCRYPTED, PROCESS_STATE.BLOB_HASH)
+                .values((UUID) null, null, null, null, null, null, null)
                 .getSQL();
 
         List<InputStream> streams = new LinkedList<>();
@@ -388,19 +444,99 @@ public class ProcessStateManager extends AbstractDao {
                         // UNIX_MODE
                         ps.setInt(4, item.unixMode);
 
-                        InputStream in = Files.newInputStream(item.path);
-                        streams.add(in); // keep the streams open until the batch is committed
+                        // ITEM_DATA
+                        if (item.blobHash != null) {
+                            ps.setNull(5, Types.BINARY);
+                        } else {
+                            InputStream in = Files.newInputStream(item.path);
+                            streams.add(in); // keep the streams open until the batch is committed
+
+                            if (item.needsEncryption) {
+                                in = encrypt(in);
+                            }
 
-                        if (item.needsEncryption) {
-                            in = encrypt(in);
+                            ps.setBinaryStream(5, in);
                         }
 
-                        // ITEM_DATA
-                        ps.setBinaryStream(5, in);
-
                         // IS_ENCRYPTED
                         ps.setBoolean(6, item.needsEncryption);
 
+                        // BLOB_HASH
+                        ps.setString(7, item.blobHash);
+
+                        ps.addBatch();
+                    }
+
+                    ps.executeBatch();
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        } finally {
+            streams.forEach(ProcessStateManager::closeSilently);
+        }
+    }
+
+    /**
+     * Stores the content of the batch items that is not yet in {@code PROCESS_STATE_BLOBS}.
+     */
+    private void insertBlobs(DSLContext tx, Collection<BatchItem> batch) {
+        Map<String, Path> blobs = new HashMap<>();
+        for (BatchItem item : batch) {
+            if (item.blobHash != null) {
+                blobs.putIfAbsent(item.blobHash, item.path);
+            }
+        }
+
+        if (blobs.isEmpty()) {
+            return;
+        }
+
+        // recently used blobs can't be garbage-collected, no need to update them
+        Set<String> missing = new HashSet<>(blobs.keySet());
+        missing.removeAll(tx.select(PROCESS_STATE_BLOBS.BLOB_HASH)
+                .from(PROCESS_STATE_BLOBS)
+                .where(PROCESS_STATE_BLOBS.BLOB_HASH.in(missing)
+                        .and(PROCESS_STATE_BLOBS.LAST_USED_AT.greaterOrEqual(currentTimestamp().minus(blobTouchInterval()))))
+                .fetch(PROCESS_STATE_BLOBS.BLOB_HASH));
+
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        // the updated rows stay locked until the end of the transaction
+        // which prevents the GC from removing them
+        missing.removeAll(tx.update(PROCESS_STATE_BLOBS)
+                .set(PROCESS_STATE_BLOBS.LAST_USED_AT, currentTimestamp())
+                .where(PROCESS_STATE_BLOBS.BLOB_HASH.in(missing))
+                .returning(PROCESS_STATE_BLOBS.BLOB_HASH)
+                .fetch()
+                .getValues(PROCESS_STATE_BLOBS.BLOB_HASH));
+
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        String sql = tx.insertInto(PROCESS_STATE_BLOBS)
+                .columns(PROCESS_STATE_BLOBS.BLOB_HASH, PROCESS_STATE_BLOBS.BLOB_SIZE, PROCESS_STATE_BLOBS.BLOB_DATA)
+                .values((String) null, null, null)
+                .onConflictDoNothing()
+                .getSQL();
+
+        List<InputStream> streams = new LinkedList<>();
+        try {
+            tx.connection(conn -> {
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    for (String hash : missing.stream().sorted().collect(Collectors.toList())) {
+                        Path p = blobs.get(hash);
+
+                        ps.setString(1, hash);
+                        ps.setLong(2, Files.size(p));
+
+                        InputStream in = Files.newInputStream(p);
+                        streams.add(in);
+                        ps.setBinaryStream(3, in);
+
                         ps.addBatch();
                     }
 
@@ -414,14 +550,64 @@ public class ProcessStateManager extends AbstractDao {
         }
     }
 
+    /**
+     * Removes the blobs that are no longer referenced by any process.
+     *
+     * @return number of removed blobs
+     */
+    @WithTimer
+    public int deleteUnusedBlobs() {
+        return txResult(tx -> tx.deleteFrom(PROCESS_STATE_BLOBS)
+                .where(PROCESS_STATE_BLOBS.LAST_USED_AT.lessThan(currentTimestamp().minus(interval(blobGcGracePeriod))))
+                .andNotExists(selectOne().from(PROCESS_STATE)
+                        .where(PROCESS_STATE.BLOB_HASH.eq(PROCESS_STATE_BLOBS.BLOB_HASH)))
+                .execute());
+    }
+
     /**
      * Exports all data of a process instance.
      */
     public boolean export(ProcessKey processKey, ItemConsumer consumer) {
+        return export(processKey, (name, unixMode, blobHash, src) -> consumer.accept(name, unixMode, src));
+    }
+
+    /**
+     * Exports all data of a process instance into a directory, skipping the files
+     * matching any of the {@code excluded} patterns. The blobs of the exported files
+     * can be reused by {@link #replacePath(ProcessKey, Path, BiFunction, Map)}
+     * if the files are not modified.
+     *
+     * @return the blob hashes of the exported files or {@code null} if the process state is not found
+     */
+    public Map<String, String> exportReusable(ProcessKey processKey, Path dst, String... excluded) {
+        ItemConsumer copy = exclude(copyTo(dst), excluded);
+
+        Map<String, String> result = new HashMap<>();
+        boolean found = export(processKey, (name, unixMode, blobHash, src) -> {
+            copy.accept(name, unixMode, src);
+
+            Path p = dst.resolve(name);
+            if (blobHash == null || !Files.exists(p)) {
+                return;
+            }
+
+            try {
+                Files.setLastModifiedTime(p, EXPORTED_FILE_TIME);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+
+            result.put(name, blobHash);
+        });
+
+        return found ? result : null;
+    }
+
+    private boolean export(ProcessKey processKey, BlobItemConsumer consumer) {
         try (DSLContext tx = DSL.using(cfg)) {
             String sql = tx
-                    .select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.IS_ENCRYPTED, PROCESS_STATE.ITEM_DATA)
-                    .from(PROCESS_STATE)
+                    .select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.IS_ENCRYPTED, ITEM_DATA, PROCESS_STATE.BLOB_HASH)
+                    .from(STATE_WITH_BLOBS)
                     .where(PROCESS_STATE.INSTANCE_ID.eq((UUID) null).and(PROCESS_STATE.INSTANCE_CREATED_AT.eq((Timestamp) null)))
                     .getSQL();
 
@@ -438,9 +624,10 @@ public class ProcessStateManager extends AbstractDao {
                             String n = rs.getString(1);
                             int unixMode = rs.getInt(2);
                             boolean encrypted = rs.getBoolean(3);
+                            String blobHash = rs.getString(5);
                             try (InputStream in = rs.getBinaryStream(4);
                                  InputStream processed = encrypted ? decrypt(in) : in) {
-                                consumer.accept(n, unixMode, processed);
+                                consumer.accept(n, unixMode, blobHash, processed);
                             }
                         }
                     }
@@ -459,8 +646,8 @@ public class ProcessStateManager extends AbstractDao {
 
         try (DSLContext tx = DSL.using(cfg)) {
             String sql = tx
-                    .select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.IS_ENCRYPTED, PROCESS_STATE.ITEM_DATA)
-                    .from(PROCESS_STATE)
+                    .select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.IS_ENCRYPTED, ITEM_DATA)
+                    .from(STATE_WITH_BLOBS)
                     .where(PROCESS_STATE.INSTANCE_ID.eq((UUID) null)
                             .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq((Timestamp) null))
                             .and(PROCESS_STATE.ITEM_PATH.startsWith((String) null)))
@@ -595,6 +782,30 @@ public class ProcessStateManager extends AbstractDao {
         return t;
     }
 
+    private static String hash(Path p) throws IOException {
+        return MoreFiles.asByteSource(p).hash(Hashing.sha256()).toString();
+    }
+
+    /**
+     * @return the blob hash of the exported file or {@code null} if the file
+     * wasn't exported or was modified after the export
+     */
+    private static String exportedBlobHash(Map<String, String> blobHashes, String path, BasicFileAttributes attrs) {
+        if (blobHashes == null || !EXPORTED_FILE_TIME.equals(attrs.lastModifiedTime())) {
+            return null;
+        }
+
+        return blobHashes.get(path);
+    }
+
+    /**
+     * Blobs used more recently than that are not touched again on import.
+     * Must be well below the GC grace period.
+     */
+    private Field<?> blobTouchInterval() {
+        return field("interval '" + blobGcGracePeriod + "' / 6");
+    }
+
     private static void closeSilently(AutoCloseable c) {
         if (c == null) {
             return;
@@ -612,6 +823,11 @@ public class ProcessStateManager extends AbstractDao {
         void accept(String name, int unixMode, InputStream src);
     }
 
+    private interface BlobItemConsumer {
+
+        void accept(String name, int unixMode, String blobHash, InputStream src);
+    }
+
     public static final class CopyConsumer implements ItemConsumer {
 
         private final Path dst;
@@ -700,12 +916,14 @@ public class ProcessStateManager extends AbstractDao {
         private final Path path;
         private final int unixMode;
         private final boolean needsEncryption;
+        private final String blobHash;
 
-        private BatchItem(String itemPath, Path path, int unixMode, boolean needsEncryption) {
+        private BatchItem(String itemPath, Path path, int unixMode, boolean needsEncryption, String blobHash) {
             this.itemPath = itemPath;
             this.path = path;
             this.unixMode = unixMode;
             this.needsEncryption = needsEncryption;
+            this.blobHash = blobHash;
         }
     }
 }
@@ -21,6 +21,8 @@ package com.walmartlabs.concord.server.repository;
  */
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.walmartlabs.concord.common.IOUtils;
 import com.walmartlabs.concord.process.loader.ProjectLoader;
 import com.walmartlabs.concord.repository.*;
@@ -57,6 +59,13 @@ public class RepositoryManager {
     private final RepositoryCache repositoryCache;
     private final RepositoryConfiguration repoCfg;
 
+    /**
+     * The last fetched {@link Repository} of each repository URL.
+     */
+    private final Cache<String, Repository> lastFetched = CacheBuilder.newBuilder()
+            .weakValues()
+            .build();
+
     @Inject
     public RepositoryManager(ObjectMapper objectMapper,
                              GitConfiguration gitCfg,
@@ -75,7 +84,7 @@ public class RepositoryManager {
                 .sshTimeoutRetryCount(gitCfg.getSshTimeoutRetryCount())
                 .build();
 
-        List<RepositoryProvider> providers = Arrays.asList(new ClasspathRepositoryProvider(), new GitCliRepositoryProvider(gitCliCfg));
+        List<RepositoryProvider> providers = Arrays.asList(new ClasspathRepositoryProvider(), new GitCliRepositoryProvider(gitCliCfg, repoCfg.isUseHardLinks()));
 
         this.providers = new RepositoryProviders(providers);
         this.secretManager = secretManager;
@@ -123,9 +132,11 @@ public class RepositoryManager {
         long start = System.currentTimeMillis();
 
         Path dest = repositoryCache.getPath(url);
+        lastFetched.invalidate(url);
         try {
             Repository result = providers.fetch(url, branch, commitId, path, secret, dest);
             fetchedCommitId = result.fetchedCommitId();
+            lastFetched.put(url, result);
             return result;
         } finally {
             log.info("fetch ['{}', '{}', '{}', '{}'] -> current commitId {}, done in {}ms",
@@ -140,6 +151,16 @@ public class RepositoryManager {
         return fetch(repository.getUrl(), repository.getBranch(), repository.getCommitId(), repository.getPath(), secret);
     }
 
+    /**
+     * Returns {@code true} if the local copy of the repository wasn't updated
+     * since the specified {@link Repository} was fetched, i.e. the repository
+     * can be exported without fetching it again.
+     * Must be called while holding the repository's lock.
+     */
+    public boolean isCurrent(String repoUrl, Repository repository) {
+        return lastFetched.getIfPresent(repoUrl) == repository;
+    }
+
     public <T> T withLock(String repoUrl, Callable<T> f) {
         long start = System.currentTimeMillis();
         try {
@@ -120,17 +120,19 @@ public class RepositoryRefresher extends AbstractDao {
             return;
         }
 
+        String[] commitId = new String[1];
         Path repoPath = repositoryManager.withLock(repositoryEntry.getUrl(), () -> {
             Repository repo = repositoryManager.fetch(projectId, repositoryEntry);
             Path refreshRepoPath = IOUtils.createTempDir("refreshRepo_");
             IOUtils.copy(repo.path(), refreshRepoPath);
+            commitId[0] = repo.fetchedCommitId();
             return refreshRepoPath;
         });
 
         try {
             tx(tx -> {
                 for (RepositoryRefreshListener l : listeners) {
-                    l.onRefresh(tx, repositoryEntry, repoPath);
+                    l.onRefresh(tx, repositoryEntry, repoPath, commitId[0]);
                 }
             });
         } catch (Exception e) {
@@ -20,11 +20,11 @@ package com.walmartlabs.concord.server.repository.listeners;
  * =====
  */
 
-import com.walmartlabs.concord.process.loader.ProjectLoader;
 import com.walmartlabs.concord.process.loader.model.ProcessDefinition;
 import com.walmartlabs.concord.server.org.project.RepositoryDao;
 import com.walmartlabs.concord.server.org.project.RepositoryEntry;
 import com.walmartlabs.concord.server.process.ImportsNormalizerFactory;
+import com.walmartlabs.concord.server.process.ProcessDefinitionCache;
 import org.jooq.DSLContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,22 +41,22 @@ public class ProcessDefinitionRefreshListener implements RepositoryRefreshListen
     private static final Logger log = LoggerFactory.getLogger(ProcessDefinitionRefreshListener.class);
 
     private final RepositoryDao repositoryDao;
-    private final ProjectLoader projectLoader;
+    private final ProcessDefinitionCache processDefinitionCache;
     private final ImportsNormalizerFactory importsNormalizer;
 
     @Inject
     public ProcessDefinitionRefreshListener(RepositoryDao repositoryDao,
-                                            ProjectLoader projectLoader,
+                                            ProcessDefinitionCache processDefinitionCache,
                                             ImportsNormalizerFactory importsNormalizer) {
 
         this.repositoryDao = repositoryDao;
-        this.projectLoader = projectLoader;
+        this.processDefinitionCache = processDefinitionCache;
         this.importsNormalizer = importsNormalizer;
     }
 
     @Override
-    public void onRefresh(DSLContext ctx, RepositoryEntry repo, Path repoPath) throws Exception {
-        ProcessDefinition pd = projectLoader.loadProject(repoPath, importsNormalizer.forProject(repo.getProjectId()))
+    public void onRefresh(DSLContext ctx, RepositoryEntry repo, Path repoPath, String commitId) throws Exception {
+        ProcessDefinition pd = processDefinitionCache.loadProject(repo.getId(), commitId, repo.getPath(), repoPath, importsNormalizer.forProject(repo.getProjectId()))
                 .projectDefinition();
 
         Set<String> pf = pd.publicFlows();
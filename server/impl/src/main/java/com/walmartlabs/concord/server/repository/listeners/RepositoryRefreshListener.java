@@ -27,5 +27,10 @@ import java.nio.file.Path;
 
 public interface RepositoryRefreshListener {
 
-    void onRefresh(DSLContext ctx, RepositoryEntry repo, Path repoPath) throws Exception;
+    /**
+     * @param repoPath a copy of the repository's files
+     * @param commitId the fetched commit ID, can be {@code null} if the repository
+     *                 provider doesn't support commit IDs
+     */
+    void onRefresh(DSLContext ctx, RepositoryEntry repo, Path repoPath, String commitId) throws Exception;
 }
@@ -26,6 +26,7 @@ import com.walmartlabs.concord.server.org.project.ProjectValidator;
 import com.walmartlabs.concord.server.org.project.RepositoryEntry;
 import com.walmartlabs.concord.server.org.triggers.TriggerManager;
 import com.walmartlabs.concord.server.process.ImportsNormalizerFactory;
+import com.walmartlabs.concord.server.process.ProcessDefinitionCache;
 import org.jooq.DSLContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,24 +42,24 @@ public class TriggerRefreshListener implements RepositoryRefreshListener {
     private static final Logger log = LoggerFactory.getLogger(TriggerRefreshListener.class);
 
     private final TriggerManager triggerManager;
-    private final ProjectLoader projectLoader;
+    private final ProcessDefinitionCache processDefinitionCache;
     private final ImportsNormalizerFactory importsNormalizer;
 
     @Inject
     public TriggerRefreshListener(TriggerManager triggerManager,
-                                  ProjectLoader projectLoader,
+                                  ProcessDefinitionCache processDefinitionCache,
                                   ImportsNormalizerFactory importsNormalizer) {
 
         this.triggerManager = triggerManager;
-        this.projectLoader = projectLoader;
+        this.processDefinitionCache = processDefinitionCache;
         this.importsNormalizer = importsNormalizer;
     }
 
     @Override
-    public void onRefresh(DSLContext ctx, RepositoryEntry repo, Path repoPath) throws Exception {
+    public void onRefresh(DSLContext ctx, RepositoryEntry repo, Path repoPath, String commitId) throws Exception {
         log.info("refresh ['{}'] ->  triggers", repo.getId());
 
-        ProjectLoader.Result result = projectLoader.loadProject(repoPath, importsNormalizer.forProject(repo.getProjectId()));
+        ProjectLoader.Result result = processDefinitionCache.loadProject(repo.getId(), commitId, repo.getPath(), repoPath, importsNormalizer.forProject(repo.getProjectId()));
 
         ProcessDefinition pd = result.projectDefinition();
         ProjectValidator.Result validationResult = ProjectValidator.validate(pd);
@@ -28,6 +28,7 @@ import com.walmartlabs.concord.server.audit.AuditLog;
 import com.walmartlabs.concord.server.audit.AuditObject;
 import com.walmartlabs.concord.server.sdk.ConcordApplicationException;
 import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
+import com.walmartlabs.concord.server.security.AuthenticationCache;
 import com.walmartlabs.concord.server.security.Roles;
 import com.walmartlabs.concord.server.user.RoleEntry;
 import io.swagger.annotations.Api;
@@ -56,11 +57,13 @@ public class RoleResource implements Resource {
 
     private final RoleDao roleDao;
     private final AuditLog auditLog;
+    private final AuthenticationCache authCache;
 
     @Inject
-    public RoleResource(RoleDao roleDao, AuditLog auditLog) {
+    public RoleResource(RoleDao roleDao, AuditLog auditLog, AuthenticationCache authCache) {
         this.roleDao = roleDao;
         this.auditLog = auditLog;
+        this.authCache = authCache;
     }
 
     @GET
@@ -113,6 +116,7 @@ public class RoleResource implements Resource {
             return new RoleOperationResponse(id, OperationResult.CREATED);
         } else {
             roleDao.update(id, entry.getName(), entry.getPermissions());
+            authCache.invalidateUsers();
 
             auditLog.add(AuditObject.ROLE, AuditAction.UPDATE)
                     .field("roleId", id)
@@ -137,6 +141,7 @@ public class RoleResource implements Resource {
         }
 
         roleDao.delete(id);
+        authCache.invalidateUsers();
 
         auditLog.add(AuditObject.ROLE, AuditAction.DELETE)
                 .field("roleId", id)
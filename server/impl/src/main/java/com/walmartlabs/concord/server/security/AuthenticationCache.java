@@ -0,0 +1,169 @@
+package com.walmartlabs.concord.server.security;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.walmartlabs.concord.server.cfg.AuthCacheConfiguration;
+import com.walmartlabs.concord.server.security.apikey.ApiKeyEntry;
+import com.walmartlabs.concord.server.user.UserEntry;
+import org.apache.shiro.subject.PrincipalCollection;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Short-lived cache of the data required to authenticate API keys and session keys.
+ * <p>
+ * The entries are invalidated explicitly when API keys, users or roles are
+ * modified on this node. Changes made on other nodes become visible after
+ * {@code authCache.ttl}. Unknown API keys are not cached, new keys can be used
+ * immediately on all nodes.
+ */
+@Named
+@Singleton
+public class AuthenticationCache {
+
+    private final boolean enabled;
+
+    /**
+     * API keys by the SHA-256 hash of the key's value.
+     */
+    private final Cache<String, Optional<ApiKeyEntry>> apiKeys;
+
+    private final Cache<UUID, Optional<UserEntry>> users;
+
+    /**
+     * Principals of running processes by the process' instance ID.
+     * The principals are stored in the process state and don't change
+     * after the process starts.
+     */
+    private final Cache<UUID, Optional<PrincipalCollection>> processPrincipals;
+
+    @Inject
+    public AuthenticationCache(AuthCacheConfiguration cfg, MetricRegistry metricRegistry) {
+        this.enabled = cfg.getTtl() > 0;
+        this.apiKeys = build(cfg);
+        this.users = build(cfg);
+        this.processPrincipals = build(cfg);
+
+        register(metricRegistry, "auth-cache-api-keys-hit-ratio", apiKeys);
+        register(metricRegistry, "auth-cache-users-hit-ratio", users);
+        register(metricRegistry, "auth-cache-process-principals-hit-ratio", processPrincipals);
+    }
+
+    public ApiKeyEntry getApiKey(String key, Supplier<ApiKeyEntry> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        String hash = Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString();
+        ApiKeyEntry e = get(apiKeys, hash, () -> Optional.ofNullable(loader.get())).orElse(null);
+        if (e == null) {
+            // don't remember unknown keys, they can be created on any node at any moment
+            apiKeys.invalidate(hash);
+            return null;
+        }
+
+        if (isExpired(e)) {
+            apiKeys.invalidate(hash);
+            return null;
+        }
+        return e;
+    }
+
+    public UserEntry getUser(UUID userId, Supplier<UserEntry> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        return get(users, userId, () -> Optional.ofNullable(loader.get())).orElse(null);
+    }
+
+    public PrincipalCollection getProcessPrincipals(UUID instanceId, Supplier<PrincipalCollection> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        return get(processPrincipals, instanceId, () -> Optional.ofNullable(loader.get())).orElse(null);
+    }
+
+    public void invalidateApiKey(UUID keyId) {
+        apiKeys.asMap().values().removeIf(v -> v.isPresent() && v.get().getId().equals(keyId));
+    }
+
+    public void invalidateUser(UUID userId) {
+        users.invalidate(userId);
+        apiKeys.asMap().values().removeIf(v -> v.isPresent() && v.get().getUserId().equals(userId));
+    }
+
+    /**
+     * Invalidates all cached users, e.g. when a role or a team is modified.
+     */
+    public void invalidateUsers() {
+        users.invalidateAll();
+    }
+
+    private static boolean isExpired(ApiKeyEntry e) {
+        Date expiredAt = e.getExpiredAt();
+        return expiredAt != null && expiredAt.getTime() <= System.currentTimeMillis();
+    }
+
+    private static <K, V> Cache<K, V> build(AuthCacheConfiguration cfg) {
+        return CacheBuilder.newBuilder()
+                .expireAfterWrite(Math.max(cfg.getTtl(), 0), TimeUnit.MILLISECONDS)
+                .maximumSize(cfg.getMaxSize())
+                .concurrencyLevel(32)
+                .recordStats()
+                .build();
+    }
+
+    private static <K, V> V get(Cache<K, V> cache, K key, Supplier<V> loader) {
+        try {
+            return cache.get(key, loader::get);
+        } catch (UncheckedExecutionException e) {
+            // rethrow the original exception, e.g. AuthenticationException
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static void register(MetricRegistry metricRegistry, String name, Cache<?, ?> cache) {
+        metricRegistry.register(name, (Gauge<Double>) () -> cache.stats().hitRate());
+    }
+}
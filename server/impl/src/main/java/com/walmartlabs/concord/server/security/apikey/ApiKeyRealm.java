@@ -24,6 +24,7 @@ import com.walmartlabs.concord.server.audit.AuditAction;
 import com.walmartlabs.concord.server.audit.AuditLog;
 import com.walmartlabs.concord.server.audit.AuditObject;
 import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
+import com.walmartlabs.concord.server.security.AuthenticationCache;
 import com.walmartlabs.concord.server.security.PrincipalUtils;
 import com.walmartlabs.concord.server.security.UserPrincipal;
 import com.walmartlabs.concord.server.user.UserEntry;
@@ -46,11 +47,13 @@ public class ApiKeyRealm extends AuthorizingRealm {
     private static final String REALM_NAME = "apikey";
 
     private final UserManager userManager;
+    private final AuthenticationCache authCache;
     private final AuditLog auditLog;
 
     @Inject
-    public ApiKeyRealm(UserManager userManager, AuditLog auditLog) {
+    public ApiKeyRealm(UserManager userManager, AuthenticationCache authCache, AuditLog auditLog) {
         this.userManager = userManager;
+        this.authCache = authCache;
         this.auditLog = auditLog;
     }
 
@@ -64,7 +67,7 @@ public class ApiKeyRealm extends AuthorizingRealm {
     protected AuthenticationInfo doGetAuthenticationInfo(AuthenticationToken token) throws AuthenticationException {
         ApiKey t = (ApiKey) token;
 
-        UserEntry u = userManager.get(t.getUserId()).orElse(null);
+        UserEntry u = authCache.getUser(t.getUserId(), () -> userManager.get(t.getUserId()).orElse(null));
         if (u == null) {
             return null;
         }
@@ -27,6 +27,7 @@ import com.walmartlabs.concord.server.process.queue.ProcessInitiatorEntry;
 import com.walmartlabs.concord.server.process.queue.ProcessQueueManager;
 import com.walmartlabs.concord.server.sdk.ProcessStatus;
 import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
+import com.walmartlabs.concord.server.security.AuthenticationCache;
 import org.apache.shiro.authc.AuthenticationException;
 import org.apache.shiro.authc.AuthenticationInfo;
 import org.apache.shiro.authc.AuthenticationToken;
@@ -52,6 +53,7 @@ public class SessionKeyRealm extends AuthorizingRealm {
 
     private final ProcessSecurityContext processSecurityContext;
     private final ProcessQueueManager processQueueManager;
+    private final AuthenticationCache authCache;
 
     private static final Set<ProcessStatus> FINISHED_STATUSES = ImmutableSet.of(
             ProcessStatus.FINISHED,
@@ -61,10 +63,12 @@ public class SessionKeyRealm extends AuthorizingRealm {
 
     @Inject
     public SessionKeyRealm(ProcessSecurityContext processSecurityContext,
-                           ProcessQueueManager processQueueManager) {
+                           ProcessQueueManager processQueueManager,
+                           AuthenticationCache authCache) {
 
         this.processSecurityContext = processSecurityContext;
         this.processQueueManager = processQueueManager;
+        this.authCache = authCache;
     }
 
     @Override
@@ -95,7 +99,8 @@ public class SessionKeyRealm extends AuthorizingRealm {
                 return null;
             }
 
-            PrincipalCollection principals = getPrincipals(processKey);
+            // the process status is always checked above, only the principals are cached
+            PrincipalCollection principals = authCache.getProcessPrincipals(t.getInstanceId(), () -> getPrincipals(processKey));
             return new SimpleAccount(principals, t.getInstanceId(), getName());
         } catch (Exception e) {
             log.error("doGetAuthenticationInfo ['{}'] -> error", t.getInstanceId(), e);
@@ -28,6 +28,7 @@ import com.walmartlabs.concord.server.org.team.TeamDao;
 import com.walmartlabs.concord.server.org.team.TeamManager;
 import com.walmartlabs.concord.server.org.team.TeamRole;
 import com.walmartlabs.concord.server.sdk.ConcordApplicationException;
+import com.walmartlabs.concord.server.security.AuthenticationCache;
 import com.walmartlabs.concord.server.security.UserPrincipal;
 
 import javax.inject.Inject;
@@ -42,13 +43,15 @@ public class UserManager {
     private final UserDao userDao;
     private final TeamDao teamDao;
     private final AuditLog auditLog;
+    private final AuthenticationCache authCache;
     private final Map<UserType, UserInfoProvider> userInfoProviders;
 
     @Inject
-    public UserManager(UserDao userDao, TeamDao teamDao, AuditLog auditLog, List<UserInfoProvider> providers) {
+    public UserManager(UserDao userDao, TeamDao teamDao, AuditLog auditLog, AuthenticationCache authCache, List<UserInfoProvider> providers) {
         this.userDao = userDao;
         this.teamDao = teamDao;
         this.auditLog = auditLog;
+        this.authCache = authCache;
 
         this.userInfoProviders = new HashMap<>();
         providers.forEach(p -> this.userInfoProviders.put(p.getUserType(), p));
@@ -108,6 +111,8 @@ public class UserManager {
             return Optional.empty();
         }
 
+        authCache.invalidateUser(userId);
+
         Map<String, Object> changes = DiffUtils.compare(prevEntry, newEntry);
         // some callers (e.g. the LDAP realm) update user records regardless of whether there was
         // any actual changes or not
@@ -175,6 +180,7 @@ public class UserManager {
         }
 
         userDao.enable(userId);
+        authCache.invalidateUser(userId);
 
         auditLog.add(AuditObject.USER, AuditAction.UPDATE)
                 .field("userId", userId)
@@ -191,6 +197,7 @@ public class UserManager {
         }
 
         userDao.disable(userId);
+        authCache.invalidateUser(userId);
 
         auditLog.add(AuditObject.USER, AuditAction.UPDATE)
                 .field("userId", userId)
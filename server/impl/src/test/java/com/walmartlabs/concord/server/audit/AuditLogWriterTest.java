@@ -0,0 +1,74 @@
+package com.walmartlabs.concord.server.audit;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.cfg.AuditConfiguration;
+import org.jooq.JSONB;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import static com.walmartlabs.concord.server.audit.AuditDao.PendingEntry;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+public class AuditLogWriterTest {
+
+    @Test
+    public void testOverflowAndFlush() {
+        AuditConfiguration cfg = mock(AuditConfiguration.class);
+        when(cfg.getQueueCapacity()).thenReturn(3);
+        when(cfg.getFlushBatchSize()).thenReturn(2);
+
+        AuditDao auditDao = mock(AuditDao.class);
+        Counter overflows = new Counter();
+
+        AuditLogWriter writer = new AuditLogWriter(cfg, auditDao, new MetricRegistry(), overflows);
+
+        assertTrue(writer.offer(entry()));
+        assertTrue(writer.offer(entry()));
+        assertTrue(writer.offer(entry()));
+        assertFalse(writer.offer(entry()));
+        assertEquals(1, overflows.getCount());
+
+        writer.flush();
+        verify(auditDao, times(1)).insert(argThat((List<PendingEntry> l) -> l.size() == 2));
+        verify(auditDao, times(1)).insert(argThat((List<PendingEntry> l) -> l.size() == 1));
+
+        // nothing new to write
+        writer.flush();
+        verify(auditDao, times(2)).insert(anyList());
+    }
+
+    private static PendingEntry entry() {
+        return ImmutablePendingEntry.builder()
+                .entryDate(new Timestamp(System.currentTimeMillis()))
+                .object(AuditObject.SYSTEM)
+                .action(AuditAction.ACCESS)
+                .details(JSONB.valueOf("{}"))
+                .build();
+    }
+}
@@ -0,0 +1,325 @@
+package com.walmartlabs.concord.server.boot.filters;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.sdk.Constants;
+import com.walmartlabs.concord.server.cfg.QosConfiguration;
+import com.walmartlabs.concord.server.cfg.SecretStoreConfiguration;
+import com.walmartlabs.concord.server.org.project.ProjectDao;
+import com.walmartlabs.concord.server.org.project.ProjectEntry;
+import com.walmartlabs.concord.server.org.secret.SecretUtils;
+import com.walmartlabs.concord.server.process.PartialProcessKey;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class QoSFilterTest {
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final AtomicLong now = new AtomicLong(System.currentTimeMillis());
+    private final List<TestRequest> dispatched = new ArrayList<>();
+    private final List<String> executed = new ArrayList<>();
+
+    private QosConfiguration cfg;
+    private SecretStoreConfiguration secretCfg;
+    private ProcessQueueDao queueDao;
+    private ProjectDao projectDao;
+
+    @Before
+    public void setUp() {
+        cfg = new QosConfiguration();
+        cfg.maxRequests = 1;
+        cfg.maxWaitMs = 0;
+        cfg.suspendMs = 1000;
+
+        secretCfg = mock(SecretStoreConfiguration.class);
+        when(secretCfg.getServerPwd()).thenReturn("pwd".getBytes());
+        when(secretCfg.getSecretStoreSalt()).thenReturn("saltsaltsaltsalt".getBytes());
+
+        queueDao = mock(ProcessQueueDao.class);
+        projectDao = mock(ProjectDao.class);
+    }
+
+    @Test
+    public void testWeightedResumeOrder() throws Exception {
+        Map<String, Object> weights = new HashMap<>();
+        weights.put("user:a", 2);
+        weights.put("user:b", 1);
+        cfg.tenantWeights = weights;
+
+        QoSFilter filter = filter();
+
+        // the first request holds the only slot while the others arrive
+        TestRequest holder = request("x", () -> {
+            for (int i = 0; i < 3; i++) {
+                assertFalse(request("a").run(filter));
+            }
+            for (int i = 0; i < 3; i++) {
+                assertFalse(request("b").run(filter));
+            }
+        });
+        assertTrue(holder.run(filter));
+
+        drain(filter);
+
+        // deficit round-robin: "a" gets two turns for each turn of "b"
+        assertEquals(Arrays.asList("x", "a", "a", "b", "a", "b", "b"), executed);
+
+        // the resumed requests used the reserved slots, nothing is leaked
+        assertTrue(request("c").run(filter));
+    }
+
+    @Test
+    public void testResumedRequestDoesNotAcquireAgain() throws Exception {
+        QoSFilter filter = filter();
+
+        TestRequest waiting = request("a");
+        TestRequest holder = request("x", () -> assertFalse(waiting.run(filter)));
+        assertTrue(holder.run(filter));
+
+        // the slot was reserved for the waiting request when the holder finished
+        assertEquals(Collections.singletonList(waiting), dispatched);
+
+        // any new request must wait, the slot is taken by the resumed one
+        assertFalse(request("b").run(filter));
+
+        dispatched.remove(waiting);
+        waiting.run(filter);
+        assertEquals(Arrays.asList("x", "a"), executed);
+        verify(waiting.resp, never()).sendError(anyInt());
+
+        // "b" got the slot after "a"
+        drain(filter);
+        assertEquals(Arrays.asList("x", "a", "b"), executed);
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        QoSFilter filter = filter();
+
+        TestRequest timedOut = request("a");
+        TestRequest resumed = request("b");
+        TestRequest holder = request("x", () -> {
+            assertFalse(timedOut.run(filter));
+            assertFalse(resumed.run(filter));
+
+            // the container times out the first request while the slot is taken
+            timedOut.timeout();
+            assertEquals(Collections.singletonList(timedOut), dispatched);
+        });
+        assertTrue(holder.run(filter));
+
+        // the timed out request is re-dispatched once and rejected
+        dispatched.remove(timedOut);
+        timedOut.run(filter);
+        verify(timedOut.resp, times(1)).sendError(TOO_MANY_REQUESTS);
+
+        // the other request gets the slot released by the holder
+        assertEquals(Collections.singletonList(resumed), dispatched);
+
+        // a late timeout of an already resumed request doesn't dispatch it again
+        resumed.timeout();
+        assertEquals(Collections.singletonList(resumed), dispatched);
+        verify(resumed.ctx, times(1)).dispatch();
+
+        drain(filter);
+        assertEquals(Arrays.asList("x", "b"), executed);
+        verify(timedOut.ctx, times(1)).dispatch();
+    }
+
+    @Test
+    public void testTenantLimit() throws Exception {
+        cfg.maxRequests = 10;
+        cfg.tenantMaxRequests = 1;
+
+        QoSFilter filter = filter();
+
+        TestRequest second = request("a");
+        TestRequest first = request("a", () -> {
+            // the tenant's limit is reached, the other tenants are not affected
+            assertFalse(second.run(filter));
+            assertTrue(request("b").run(filter));
+            assertTrue(dispatched.isEmpty());
+        });
+        assertTrue(first.run(filter));
+
+        assertEquals(Collections.singletonList(second), dispatched);
+        drain(filter);
+        assertEquals(Arrays.asList("a", "b", "a"), executed);
+    }
+
+    @Test
+    public void testIdleTenantsEviction() throws Exception {
+        QoSFilter filter = filter();
+
+        assertTrue(request("idle").run(filter));
+
+        TestRequest waiting = request("waiting");
+        TestRequest active = request("active", () -> {
+            assertFalse(waiting.run(filter));
+
+            // the tenants with active or waiting requests are kept no matter how old they are
+            now.addAndGet(TimeUnit.MINUTES.toMillis(11));
+            assertFalse(request("new").run(filter));
+
+            Set<String> keys = filter.getTenantKeys();
+            assertFalse(keys.contains("user:idle"));
+            assertTrue(keys.contains("user:active"));
+            assertTrue(keys.contains("user:waiting"));
+            assertTrue(keys.contains("user:new"));
+        });
+        assertTrue(active.run(filter));
+
+        drain(filter);
+        assertEquals(Arrays.asList("idle", "active", "waiting", "new"), executed);
+    }
+
+    @Test
+    public void testSessionToken() throws Exception {
+        cfg.maxRequests = 10;
+
+        UUID instanceId = UUID.randomUUID();
+        UUID projectId = UUID.randomUUID();
+
+        when(queueDao.getProjectIdAndInitiator(any(PartialProcessKey.class)))
+                .thenReturn(new ProcessQueueDao.ProjectIdAndInitiator(projectId, UUID.randomUUID()));
+
+        ProjectEntry project = mock(ProjectEntry.class);
+        when(project.getOrgName()).thenReturn("Default");
+        when(project.getName()).thenReturn("myProject");
+        when(projectDao.get(projectId)).thenReturn(project);
+
+        QoSFilter filter = filter();
+
+        String token = Base64.getEncoder().encodeToString(SecretUtils.encrypt(instanceId.toString().getBytes(),
+                secretCfg.getServerPwd(), secretCfg.getSecretStoreSalt()));
+
+        for (int i = 0; i < 2; i++) {
+            TestRequest r = request("ignored");
+            when(r.req.getHeader(Constants.Headers.SESSION_TOKEN)).thenReturn(token);
+            assertTrue(r.run(filter));
+        }
+
+        // invalid tokens fall back to the other tenant keys
+        TestRequest invalid = request("someone");
+        when(invalid.req.getHeader(Constants.Headers.SESSION_TOKEN)).thenReturn("garbage");
+        assertTrue(invalid.run(filter));
+
+        assertEquals(new HashSet<>(Arrays.asList("project:Default/myProject", "user:someone")), filter.getTenantKeys());
+
+        // the process' tenant is resolved once
+        verify(queueDao, times(1)).getProjectIdAndInitiator(any(PartialProcessKey.class));
+    }
+
+    private QoSFilter filter() {
+        return new QoSFilter(cfg, secretCfg, queueDao, projectDao, new MetricRegistry(), now::get);
+    }
+
+    private void drain(QoSFilter filter) throws Exception {
+        while (!dispatched.isEmpty()) {
+            dispatched.remove(0).run(filter);
+        }
+    }
+
+    private TestRequest request(String user) {
+        return request(user, () -> {
+        });
+    }
+
+    private TestRequest request(String user, Body body) {
+        return new TestRequest(user, body);
+    }
+
+    private interface Body {
+
+        void run() throws Exception;
+    }
+
+    private class TestRequest {
+
+        private final String user;
+        private final Body body;
+        private final Map<String, Object> attributes = new HashMap<>();
+
+        private final HttpServletRequest req = mock(HttpServletRequest.class);
+        private final HttpServletResponse resp = mock(HttpServletResponse.class);
+        private final AsyncContext ctx = mock(AsyncContext.class);
+        private final List<AsyncListener> listeners = new ArrayList<>();
+
+        private TestRequest(String user, Body body) {
+            this.user = user;
+            this.body = body;
+
+            when(req.getRequestURI()).thenReturn("/api/v1/process");
+            when(req.getMethod()).thenReturn("POST");
+            when(req.getUserPrincipal()).thenReturn(() -> user);
+            when(req.getAttribute(anyString())).thenAnswer(inv -> attributes.get(inv.<String>getArgument(0)));
+            doAnswer(inv -> attributes.put(inv.getArgument(0), inv.getArgument(1))).when(req).setAttribute(anyString(), any());
+            when(req.startAsync()).thenReturn(ctx);
+
+            when(ctx.getRequest()).thenReturn(req);
+            doAnswer(inv -> listeners.add(inv.getArgument(0))).when(ctx).addListener(any(AsyncListener.class));
+            doAnswer(inv -> dispatched.add(this)).when(ctx).dispatch();
+        }
+
+        /**
+         * @return {@code true} if the request was executed, {@code false} if it was suspended or rejected
+         */
+        private boolean run(QoSFilter filter) throws Exception {
+            int n = executed.size();
+
+            FilterChain chain = (request, response) -> {
+                executed.add(user);
+                try {
+                    body.run();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            };
+            filter.doFilter(req, resp, chain);
+
+            return executed.size() > n && executed.get(n).equals(user);
+        }
+
+        private void timeout() throws Exception {
+            for (AsyncListener l : listeners) {
+                l.onTimeout(new AsyncEvent(ctx));
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.walmartlabs.concord.server.process;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.AbstractDaoTest;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.process.ProcessCleaner.BatchResult;
+import com.walmartlabs.concord.server.process.ProcessCleaner.CleanerDao;
+import com.walmartlabs.concord.server.process.ProcessCleaner.Partition;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.jooq.Field;
+import org.jooq.Table;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static com.walmartlabs.concord.server.jooq.tables.ProcessEvents.PROCESS_EVENTS;
+import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QUEUE;
+import static org.jooq.impl.DSL.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Ignore("requires a local DB instance")
+public class ProcessCleanerTest extends AbstractDaoTest {
+
+    private static final String PARTITIONED_TABLE = "test_cleaner_data";
+
+    private static final Timestamp CUTOFF = ts("2000-06-01");
+
+    private final List<UUID> instanceIds = new ArrayList<>();
+
+    private CleanerDao dao;
+
+    @Before
+    public void setUp() {
+        dao = new CleanerDao(getConfiguration());
+    }
+
+    @After
+    public void tearDown() {
+        tx(tx -> {
+            tx.deleteFrom(PROCESS_EVENTS).where(PROCESS_EVENTS.INSTANCE_ID.in(instanceIds)).execute();
+            tx.deleteFrom(PROCESS_QUEUE).where(PROCESS_QUEUE.INSTANCE_ID.in(instanceIds)).execute();
+            tx.dropTableIfExists(name(PARTITIONED_TABLE)).execute();
+        });
+    }
+
+    @Test
+    public void testBatches() {
+        ProcessKey p1 = process("2000-01-01", "2000-01-10", ProcessStatus.FINISHED);
+        ProcessKey p2 = process("2000-01-02", "2000-01-10", ProcessStatus.FAILED);
+        process("2000-01-03", "2000-01-10", ProcessStatus.RUNNING);
+        ProcessKey p4 = process("2000-01-04", "2000-01-10", ProcessStatus.FINISHED);
+        ProcessKey p5 = process("2000-01-05", "2000-01-10", ProcessStatus.CANCELLED);
+        process("2000-01-06", "2000-07-01", ProcessStatus.FINISHED);
+
+        List<ProcessKey> batch = dao.nextBatch(CUTOFF, null, 2);
+        assertEquals(Arrays.asList(p1, p2), batch);
+
+        // keyset pagination, skips the running and the recently updated processes
+        assertEquals(Arrays.asList(p4, p5), dao.nextBatch(CUTOFF, p2, 2));
+        assertTrue(dao.nextBatch(CUTOFF, p5, 2).isEmpty());
+
+        event(p1);
+        event(p2);
+
+        // p1 was restarted after the batch was selected
+        setStatus(p1, ProcessStatus.RESUMING);
+
+        BatchResult r = dao.deleteBatch(batch, CUTOFF, cfg());
+        assertEquals(1, r.processes);
+        assertEquals(2, r.rows);
+
+        assertEquals(Arrays.asList(p1.getInstanceId()), existingProcesses());
+        assertEquals(1, countEvents(p1.getInstanceId()));
+        assertEquals(0, countEvents(p2.getInstanceId()));
+    }
+
+    @Test
+    public void testDeleteOrphans() {
+        ProcessKey p = process("2000-01-01", "2000-01-10", ProcessStatus.FINISHED);
+        event(p);
+
+        List<UUID> orphans = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            UUID id = UUID.randomUUID();
+            instanceIds.add(id);
+            orphans.add(id);
+            event(new ProcessKey(id, ts("2000-01-01")));
+        }
+
+        int deleted = 0;
+        while (true) {
+            List<UUID> ids = dao.nextOrphans(PROCESS_EVENTS, PROCESS_EVENTS.INSTANCE_ID, 2);
+            assertTrue(ids.size() <= 2);
+            assertFalse(ids.contains(p.getInstanceId()));
+
+            if (ids.isEmpty()) {
+                break;
+            }
+
+            deleted += dao.deleteOrphans(PROCESS_EVENTS, PROCESS_EVENTS.INSTANCE_ID, ids);
+        }
+
+        assertTrue(deleted >= orphans.size());
+        for (UUID id : orphans) {
+            assertEquals(0, countEvents(id));
+        }
+        assertEquals(1, countEvents(p.getInstanceId()));
+    }
+
+    @Test
+    public void testRetentionHorizon() {
+        process("2000-01-01", "2000-01-02", ProcessStatus.FINISHED);
+        ProcessKey running = process("2000-02-01", "2000-02-01", ProcessStatus.RUNNING);
+        process("2000-03-01", "2000-03-02", ProcessStatus.FINISHED);
+
+        assertEquals(ts("2000-02-01"), dao.getRetentionHorizon(CUTOFF));
+
+        setStatus(running, ProcessStatus.FINISHED);
+        assertEquals(CUTOFF, dao.getRetentionHorizon(CUTOFF));
+    }
+
+    @Test
+    public void testDropPartitions() {
+        tx(tx -> {
+            tx.execute("create table " + PARTITIONED_TABLE + " (instance_id uuid, instance_created_at timestamp) partition by range (instance_created_at)");
+            tx.execute("create table " + PARTITIONED_TABLE + "_p1 partition of " + PARTITIONED_TABLE + " for values from ('2000-01-01') to ('2000-02-01')");
+            tx.execute("create table " + PARTITIONED_TABLE + "_p2 partition of " + PARTITIONED_TABLE + " for values from ('2000-02-01') to ('2000-03-01')");
+            tx.execute("create table " + PARTITIONED_TABLE + "_p3 partition of " + PARTITIONED_TABLE + " for values from ('2000-03-01') to ('2100-01-01')");
+        });
+
+        Table<?> table = table(name(PARTITIONED_TABLE));
+        Field<Timestamp> key = field(name("instance_created_at"), Timestamp.class);
+
+        List<Partition> partitions = dao.findExpiredPartitions(table, key, ts("2000-02-01"));
+        assertEquals(1, partitions.size());
+        assertEquals(PARTITIONED_TABLE + "_p1", partitions.get(0).name);
+        assertEquals(ts("2000-02-01"), partitions.get(0).upperBound);
+
+        partitions = dao.findExpiredPartitions(table, key, ts("2000-03-01"));
+        assertEquals(Arrays.asList(PARTITIONED_TABLE + "_p1", PARTITIONED_TABLE + "_p2"),
+                partitions.stream().map(p -> p.name).collect(Collectors.toList()));
+
+        // the horizon was computed before the process was resumed
+        process("2000-02-15", "2000-07-01", ProcessStatus.RESUMING);
+
+        assertTrue(dao.dropPartition(partitions.get(0), CUTOFF));
+        assertFalse(dao.dropPartition(partitions.get(1), CUTOFF));
+
+        assertEquals(Arrays.asList(PARTITIONED_TABLE + "_p2", PARTITIONED_TABLE + "_p3"), partitions());
+    }
+
+    private ProcessKey process(String createdAt, String lastUpdatedAt, ProcessStatus status) {
+        ProcessKey k = new ProcessKey(UUID.randomUUID(), ts(createdAt));
+        instanceIds.add(k.getInstanceId());
+
+        tx(tx -> tx.insertInto(PROCESS_QUEUE)
+                .set(PROCESS_QUEUE.INSTANCE_ID, k.getInstanceId())
+                .set(PROCESS_QUEUE.PROCESS_KIND, "DEFAULT")
+                .set(PROCESS_QUEUE.CREATED_AT, k.getCreatedAt())
+                .set(PROCESS_QUEUE.CURRENT_STATUS, status.toString())
+                .set(PROCESS_QUEUE.LAST_UPDATED_AT, ts(lastUpdatedAt))
+                .execute());
+
+        return k;
+    }
+
+    private void setStatus(ProcessKey k, ProcessStatus status) {
+        tx(tx -> tx.update(PROCESS_QUEUE)
+                .set(PROCESS_QUEUE.CURRENT_STATUS, status.toString())
+                .where(PROCESS_QUEUE.INSTANCE_ID.eq(k.getInstanceId()))
+                .execute());
+    }
+
+    private void event(ProcessKey k) {
+        tx(tx -> tx.insertInto(PROCESS_EVENTS)
+                .set(PROCESS_EVENTS.INSTANCE_ID, k.getInstanceId())
+                .set(PROCESS_EVENTS.INSTANCE_CREATED_AT, k.getCreatedAt())
+                .set(PROCESS_EVENTS.EVENT_TYPE, "TEST")
+                .set(PROCESS_EVENTS.EVENT_DATE, k.getCreatedAt())
+                .execute());
+    }
+
+    private int countEvents(UUID instanceId) {
+        return using(getConfiguration()).fetchCount(PROCESS_EVENTS, PROCESS_EVENTS.INSTANCE_ID.eq(instanceId));
+    }
+
+    private List<UUID> existingProcesses() {
+        return using(getConfiguration()).select(PROCESS_QUEUE.INSTANCE_ID)
+                .from(PROCESS_QUEUE)
+                .where(PROCESS_QUEUE.INSTANCE_ID.in(instanceIds))
+                .fetch(PROCESS_QUEUE.INSTANCE_ID);
+    }
+
+    private List<String> partitions() {
+        return using(getConfiguration()).resultQuery("select child.relname " +
+                "from pg_inherits " +
+                "join pg_class parent on pg_inherits.inhparent = parent.oid " +
+                "join pg_class child on pg_inherits.inhrelid = child.oid " +
+                "where parent.relname = ? " +
+                "order by child.relname", PARTITIONED_TABLE)
+                .fetch(0, String.class);
+    }
+
+    private static ProcessConfiguration cfg() {
+        ProcessConfiguration cfg = mock(ProcessConfiguration.class);
+        when(cfg.isQueueCleanup()).thenReturn(true);
+        when(cfg.isEventsCleanup()).thenReturn(true);
+        return cfg;
+    }
+
+    private static Timestamp ts(String date) {
+        return Timestamp.valueOf(date + " 00:00:00");
+    }
+}
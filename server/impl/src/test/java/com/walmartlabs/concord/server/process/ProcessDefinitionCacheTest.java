@@ -0,0 +1,117 @@
+package com.walmartlabs.concord.server.process;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.imports.Imports;
+import com.walmartlabs.concord.process.loader.ImportsNormalizer;
+import com.walmartlabs.concord.process.loader.ProjectLoader;
+import com.walmartlabs.concord.process.loader.model.ProcessDefinition;
+import com.walmartlabs.concord.server.cfg.ProcessDefinitionCacheConfiguration;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ProcessDefinitionCacheTest {
+
+    private static final ImportsNormalizer NORMALIZER = imports -> imports;
+
+    @Test
+    public void testCachedByCommitId() throws Exception {
+        ProcessDefinition pd = definition(Imports.builder().build());
+        ProjectLoader loader = loader(pd);
+
+        ProcessDefinitionCache cache = new ProcessDefinitionCache(cfg(60000), loader, new MetricRegistry());
+
+        UUID repoId = UUID.randomUUID();
+        Path workDir = Paths.get("/tmp/a");
+
+        assertSame(pd, cache.loadProject(repoId, "abc", "/", workDir, "concord-v2", NORMALIZER).projectDefinition());
+        assertSame(pd, cache.loadProject(repoId, "abc", "/", workDir, "concord-v2", NORMALIZER).projectDefinition());
+        verify(loader, times(1)).loadProject(any(), eq("concord-v2"), any());
+
+        // different commit
+        cache.loadProject(repoId, "def", "/", workDir, "concord-v2", NORMALIZER);
+        verify(loader, times(2)).loadProject(any(), eq("concord-v2"), any());
+
+        // unknown commit
+        cache.loadProject(repoId, null, "/", workDir, "concord-v2", NORMALIZER);
+        cache.loadProject(repoId, null, "/", workDir, "concord-v2", NORMALIZER);
+        verify(loader, times(4)).loadProject(any(), eq("concord-v2"), any());
+    }
+
+    @Test
+    public void testImportsAreNotCached() throws Exception {
+        ProcessDefinition pd = definition(mock(Imports.class));
+        ProjectLoader loader = loader(pd);
+
+        ProcessDefinitionCache cache = new ProcessDefinitionCache(cfg(60000), loader, new MetricRegistry());
+
+        UUID repoId = UUID.randomUUID();
+        cache.loadProject(repoId, "abc", "/", Paths.get("/tmp/a"), "concord-v2", NORMALIZER);
+        cache.loadProject(repoId, "abc", "/", Paths.get("/tmp/b"), "concord-v2", NORMALIZER);
+        verify(loader, times(2)).loadProject(any(), eq("concord-v2"), any());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        ProcessDefinition pd = definition(Imports.builder().build());
+        ProjectLoader loader = loader(pd);
+
+        ProcessDefinitionCache cache = new ProcessDefinitionCache(cfg(0), loader, new MetricRegistry());
+
+        UUID repoId = UUID.randomUUID();
+        cache.loadProject(repoId, "abc", "/", Paths.get("/tmp/a"), "concord-v2", NORMALIZER);
+        cache.loadProject(repoId, "abc", "/", Paths.get("/tmp/a"), "concord-v2", NORMALIZER);
+        verify(loader, times(2)).loadProject(any(), eq("concord-v2"), any());
+    }
+
+    private static ProcessDefinition definition(Imports imports) {
+        ProcessDefinition pd = mock(ProcessDefinition.class);
+        when(pd.imports()).thenReturn(imports);
+        return pd;
+    }
+
+    private static ProjectLoader loader(ProcessDefinition pd) throws Exception {
+        ProjectLoader.Result result = mock(ProjectLoader.Result.class);
+        when(result.snapshots()).thenReturn(Collections.emptyList());
+        when(result.projectDefinition()).thenReturn(pd);
+
+        ProjectLoader loader = mock(ProjectLoader.class);
+        when(loader.loadProject(any(), anyString(), any())).thenReturn(result);
+        return loader;
+    }
+
+    private static ProcessDefinitionCacheConfiguration cfg(long ttl) {
+        ProcessDefinitionCacheConfiguration cfg = mock(ProcessDefinitionCacheConfiguration.class);
+        when(cfg.getTtl()).thenReturn(ttl);
+        when(cfg.getMaxSize()).thenReturn(100L);
+        return cfg;
+    }
+}
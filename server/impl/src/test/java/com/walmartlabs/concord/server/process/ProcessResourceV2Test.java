@@ -0,0 +1,259 @@
+package com.walmartlabs.concord.server.process;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.org.OrganizationManager;
+import com.walmartlabs.concord.server.org.project.ProjectAccessManager;
+import com.walmartlabs.concord.server.org.project.ProjectDao;
+import com.walmartlabs.concord.server.org.project.RepositoryDao;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueManager;
+import com.walmartlabs.concord.server.process.queue.ProcessStatusWatchers;
+import com.walmartlabs.concord.server.process.queue.dispatcher.DispatcherSignal;
+import com.walmartlabs.concord.server.sdk.ConcordApplicationException;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import com.walmartlabs.concord.server.user.UserDao;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.Response;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ProcessResourceV2Test {
+
+    private ProcessQueueDao queueDao;
+    private ProcessStatusWatchers watchers;
+    private ProcessResourceV2 resource;
+
+    @Before
+    public void setUp() {
+        queueDao = mock(ProcessQueueDao.class);
+        when(queueDao.getProjectIds(anyCollection())).thenReturn(Collections.emptySet());
+
+        watchers = new ProcessStatusWatchers(new DispatcherSignal(null));
+
+        resource = new ProcessResourceV2(queueDao, mock(ProcessQueueManager.class), mock(ProjectDao.class),
+                mock(RepositoryDao.class), mock(UserDao.class), mock(OrganizationManager.class),
+                mock(ProjectAccessManager.class), watchers);
+    }
+
+    @Test(timeout = 10000)
+    public void testWaitAlreadyFinished() throws Exception {
+        UUID a = UUID.randomUUID();
+        statuses(ProcessStatusEntry.of(a, ProcessStatus.FINISHED));
+
+        TestAsyncResponse ar = new TestAsyncResponse();
+        resource.waitForCompletion(request(false, a), ar);
+
+        assertEquals(Collections.singletonList(ProcessStatusEntry.of(a, ProcessStatus.FINISHED)), ar.await());
+        assertTrue(ar.closed);
+    }
+
+    @Test(timeout = 10000)
+    public void testWaitAny() throws Exception {
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        statuses(ProcessStatusEntry.of(a, ProcessStatus.RUNNING), ProcessStatusEntry.of(b, ProcessStatus.RUNNING));
+
+        TestAsyncResponse ar = new TestAsyncResponse();
+        resource.waitForCompletion(request(false, a, b), ar);
+        assertFalse(ar.isDone());
+
+        // the request doesn't hold a thread, the check happens when signalled
+        statuses(ProcessStatusEntry.of(a, ProcessStatus.RUNNING), ProcessStatusEntry.of(b, ProcessStatus.FAILED));
+        watchers.onNotification("status:" + b + ":FAILED");
+
+        List<?> result = (List<?>) ar.await();
+        assertEquals(2, result.size());
+        assertTrue(result.contains(ProcessStatusEntry.of(b, ProcessStatus.FAILED)));
+    }
+
+    @Test(timeout = 10000)
+    public void testWaitAll() throws Exception {
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        statuses(ProcessStatusEntry.of(a, ProcessStatus.RUNNING), ProcessStatusEntry.of(b, ProcessStatus.RUNNING));
+
+        TestAsyncResponse ar = new TestAsyncResponse();
+        resource.waitForCompletion(request(true, a, b), ar);
+
+        statuses(ProcessStatusEntry.of(a, ProcessStatus.FINISHED), ProcessStatusEntry.of(b, ProcessStatus.RUNNING));
+        watchers.onNotification("status:" + a + ":FINISHED");
+        Thread.sleep(200);
+        assertFalse(ar.isDone());
+
+        statuses(ProcessStatusEntry.of(a, ProcessStatus.FINISHED), ProcessStatusEntry.of(b, ProcessStatus.CANCELLED));
+        watchers.onNotification("status:" + b + ":CANCELLED");
+        assertEquals(2, ((List<?>) ar.await()).size());
+    }
+
+    @Test(timeout = 10000)
+    public void testWaitTimeout() throws Exception {
+        UUID a = UUID.randomUUID();
+        statuses(ProcessStatusEntry.of(a, ProcessStatus.RUNNING));
+
+        TestAsyncResponse ar = new TestAsyncResponse();
+        resource.waitForCompletion(request(false, a), ar);
+        assertEquals(1L, ar.timeout);
+
+        ar.timeoutHandler.handleTimeout(ar);
+        assertEquals(Collections.singletonList(ProcessStatusEntry.of(a, ProcessStatus.RUNNING)), ar.await());
+
+        // late signals are ignored
+        watchers.onNotification("status:" + a + ":FINISHED");
+        Thread.sleep(200);
+        assertEquals(1, ar.resumed);
+    }
+
+    @Test(timeout = 10000)
+    public void testWaitNotFound() throws Exception {
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        statuses(ProcessStatusEntry.of(a, ProcessStatus.RUNNING));
+
+        TestAsyncResponse ar = new TestAsyncResponse();
+        resource.waitForCompletion(request(false, a, b), ar);
+
+        Object result = ar.await();
+        assertTrue(result instanceof ConcordApplicationException);
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), ((ConcordApplicationException) result).getResponse().getStatus());
+    }
+
+    private void statuses(ProcessStatusEntry... entries) {
+        when(queueDao.getStatuses(anyCollection())).thenReturn(Arrays.asList(entries));
+    }
+
+    private static ProcessWaitRequest request(boolean waitForAll, UUID... instanceIds) {
+        return ImmutableProcessWaitRequest.builder()
+                .instanceIds(Arrays.asList(instanceIds))
+                .waitForAll(waitForAll)
+                .timeout(1)
+                .build();
+    }
+
+    private static class TestAsyncResponse implements AsyncResponse {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final List<CompletionCallback> callbacks = new ArrayList<>();
+
+        private volatile Object result;
+        private volatile int resumed;
+        private volatile boolean closed;
+        private long timeout;
+        private TimeoutHandler timeoutHandler;
+
+        Object await() throws InterruptedException {
+            done.await();
+            return result;
+        }
+
+        @Override
+        public synchronized boolean resume(Object response) {
+            resumed++;
+            if (isDone()) {
+                return false;
+            }
+
+            result = response;
+            done.countDown();
+            callbacks.forEach(c -> c.onComplete(null));
+            closed = true;
+            return true;
+        }
+
+        @Override
+        public boolean resume(Throwable response) {
+            return resume((Object) response);
+        }
+
+        @Override
+        public boolean cancel() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean cancel(int retryAfter) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean cancel(Date retryAfter) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isSuspended() {
+            return !isDone();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        @Override
+        public boolean setTimeout(long time, TimeUnit unit) {
+            this.timeout = unit.toSeconds(time);
+            return true;
+        }
+
+        @Override
+        public void setTimeoutHandler(TimeoutHandler handler) {
+            this.timeoutHandler = handler;
+        }
+
+        @Override
+        public Collection<Class<?>> register(Class<?> callback) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<Class<?>, Collection<Class<?>>> register(Class<?> callback, Class<?>... callbacks) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Collection<Class<?>> register(Object callback) {
+            callbacks.add((CompletionCallback) callback);
+            return Collections.singletonList(CompletionCallback.class);
+        }
+
+        @Override
+        public Map<Class<?>, Collection<Class<?>>> register(Object callback, Object... callbacks) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
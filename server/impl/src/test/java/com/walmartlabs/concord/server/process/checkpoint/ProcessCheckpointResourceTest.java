@@ -0,0 +1,122 @@
+package com.walmartlabs.concord.server.process.checkpoint;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.process.ProcessEntry;
+import com.walmartlabs.concord.server.process.ProcessKey;
+import com.walmartlabs.concord.server.process.ProcessManager;
+import com.walmartlabs.concord.server.process.state.ProcessCheckpointManager;
+import org.jboss.resteasy.plugins.providers.multipart.InputPart;
+import org.jboss.resteasy.plugins.providers.multipart.MultipartInput;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.siesta.ValidationErrorsException;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.*;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ProcessCheckpointResourceTest {
+
+    private final UUID instanceId = UUID.randomUUID();
+    private final Date createdAt = new Date();
+
+    private ProcessCheckpointManager checkpointManager;
+    private ProcessCheckpointResource resource;
+
+    @Before
+    public void setUp() {
+        ProcessEntry entry = mock(ProcessEntry.class);
+        when(entry.instanceId()).thenReturn(instanceId);
+        when(entry.createdAt()).thenReturn(createdAt);
+
+        ProcessManager processManager = mock(ProcessManager.class);
+        when(processManager.assertProcess(instanceId)).thenReturn(entry);
+
+        checkpointManager = mock(ProcessCheckpointManager.class);
+        resource = new ProcessCheckpointResource(processManager, checkpointManager);
+    }
+
+    @Test
+    public void testUploadDelta() throws Exception {
+        UUID id = UUID.randomUUID();
+        UUID parentId = UUID.randomUUID();
+
+        resource.uploadDeltaCheckpoint(instanceId, input(
+                part("id", id.toString()),
+                part("name", "test"),
+                part("parentId", parentId.toString()),
+                part("deletedFiles", "_attachments/a\n_attachments/b"),
+                part("data", "...")));
+
+        verify(checkpointManager).importDeltaCheckpoint(eq(new ProcessKey(instanceId, new Timestamp(createdAt.getTime()))),
+                eq(id), eq("test"), eq(parentId), eq(Arrays.asList("_attachments/a", "_attachments/b")), any(Path.class));
+    }
+
+    @Test
+    public void testUploadDeltaWithoutDeletions() throws Exception {
+        UUID id = UUID.randomUUID();
+        UUID parentId = UUID.randomUUID();
+
+        resource.uploadDeltaCheckpoint(instanceId, input(
+                part("id", id.toString()),
+                part("name", "test"),
+                part("parentId", parentId.toString()),
+                part("deletedFiles", ""),
+                part("data", "...")));
+
+        verify(checkpointManager).importDeltaCheckpoint(any(), eq(id), eq("test"), eq(parentId), eq(Collections.emptyList()), any(Path.class));
+    }
+
+    @Test(expected = ValidationErrorsException.class)
+    public void testUploadDeltaWithoutParent() throws Exception {
+        resource.uploadDeltaCheckpoint(instanceId, input(
+                part("id", UUID.randomUUID().toString()),
+                part("name", "test"),
+                part("data", "...")));
+    }
+
+    private static MultipartInput input(InputPart... parts) {
+        MultipartInput input = mock(MultipartInput.class);
+        when(input.getParts()).thenReturn(Arrays.asList(parts));
+        return input;
+    }
+
+    private static InputPart part(String name, String value) throws Exception {
+        MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+        headers.putSingle(HttpHeaders.CONTENT_DISPOSITION, "form-data; name=\"" + name + "\"");
+
+        InputPart p = mock(InputPart.class);
+        when(p.getHeaders()).thenReturn(headers);
+        when(p.getBodyAsString()).thenReturn(value);
+        when(p.getBody(InputStream.class, null)).thenAnswer(i -> new ByteArrayInputStream(value.getBytes()));
+        return p;
+    }
+}
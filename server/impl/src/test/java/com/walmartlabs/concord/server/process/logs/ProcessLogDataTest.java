@@ -0,0 +1,78 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.LogRange;
+import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
+import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLogChunk;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ProcessLogDataTest {
+
+    @Test
+    public void testChunks() throws Exception {
+        ProcessLog log = new ProcessLog(15, Arrays.asList(
+                new ProcessLogChunk(5, "hello".getBytes()),
+                new ProcessLogChunk(10, "world".getBytes())));
+
+        ProcessLogData data = ProcessLogData.of(log);
+        assertEquals(Integer.valueOf(5), data.getStart());
+        assertEquals(Integer.valueOf(15), data.getEnd());
+        assertEquals(15, data.getSize());
+
+        assertEquals("helloworld", write(data, 5));
+        assertEquals("loworld", write(data, 8));
+        assertEquals("rld", write(data, 12));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        ProcessLogData data = ProcessLogData.of(new ProcessLog(10, Collections.emptyList()));
+        assertTrue(data.isEmpty());
+        assertEquals("", write(data, 0));
+
+        data = ProcessLogData.of(new LogRange(null, null, 10), (start, end) -> {
+            throw new IllegalStateException("shouldn't be called");
+        });
+        assertTrue(data.isEmpty());
+        assertEquals("", write(data, 0));
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        ProcessLogData data = ProcessLogData.of(new LogRange(0, 10, 10), (start, end) -> new ByteArrayInputStream("helloworld".getBytes()));
+        assertFalse(data.isEmpty());
+        assertEquals("world", write(data, 5));
+    }
+
+    private static String write(ProcessLogData data, int from) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        data.writeTo(out, from);
+        return out.toString();
+    }
+}
@@ -0,0 +1,107 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.process.queue.dispatcher.DispatcherSignal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessLogFollowersTest {
+
+    private ProcessLogFollowers followers;
+
+    @Before
+    public void setUp() {
+        followers = new ProcessLogFollowers(new DispatcherSignal(null));
+        followers.start();
+    }
+
+    @After
+    public void tearDown() {
+        followers.stop();
+    }
+
+    @Test(timeout = 10000)
+    public void testCoalescing() throws Exception {
+        UUID instanceId = UUID.randomUUID();
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Semaphore done = new Semaphore(0);
+        AtomicInteger calls = new AtomicInteger();
+
+        try (ProcessLogFollowers.Subscription s = followers.subscribe(instanceId, () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.release();
+        })) {
+            followers.onAppend(instanceId);
+            started.await();
+
+            // the listener is running, the signals received meanwhile must result in a single call
+            for (int i = 0; i < 100; i++) {
+                followers.onAppend(instanceId);
+            }
+            release.countDown();
+
+            assertTrue(done.tryAcquire(2, 5, TimeUnit.SECONDS));
+            assertEquals(2, calls.get());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testNotifications() throws Exception {
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+
+        Semaphore calls = new Semaphore(0);
+        try (ProcessLogFollowers.Subscription s = followers.subscribe(a, calls::release)) {
+            followers.onNotification("status:" + a + ":FINISHED");
+            followers.onNotification("log:" + b);
+            assertFalse(calls.tryAcquire(100, TimeUnit.MILLISECONDS));
+
+            followers.onNotification("log:" + b + "," + a);
+            assertTrue(calls.tryAcquire(5, TimeUnit.SECONDS));
+
+            followers.onConnect();
+            assertTrue(calls.tryAcquire(5, TimeUnit.SECONDS));
+        }
+
+        followers.onNotification("log:" + a);
+        assertFalse(calls.tryAcquire(100, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,182 @@
+package com.walmartlabs.concord.server.process.pipelines.processors;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Counter;
+import com.walmartlabs.concord.policyengine.PolicyEngine;
+import com.walmartlabs.concord.policyengine.PolicyEngineRules;
+import com.walmartlabs.concord.policyengine.WorkspaceRule;
+import com.walmartlabs.concord.server.process.Payload;
+import com.walmartlabs.concord.server.process.ProcessException;
+import com.walmartlabs.concord.server.process.ProcessKey;
+import com.walmartlabs.concord.server.process.logs.ProcessLogManager;
+import com.walmartlabs.concord.server.process.pipelines.processors.PayloadProcessor.Chain;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class WorkspaceArchiveProcessorTest {
+
+    private static final long MAX_SIZE = 100;
+
+    private WorkspaceArchiveProcessor p;
+    private Counter policyDeny;
+    private Path workspace;
+
+    @Before
+    public void init() throws Exception {
+        policyDeny = new Counter();
+        p = new WorkspaceArchiveProcessor(mock(ProcessLogManager.class), policyDeny);
+        workspace = Files.createTempDirectory("workspace").resolve("ws");
+        Files.createDirectories(workspace);
+    }
+
+    @Test
+    public void testUnpack() throws Exception {
+        Path archive = zip("a.txt", new byte[50], "b/c.txt", new byte[50]);
+
+        Chain chain = mock(Chain.class);
+        when(chain.process(any())).thenAnswer(i -> i.getArgument(0));
+
+        Payload result = p.process(chain, payload(archive));
+
+        assertEquals(50, Files.size(workspace.resolve("a.txt")));
+        assertEquals(50, Files.size(workspace.resolve("b/c.txt")));
+        assertFalse(Files.exists(archive));
+        assertNull(result.getAttachment(Payload.WORKSPACE_ARCHIVE));
+        assertEquals(0, policyDeny.getCount());
+    }
+
+    @Test
+    public void testDeclaredSize() throws Exception {
+        Path archive = zip("a.txt", new byte[1000]);
+
+        try {
+            p.process(mock(Chain.class), payload(archive));
+            fail("exception expected");
+        } catch (ProcessException e) {
+            assertEquals("Found workspace policy violations", e.getMessage());
+        }
+
+        // denied before unpacking
+        assertFalse(Files.exists(workspace.resolve("a.txt")));
+        assertEquals(1, policyDeny.getCount());
+    }
+
+    @Test
+    public void testForgedDeclaredSize() throws Exception {
+        Path archive = zip("a.txt", new byte[1000]);
+        forgeDeclaredSize(archive, 1);
+
+        try {
+            p.process(mock(Chain.class), payload(archive));
+            fail("exception expected");
+        } catch (ProcessException e) {
+            assertEquals("Found workspace policy violations", e.getMessage());
+        }
+
+        // the unpacking stops right after the limit is exceeded
+        assertEquals(MAX_SIZE + 1, Files.size(workspace.resolve("a.txt")));
+        assertEquals(1, policyDeny.getCount());
+    }
+
+    @Test
+    public void testActualSizeCutoff() throws Exception {
+        // each file fits into the limit, both don't
+        Path archive = zip("a.txt", new byte[60], "b.txt", new byte[60]);
+        forgeDeclaredSize(archive, 1);
+
+        try {
+            p.process(mock(Chain.class), payload(archive));
+            fail("exception expected");
+        } catch (ProcessException e) {
+            assertEquals("Found workspace policy violations", e.getMessage());
+        }
+
+        assertEquals(60, Files.size(workspace.resolve("a.txt")));
+        assertEquals(MAX_SIZE - 60 + 1, Files.size(workspace.resolve("b.txt")));
+        assertEquals(1, policyDeny.getCount());
+    }
+
+    @Test
+    public void testPathEscape() throws Exception {
+        Path archive = zip("a.txt", new byte[10], "../escape.txt", new byte[10]);
+
+        try {
+            p.process(mock(Chain.class), payload(archive));
+            fail("exception expected");
+        } catch (ProcessException e) {
+            assertTrue(e.getMessage().startsWith("Error while unpacking an archive"));
+        }
+
+        // nothing is unpacked
+        assertFalse(Files.exists(workspace.resolve("a.txt")));
+        assertFalse(Files.exists(workspace.getParent().resolve("escape.txt")));
+    }
+
+    private Payload payload(Path archive) {
+        WorkspaceRule rule = new WorkspaceRule("test", MAX_SIZE, null);
+        PolicyEngineRules rules = new PolicyEngineRules(null, null, null, rule, null, null, null, null, null, null, null, null, null);
+
+        return new Payload(new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis())))
+                .putHeader(Payload.WORKSPACE_DIR, workspace)
+                .putHeader(Payload.POLICY, new PolicyEngine(rules))
+                .putAttachment(Payload.WORKSPACE_ARCHIVE, archive);
+    }
+
+    private static Path zip(Object... nameAndData) throws Exception {
+        Path archive = Files.createTempFile("archive", ".zip");
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(archive.toFile())) {
+            for (int i = 0; i < nameAndData.length; i += 2) {
+                zip.putArchiveEntry(new ZipArchiveEntry((String) nameAndData[i]));
+                zip.write((byte[]) nameAndData[i + 1]);
+                zip.closeArchiveEntry();
+            }
+        }
+        return archive;
+    }
+
+    /**
+     * Overwrites the uncompressed sizes in the archive's central directory.
+     */
+    private static void forgeDeclaredSize(Path archive, int size) throws Exception {
+        ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(archive)).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < b.limit() - 4; i++) {
+            // central directory file header signature
+            if (b.getInt(i) == 0x02014b50) {
+                b.putInt(i + 24, size);
+            }
+        }
+        Files.write(archive, b.array());
+    }
+}
@@ -0,0 +1,44 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.junit.Test;
+
+import static com.walmartlabs.concord.server.process.queue.EnqueuedBatchTask.nextBatchSize;
+import static org.junit.Assert.assertEquals;
+
+public class EnqueuedBatchTaskTest {
+
+    @Test
+    public void testNextBatchSize() {
+        // backlog: grow up to the max
+        assertEquals(100, nextBatchSize(50, 50, 50, 200));
+        assertEquals(200, nextBatchSize(100, 100, 50, 200));
+        assertEquals(200, nextBatchSize(200, 200, 50, 200));
+
+        // no backlog: back to the initial size
+        assertEquals(50, nextBatchSize(200, 10, 50, 200));
+        assertEquals(50, nextBatchSize(50, 0, 50, 200));
+
+        // max is lower than min
+        assertEquals(50, nextBatchSize(50, 50, 50, 10));
+    }
+}
@@ -0,0 +1,66 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.process.ProcessKey;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+public class ProcessHeartbeatsTest {
+
+    @Test
+    public void testFlush() {
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        UUID unknown = UUID.randomUUID();
+
+        ProcessKeyCache keyCache = mock(ProcessKeyCache.class);
+        when(keyCache.get(a)).thenReturn(new ProcessKey(a, new Timestamp(System.currentTimeMillis())));
+        when(keyCache.get(b)).thenReturn(new ProcessKey(b, new Timestamp(System.currentTimeMillis())));
+
+        ProcessQueueDao queueDao = mock(ProcessQueueDao.class);
+
+        ProcessHeartbeats heartbeats = new ProcessHeartbeats(mock(ProcessConfiguration.class), queueDao, keyCache);
+
+        assertTrue(heartbeats.onHeartbeat(a));
+        assertTrue(heartbeats.onHeartbeat(b));
+        assertTrue(heartbeats.onHeartbeat(a));
+        assertFalse(heartbeats.onHeartbeat(unknown));
+
+        heartbeats.flush();
+        verify(queueDao, times(1)).touch(argThat((Collection<UUID> ids) -> new HashSet<>(ids).equals(new HashSet<>(Arrays.asList(a, b)))));
+
+        // nothing new to flush
+        heartbeats.flush();
+        verify(queueDao, times(1)).touch(anyCollection());
+    }
+}
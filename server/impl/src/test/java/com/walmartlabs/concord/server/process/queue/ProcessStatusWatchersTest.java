@@ -0,0 +1,60 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.process.queue.dispatcher.DispatcherSignal;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessStatusWatchersTest {
+
+    @Test(timeout = 10000)
+    public void testNotifications() throws Exception {
+        ProcessStatusWatchers watchers = new ProcessStatusWatchers(new DispatcherSignal(null));
+
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+
+        Semaphore calls = new Semaphore(0);
+        try (ProcessStatusWatchers.Subscription s = watchers.subscribe(Arrays.asList(a, b), calls::release)) {
+            watchers.onNotification("status:" + UUID.randomUUID() + ":FINISHED");
+            watchers.onNotification("started:" + a + ":::");
+            assertFalse(calls.tryAcquire(100, TimeUnit.MILLISECONDS));
+
+            watchers.onNotification("status:" + b + ":FAILED");
+            assertTrue(calls.tryAcquire(5, TimeUnit.SECONDS));
+            assertFalse(calls.tryAcquire(100, TimeUnit.MILLISECONDS));
+
+            watchers.onConnect();
+            assertTrue(calls.tryAcquire(5, TimeUnit.SECONDS));
+        }
+
+        watchers.onNotification("status:" + a + ":FINISHED");
+        assertFalse(calls.tryAcquire(100, TimeUnit.MILLISECONDS));
+    }
+}
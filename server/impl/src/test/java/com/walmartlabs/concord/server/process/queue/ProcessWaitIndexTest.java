@@ -0,0 +1,143 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.jooq.enums.ProcessLockScope;
+import com.walmartlabs.concord.server.process.queue.dispatcher.DispatcherSignal;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessWaitIndexTest {
+
+    @Test
+    public void testWakeUps() {
+        ProcessWaitIndex index = new ProcessWaitIndex(new DispatcherSignal(null));
+        assertTrue(index.isStale());
+        index.reset();
+        assertFalse(index.isStale());
+
+        UUID orgId = UUID.randomUUID();
+        UUID projectId = UUID.randomUUID();
+
+        UUID child = UUID.randomUUID();
+        UUID parent = UUID.randomUUID();
+        index.put(parent, ProcessCompletionCondition.builder()
+                .processes(Collections.singleton(child))
+                .build());
+
+        UUID lockHolder = UUID.randomUUID();
+        UUID lockWaiter = UUID.randomUUID();
+        index.put(lockWaiter, ProcessLockCondition.builder()
+                .instanceId(lockHolder)
+                .orgId(orgId)
+                .projectId(projectId)
+                .scope(ProcessLockScope.PROJECT)
+                .name("my:lock")
+                .build());
+
+        UUID sleeper = UUID.randomUUID();
+        index.put(sleeper, ProcessSleepCondition.builder()
+                .resumeEvent("ev")
+                .until(new Date(1000))
+                .build());
+
+        // unrelated changes
+        index.onNotification("status:" + UUID.randomUUID() + ":FINISHED");
+        index.onNotification("lock:PROJECT:" + UUID.randomUUID() + ":my:lock");
+        assertTrue(index.poll(0).isEmpty());
+
+        index.onNotification("status:" + child + ":FINISHED");
+        assertEquals(Collections.singleton(parent), index.poll(0));
+
+        index.onNotification("lock:PROJECT:" + projectId + ":my:lock");
+        assertEquals(Collections.singleton(lockWaiter), index.poll(0));
+
+        assertEquals(Collections.singleton(sleeper), index.poll(1000));
+
+        // removed processes are not woken up
+        index.remove(parent);
+        index.onNotification("status:" + child + ":FINISHED");
+        assertTrue(index.poll(0).isEmpty());
+
+        UUID newWaiter = UUID.randomUUID();
+        index.onNotification("wait:" + newWaiter);
+        assertEquals(Collections.singleton(newWaiter), index.poll(0));
+
+        index.onConnect();
+        assertTrue(index.isStale());
+    }
+
+    @Test
+    public void testChangesWhileChecking() {
+        ProcessWaitIndex index = new ProcessWaitIndex(new DispatcherSignal(null));
+        index.reset();
+
+        UUID orgId = UUID.randomUUID();
+        UUID projectId = UUID.randomUUID();
+
+        UUID child = UUID.randomUUID();
+        UUID parent = UUID.randomUUID();
+        UUID lockWaiter = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+
+        index.beginCheck();
+
+        // the changes are made after the watchdog read the waiting processes
+        // but before it added them to the index
+        index.onNotification("status:" + child + ":FINISHED");
+        index.onNotification("lock:PROJECT:" + projectId + ":my:lock");
+        assertTrue(index.poll(0).isEmpty());
+
+        index.put(parent, ProcessCompletionCondition.builder()
+                .processes(Collections.singleton(child))
+                .build());
+        index.put(lockWaiter, ProcessLockCondition.builder()
+                .instanceId(UUID.randomUUID())
+                .orgId(orgId)
+                .projectId(projectId)
+                .scope(ProcessLockScope.PROJECT)
+                .name("my:lock")
+                .build());
+        index.put(other, ProcessCompletionCondition.builder()
+                .processes(Collections.singleton(UUID.randomUUID()))
+                .build());
+
+        index.endCheck();
+        assertEquals(new HashSet<>(Arrays.asList(parent, lockWaiter)), index.poll(0));
+
+        // the changes are no longer recorded after the check
+        index.put(child, ProcessCompletionCondition.builder()
+                .processes(Collections.singleton(other))
+                .build());
+        index.beginCheck();
+        index.endCheck();
+        assertTrue(index.poll(0).isEmpty());
+    }
+}
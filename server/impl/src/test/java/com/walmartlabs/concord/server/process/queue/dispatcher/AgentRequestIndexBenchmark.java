@@ -0,0 +1,129 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.common.MapMatcher;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares matching {@value #REQUIREMENTS_COUNT} process requirements against
+ * {@value #AGENTS_COUNT} agents using {@link AgentRequestIndex} with matching
+ * each agent's capabilities using {@link MapMatcher} directly.
+ * <p>
+ * {@code distinctCapabilities} is the number of distinct capability sets
+ * among the agents, i.e. the number of groups in the index.
+ * <p>
+ * Not executed as a part of the build. Run {@link #main(String[])} from the IDE
+ * or using the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AgentRequestIndexBenchmark {
+
+    private static final int AGENTS_COUNT = 1_000;
+    private static final int REQUIREMENTS_COUNT = 1_000;
+
+    private static final String[] FLAVORS = {"default", "large", "docker", "ansible", "gpu"};
+
+    @Param({"10", "100", "1000"})
+    public int distinctCapabilities;
+
+    private List<Map<String, Object>> agents;
+    private List<Map<String, Object>> requirements;
+
+    @Setup
+    public void setUp() {
+        Random rnd = new Random(42);
+
+        agents = new ArrayList<>(AGENTS_COUNT);
+        for (int i = 0; i < AGENTS_COUNT; i++) {
+            int n = i % distinctCapabilities;
+
+            Map<String, Object> capabilities = new HashMap<>();
+            capabilities.put("flavor", FLAVORS[n % FLAVORS.length]);
+            capabilities.put("pool", "pool-" + n);
+            capabilities.put("labels", Arrays.asList("linux", "x86_64"));
+            agents.add(capabilities);
+        }
+
+        requirements = new ArrayList<>(REQUIREMENTS_COUNT);
+        for (int i = 0; i < REQUIREMENTS_COUNT; i++) {
+            Map<String, Object> m = new HashMap<>();
+            switch (rnd.nextInt(3)) {
+                case 0: {
+                    m.put("flavor", FLAVORS[rnd.nextInt(FLAVORS.length)]);
+                    break;
+                }
+                case 1: {
+                    // a regex condition
+                    m.put("pool", "pool-" + rnd.nextInt(distinctCapabilities) + "|pool-x.*");
+                    break;
+                }
+                default: {
+                    // no agent can take these
+                    m.put("flavor", "unknown");
+                    m.put("labels", Collections.singletonList("windows"));
+                }
+            }
+            requirements.add(m);
+        }
+    }
+
+    @Benchmark
+    public void index(Blackhole bh) {
+        AgentRequestIndex<Map<String, Object>> index = new AgentRequestIndex<>(agents, a -> a);
+        for (Map<String, Object> r : requirements) {
+            bh.consume(index.find(r));
+        }
+    }
+
+    @Benchmark
+    public void perAgent(Blackhole bh) {
+        for (Map<String, Object> r : requirements) {
+            Map<String, Object> result = null;
+            for (Map<String, Object> a : agents) {
+                if (MapMatcher.matches(a, r)) {
+                    result = a;
+                    break;
+                }
+            }
+            bh.consume(result);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opts = new OptionsBuilder()
+                .include(AgentRequestIndexBenchmark.class.getSimpleName())
+                .build();
+
+        new org.openjdk.jmh.runner.Runner(opts).run();
+    }
+}
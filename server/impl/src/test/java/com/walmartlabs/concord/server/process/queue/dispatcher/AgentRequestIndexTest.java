@@ -0,0 +1,65 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class AgentRequestIndexTest {
+
+    @Test
+    public void testGroups() {
+        Map<String, Object> defaultAgent = Collections.singletonMap("flavor", "default");
+        Map<String, Object> gpuAgent = Collections.singletonMap("flavor", "gpu");
+
+        Map<String, Map<String, Object>> requests = new LinkedHashMap<>();
+        requests.put("a", defaultAgent);
+        requests.put("b", gpuAgent);
+        requests.put("c", new HashMap<>(defaultAgent));
+
+        AgentRequestIndex<String> index = new AgentRequestIndex<>(requests.keySet(), requests::get);
+
+        Map<String, Object> gpuRequirements = Collections.singletonMap("flavor", "g.*");
+        assertEquals("b", index.find(gpuRequirements));
+        index.remove("b");
+        assertNull(index.find(gpuRequirements));
+
+        Map<String, Object> defaultRequirements = Collections.singletonMap("flavor", "default");
+        assertEquals("a", index.find(defaultRequirements));
+        index.remove("a");
+        assertEquals("c", index.find(defaultRequirements));
+        index.remove("c");
+        assertNull(index.find(defaultRequirements));
+
+        assertTrue(index.isEmpty());
+    }
+
+    @Test
+    public void testNoRequirements() {
+        AgentRequestIndex<String> index = new AgentRequestIndex<>(Collections.singletonList("a"), r -> null);
+        assertFalse(index.isEmpty());
+        assertEquals("a", index.find(Collections.emptyMap()));
+        assertNull(index.find(Collections.singletonMap("flavor", "gpu")));
+    }
+}
@@ -0,0 +1,131 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.process.ProcessKey;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueEntry;
+import com.walmartlabs.concord.server.queueclient.message.ProcessRequest;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+/**
+ * Measures the in-memory part of a dispatcher run: matching {@value #ENTRIES_COUNT}
+ * ENQUEUED processes against {@value #REQUESTS_COUNT} agent requests using
+ * {@link Dispatcher#match(List, Function, BiPredicate, IntConsumer)}. The pages
+ * of candidates are served from memory and all candidates pass the filters.
+ * <p>
+ * {@code unmatchedRatio} is the share of processes with requirements that no agent
+ * can satisfy, i.e. the processes the dispatcher has to skip on every run.
+ * <p>
+ * Not executed as a part of the build. Run {@link #main(String[])} from the IDE
+ * or using the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DispatcherMatchBenchmark {
+
+    private static final int ENTRIES_COUNT = 10_000;
+    private static final int REQUESTS_COUNT = 500;
+    private static final int BATCH_SIZE = 10;
+
+    private static final String[] FLAVORS = {"default", "large", "docker", "ansible", "gpu"};
+    private static final String[] REGIONS = {"us-east", "us-west", "eu", "ap"};
+
+    @Param({"0.0", "0.5", "0.95"})
+    public double unmatchedRatio;
+
+    private List<ProcessQueueEntry> entries;
+    private Map<ProcessQueueEntry, Integer> positions;
+    private List<Map<String, Object>> capabilities;
+
+    @Setup
+    public void setUp() {
+        Random rnd = new Random(42);
+
+        entries = new ArrayList<>(ENTRIES_COUNT);
+        positions = new IdentityHashMap<>(ENTRIES_COUNT);
+        for (int i = 0; i < ENTRIES_COUNT; i++) {
+            Map<String, Object> agent = new HashMap<>();
+            if (rnd.nextDouble() < unmatchedRatio) {
+                agent.put("flavor", "unknown");
+            } else {
+                agent.put("flavor", FLAVORS[rnd.nextInt(FLAVORS.length)]);
+                if (rnd.nextBoolean()) {
+                    agent.put("region", REGIONS[rnd.nextInt(REGIONS.length)]);
+                }
+            }
+
+            ProcessQueueEntry e = ProcessQueueEntry.builder()
+                    .key(new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis())))
+                    .requirements(Collections.singletonMap("agent", agent))
+                    .build();
+
+            entries.add(e);
+            positions.put(e, i);
+        }
+
+        capabilities = new ArrayList<>(REQUESTS_COUNT);
+        for (int i = 0; i < REQUESTS_COUNT; i++) {
+            Map<String, Object> m = new HashMap<>();
+            m.put("flavor", FLAVORS[i % FLAVORS.length]);
+            m.put("region", REGIONS[i % REGIONS.length]);
+            capabilities.add(m);
+        }
+    }
+
+    @Benchmark
+    public void match(Blackhole bh) {
+        // requests are stateful, create new ones for each run (the same way the dispatcher does)
+        List<Dispatcher.Request> requests = new ArrayList<>(REQUESTS_COUNT);
+        for (Map<String, Object> c : capabilities) {
+            requests.add(new Dispatcher.Request(null, new ProcessRequest(c), 1));
+        }
+
+        List<Dispatcher.Match> matches = Dispatcher.match(requests, this::nextPage, (e, startingProcesses) -> true, offset -> {});
+        bh.consume(matches);
+    }
+
+    private List<ProcessQueueEntry> nextPage(ProcessQueueEntry last) {
+        int from = last != null ? positions.get(last) + 1 : 0;
+        return entries.subList(from, Math.min(from + BATCH_SIZE, entries.size()));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opts = new OptionsBuilder()
+                .include(DispatcherMatchBenchmark.class.getSimpleName())
+                .build();
+
+        new org.openjdk.jmh.runner.Runner(opts).run();
+    }
+}
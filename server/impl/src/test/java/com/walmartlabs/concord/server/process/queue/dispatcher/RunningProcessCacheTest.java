@@ -0,0 +1,189 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.cfg.ProcessQueueConfiguration;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class RunningProcessCacheTest {
+
+    @Test
+    public void testNotifications() {
+        RunningProcessCache cache = new RunningProcessCache(new RunningProcessCache.Dao(null), new DispatcherSignal(null),
+                new ProcessQueueConfiguration(), new MetricRegistry());
+
+        UUID orgId = UUID.randomUUID();
+        UUID projectId = UUID.randomUUID();
+        UUID parentId = UUID.randomUUID();
+        UUID childId = UUID.randomUUID();
+
+        cache.onNotification("started:" + parentId + ":" + orgId + ":" + projectId + "::my:group");
+        cache.onNotification("started:" + childId + ":" + orgId + ":" + projectId + ":" + parentId + ":my:group");
+
+        assertEquals(2, cache.processesPerOrg(orgId).size());
+        assertEquals(2, cache.processesPerProject(projectId).size());
+        assertEquals(Collections.singletonList(childId), cache.exclusiveProcesses(projectId, "my:group", parentId));
+
+        // unknown parent, can't tell which processes to exclude
+        assertNull(cache.exclusiveProcesses(projectId, "my:group", UUID.randomUUID()));
+
+        // suspended processes don't count towards the concurrency limits but still hold the exclusive group
+        cache.onNotification("status:" + parentId + ":SUSPENDED");
+        assertEquals(Collections.singletonList(childId), cache.processesPerProject(projectId));
+        assertEquals(2, cache.exclusiveProcesses(projectId, "my:group", null).size());
+
+        cache.onNotification("status:" + childId + ":FINISHED");
+        assertTrue(cache.processesPerOrg(orgId).isEmpty());
+        assertEquals(Collections.singletonList(parentId), cache.exclusiveProcesses(projectId, "my:group", null));
+
+        cache.onNotification("status:" + parentId + ":ENQUEUED");
+        assertTrue(cache.exclusiveProcesses(projectId, "my:group", null).isEmpty());
+    }
+
+    @Test(timeout = 10000)
+    public void testReload() throws Exception {
+        UUID orgId = UUID.randomUUID();
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        RunningProcessCache.Dao dao = mock(RunningProcessCache.Dao.class);
+        when(dao.list()).thenAnswer(inv -> {
+            loading.countDown();
+            release.await();
+            return Arrays.asList(running(a, orgId), running(b, orgId));
+        });
+
+        RunningProcessCache cache = new RunningProcessCache(dao, signal(true), cfg(), new MetricRegistry());
+
+        // the cache is stale initially, the reload runs in the background
+        cache.prepare();
+        assertFalse(cache.isReady());
+        loading.await();
+
+        // the changes made while loading are re-applied after the reload
+        cache.onNotification("status:" + b + ":FINISHED");
+        release.countDown();
+
+        awaitReady(cache);
+        assertEquals(Collections.singletonList(a), cache.processesPerOrg(orgId));
+        verify(dao, times(1)).list();
+    }
+
+    @Test(timeout = 10000)
+    public void testStaleWhileReloading() throws Exception {
+        UUID orgId = UUID.randomUUID();
+        UUID a = UUID.randomUUID();
+
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        RunningProcessCache.Dao dao = mock(RunningProcessCache.Dao.class);
+        when(dao.list())
+                .thenAnswer(inv -> {
+                    loading.countDown();
+                    release.await();
+                    return Collections.emptyList();
+                })
+                .thenReturn(Collections.singletonList(running(a, orgId)));
+
+        RunningProcessCache cache = new RunningProcessCache(dao, signal(true), cfg(), new MetricRegistry());
+
+        cache.prepare();
+        loading.await();
+
+        // notifications might've been lost while loading, the loaded data can't be trusted
+        cache.onConnect();
+        release.countDown();
+
+        // the first reload doesn't make the cache usable, the second one does
+        awaitReady(cache);
+        assertEquals(Collections.singletonList(a), cache.processesPerOrg(orgId));
+        verify(dao, times(2)).list();
+    }
+
+    @Test(timeout = 10000)
+    public void testSyncFailure() throws Exception {
+        UUID orgId = UUID.randomUUID();
+        UUID a = UUID.randomUUID();
+
+        RunningProcessCache.Dao dao = mock(RunningProcessCache.Dao.class);
+        when(dao.list()).thenReturn(Collections.singletonList(running(a, orgId)));
+
+        DispatcherSignal signal = signal(true);
+        RunningProcessCache cache = new RunningProcessCache(dao, signal, cfg(), new MetricRegistry());
+        awaitReady(cache);
+
+        // can't tell if all notifications were received, the DB must be used
+        when(signal.sync(anyLong())).thenReturn(false);
+        cache.prepare();
+        assertFalse(cache.isReady());
+
+        // stays stale until reloaded
+        when(signal.sync(anyLong())).thenReturn(true);
+        awaitReady(cache);
+        verify(dao, times(2)).list();
+    }
+
+    private static void awaitReady(RunningProcessCache cache) throws InterruptedException {
+        while (true) {
+            cache.prepare();
+            if (cache.isReady()) {
+                return;
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    private static DispatcherSignal signal(boolean synced) {
+        DispatcherSignal signal = mock(DispatcherSignal.class);
+        when(signal.sync(anyLong())).thenReturn(synced);
+        return signal;
+    }
+
+    private static ProcessQueueConfiguration cfg() {
+        ProcessQueueConfiguration cfg = mock(ProcessQueueConfiguration.class);
+        when(cfg.getRunningProcessCacheReloadInterval()).thenReturn(TimeUnit.HOURS.toMillis(1));
+        return cfg;
+    }
+
+    private static RunningProcessCache.RunningProcess running(UUID instanceId, UUID orgId) {
+        return RunningProcessCache.RunningProcess.builder()
+                .instanceId(instanceId)
+                .orgId(orgId)
+                .status(ProcessStatus.RUNNING)
+                .build();
+    }
+}
@@ -0,0 +1,271 @@
+package com.walmartlabs.concord.server.process.state;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.common.IOUtils;
+import com.walmartlabs.concord.common.TemporaryPath;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.org.project.ProjectAccessManager;
+import com.walmartlabs.concord.server.process.ProcessKey;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
+import com.walmartlabs.concord.server.process.state.ProcessCheckpointDao.CheckpointLink;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.siesta.ValidationErrorsException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+public class ProcessCheckpointManagerTest {
+
+    private final ProcessKey processKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+
+    private final Map<UUID, CheckpointLink> links = new HashMap<>();
+    private final Map<UUID, Path> archives = new HashMap<>();
+
+    private Path workDir;
+    private ProcessConfiguration cfg;
+    private ProcessCheckpointDao checkpointDao;
+    private ProcessStateManager stateManager;
+    private ProcessCheckpointManager checkpointManager;
+
+    @Before
+    public void setUp() throws Exception {
+        workDir = IOUtils.createTempDir("test");
+
+        cfg = mock(ProcessConfiguration.class);
+        when(cfg.getCheckpointMaxChainLength()).thenReturn(3);
+
+        checkpointDao = mock(ProcessCheckpointDao.class);
+        when(checkpointDao.getLink(eq(processKey), any())).thenAnswer(i -> links.get(i.<UUID>getArgument(1)));
+        when(checkpointDao.export(eq(processKey), any(), any())).thenAnswer(i -> {
+            UUID id = i.getArgument(1);
+            Path src = archives.get(id);
+            if (src == null) {
+                return null;
+            }
+            Files.copy(src, i.<Path>getArgument(2), StandardCopyOption.REPLACE_EXISTING);
+            return "cp-" + id;
+        });
+
+        stateManager = mock(ProcessStateManager.class);
+
+        checkpointManager = new ProcessCheckpointManager(cfg, checkpointDao, mock(ProcessQueueDao.class),
+                stateManager, mock(ProjectAccessManager.class));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        IOUtils.deleteRecursively(workDir);
+    }
+
+    @Test
+    public void testRestoreChain() throws Exception {
+        UUID c0 = full(files("_attachments/a", "1", "_attachments/b", "1", "_attachments/c", "1", ".concord/x", "1"));
+        UUID c1 = delta(c0, singletonList("_attachments/b"), files("_attachments/a", "2"));
+        UUID c2 = delta(c1, singletonList("_attachments/c"), files("_attachments/d", "1"));
+        UUID c3 = delta(c2, Arrays.asList("_attachments/d", ".concord/x"), files("_attachments/a", "3", "_attachments/b", "3"));
+
+        assertEquals(files("_attachments/a", "3", "_attachments/b", "3"), restore(c3));
+        assertEquals(files("_attachments/a", "2", "_attachments/d", "1", ".concord/x", "1"), restore(c2));
+        assertEquals(files("_attachments/a", "2", "_attachments/c", "1", ".concord/x", "1"), restore(c1));
+        assertEquals(files("_attachments/a", "1", "_attachments/b", "1", "_attachments/c", "1", ".concord/x", "1"), restore(c0));
+    }
+
+    @Test
+    public void testRestoreBrokenChain() throws Exception {
+        UUID c0 = full(files("_attachments/a", "1"));
+        UUID c1 = delta(c0, emptyList(), files("_attachments/a", "2"));
+        links.remove(c0);
+
+        try {
+            checkpointManager.restoreCheckpoint(processKey, c1);
+            fail("exception expected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        assertNull(checkpointManager.restoreCheckpoint(processKey, UUID.randomUUID()));
+    }
+
+    @Test
+    public void testImportDelta() throws Exception {
+        UUID c0 = full(files("_attachments/a", "1"));
+
+        UUID id = UUID.randomUUID();
+        try (TemporaryPath data = zip(files("_attachments/a", "2"))) {
+            checkpointManager.importDeltaCheckpoint(processKey, id, "test", c0, singletonList("_attachments/b"), data.path());
+        }
+
+        verify(checkpointDao).importCheckpoint(eq(processKey), eq(id), eq("test"), eq(c0), eq(1), eq(singletonList("_attachments/b")), any());
+        verify(checkpointDao, never()).importCheckpoint(any(), any(), any(), any(Path.class));
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        UUID c0 = full(files("_attachments/a", "1", "_attachments/b", "1", "_attachments/c", "1"));
+        UUID c1 = delta(c0, singletonList("_attachments/b"), files("_attachments/a", "2"));
+        UUID c2 = delta(c1, emptyList(), files("_attachments/d", "1"));
+        UUID c3 = delta(c2, singletonList("_attachments/c"), files("_attachments/a", "3"));
+        assertEquals(3, links.get(c3).chainLength());
+
+        Map<String, String> stored = new HashMap<>();
+        doAnswer(i -> {
+            stored.putAll(unzip(i.getArgument(3)));
+            return null;
+        }).when(checkpointDao).importCheckpoint(eq(processKey), any(), any(), any(Path.class));
+
+        // the chain would exceed the limit, the checkpoint must be stored as a full one
+        UUID id = UUID.randomUUID();
+        try (TemporaryPath data = zip(files("_attachments/e", "1"))) {
+            checkpointManager.importDeltaCheckpoint(processKey, id, "test", c3, singletonList("_attachments/d"), data.path());
+        }
+
+        verify(checkpointDao).importCheckpoint(eq(processKey), eq(id), eq("test"), any(Path.class));
+        verify(checkpointDao, never()).importCheckpoint(any(), any(), any(), any(), anyInt(), anyList(), any());
+
+        assertEquals(files("_attachments/a", "3", "_attachments/e", "1"), stored);
+    }
+
+    @Test
+    public void testInvalidDelta() throws Exception {
+        try (TemporaryPath data = zip(files("_attachments/a", "1"))) {
+            checkpointManager.importDeltaCheckpoint(processKey, UUID.randomUUID(), "test", UUID.randomUUID(), emptyList(), data.path());
+            fail("exception expected");
+        } catch (ValidationErrorsException e) {
+            // expected
+        }
+
+        UUID c0 = full(files("_attachments/a", "1"));
+        UUID c1 = delta(c0, emptyList(), files("_attachments/a", "2"));
+        UUID c2 = delta(c1, emptyList(), files("_attachments/a", "3"));
+        UUID c3 = delta(c2, emptyList(), files("_attachments/a", "4"));
+
+        try (TemporaryPath data = zip(files("_attachments/a", "5"))) {
+            checkpointManager.importDeltaCheckpoint(processKey, UUID.randomUUID(), "test", c3, singletonList("../a"), data.path());
+            fail("exception expected");
+        } catch (ValidationErrorsException e) {
+            // expected
+        }
+    }
+
+    private UUID full(Map<String, String> files) throws IOException {
+        return store(null, 0, emptyList(), files);
+    }
+
+    private UUID delta(UUID parentId, List<String> deletedFiles, Map<String, String> files) throws IOException {
+        return store(parentId, links.get(parentId).chainLength() + 1, deletedFiles, files);
+    }
+
+    private UUID store(UUID parentId, int chainLength, List<String> deletedFiles, Map<String, String> files) throws IOException {
+        UUID id = UUID.randomUUID();
+
+        links.put(id, ImmutableCheckpointLink.builder()
+                .id(id)
+                .parentId(parentId)
+                .chainLength(chainLength)
+                .deletedFiles(deletedFiles)
+                .build());
+
+        Path archive = workDir.resolve(id + ".zip");
+        try (TemporaryPath tmp = zip(files)) {
+            Files.copy(tmp.path(), archive);
+        }
+        archives.put(id, archive);
+
+        return id;
+    }
+
+    private Map<String, String> restore(UUID checkpointId) {
+        Map<String, String> result = new HashMap<>();
+        doAnswer(i -> {
+            result.putAll(read(i.getArgument(2)));
+            return null;
+        }).when(stateManager).importPath(eq(processKey), isNull(), any(Path.class));
+
+        ProcessCheckpointManager.CheckpointInfo info = checkpointManager.restoreCheckpoint(processKey, checkpointId);
+        assertNotNull(info);
+        assertEquals("cp-" + checkpointId, info.name());
+
+        return result;
+    }
+
+    private static TemporaryPath zip(Map<String, String> files) throws IOException {
+        TemporaryPath result = IOUtils.tempFile("test", ".zip");
+        try (TemporaryPath dir = IOUtils.tempDir("test");
+             ZipArchiveOutputStream zip = new ZipArchiveOutputStream(Files.newOutputStream(result.path()))) {
+
+            for (Map.Entry<String, String> e : files.entrySet()) {
+                Path p = dir.path().resolve(e.getKey());
+                Files.createDirectories(p.getParent());
+                Files.write(p, e.getValue().getBytes());
+            }
+
+            IOUtils.zip(zip, dir.path());
+        }
+        return result;
+    }
+
+    private static Map<String, String> unzip(Path archive) throws IOException {
+        try (TemporaryPath dir = IOUtils.tempDir("test")) {
+            IOUtils.unzip(archive, dir.path());
+            return read(dir.path());
+        }
+    }
+
+    private static Map<String, String> read(Path dir) throws IOException {
+        try (Stream<Path> s = Files.walk(dir)) {
+            List<Path> files = s.filter(Files::isRegularFile).collect(Collectors.toList());
+
+            Map<String, String> result = new HashMap<>();
+            for (Path f : files) {
+                result.put(dir.relativize(f).toString(), new String(Files.readAllBytes(f)));
+            }
+            return result;
+        }
+    }
+
+    private static Map<String, String> files(String... kvs) {
+        Map<String, String> result = new HashMap<>();
+        for (int i = 0; i < kvs.length; i += 2) {
+            result.put(kvs[i], kvs[i + 1]);
+        }
+        return result;
+    }
+}
@@ -21,11 +21,13 @@ package com.walmartlabs.concord.server.process.state;
  */
 
 import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
 import com.walmartlabs.concord.sdk.Constants;
 import com.walmartlabs.concord.server.AbstractDaoTest;
 import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
 import com.walmartlabs.concord.server.cfg.SecretStoreConfiguration;
 import com.walmartlabs.concord.server.process.ProcessKey;
+import org.jooq.impl.DSL;
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -37,11 +39,12 @@ import java.nio.file.StandardOpenOption;
 import java.sql.Timestamp;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Map;
 import java.util.UUID;
 
+import static com.walmartlabs.concord.server.jooq.tables.ProcessStateBlobs.PROCESS_STATE_BLOBS;
 import static com.walmartlabs.concord.server.process.state.ProcessStateManager.copyTo;
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 import static org.mockito.Mockito.mock;
 
 @Ignore("requires a local DB instance")
@@ -80,6 +83,75 @@ public class ProcessStateManagerTest extends AbstractDaoTest {
         assertFileContent("456", tmpDir.resolve("file-2"));
     }
 
+    @Test
+    public void testSharedBlobs() throws Exception {
+        ProcessKey parentKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+        ProcessKey childKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+
+        String content = UUID.randomUUID().toString();
+
+        Path baseDir = Files.createTempDirectory("testImport");
+        writeTempFile(baseDir.resolve("file-1"), content.getBytes());
+
+        // no grace period, unreferenced blobs are removed immediately
+        ProcessConfiguration stateCfg = new ProcessConfiguration(24 * 60 * 60 * 1000, Collections.singletonList(Constants.Files.CONFIGURATION_FILE_NAME), "0 seconds");
+        ProcessStateManager stateManager = new ProcessStateManager(getConfiguration(), mock(SecretStoreConfiguration.class), stateCfg);
+        stateManager.importPath(parentKey, null, baseDir);
+        stateManager.importPath(childKey, null, baseDir);
+        assertEquals(1, countBlobs(content));
+
+        // the blob is still referenced by the child process
+        stateManager.delete(parentKey);
+        stateManager.deleteUnusedBlobs();
+        assertEquals(1, countBlobs(content));
+
+        Path tmpDir = Files.createTempDirectory("testExport");
+
+        boolean result = stateManager.export(childKey, copyTo(tmpDir));
+        assertTrue(result);
+        assertFileContent(content, tmpDir.resolve("file-1"));
+
+        // no references left
+        stateManager.delete(childKey);
+        stateManager.deleteUnusedBlobs();
+        assertEquals(0, countBlobs(content));
+    }
+
+    @Test
+    public void testExportReusable() throws Exception {
+        ProcessKey parentKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+        ProcessKey childKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+
+        Path baseDir = Files.createTempDirectory("testImport");
+        writeTempFile(baseDir.resolve("file-1"), "123".getBytes());
+        writeTempFile(baseDir.resolve("file-2"), "456".getBytes());
+        writeTempFile(baseDir.resolve("skipped"), "789".getBytes());
+
+        ProcessConfiguration stateCfg = new ProcessConfiguration(24 * 60 * 60 * 1000, Collections.singletonList(Constants.Files.CONFIGURATION_FILE_NAME));
+        ProcessStateManager stateManager = new ProcessStateManager(getConfiguration(), mock(SecretStoreConfiguration.class), stateCfg);
+        stateManager.importPath(parentKey, null, baseDir);
+
+        Path forkDir = Files.createTempDirectory("testFork");
+        Map<String, String> blobHashes = stateManager.exportReusable(parentKey, forkDir, "skipped");
+        assertEquals(2, blobHashes.size());
+        assertFalse(Files.exists(forkDir.resolve("skipped")));
+
+        // modified files must not reuse the parent's blobs
+        Files.write(forkDir.resolve("file-2"), "456-up".getBytes());
+        writeTempFile(forkDir.resolve("file-3"), "000".getBytes());
+
+        stateManager.replacePath(childKey, forkDir, (p, attrs) -> true, blobHashes);
+
+        Path tmpDir = Files.createTempDirectory("testExport");
+        assertTrue(stateManager.export(childKey, copyTo(tmpDir)));
+        assertFileContent("123", tmpDir.resolve("file-1"));
+        assertFileContent("456-up", tmpDir.resolve("file-2"));
+        assertFileContent("000", tmpDir.resolve("file-3"));
+        assertFalse(Files.exists(tmpDir.resolve("skipped")));
+
+        assertNull(stateManager.exportReusable(new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis())), tmpDir));
+    }
+
     @Ignore
     @Test
     public void testLargeImport() throws Exception {
@@ -107,6 +179,11 @@ public class ProcessStateManagerTest extends AbstractDaoTest {
         stateManager.importPath(processKey, "/", baseDir);
     }
 
+    private int countBlobs(String content) {
+        String hash = Hashing.sha256().hashBytes(content.getBytes()).toString();
+        return DSL.using(getConfiguration()).fetchCount(PROCESS_STATE_BLOBS, PROCESS_STATE_BLOBS.BLOB_HASH.eq(hash));
+    }
+
     private static void assertFileContent(String expected, Path f) throws IOException {
         String str = com.google.common.io.Files.asCharSource(f.toFile(), Charsets.UTF_8).read();
         assertEquals(expected, str);
@@ -0,0 +1,114 @@
+package com.walmartlabs.concord.server.security;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.cfg.AuthCacheConfiguration;
+import com.walmartlabs.concord.server.security.apikey.ApiKeyEntry;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AuthenticationCacheTest {
+
+    @Test
+    public void testApiKeys() {
+        AuthenticationCache cache = new AuthenticationCache(cfg(60000), new MetricRegistry());
+
+        ApiKeyEntry e = new ApiKeyEntry(UUID.randomUUID(), UUID.randomUUID(), "test", null);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals(e, cache.getApiKey("abc", () -> {
+            loads.incrementAndGet();
+            return e;
+        }));
+        assertEquals(e, cache.getApiKey("abc", () -> {
+            loads.incrementAndGet();
+            return e;
+        }));
+        assertEquals(1, loads.get());
+
+        // deleted keys must be reloaded
+        cache.invalidateApiKey(e.getId());
+        assertNull(cache.getApiKey("abc", () -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertEquals(2, loads.get());
+
+        // unknown keys are not cached
+        assertNull(cache.getApiKey("abc", () -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testNewApiKey() {
+        AuthenticationCache cache = new AuthenticationCache(cfg(60000), new MetricRegistry());
+
+        // e.g. a key created on another node after the first attempt to use it
+        assertNull(cache.getApiKey("abc", () -> null));
+
+        ApiKeyEntry e = new ApiKeyEntry(UUID.randomUUID(), UUID.randomUUID(), "test", null);
+        assertEquals(e, cache.getApiKey("abc", () -> e));
+    }
+
+    @Test
+    public void testExpiredApiKey() {
+        AuthenticationCache cache = new AuthenticationCache(cfg(60000), new MetricRegistry());
+
+        ApiKeyEntry e = new ApiKeyEntry(UUID.randomUUID(), UUID.randomUUID(), "test", new Date(System.currentTimeMillis() - 1000));
+        assertNull(cache.getApiKey("abc", () -> e));
+    }
+
+    @Test
+    public void testDisabled() {
+        AuthenticationCache cache = new AuthenticationCache(cfg(0), new MetricRegistry());
+
+        AtomicInteger loads = new AtomicInteger();
+        UUID userId = UUID.randomUUID();
+
+        cache.getUser(userId, () -> {
+            loads.incrementAndGet();
+            return null;
+        });
+        cache.getUser(userId, () -> {
+            loads.incrementAndGet();
+            return null;
+        });
+        assertEquals(2, loads.get());
+    }
+
+    private static AuthCacheConfiguration cfg(long ttl) {
+        AuthCacheConfiguration cfg = mock(AuthCacheConfiguration.class);
+        when(cfg.getTtl()).thenReturn(ttl);
+        when(cfg.getMaxSize()).thenReturn(100L);
+        return cfg;
+    }
+}
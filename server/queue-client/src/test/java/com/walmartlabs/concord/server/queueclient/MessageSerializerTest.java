@@ -26,11 +26,13 @@ import com.walmartlabs.concord.imports.Imports;
 import com.walmartlabs.concord.server.queueclient.message.*;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 public class MessageSerializerTest {
 
@@ -77,6 +79,28 @@ public class MessageSerializerTest {
         assertEquals(r.getMessageType(), MessageType.PROCESS_REQUEST);
         assertEquals(r.getCapabilities(), rDeserialized.getCapabilities());
         assertEquals(r.getCorrelationId(), rDeserialized.getCorrelationId());
+        assertNull(rDeserialized.getMaxProcesses());
+    }
+
+    @Test
+    public void testProcessBatchResponse() {
+        ProcessRequest req = new ProcessRequest(Collections.singletonMap("k", "v"), 2);
+        ProcessRequest reqDeserialized = MessageSerializer.deserialize(MessageSerializer.serialize(req));
+        assertEquals(Integer.valueOf(2), reqDeserialized.getMaxProcesses());
+
+        ProcessResponse a = new ProcessResponse(123, UUID.randomUUID(), null, null, null, null, null, null);
+        ProcessResponse b = new ProcessResponse(123, UUID.randomUUID(), null, null, null, null, null, null);
+        ProcessBatchResponse r = new ProcessBatchResponse(123, Arrays.asList(a, b));
+
+        // ---
+        String rSerialized = MessageSerializer.serialize(r);
+        assertNotNull(rSerialized);
+
+        ProcessBatchResponse rDeserialized = MessageSerializer.deserialize(rSerialized);
+        assertEquals(MessageType.PROCESS_BATCH_RESPONSE, rDeserialized.getMessageType());
+        assertEquals(r.getCorrelationId(), rDeserialized.getCorrelationId());
+        assertEquals(2, rDeserialized.getProcesses().size());
+        assertEquals(b.getProcessId(), rDeserialized.getProcesses().get(1).getProcessId());
     }
 
     @Test